@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link CompactPathSet} with the {@link HashSet} of {@link Path} objects it replaced in {@link FilesReconcilerImpl}. The build benchmarks, run with {@code -prof gc}, report
+ * in {@code gc.alloc.rate.norm} the bytes allocated to build a set, which is an upper bound of its size on the heap; it includes the arrays that were discarded while the set grew.
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Dbenchmark.args="CompactPathSetBenchmark -prof gc"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CompactPathSetBenchmark {
+    @Param({ "100000", "1000000" })
+    private int size;
+
+    private List<Path> paths;
+    // half of the paths, so that a difference contains the other half
+    private List<Path> otherPaths;
+    private Set<Path> hashSet;
+    private Set<Path> otherHashSet;
+    private CompactPathSet compactPathSet;
+    private CompactPathSet otherCompactPathSet;
+
+    @Setup
+    public void setUp() {
+        paths = new ArrayList<>(size);
+        otherPaths = new ArrayList<>(size / 2);
+
+        // about 35 characters, like the payload paths of a bag with a few directory levels
+        for (var i = 0; i < size; ++i) {
+            var path = Path.of(String.format("data/dir-%03d/sub-%02d/file-%06d.txt", i % 1000, i % 97, i));
+            paths.add(path);
+
+            if (i % 2 == 0) {
+                otherPaths.add(path);
+            }
+        }
+
+        hashSet = new HashSet<>(paths);
+        otherHashSet = new HashSet<>(otherPaths);
+        compactPathSet = new CompactPathSet();
+        compactPathSet.addAll(paths);
+        otherCompactPathSet = new CompactPathSet();
+        otherCompactPathSet.addAll(otherPaths);
+    }
+
+    @Benchmark
+    public Set<Path> buildHashSet() {
+        return new HashSet<>(paths);
+    }
+
+    @Benchmark
+    public Set<Path> buildCompactPathSet() {
+        var set = new CompactPathSet();
+        set.addAll(paths);
+        return set;
+    }
+
+    @Benchmark
+    public void containsHashSet(Blackhole blackhole) {
+        for (var path : paths) {
+            blackhole.consume(hashSet.contains(path));
+        }
+    }
+
+    @Benchmark
+    public void containsCompactPathSet(Blackhole blackhole) {
+        for (var path : paths) {
+            blackhole.consume(compactPathSet.contains(path));
+        }
+    }
+
+    // how FilesReconcilerImpl computed a difference before
+    @Benchmark
+    public Set<Path> differenceHashSet() {
+        var result = new HashSet<Path>();
+
+        for (var path : hashSet) {
+            if (!otherHashSet.contains(path)) {
+                result.add(path);
+            }
+        }
+
+        return result;
+    }
+
+    @Benchmark
+    public Set<Path> differenceCompactPathSet() {
+        return compactPathSet.difference(otherCompactPathSet);
+    }
+}
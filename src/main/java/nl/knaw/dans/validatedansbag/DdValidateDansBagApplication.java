@@ -18,31 +18,70 @@ package nl.knaw.dans.validatedansbag;
 
 import io.dropwizard.Application;
 import io.dropwizard.forms.MultiPartBundle;
+import io.dropwizard.lifecycle.Managed;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
+import nl.knaw.dans.openapi.api.ValidateOkDto;
+import nl.knaw.dans.validatedansbag.core.config.ChecksumCacheConfig;
+import nl.knaw.dans.validatedansbag.core.engine.RuleEngine;
 import nl.knaw.dans.validatedansbag.core.engine.RuleEngineImpl;
+import nl.knaw.dans.validatedansbag.core.rules.BagRules;
 import nl.knaw.dans.validatedansbag.core.rules.BagRulesImpl;
+import nl.knaw.dans.validatedansbag.core.rules.DatastationRules;
 import nl.knaw.dans.validatedansbag.core.rules.DatastationRulesImpl;
+import nl.knaw.dans.validatedansbag.core.rules.FilesXmlRules;
 import nl.knaw.dans.validatedansbag.core.rules.FilesXmlRulesImpl;
+import nl.knaw.dans.validatedansbag.core.rules.XmlRules;
 import nl.knaw.dans.validatedansbag.core.rules.XmlRulesImpl;
+import nl.knaw.dans.validatedansbag.core.service.AdmissionController;
+import nl.knaw.dans.validatedansbag.core.service.AdmissionControllerImpl;
+import nl.knaw.dans.validatedansbag.core.service.BagFingerprinter;
+import nl.knaw.dans.validatedansbag.core.service.BagFingerprinterImpl;
 import nl.knaw.dans.validatedansbag.core.service.BagItMetadataReaderImpl;
+import nl.knaw.dans.validatedansbag.core.service.CachingDataverseService;
+import nl.knaw.dans.validatedansbag.core.service.ChecksumCacheImpl;
+import nl.knaw.dans.validatedansbag.core.service.ChecksumVerifierImpl;
+import nl.knaw.dans.validatedansbag.core.service.CircuitBreaker;
+import nl.knaw.dans.validatedansbag.core.service.DataverseService;
 import nl.knaw.dans.validatedansbag.core.service.DataverseServiceImpl;
+import nl.knaw.dans.validatedansbag.core.service.DdmReaderImpl;
+import nl.knaw.dans.validatedansbag.core.service.FileService;
 import nl.knaw.dans.validatedansbag.core.service.FileServiceImpl;
+import nl.knaw.dans.validatedansbag.core.service.FilesReconcilerImpl;
+import nl.knaw.dans.validatedansbag.core.service.FilesXmlService;
 import nl.knaw.dans.validatedansbag.core.service.FilesXmlServiceImpl;
+import nl.knaw.dans.validatedansbag.core.service.LocalSchemaResolver;
+import nl.knaw.dans.validatedansbag.core.service.OriginalFilepathsService;
 import nl.knaw.dans.validatedansbag.core.service.OriginalFilepathsServiceImpl;
+import nl.knaw.dans.validatedansbag.core.service.PrecomputedChecksums;
+import nl.knaw.dans.validatedansbag.core.service.PrecomputedChecksumsImpl;
+import nl.knaw.dans.validatedansbag.core.service.ResilientDataverseService;
 import nl.knaw.dans.validatedansbag.core.service.RuleEngineServiceImpl;
+import nl.knaw.dans.validatedansbag.core.service.RuleResultHistoryStore;
+import nl.knaw.dans.validatedansbag.core.service.ValidationJobService;
+import nl.knaw.dans.validatedansbag.core.service.ValidationJobServiceImpl;
+import nl.knaw.dans.validatedansbag.core.service.ValidationResultCache;
 import nl.knaw.dans.validatedansbag.core.service.XmlReaderImpl;
 import nl.knaw.dans.validatedansbag.core.service.XmlSchemaValidatorImpl;
 import nl.knaw.dans.validatedansbag.core.validator.IdentifierValidatorImpl;
 import nl.knaw.dans.validatedansbag.core.validator.LicenseValidatorImpl;
 import nl.knaw.dans.validatedansbag.core.validator.OrganizationIdentifierPrefixValidatorImpl;
 import nl.knaw.dans.validatedansbag.core.validator.PolygonListValidatorImpl;
+import nl.knaw.dans.validatedansbag.resource.AdmissionFilter;
 import nl.knaw.dans.validatedansbag.resource.IllegalArgumentExceptionMapper;
+import nl.knaw.dans.validatedansbag.resource.ValidateBatchResource;
 import nl.knaw.dans.validatedansbag.resource.ValidateOkDtoYamlMessageBodyWriter;
 import nl.knaw.dans.validatedansbag.resource.ValidateResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
 public class DdValidateDansBagApplication extends Application<DdValidateDansBagConfiguration> {
 
     private static final Logger log = LoggerFactory.getLogger(DdValidateDansBagApplication.class);
@@ -64,34 +103,180 @@ public class DdValidateDansBagApplication extends Application<DdValidateDansBagC
     @Override
     public void run(final DdValidateDansBagConfiguration configuration, final Environment environment) {
 
-        var fileService = new FileServiceImpl();
-        var bagItMetadataReader = new BagItMetadataReaderImpl();
+        // payload files in uploaded zips are hashed while they are streamed, instead of being extracted and read again
+        var precomputedChecksums = new PrecomputedChecksumsImpl();
+        var fileService = new FileServiceImpl(precomputedChecksums);
+        var bagItMetadataReader = new BagItMetadataReaderImpl(createChecksumVerifier(configuration, environment, precomputedChecksums));
         var xmlReader = new XmlReaderImpl();
+        var ddmReader = new DdmReaderImpl();
         var daiDigestCalculator = new IdentifierValidatorImpl();
         var polygonListValidator = new PolygonListValidatorImpl();
         var originalFilepathsService = new OriginalFilepathsServiceImpl(fileService);
         var licenseValidator = new LicenseValidatorImpl(configuration.getValidationConfig().getLicenseConfig());
         var filesXmlService = new FilesXmlServiceImpl(xmlReader);
+        var filesReconciler = createFilesReconciler(configuration, fileService, originalFilepathsService, filesXmlService);
 
-        var xmlSchemaValidator = new XmlSchemaValidatorImpl();
+        var xmlSchemaConfig = configuration.getXmlSchemaConfig();
+        var schemaResolver = new LocalSchemaResolver(xmlSchemaConfig.getLocalDirectory(), xmlSchemaConfig.isAllowDownload());
+        var xmlSchemaValidator = new XmlSchemaValidatorImpl(schemaResolver, environment.metrics());
 
-        var dataverseService = new DataverseServiceImpl(configuration.getDataverseConfig());
+        var dataverseService = createDataverseService(configuration, environment);
 
         var organizationIdentifierPrefixValidator = new OrganizationIdentifierPrefixValidatorImpl(configuration.getValidationConfig().getOtherIdPrefixes());
 
         // set up the different rule implementations
-        var bagRules = new BagRulesImpl(fileService, bagItMetadataReader, xmlReader, originalFilepathsService, daiDigestCalculator, polygonListValidator, licenseValidator,
-            organizationIdentifierPrefixValidator, filesXmlService);
-        var filesXmlRules = new FilesXmlRulesImpl(fileService, originalFilepathsService, filesXmlService);
-        var xmlRules = new XmlRulesImpl(xmlReader, xmlSchemaValidator, fileService);
+        var bagRules = new BagRulesImpl(fileService, bagItMetadataReader, ddmReader, originalFilepathsService, daiDigestCalculator, polygonListValidator, licenseValidator,
+            organizationIdentifierPrefixValidator, filesReconciler);
+        var filesXmlRules = new FilesXmlRulesImpl(filesReconciler);
+        var xmlRules = new XmlRulesImpl(xmlReader, ddmReader, xmlSchemaValidator, fileService);
         var datastationRules = new DatastationRulesImpl(bagItMetadataReader, dataverseService, configuration.getValidationConfig().getSwordDepositorRoles());
 
         // set up the engine and the service that has a default set of rules
-        var ruleEngine = new RuleEngineImpl();
-        var ruleEngineService = new RuleEngineServiceImpl(ruleEngine, bagRules, xmlRules, filesXmlRules, fileService, datastationRules);
+        var ruleEngine = createRuleEngine(configuration, environment);
+        var ruleEngineService = createRuleEngineService(configuration, environment, ruleEngine, bagRules, xmlRules, filesXmlRules, fileService, datastationRules);
 
         environment.jersey().register(new IllegalArgumentExceptionMapper());
-        environment.jersey().register(new ValidateResource(ruleEngineService, fileService));
+        // uploads are extracted by Files.createTempDirectory, so that is where the free space is checked
+        var admissionController = new AdmissionControllerImpl(configuration.getAdmissionConfig(), Path.of(System.getProperty("java.io.tmpdir")), environment.metrics());
+        // also registered as an event listener, so the admission is released when a request finishes without its response being written
+        environment.jersey().register(new AdmissionFilter(admissionController));
+        var validateResource = new ValidateResource(ruleEngineService, fileService, createValidationJobService(configuration, environment));
+        environment.jersey().register(validateResource);
+        environment.jersey().register(createValidateBatchResource(configuration, environment, validateResource, fileService, admissionController));
         environment.jersey().register(new ValidateOkDtoYamlMessageBodyWriter());
     }
+
+    private DataverseService createDataverseService(DdValidateDansBagConfiguration configuration, Environment environment) {
+        var config = configuration.getDataverseConfig();
+        var circuitBreaker = new CircuitBreaker(config.getCircuitBreaker().getFailureThreshold(),
+            Duration.ofMillis(config.getCircuitBreaker().getOpenDuration().toMilliseconds()));
+        DataverseService dataverseService = new ResilientDataverseService(new DataverseServiceImpl(config), config.getRetry().getMaxAttempts(),
+            Duration.ofMillis(config.getRetry().getInitialBackoff().toMilliseconds()), Duration.ofMillis(config.getRetry().getMaxBackoff().toMilliseconds()), circuitBreaker,
+            environment.metrics());
+
+        if (!config.getCache().isEnabled()) {
+            return dataverseService;
+        }
+
+        // outside the retries, so requests that wait for the same response also wait for its retries instead of making their own
+        return new CachingDataverseService(dataverseService, config.getCache().getMaxEntries(), Duration.ofMillis(config.getCache().getTimeToLive().toMilliseconds()),
+            environment.metrics());
+    }
+
+    private ChecksumVerifierImpl createChecksumVerifier(DdValidateDansBagConfiguration configuration, Environment environment, PrecomputedChecksums precomputedChecksums) {
+        var config = configuration.getChecksumVerificationConfig();
+
+        // shared by all requests, so the total load on the storage does not depend on the number of concurrent validations
+        var executor = environment.lifecycle().executorService("checksum-verifier-%d")
+            .minThreads(config.getParallelism())
+            .maxThreads(config.getParallelism())
+            .build();
+
+        var checksumCache = config.getCache().isEnabled() ? createChecksumCache(config.getCache(), environment) : null;
+
+        return new ChecksumVerifierImpl(executor, config.getParallelism(), (int) config.getBufferSize().toBytes(), precomputedChecksums, checksumCache, environment.metrics());
+    }
+
+    private ChecksumCacheImpl createChecksumCache(ChecksumCacheConfig config, Environment environment) {
+        var file = Optional.ofNullable(config.getFile()).orElse(Path.of(System.getProperty("java.io.tmpdir"), "dd-validate-dans-bag-checksums.tsv"));
+
+        try {
+            var checksumCache = new ChecksumCacheImpl(file, config.getTrustPolicy(), Duration.ofMillis(config.getMaxAge().toMilliseconds()), config.getMaxEntries(), environment.metrics());
+
+            environment.lifecycle().manage(new Managed() {
+                @Override
+                public void start() {
+                }
+
+                @Override
+                public void stop() throws Exception {
+                    checksumCache.close();
+                }
+            });
+
+            return checksumCache;
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(String.format("Could not open checksum cache %s", file), e);
+        }
+    }
+
+    private FilesReconcilerImpl createFilesReconciler(DdValidateDansBagConfiguration configuration, FileService fileService, OriginalFilepathsService originalFilepathsService,
+        FilesXmlService filesXmlService) {
+        var config = configuration.getFilesReconciliationConfig();
+        var spillDirectory = Optional.ofNullable(config.getSpillDirectory()).orElse(Path.of(System.getProperty("java.io.tmpdir")));
+
+        return new FilesReconcilerImpl(fileService, originalFilepathsService, filesXmlService, config.getExternalMergeThreshold(), spillDirectory, config.getSortChunkSize());
+    }
+
+    private RuleEngineServiceImpl createRuleEngineService(DdValidateDansBagConfiguration configuration, Environment environment, RuleEngine ruleEngine, BagRules bagRules,
+        XmlRules xmlRules, FilesXmlRules filesXmlRules, FileService fileService, DatastationRules datastationRules) {
+        var cacheConfig = configuration.getResultCacheConfig();
+        var incrementalConfig = configuration.getIncrementalValidationConfig();
+        BagFingerprinter bagFingerprinter = null;
+        ValidationResultCache resultCache = null;
+        RuleResultHistoryStore historyStore = null;
+
+        if (cacheConfig.isEnabled()) {
+            bagFingerprinter = new BagFingerprinterImpl();
+            resultCache = new ValidationResultCache(cacheConfig.getMaxEntries(), Duration.ofMillis(cacheConfig.getTimeToLive().toMilliseconds()), environment.metrics());
+        }
+
+        if (incrementalConfig.isEnabled()) {
+            historyStore = new RuleResultHistoryStore(incrementalConfig.getMaxBags(), Duration.ofMillis(incrementalConfig.getTimeToLive().toMilliseconds()), environment.metrics());
+        }
+
+        return new RuleEngineServiceImpl(ruleEngine, bagRules, xmlRules, filesXmlRules, fileService, datastationRules, bagFingerprinter, resultCache,
+            cacheConfig.isIncludeDataStationContext(), historyStore);
+    }
+
+    private ValidationJobService<ValidateOkDto> createValidationJobService(DdValidateDansBagConfiguration configuration, Environment environment) {
+        var config = configuration.getValidationJobsConfig();
+
+        // the bounded queue makes submissions fail fast when the workers cannot keep up, instead of piling up extracted uploads on disk
+        var executor = environment.lifecycle().executorService("validation-job-%d")
+            .minThreads(config.getWorkers())
+            .maxThreads(config.getWorkers())
+            .workQueue(new ArrayBlockingQueue<>(config.getQueueCapacity()))
+            .build();
+
+        var validationJobService = new ValidationJobServiceImpl<ValidateOkDto>(executor, Duration.ofMillis(config.getResultRetention().toMilliseconds()),
+            config.getMaxRetainedJobs());
+
+        environment.lifecycle().scheduledExecutorService("validation-job-eviction-%d").build()
+            .scheduleWithFixedDelay(validationJobService::evictExpiredJobs, 1, 1, TimeUnit.MINUTES);
+
+        return validationJobService;
+    }
+
+    private ValidateBatchResource createValidateBatchResource(DdValidateDansBagConfiguration configuration, Environment environment, ValidateResource validateResource,
+        FileService fileService, AdmissionController admissionController) {
+        var config = configuration.getBatchValidationConfig();
+
+        // shared by all batch requests, so the number of bags validated at the same time does not depend on the number of requests
+        var executor = environment.lifecycle().executorService("batch-validation-%d")
+            .minThreads(config.getConcurrency())
+            .maxThreads(config.getConcurrency())
+            .build();
+
+        return new ValidateBatchResource(validateResource, fileService, admissionController, executor, config.getConcurrency(), config.getMaxBags(), environment.getObjectMapper());
+    }
+
+    private RuleEngineImpl createRuleEngine(DdValidateDansBagConfiguration configuration, Environment environment) {
+        var parallelism = configuration.getRuleEngineConfig().getParallelism();
+
+        if (parallelism <= 1) {
+            return new RuleEngineImpl(environment.metrics());
+        }
+
+        log.info("Executing up to {} rules concurrently", parallelism);
+
+        // shared by all requests; the request thread only waits for the rules, so it never occupies one of these threads
+        var executor = environment.lifecycle().executorService("rule-engine-%d")
+            .minThreads(parallelism)
+            .maxThreads(parallelism)
+            .build();
+
+        return new RuleEngineImpl(environment.metrics(), executor);
+    }
 }
@@ -18,8 +18,17 @@ package nl.knaw.dans.validatedansbag;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import io.dropwizard.Configuration;
+import nl.knaw.dans.validatedansbag.core.config.AdmissionConfig;
+import nl.knaw.dans.validatedansbag.core.config.BatchValidationConfig;
+import nl.knaw.dans.validatedansbag.core.config.ChecksumVerificationConfig;
 import nl.knaw.dans.validatedansbag.core.config.DataverseConfig;
+import nl.knaw.dans.validatedansbag.core.config.FilesReconciliationConfig;
+import nl.knaw.dans.validatedansbag.core.config.IncrementalValidationConfig;
+import nl.knaw.dans.validatedansbag.core.config.ResultCacheConfig;
+import nl.knaw.dans.validatedansbag.core.config.RuleEngineConfig;
 import nl.knaw.dans.validatedansbag.core.config.ValidationConfig;
+import nl.knaw.dans.validatedansbag.core.config.ValidationJobsConfig;
+import nl.knaw.dans.validatedansbag.core.config.XmlSchemaConfig;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
@@ -35,6 +44,46 @@ public class DdValidateDansBagConfiguration extends Configuration {
     @NotNull
     @JsonProperty("validation")
     private ValidationConfig validationConfig;
+    @Valid
+    @NotNull
+    @JsonProperty("ruleEngine")
+    private RuleEngineConfig ruleEngineConfig = new RuleEngineConfig();
+    @Valid
+    @NotNull
+    @JsonProperty("checksumVerification")
+    private ChecksumVerificationConfig checksumVerificationConfig = new ChecksumVerificationConfig();
+    @Valid
+    @NotNull
+    @JsonProperty("xmlSchemas")
+    private XmlSchemaConfig xmlSchemaConfig = new XmlSchemaConfig();
+    @Valid
+    @NotNull
+    @JsonProperty("filesReconciliation")
+    private FilesReconciliationConfig filesReconciliationConfig = new FilesReconciliationConfig();
+    @Valid
+    @NotNull
+    @JsonProperty("validationJobs")
+    private ValidationJobsConfig validationJobsConfig = new ValidationJobsConfig();
+
+    @Valid
+    @NotNull
+    @JsonProperty("batchValidation")
+    private BatchValidationConfig batchValidationConfig = new BatchValidationConfig();
+
+    @Valid
+    @NotNull
+    @JsonProperty("admission")
+    private AdmissionConfig admissionConfig = new AdmissionConfig();
+
+    @Valid
+    @NotNull
+    @JsonProperty("resultCache")
+    private ResultCacheConfig resultCacheConfig = new ResultCacheConfig();
+
+    @Valid
+    @NotNull
+    @JsonProperty("incrementalValidation")
+    private IncrementalValidationConfig incrementalValidationConfig = new IncrementalValidationConfig();
 
     public DataverseConfig getDataverseConfig() {
         return dataverseConfig;
@@ -43,4 +92,40 @@ public class DdValidateDansBagConfiguration extends Configuration {
     public ValidationConfig getValidationConfig() {
         return validationConfig;
     }
+
+    public RuleEngineConfig getRuleEngineConfig() {
+        return ruleEngineConfig;
+    }
+
+    public ChecksumVerificationConfig getChecksumVerificationConfig() {
+        return checksumVerificationConfig;
+    }
+
+    public XmlSchemaConfig getXmlSchemaConfig() {
+        return xmlSchemaConfig;
+    }
+
+    public FilesReconciliationConfig getFilesReconciliationConfig() {
+        return filesReconciliationConfig;
+    }
+
+    public ValidationJobsConfig getValidationJobsConfig() {
+        return validationJobsConfig;
+    }
+
+    public BatchValidationConfig getBatchValidationConfig() {
+        return batchValidationConfig;
+    }
+
+    public AdmissionConfig getAdmissionConfig() {
+        return admissionConfig;
+    }
+
+    public ResultCacheConfig getResultCacheConfig() {
+        return resultCacheConfig;
+    }
+
+    public IncrementalValidationConfig getIncrementalValidationConfig() {
+        return incrementalValidationConfig;
+    }
 }
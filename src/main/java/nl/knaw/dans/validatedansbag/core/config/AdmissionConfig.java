@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.config;
+
+import io.dropwizard.util.DataSize;
+import io.dropwizard.util.Duration;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+@SuppressWarnings("unused")
+public class AdmissionConfig {
+    // the number of requests to /validate that are handled at the same time
+    @Min(1)
+    private int maxConcurrentValidations = 4;
+    // the number of requests that can wait for one of those; when this many are waiting, new requests are refused with 429
+    @Min(0)
+    private int maxQueuedValidations = 16;
+    // how long a request waits before it is refused with 429
+    @NotNull
+    private Duration maxQueueWait = Duration.seconds(30);
+    // the total size of the uploads that are being received and extracted at the same time, according to their Content-Length
+    @NotNull
+    private DataSize maxInFlightUploadSize = DataSize.gibibytes(4);
+    // uploads are refused with 503 if they would leave less than this free in java.io.tmpdir, where they are extracted
+    @NotNull
+    private DataSize minFreeTempSpace = DataSize.gibibytes(1);
+    // sent in the Retry-After header of refused requests
+    @NotNull
+    private Duration retryAfter = Duration.seconds(30);
+
+    public int getMaxConcurrentValidations() {
+        return maxConcurrentValidations;
+    }
+
+    public void setMaxConcurrentValidations(int maxConcurrentValidations) {
+        this.maxConcurrentValidations = maxConcurrentValidations;
+    }
+
+    public int getMaxQueuedValidations() {
+        return maxQueuedValidations;
+    }
+
+    public void setMaxQueuedValidations(int maxQueuedValidations) {
+        this.maxQueuedValidations = maxQueuedValidations;
+    }
+
+    public Duration getMaxQueueWait() {
+        return maxQueueWait;
+    }
+
+    public void setMaxQueueWait(Duration maxQueueWait) {
+        this.maxQueueWait = maxQueueWait;
+    }
+
+    public DataSize getMaxInFlightUploadSize() {
+        return maxInFlightUploadSize;
+    }
+
+    public void setMaxInFlightUploadSize(DataSize maxInFlightUploadSize) {
+        this.maxInFlightUploadSize = maxInFlightUploadSize;
+    }
+
+    public DataSize getMinFreeTempSpace() {
+        return minFreeTempSpace;
+    }
+
+    public void setMinFreeTempSpace(DataSize minFreeTempSpace) {
+        this.minFreeTempSpace = minFreeTempSpace;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    public void setRetryAfter(Duration retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+}
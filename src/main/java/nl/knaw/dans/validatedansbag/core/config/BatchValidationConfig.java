@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.config;
+
+import javax.validation.constraints.Min;
+
+@SuppressWarnings("unused")
+public class BatchValidationConfig {
+    // the number of bags that are validated at the same time, by all batch requests together; a single request never has more bags in progress than this
+    @Min(1)
+    private int concurrency = 4;
+    // the largest number of bags that can be validated in one request
+    @Min(1)
+    private int maxBags = 1000;
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public int getMaxBags() {
+        return maxBags;
+    }
+
+    public void setMaxBags(int maxBags) {
+        this.maxBags = maxBags;
+    }
+}
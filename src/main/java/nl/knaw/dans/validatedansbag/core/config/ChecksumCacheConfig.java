@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.config;
+
+import io.dropwizard.util.Duration;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.nio.file.Path;
+
+@SuppressWarnings("unused")
+public class ChecksumCacheConfig {
+    private boolean enabled = false;
+    // the file the checksums are appended to; null means a file in the temporary directory of the JVM
+    private Path file;
+    @NotNull
+    private TrustPolicy trustPolicy = TrustPolicy.CTIME;
+    // checksums older than this are computed again, so that a file that was corrupted without its attributes changing is noticed eventually
+    @NotNull
+    private Duration maxAge = Duration.days(30);
+    // the number of checksums kept in memory; the least recently used one is evicted first
+    @Min(1)
+    private int maxEntries = 1_000_000;
+
+    /**
+     * Decides when a file is considered unchanged since its checksums were computed.
+     */
+    public enum TrustPolicy {
+        // the same device, inode, size and modification time; a file that was changed and had its modification time set back is not noticed
+        MTIME,
+        // also the same status change time, which cannot be set by users; changing the owner or permissions of a file makes it be read again
+        CTIME
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public void setFile(Path file) {
+        this.file = file;
+    }
+
+    public TrustPolicy getTrustPolicy() {
+        return trustPolicy;
+    }
+
+    public void setTrustPolicy(TrustPolicy trustPolicy) {
+        this.trustPolicy = trustPolicy;
+    }
+
+    public Duration getMaxAge() {
+        return maxAge;
+    }
+
+    public void setMaxAge(Duration maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+}
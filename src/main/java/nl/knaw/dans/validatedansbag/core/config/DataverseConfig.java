@@ -15,7 +15,10 @@
  */
 package nl.knaw.dans.validatedansbag.core.config;
 
+import io.dropwizard.util.Duration;
+
 import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
 @SuppressWarnings("unused")
@@ -26,6 +29,23 @@ public class DataverseConfig {
     @Valid
     @NotNull
     private String apiToken;
+    @NotNull
+    private Duration connectTimeout = Duration.seconds(10);
+    // the longest time without receiving data while waiting for a response
+    @NotNull
+    private Duration readTimeout = Duration.seconds(30);
+    // the number of connections to Dataverse that are shared by all validations; rules that need another one wait at most connectTimeout
+    @Min(1)
+    private int maxConnections = 20;
+    @Valid
+    @NotNull
+    private DataverseRetryConfig retry = new DataverseRetryConfig();
+    @Valid
+    @NotNull
+    private CircuitBreakerConfig circuitBreaker = new CircuitBreakerConfig();
+    @Valid
+    @NotNull
+    private DataverseCacheConfig cache = new DataverseCacheConfig();
 
     public DataverseConfig() {
 
@@ -51,4 +71,52 @@ public class DataverseConfig {
     public void setBaseUrl(String baseUrl) {
         this.baseUrl = baseUrl;
     }
+
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(Duration connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public Duration getReadTimeout() {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(Duration readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public DataverseRetryConfig getRetry() {
+        return retry;
+    }
+
+    public void setRetry(DataverseRetryConfig retry) {
+        this.retry = retry;
+    }
+
+    public CircuitBreakerConfig getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public void setCircuitBreaker(CircuitBreakerConfig circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public DataverseCacheConfig getCache() {
+        return cache;
+    }
+
+    public void setCache(DataverseCacheConfig cache) {
+        this.cache = cache;
+    }
 }
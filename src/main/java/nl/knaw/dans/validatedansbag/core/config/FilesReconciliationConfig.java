@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.config;
+
+import javax.validation.constraints.Min;
+import java.nio.file.Path;
+
+@SuppressWarnings("unused")
+public class FilesReconciliationConfig {
+    // payloads with more files than this are compared with files.xml and original-filepaths.txt by merging sorted spill files instead of in memory
+    @Min(0)
+    private int externalMergeThreshold = 500000;
+    // where the spill files are written; defaults to the temporary directory of the JVM
+    private Path spillDirectory;
+    // the number of paths that is sorted in memory before it is written to a spill file
+    @Min(1)
+    private int sortChunkSize = 100000;
+
+    public int getExternalMergeThreshold() {
+        return externalMergeThreshold;
+    }
+
+    public void setExternalMergeThreshold(int externalMergeThreshold) {
+        this.externalMergeThreshold = externalMergeThreshold;
+    }
+
+    public Path getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    public void setSpillDirectory(Path spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    public int getSortChunkSize() {
+        return sortChunkSize;
+    }
+
+    public void setSortChunkSize(int sortChunkSize) {
+        this.sortChunkSize = sortChunkSize;
+    }
+}
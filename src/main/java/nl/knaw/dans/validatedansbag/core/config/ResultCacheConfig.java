@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.config;
+
+import io.dropwizard.util.Duration;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+@SuppressWarnings("unused")
+public class ResultCacheConfig {
+    private boolean enabled = true;
+    // the number of results that are kept; the least recently used result is evicted first
+    @Min(1)
+    private int maxEntries = 1000;
+    // how long a result is kept after the validation
+    @NotNull
+    private Duration timeToLive = Duration.minutes(10);
+    // results of validations with data station context also depend on the state of the data station, which can change while the bag does not
+    private boolean includeDataStationContext = false;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public Duration getTimeToLive() {
+        return timeToLive;
+    }
+
+    public void setTimeToLive(Duration timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    public boolean isIncludeDataStationContext() {
+        return includeDataStationContext;
+    }
+
+    public void setIncludeDataStationContext(boolean includeDataStationContext) {
+        this.includeDataStationContext = includeDataStationContext;
+    }
+}
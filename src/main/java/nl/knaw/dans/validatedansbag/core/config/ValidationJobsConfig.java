@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.config;
+
+import io.dropwizard.util.Duration;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+@SuppressWarnings("unused")
+public class ValidationJobsConfig {
+    // the number of threads, shared by all clients, that execute validation jobs
+    @Min(1)
+    private int workers = 2;
+    // the number of jobs that can wait for a worker; when this many are waiting, new jobs are refused
+    @Min(1)
+    private int queueCapacity = 100;
+    // how long the result of a finished job can be retrieved
+    @NotNull
+    private Duration resultRetention = Duration.hours(1);
+    // the largest number of finished jobs whose result is kept; when more jobs finish, the results of the jobs that finished first are removed
+    @Min(1)
+    private int maxRetainedJobs = 1000;
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public Duration getResultRetention() {
+        return resultRetention;
+    }
+
+    public void setResultRetention(Duration resultRetention) {
+        this.resultRetention = resultRetention;
+    }
+
+    public int getMaxRetainedJobs() {
+        return maxRetainedJobs;
+    }
+
+    public void setMaxRetainedJobs(int maxRetainedJobs) {
+        this.maxRetainedJobs = maxRetainedJobs;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.config;
+
+import java.nio.file.Path;
+
+@SuppressWarnings("unused")
+public class XmlSchemaConfig {
+    // copies of the schemas and everything they import, laid out as <host>/<path>; schemas not found here are looked up in the ones bundled with the application
+    private Path localDirectory;
+    // if false, a schema that is not available locally is an error instead of being downloaded; all schemas are bundled, so they are not needed
+    private boolean allowDownload = false;
+
+    public Path getLocalDirectory() {
+        return localDirectory;
+    }
+
+    public void setLocalDirectory(Path localDirectory) {
+        this.localDirectory = localDirectory;
+    }
+
+    public boolean isAllowDownload() {
+        return allowDownload;
+    }
+
+    public void setAllowDownload(boolean allowDownload) {
+        this.allowDownload = allowDownload;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.engine;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * State that is shared by all rules during a single validation of a bag. Expensive values, such as parsed metadata files, are loaded at most once per validation and the same instance is
+ * handed to every rule that asks for it, so rules must treat these values as read-only.
+ */
+public class BagValidationContext {
+    private final Path bagDir;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean cancelled;
+
+    public BagValidationContext(Path bagDir) {
+        this.bagDir = bagDir;
+    }
+
+    public Path getBagDir() {
+        return bagDir;
+    }
+
+    /**
+     * Signals long-running work of this validation that its result is no longer needed. Work that checks {@link #throwIfCancelled()} stops at its next check.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void throwIfCancelled() throws ValidationCancelledException {
+        if (cancelled) {
+            throw new ValidationCancelledException(String.format("Validation of bag %s was cancelled", bagDir));
+        }
+    }
+
+    /**
+     * Builds a key for a value derived from a file in the bag. The file is made relative to the bag directory, so keys are the same for every bag.
+     *
+     * @param kind the kind of value, for example "xml"
+     * @param file the file the value is derived from
+     * @return the key
+     */
+    public String getKey(String kind, Path file) {
+        var relative = file.startsWith(bagDir) ? bagDir.relativize(file) : file;
+        return String.format("%s:%s", kind, relative);
+    }
+
+    /**
+     * Returns the value for the given key, calling the loader if this is the first request for it during this validation. If the loader throws an exception, the same exception is thrown
+     * for every request for that key.
+     *
+     * @param key    the key of the value
+     * @param loader loads the value if it was not loaded before
+     * @param <T>    the type of the value
+     * @return the (shared) value
+     * @throws Exception the exception thrown by the loader
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T computeIfAbsent(String key, Loader<T> loader) throws Exception {
+        return (T) entries.computeIfAbsent(key, k -> new Entry()).get(loader);
+    }
+
+    public List<LoadStatistics> getLoadStatistics() {
+        return entries.entrySet().stream()
+            .map(e -> e.getValue().getStatistics(e.getKey()))
+            .sorted(Comparator.comparing(LoadStatistics::getKey))
+            .collect(Collectors.toList());
+    }
+
+    @FunctionalInterface
+    public interface Loader<T> {
+        T load() throws Exception;
+    }
+
+    public static class LoadStatistics {
+        private final String key;
+        private final long requests;
+        private final Duration loadTime;
+
+        public LoadStatistics(String key, long requests, Duration loadTime) {
+            this.key = key;
+            this.requests = requests;
+            this.loadTime = loadTime;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public Duration getLoadTime() {
+            return loadTime;
+        }
+
+        @Override
+        public String toString() {
+            return "LoadStatistics{" +
+                "key='" + key + '\'' +
+                ", requests=" + requests +
+                ", loadTime=" + loadTime +
+                '}';
+        }
+    }
+
+    // locking per entry allows different values to be loaded concurrently, while the same value is never loaded twice
+    private static class Entry {
+        private boolean loaded;
+        private Object value;
+        private Exception exception;
+        private long requests;
+        private long loadTimeNanos;
+
+        synchronized Object get(Loader<?> loader) throws Exception {
+            requests += 1;
+
+            if (!loaded) {
+                var start = System.nanoTime();
+
+                try {
+                    value = loader.load();
+                }
+                catch (Exception e) {
+                    exception = e;
+                }
+                finally {
+                    loaded = true;
+                    loadTimeNanos = System.nanoTime() - start;
+                }
+            }
+
+            if (exception != null) {
+                throw exception;
+            }
+
+            return value;
+        }
+
+        synchronized LoadStatistics getStatistics(String key) {
+            return new LoadStatistics(key, requests, Duration.ofNanos(loadTimeNanos));
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.engine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Accumulates a SHA-256 fingerprint of (parts of) a bag. Files outside the payload directory are included by content, payload files only by size and modification time.
+ */
+public class Fingerprint {
+    private final MessageDigest digest = createDigest();
+
+    /**
+     * Lists the entries of a directory, sorted, so that a fingerprint does not depend on the order in which the file system lists them.
+     *
+     * @param directory the directory
+     * @return the sorted entries
+     * @throws IOException if the directory could not be listed
+     */
+    public static List<Path> listSorted(Path directory) throws IOException {
+        try (var s = Files.list(directory)) {
+            return s.sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @param bagDir the bag directory
+     * @param entry  a file or directory in the bag
+     * @return the path of the entry relative to the bag directory, with '/' as separator
+     */
+    public static String getRelativeName(Path bagDir, Path entry) {
+        var relative = bagDir.relativize(entry);
+        return relative.toString().replace(relative.getFileSystem().getSeparator(), "/");
+    }
+
+    public Fingerprint addString(String value) {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        addLong(bytes.length);
+        digest.update(bytes);
+        return this;
+    }
+
+    public Fingerprint addLong(long value) {
+        digest.update(ByteBuffer.allocate(Long.BYTES).putLong(value).array());
+        return this;
+    }
+
+    public Fingerprint addMarker(char marker) {
+        digest.update((byte) marker);
+        return this;
+    }
+
+    /**
+     * Adds a file or directory, but not the entries of a directory.
+     *
+     * @param name       the name of the entry relative to the bag directory, as returned by {@link #getRelativeName(Path, Path)}
+     * @param entry      the file or directory
+     * @param attributes the attributes of the entry, read without following links
+     * @return this fingerprint
+     * @throws IOException if the content of the file could not be read
+     */
+    public Fingerprint addEntry(String name, Path entry, BasicFileAttributes attributes) throws IOException {
+        addString(name);
+
+        if (attributes.isDirectory()) {
+            addMarker('d');
+        }
+        else {
+            addMarker('f');
+            addLong(attributes.size());
+            addLong(attributes.lastModifiedTime().toMillis());
+
+            // files outside the payload are small and they are what depositors fix, so a change is detected even if the size and modification time are the same
+            if (!name.startsWith("data/") && attributes.isRegularFile()) {
+                addContent(entry);
+            }
+        }
+
+        return this;
+    }
+
+    private void addContent(Path file) throws IOException {
+        var contentDigest = createDigest();
+
+        try (var input = new DigestInputStream(Files.newInputStream(file), contentDigest)) {
+            input.transferTo(OutputStream.nullOutputStream());
+        }
+
+        digest.update(contentDigest.digest());
+    }
+
+    /**
+     * @return the fingerprint as a hexadecimal string; to be called once, after everything has been added
+     */
+    public String toHex() {
+        var bytes = digest.digest();
+        return String.format("%0" + (bytes.length * 2) + "x", new BigInteger(1, bytes));
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            // every Java platform must support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
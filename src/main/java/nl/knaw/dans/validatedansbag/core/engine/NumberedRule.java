@@ -25,13 +25,19 @@ public class NumberedRule {
     private final List<String> dependencies;
     private final DepositType depositType;
     private final ValidationContext validationContext;
+    private final List<String> inputs;
 
     public NumberedRule(String number, BagValidatorRule rule, List<String> dependencies, DepositType depositType, ValidationContext validationContext) {
+        this(number, rule, dependencies, depositType, validationContext, null);
+    }
+
+    private NumberedRule(String number, BagValidatorRule rule, List<String> dependencies, DepositType depositType, ValidationContext validationContext, List<String> inputs) {
         this.number = number;
         this.rule = rule;
         this.dependencies = dependencies;
         this.depositType = depositType;
         this.validationContext = validationContext;
+        this.inputs = inputs;
     }
 
     public NumberedRule(String number, BagValidatorRule rule) {
@@ -78,6 +84,24 @@ public class NumberedRule {
         return dependencies;
     }
 
+    /**
+     * Returns a copy of this rule that declares the files it reads. The result of the rule must only depend on these files and on the configuration of the service, so that an earlier
+     * result can be reused as long as these files have not changed. Rules that also depend on something else, like the state of the data station, must not declare inputs.
+     *
+     * @param inputs glob patterns of the files and directories the rule reads, relative to the bag directory; a directory does not include its contents
+     * @return the copy
+     */
+    public NumberedRule withInputs(String... inputs) {
+        return new NumberedRule(number, rule, dependencies, depositType, validationContext, List.of(inputs));
+    }
+
+    /**
+     * @return the glob patterns of the files and directories the rule reads, or null if they are not known
+     */
+    public List<String> getInputs() {
+        return inputs;
+    }
+
     @Override
     public String toString() {
         return "NumberedRule{" +
@@ -85,6 +109,7 @@ public class NumberedRule {
             ", rule=" + rule +
             ", dependencies=" + dependencies +
             ", depositType=" + depositType +
+            ", inputs=" + inputs +
             '}';
     }
 
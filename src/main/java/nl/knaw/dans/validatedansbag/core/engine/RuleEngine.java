@@ -22,6 +22,42 @@ public interface RuleEngine {
 
     void validateRuleConfiguration(NumberedRule[] rules) throws RuleEngineConfigurationException;
 
-    List<RuleValidationResult> validateRules(Path bag, NumberedRule[] rules, DepositType depositType, ValidationLevel validationLevel) throws Exception;
+    default List<RuleValidationResult> validateRules(Path bag, NumberedRule[] rules, DepositType depositType, ValidationLevel validationLevel) throws Exception {
+        return validateRules(bag, rules, depositType, validationLevel, false);
+    }
+
+    /**
+     * Validates the bag against the rules.
+     *
+     * @param bag             the bag directory
+     * @param rules           the rules to validate against
+     * @param depositType     the deposit type, used to select the applicable rules
+     * @param validationLevel the validation level, used to select the applicable rules
+     * @param failFast        if true, no new rules are started after the first failure and rules that are still running are cancelled; rules that were not executed because of this
+     *                        get the status CANCELLED
+     * @return the results, in the order of the rules
+     * @throws Exception if a rule could not be executed
+     */
+    default List<RuleValidationResult> validateRules(Path bag, NumberedRule[] rules, DepositType depositType, ValidationLevel validationLevel, boolean failFast) throws Exception {
+        return validateRules(bag, rules, depositType, validationLevel, failFast, null);
+    }
+
+    /**
+     * Validates the bag against the rules, reusing the results of earlier validations of the same bag for rules whose inputs have not changed. Rules that do not declare their inputs are
+     * always executed. Rules that depend on a rule whose result changed are skipped or executed as usual, because whether a rule is executed only depends on the results of its
+     * dependencies.
+     *
+     * @param bag             the bag directory
+     * @param rules           the rules to validate against
+     * @param depositType     the deposit type, used to select the applicable rules
+     * @param validationLevel the validation level, used to select the applicable rules
+     * @param failFast        see {@link #validateRules(Path, NumberedRule[], DepositType, ValidationLevel, boolean)}
+     * @param history         the results of earlier validations of this bag with the same deposit type and validation level, which is updated with the new results; null to execute
+     *                        all rules
+     * @return the results, in the order of the rules
+     * @throws Exception if a rule could not be executed
+     */
+    List<RuleValidationResult> validateRules(Path bag, NumberedRule[] rules, DepositType depositType, ValidationLevel validationLevel, boolean failFast, RuleResultHistory history)
+        throws Exception;
 
 }
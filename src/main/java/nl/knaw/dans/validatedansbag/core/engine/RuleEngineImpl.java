@@ -15,23 +15,56 @@
  */
 package nl.knaw.dans.validatedansbag.core.engine;
 
+import com.codahale.metrics.MetricRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class RuleEngineImpl implements RuleEngine {
     private static final Logger log = LoggerFactory.getLogger(RuleEngineImpl.class);
 
+    private final MetricRegistry metricRegistry;
+    private final Executor executor;
+    private final RuleInputFingerprinter ruleInputFingerprinter = new RuleInputFingerprinter();
+
+    public RuleEngineImpl() {
+        this(new MetricRegistry());
+    }
+
+    public RuleEngineImpl(MetricRegistry metricRegistry) {
+        // executes the rules on the calling thread, one after the other
+        this(metricRegistry, Runnable::run);
+    }
+
+    /**
+     * Creates a rule engine that executes rules whose dependencies have all succeeded concurrently on the given executor. The results do not depend on the executor; only the wall-clock
+     * time does.
+     *
+     * @param metricRegistry the registry to report metrics to
+     * @param executor       the executor to run the rules on
+     */
+    public RuleEngineImpl(MetricRegistry metricRegistry, Executor executor) {
+        this.metricRegistry = metricRegistry;
+        this.executor = executor;
+    }
+
     @Override
     public void validateRuleConfiguration(NumberedRule[] rules) throws RuleEngineConfigurationException {
         // validate each rule number is unique
@@ -54,74 +87,93 @@ public class RuleEngineImpl implements RuleEngine {
     }
 
     @Override
-    public List<RuleValidationResult> validateRules(Path bag, NumberedRule[] rules, DepositType depositType, ValidationLevel validationLevel) throws Exception {
+    public List<RuleValidationResult> validateRules(Path bag, NumberedRule[] rules, DepositType depositType, ValidationLevel validationLevel, boolean failFast, RuleResultHistory history)
+        throws Exception {
         var ruleResults = new HashMap<String, RuleValidationResult>();
-        var remainingRules = filterRulesOnDepositTypeAndValidationLevel(rules, depositType, validationLevel);
+        var context = new BagValidationContext(bag);
+        var applicableRules = filterRulesOnDepositTypeAndValidationLevel(rules, depositType, validationLevel);
 
-        while (remainingRules.size() > 0) {
-            var toRemove = new HashSet<NumberedRule>();
+        // build the dependency graph once; a rule becomes ready when all its dependencies have succeeded
+        var pendingDependencies = new HashMap<NumberedRule, Integer>();
+        var dependents = new HashMap<String, List<NumberedRule>>();
+        var ready = new ArrayDeque<NumberedRule>();
 
-            for (var rule : remainingRules) {
-                var number = rule.getNumber();
+        for (var rule : applicableRules) {
+            var dependencies = rule.getDependencies() != null ? rule.getDependencies() : List.<String>of();
+            pendingDependencies.put(rule, dependencies.size());
+
+            for (var dependency : dependencies) {
+                dependents.computeIfAbsent(dependency, k -> new ArrayList<>()).add(rule);
+            }
 
-                // will never be processed, so skip it and remove it from the remaining rules
-                if (shouldBeSkipped(rule, ruleResults)) {
-                    log.trace("Skipping task {} because dependencies are not successful", rule.getNumber());
-                    ruleResults.put(number, new RuleValidationResult(number, RuleValidationResult.RuleValidationResultStatus.SKIPPED));
-                    toRemove.add(rule);
+            if (dependencies.isEmpty()) {
+                ready.add(rule);
+            }
+        }
+
+        var completionService = new ExecutorCompletionService<Map.Entry<NumberedRule, RuleValidationResult>>(executor);
+        var running = new ArrayList<Future<Map.Entry<NumberedRule, RuleValidationResult>>>();
+        var stopped = false;
+
+        try {
+            while (!stopped && (!ready.isEmpty() || !running.isEmpty())) {
+                // submit one rule at a time and handle whatever has completed in between, so that a failure is noticed before the next rule is started
+                if (!ready.isEmpty()) {
+                    var rule = ready.poll();
+                    log.trace("Executing task {}", rule.getNumber());
+                    running.add(completionService.submit(() -> Map.entry(rule, execute(bag, rule, context, history))));
                 }
-                else if (shouldBeIgnoredBecauseOfDepositType(rule, depositType)) {
-                    log.trace("Skipping task {} because it does not apply to this deposit (deposit type: {}, rule type: {})", rule.getNumber(), depositType, rule.getDepositType());
-                    ruleResults.put(number, new RuleValidationResult(number, RuleValidationResult.RuleValidationResultStatus.SKIPPED));
-                    toRemove.add(rule);
+
+                var future = ready.isEmpty() ? completionService.take() : completionService.poll();
+
+                if (future == null) {
+                    continue;
                 }
-                else if (canBeExecuted(rule, ruleResults)) {
-                    log.trace("Executing task {}", rule.getNumber());
-                    var response = rule.getRule().validate(bag);
-
-                    log.trace("Task result: {}", response.getStatus());
-                    RuleValidationResult ruleValidationResult = null;
-
-                    switch (response.getStatus()) {
-                        case SUCCESS:
-                            ruleValidationResult = new RuleValidationResult(number, RuleValidationResult.RuleValidationResultStatus.SUCCESS);
-                            break;
-                        case SKIP_DEPENDENCIES:
-                            ruleValidationResult = new RuleValidationResult(number, RuleValidationResult.RuleValidationResultStatus.SUCCESS, true);
-                            break;
-                        case ERROR:
-                            ruleValidationResult = new RuleValidationResult(number, RuleValidationResult.RuleValidationResultStatus.FAILURE, formatErrorMessages(response.getErrorMessages()));
-                            break;
-                    }
 
-                    ruleResults.put(number, ruleValidationResult);
+                running.remove(future);
 
-                    if (response.getException() != null) {
-                        log.warn("Rule provided an exception while executing", response.getException());
-                    }
+                var completed = getResult(future);
+                var rule = completed.getKey();
+                var ruleValidationResult = completed.getValue();
+                ruleResults.put(rule.getNumber(), ruleValidationResult);
+                processDependents(ruleValidationResult, dependents, pendingDependencies, ruleResults, ready);
 
-                    toRemove.add(rule);
+                if (failFast && RuleValidationResult.RuleValidationResultStatus.FAILURE.equals(ruleValidationResult.getStatus())) {
+                    log.debug("Rule {} failed; not executing the remaining rules", rule.getNumber());
+                    stopped = true;
                 }
-                else {
-                    log.trace("Skipping rule {} because its dependencies have not yet executed", rule);
+            }
+        }
+        finally {
+            // only happens if a rule failed in fail-fast mode, a rule threw an exception or the validation was interrupted
+            if (!running.isEmpty()) {
+                context.cancel();
+
+                for (var future : running) {
+                    future.cancel(true);
                 }
             }
+        }
 
-            remainingRules.removeAll(toRemove);
+        if (stopped) {
+            for (var rule : applicableRules) {
+                ruleResults.putIfAbsent(rule.getNumber(), new RuleValidationResult(rule.getNumber(), RuleValidationResult.RuleValidationResultStatus.CANCELLED));
+            }
+        }
 
-            if (toRemove.size() == 0) {
-                log.warn("No rules executed this round, but there are still rules to be checked; most likely a dependency configuration error!");
+        if (ruleResults.size() < applicableRules.size()) {
+            log.warn("Not all rules were executed; most likely a dependency configuration error!");
 
-                for (var rule : remainingRules) {
+            for (var rule : applicableRules) {
+                if (!ruleResults.containsKey(rule.getNumber())) {
                     log.warn(" - Rule {} is yet to be executed", rule);
                 }
-
-                break;
             }
         }
 
         // TODO this does not belong here, but it would be nice to log the results of the validation
         reportOnBag(rules, ruleResults);
+        reportOnLoads(context);
 
         return Stream.of(rules)
             .map(rule -> ruleResults.get(rule.getNumber()))
@@ -129,40 +181,121 @@ public class RuleEngineImpl implements RuleEngine {
             .collect(Collectors.toList());
     }
 
-    // returns true if all dependencies are marked as SUCCESS
-    private boolean canBeExecuted(NumberedRule rule, Map<String, RuleValidationResult> results) {
-        if (rule.getDependencies() != null && rule.getDependencies().size() > 0) {
-            for (var dependency : rule.getDependencies()) {
-                var result = results.get(dependency);
+    // executes the rule, unless the history has a result for the same inputs
+    private RuleValidationResult execute(Path bag, NumberedRule rule, BagValidationContext context, RuleResultHistory history) throws Exception {
+        var inputsFingerprint = getInputsFingerprint(rule, context, history);
 
-                // if the parent was skipped or failed, return true
-                if (result == null || RuleValidationResult.RuleValidationResultStatus.SKIPPED.equals(result.getStatus()) || RuleValidationResult.RuleValidationResultStatus.FAILURE.equals(
-                    result.getStatus())) {
-                    return false;
-                }
+        if (inputsFingerprint != null) {
+            var earlier = history.get(rule.getNumber(), inputsFingerprint);
+
+            if (earlier.isPresent()) {
+                log.trace("Inputs of rule {} have not changed; reusing the earlier result", rule.getNumber());
+                metricRegistry.meter(MetricRegistry.name(RuleEngineImpl.class, "rules-reused")).mark();
+                return earlier.get();
             }
         }
 
-        return true;
+        var response = rule.getRule().validate(bag, context);
+
+        log.trace("Task result: {}", response.getStatus());
+
+        if (response.getException() != null) {
+            log.warn("Rule provided an exception while executing", response.getException());
+        }
+
+        var result = toRuleValidationResult(rule.getNumber(), response);
+
+        // an exception may not happen again, even if the inputs stay the same
+        if (inputsFingerprint != null && response.getException() == null) {
+            history.put(rule.getNumber(), inputsFingerprint, result);
+        }
+
+        return result;
+    }
+
+    private String getInputsFingerprint(NumberedRule rule, BagValidationContext context, RuleResultHistory history) throws Exception {
+        if (history == null || rule.getInputs() == null) {
+            return null;
+        }
+
+        try {
+            return ruleInputFingerprinter.fingerprint(context, rule.getInputs());
+        }
+        catch (IOException e) {
+            // the rule itself will report what is wrong with the bag
+            log.debug("Could not compute the fingerprint of the inputs of rule {}; executing it", rule.getNumber(), e);
+            return null;
+        }
+    }
+
+    private Map.Entry<NumberedRule, RuleValidationResult> getResult(Future<Map.Entry<NumberedRule, RuleValidationResult>> future) throws Exception {
+        try {
+            return future.get();
+        }
+        catch (ExecutionException e) {
+            // rethrow what the rule threw, so callers see the same exceptions as when the rules are executed on the calling thread
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+
+            throw e;
+        }
     }
 
-    // return true if one of its dependencies was skipped, or it has failed
-    private boolean shouldBeSkipped(NumberedRule rule, Map<String, RuleValidationResult> results) {
-        if (rule.getDependencies() != null && rule.getDependencies().size() > 0) {
-            for (var dependency : rule.getDependencies()) {
-                var result = results.get(dependency);
-
-                if (result != null) {
-                    // if the parent was skipped or failed, return true
-                    if (RuleValidationResult.RuleValidationResultStatus.SKIPPED.equals(result.getStatus()) || RuleValidationResult.RuleValidationResultStatus.FAILURE.equals(result.getStatus())
-                        || result.isShouldSkipDependencies()) {
-                        return true;
+    private RuleValidationResult toRuleValidationResult(String number, RuleResult response) {
+        switch (response.getStatus()) {
+            case SKIP_DEPENDENCIES:
+                return new RuleValidationResult(number, RuleValidationResult.RuleValidationResultStatus.SUCCESS, true);
+            case ERROR:
+                return new RuleValidationResult(number, RuleValidationResult.RuleValidationResultStatus.FAILURE, formatErrorMessages(response.getErrorMessages()));
+            default:
+                return new RuleValidationResult(number, RuleValidationResult.RuleValidationResultStatus.SUCCESS);
+        }
+    }
+
+    // marks the rules that depend on the given result as ready, or as skipped if the result means that its dependencies should not be executed; skipping cascades to their dependents
+    private void processDependents(RuleValidationResult result, Map<String, List<NumberedRule>> dependents, Map<NumberedRule, Integer> pendingDependencies,
+        Map<String, RuleValidationResult> ruleResults, Queue<NumberedRule> ready) {
+        var completed = new ArrayDeque<RuleValidationResult>();
+        completed.add(result);
+
+        while (!completed.isEmpty()) {
+            var current = completed.poll();
+
+            for (var dependent : dependents.getOrDefault(current.getNumber(), List.of())) {
+                var number = dependent.getNumber();
+
+                // already skipped because of another dependency
+                if (ruleResults.containsKey(number)) {
+                    continue;
+                }
+
+                if (shouldSkipDependents(current)) {
+                    log.trace("Skipping task {} because dependencies are not successful", number);
+                    var skipped = new RuleValidationResult(number, RuleValidationResult.RuleValidationResultStatus.SKIPPED);
+                    ruleResults.put(number, skipped);
+                    completed.add(skipped);
+                }
+                else {
+                    var remaining = pendingDependencies.merge(dependent, -1, Integer::sum);
+
+                    if (remaining == 0) {
+                        ready.add(dependent);
                     }
                 }
             }
         }
+    }
 
-        return false;
+    // return true if the rule was skipped, has failed or asked for its dependents to be skipped
+    private boolean shouldSkipDependents(RuleValidationResult result) {
+        return RuleValidationResult.RuleValidationResultStatus.SKIPPED.equals(result.getStatus())
+            || RuleValidationResult.RuleValidationResultStatus.FAILURE.equals(result.getStatus())
+            || result.isShouldSkipDependencies();
     }
 
     private String padLeft(String s, int amount) {
@@ -197,6 +330,19 @@ public class RuleEngineImpl implements RuleEngine {
         log.info("Bag validation report: \n{}", resultsAsString);
     }
 
+    private void reportOnLoads(BagValidationContext context) {
+        var statistics = context.getLoadStatistics();
+
+        for (var item : statistics) {
+            log.debug("Loaded {} in {} ms, requested {} times", item.getKey(), item.getLoadTime().toMillis(), item.getRequests());
+            metricRegistry.timer(MetricRegistry.name(RuleEngineImpl.class, "loads", item.getKey()))
+                .update(item.getLoadTime().toNanos(), TimeUnit.NANOSECONDS);
+        }
+
+        metricRegistry.histogram(MetricRegistry.name(RuleEngineImpl.class, "loads-per-validation"))
+            .update(statistics.size());
+    }
+
     private String formatErrorMessages(List<String> errorMessages) {
         if (errorMessages.size() == 1) {
             return errorMessages.get(0);
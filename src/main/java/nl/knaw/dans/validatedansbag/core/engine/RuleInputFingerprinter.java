@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.engine;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+/**
+ * Computes the fingerprint of the inputs of a rule, as declared by {@link NumberedRule#getInputs()}. The fingerprint of each input pattern is computed at most once per validation.
+ */
+public class RuleInputFingerprinter {
+
+    /**
+     * @param context the context of the validation
+     * @param inputs  glob patterns of the files and directories the rule reads, relative to the bag directory
+     * @return the fingerprint
+     * @throws Exception if the files could not be read
+     */
+    public String fingerprint(BagValidationContext context, List<String> inputs) throws Exception {
+        var fingerprint = new Fingerprint();
+
+        for (var input : inputs) {
+            fingerprint.addString(input);
+            fingerprint.addString(context.computeIfAbsent("inputs:" + input, () -> fingerprintInput(context.getBagDir(), input)));
+        }
+
+        return fingerprint.toHex();
+    }
+
+    private String fingerprintInput(Path bagDir, String pattern) throws IOException {
+        var fingerprint = new Fingerprint();
+        var matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        var prefix = getLiteralPrefix(pattern);
+        var start = prefix.contains("/") ? bagDir.resolve(prefix.substring(0, prefix.lastIndexOf('/'))) : bagDir;
+
+        if (Files.isDirectory(start, LinkOption.NOFOLLOW_LINKS)) {
+            addDirectory(fingerprint, bagDir, start, pattern, prefix, matcher);
+        }
+
+        return fingerprint.toHex();
+    }
+
+    private void addDirectory(Fingerprint fingerprint, Path bagDir, Path directory, String pattern, String prefix, PathMatcher matcher) throws IOException {
+        for (var entry : Fingerprint.listSorted(directory)) {
+            var name = Fingerprint.getRelativeName(bagDir, entry);
+            var attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+
+            if (matcher.matches(Path.of(name))) {
+                fingerprint.addEntry(name, entry, attributes);
+            }
+
+            if (attributes.isDirectory() && mayContainMatches(name, pattern, prefix)) {
+                addDirectory(fingerprint, bagDir, entry, pattern, prefix, matcher);
+            }
+        }
+    }
+
+    private boolean mayContainMatches(String directory, String pattern, String prefix) {
+        var path = directory + "/";
+
+        if (!path.startsWith(prefix) && !prefix.startsWith(path)) {
+            return false;
+        }
+
+        // without ** a pattern only matches entries at the depth of its number of segments
+        return pattern.contains("**") || path.chars().filter(c -> c == '/').count() < pattern.chars().filter(c -> c == '/').count() + 1;
+    }
+
+    // the part of the pattern before the first special character, which every match starts with
+    private String getLiteralPrefix(String pattern) {
+        for (var i = 0; i < pattern.length(); i++) {
+            if ("*?[{\\".indexOf(pattern.charAt(i)) >= 0) {
+                return pattern.substring(0, i);
+            }
+        }
+
+        return pattern;
+    }
+}
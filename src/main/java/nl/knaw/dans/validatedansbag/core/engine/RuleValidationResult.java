@@ -66,7 +66,9 @@ public class RuleValidationResult {
     public enum RuleValidationResultStatus {
         SUCCESS,
         FAILURE,
-        SKIPPED
+        SKIPPED,
+        // not executed because the validation was stopped at an earlier failure
+        CANCELLED
     }
 
     @Override
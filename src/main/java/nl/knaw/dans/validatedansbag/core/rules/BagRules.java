@@ -41,6 +41,8 @@ public interface BagRules {
 
     BagValidatorRule optionalFileIsUtf8Decodable(Path path);
 
+    BagValidatorRule originalFilepathsFileIsUtf8Decodable();
+
     BagValidatorRule isOriginalFilepathsFileComplete();
 
     BagValidatorRule ddmMayContainDctermsLicenseFromList();
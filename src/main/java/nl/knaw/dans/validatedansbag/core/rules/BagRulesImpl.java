@@ -26,27 +26,23 @@ import gov.loc.repository.bagit.hash.StandardSupportedAlgorithms;
 import nl.knaw.dans.validatedansbag.core.BagNotFoundException;
 import nl.knaw.dans.validatedansbag.core.engine.RuleResult;
 import nl.knaw.dans.validatedansbag.core.service.BagItMetadataReader;
+import nl.knaw.dans.validatedansbag.core.service.DdmReader;
+import nl.knaw.dans.validatedansbag.core.service.DdmSummary;
 import nl.knaw.dans.validatedansbag.core.service.FileService;
-import nl.knaw.dans.validatedansbag.core.service.FilesXmlService;
+import nl.knaw.dans.validatedansbag.core.service.FilesReconciler;
 import nl.knaw.dans.validatedansbag.core.service.OriginalFilepathsService;
-import nl.knaw.dans.validatedansbag.core.service.XmlReader;
 import nl.knaw.dans.validatedansbag.core.validator.IdentifierValidator;
 import nl.knaw.dans.validatedansbag.core.validator.LicenseValidator;
 import nl.knaw.dans.validatedansbag.core.validator.OrganizationIdentifierPrefixValidator;
 import nl.knaw.dans.validatedansbag.core.validator.PolygonListValidator;
-import org.apache.commons.collections4.CollectionUtils;
 import org.joda.time.DateTime;
 import org.joda.time.format.ISODateTimeFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
 
-import javax.xml.xpath.XPathExpressionException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.CharacterCodingException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -58,7 +54,6 @@ import java.util.Optional;
 import java.util.UUID;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class BagRulesImpl implements BagRules {
     private static final Logger log = LoggerFactory.getLogger(BagRulesImpl.class);
@@ -66,7 +61,7 @@ public class BagRulesImpl implements BagRules {
     private final FileService fileService;
 
     private final BagItMetadataReader bagItMetadataReader;
-    private final XmlReader xmlReader;
+    private final DdmReader ddmReader;
 
     private final OriginalFilepathsService originalFilepathsService;
 
@@ -80,28 +75,28 @@ public class BagRulesImpl implements BagRules {
 
     private final OrganizationIdentifierPrefixValidator organizationIdentifierPrefixValidator;
 
-    private final FilesXmlService filesXmlService;
+    private final FilesReconciler filesReconciler;
 
-    public BagRulesImpl(FileService fileService, BagItMetadataReader bagItMetadataReader, XmlReader xmlReader, OriginalFilepathsService originalFilepathsService,
+    public BagRulesImpl(FileService fileService, BagItMetadataReader bagItMetadataReader, DdmReader ddmReader, OriginalFilepathsService originalFilepathsService,
         IdentifierValidator identifierValidator,
-        PolygonListValidator polygonListValidator, LicenseValidator licenseValidator, OrganizationIdentifierPrefixValidator organizationIdentifierPrefixValidator, FilesXmlService filesXmlService) {
+        PolygonListValidator polygonListValidator, LicenseValidator licenseValidator, OrganizationIdentifierPrefixValidator organizationIdentifierPrefixValidator, FilesReconciler filesReconciler) {
         this.fileService = fileService;
         this.bagItMetadataReader = bagItMetadataReader;
-        this.xmlReader = xmlReader;
+        this.ddmReader = ddmReader;
         this.originalFilepathsService = originalFilepathsService;
         this.identifierValidator = identifierValidator;
         this.polygonListValidator = polygonListValidator;
         this.licenseValidator = licenseValidator;
         this.organizationIdentifierPrefixValidator = organizationIdentifierPrefixValidator;
-        this.filesXmlService = filesXmlService;
+        this.filesReconciler = filesReconciler;
     }
 
     @Override
     public BagValidatorRule bagIsValid() {
-        return (path) -> {
+        return (path, context) -> {
             try {
                 log.debug("Verifying bag {}", path);
-                bagItMetadataReader.verifyBag(path);
+                bagItMetadataReader.verifyBag(path, context);
                 log.debug("Bag {} is valid", path);
                 return RuleResult.ok();
             }
@@ -118,7 +113,7 @@ public class BagRulesImpl implements BagRules {
 
     @Override
     public BagValidatorRule containsDir(Path dir) {
-        return ((path) -> {
+        return ((path, context) -> {
             var target = path.resolve(dir);
 
             if (!fileService.isDirectory(target)) {
@@ -131,7 +126,7 @@ public class BagRulesImpl implements BagRules {
 
     @Override
     public BagValidatorRule containsFile(Path file) {
-        return ((path) -> {
+        return ((path, context) -> {
             var target = path.resolve(file);
 
             if (!fileService.isFile(target)) {
@@ -144,14 +139,14 @@ public class BagRulesImpl implements BagRules {
 
     @Override
     public BagValidatorRule bagInfoExistsAndIsWellFormed() {
-        return path -> {
+        return (path, context) -> {
             if (!fileService.isFile(path.resolve(Path.of("bag-info.txt")))) {
                 return RuleResult.error("bag-info.txt does not exist");
             }
 
             try {
                 log.debug("Reading bag metadata from {}", path);
-                bagItMetadataReader.getBag(path).orElseThrow();
+                bagItMetadataReader.getBag(path, context).orElseThrow();
                 return RuleResult.ok();
             }
             catch (Exception e) {
@@ -164,8 +159,8 @@ public class BagRulesImpl implements BagRules {
 
     @Override
     public BagValidatorRule bagInfoCreatedElementIsIso8601Date() {
-        return path -> {
-            var created = bagItMetadataReader.getSingleField(path, "Created");
+        return (path, context) -> {
+            var created = bagItMetadataReader.getSingleField(path, "Created", context);
 
             try {
                 log.debug("Trying to parse date {} to see if it is valid", created);
@@ -182,8 +177,8 @@ public class BagRulesImpl implements BagRules {
 
     @Override
     public BagValidatorRule bagInfoContainsExactlyOneOf(String key) {
-        return path -> {
-            var items = bagItMetadataReader.getField(path, key);
+        return (path, context) -> {
+            var items = bagItMetadataReader.getField(path, key, context);
             log.debug("Found {} results in bag {} for field {}", items, path, key);
 
             if (items.size() != 1) {
@@ -198,8 +193,8 @@ public class BagRulesImpl implements BagRules {
 
     @Override
     public BagValidatorRule bagInfoContainsAtMostOneOf(String key) {
-        return path -> {
-            var items = bagItMetadataReader.getField(path, key);
+        return (path, context) -> {
+            var items = bagItMetadataReader.getField(path, key, context);
             log.debug("Found {} results in bag {} for field {}", items, path, key);
 
             switch (items.size()) {
@@ -218,8 +213,8 @@ public class BagRulesImpl implements BagRules {
 
     @Override
     public BagValidatorRule bagInfoIsVersionOfIsValidUrnUuid() {
-        return path -> {
-            var items = bagItMetadataReader.getField(path, "Is-Version-Of");
+        return (path, context) -> {
+            var items = bagItMetadataReader.getField(path, "Is-Version-Of", context);
 
             var invalidUrns = items.stream().filter(item -> {
                     log.trace("Validating if {} is a valid URN UUID ", item);
@@ -263,13 +258,13 @@ public class BagRulesImpl implements BagRules {
 
     @Override
     public BagValidatorRule containsNothingElseThan(Path dir, String[] paths) {
-        return (path) -> {
+        return (path, context) -> {
             var basePath = path.resolve(dir);
             var allowed = Arrays.stream(paths)
                 .map(Path::of)
                 .collect(Collectors.toSet());
 
-            var allItems = fileService.getAllFilesAndDirectories(basePath)
+            var allItems = fileService.getAllFilesAndDirectories(basePath, context)
                 .stream()
                 .filter(p -> !basePath.equals(p))
                 .map(basePath::relativize)
@@ -295,11 +290,11 @@ public class BagRulesImpl implements BagRules {
 
     @Override
     public BagValidatorRule hasOnlyValidFileNames() {
-        return (path) -> {
+        return (path, context) -> {
             var basePath = path.resolve("data");
             var invalidCharacters = ":*?\"<>|;#";
 
-            var files = fileService.getAllFiles(basePath)
+            var files = fileService.getAllFiles(basePath, context)
                 .stream()
                 .filter(f -> {
                     for (var c : invalidCharacters.toCharArray()) {
@@ -324,74 +319,79 @@ public class BagRulesImpl implements BagRules {
 
     @Override
     public BagValidatorRule optionalFileIsUtf8Decodable(Path filename) {
-        return (path) -> {
-            try {
-                var target = path.resolve(filename);
+        return (path, context) -> {
+            var target = path.resolve(filename);
 
-                if (fileService.exists(target)) {
-                    fileService.readFileContents(target, StandardCharsets.UTF_8);
-                    return RuleResult.ok();
-                }
-                else {
-                    return RuleResult.skipDependencies();
-                }
+            if (!fileService.exists(target)) {
+                return RuleResult.skipDependencies();
             }
-            catch (CharacterCodingException e) {
-                return RuleResult.error("Input not valid UTF-8: " + e.getMessage());
+
+            var invalidOffset = fileService.findInvalidUtf8(target);
+
+            if (invalidOffset.isPresent()) {
+                return invalidUtf8(invalidOffset.getAsLong());
             }
+
+            return RuleResult.ok();
         };
     }
 
     @Override
-    public BagValidatorRule isOriginalFilepathsFileComplete() {
-        return (path) -> {
+    public BagValidatorRule originalFilepathsFileIsUtf8Decodable() {
+        return (path, context) -> {
             if (!originalFilepathsService.exists(path)) {
                 return RuleResult.skipDependencies();
             }
 
-            var mapping = originalFilepathsService.getMapping(path);
-
-            // the files defined in metadata/files.xml
-            var fileXmlPaths = filesXmlService.readFilepaths(path)
-                .collect(Collectors.toSet());
+            // decoding is part of reading the mappings, which the later rules reuse
+            try {
+                originalFilepathsService.read(path, context);
+                return RuleResult.ok();
+            }
+            catch (CharacterCodingException e) {
+                // only an invalid file is read again, to find where the problem is
+                var invalidOffset = fileService.findInvalidUtf8(path.resolve("original-filepaths.txt"));
 
-            log.trace("Paths in files.xml: {}", fileXmlPaths);
+                if (invalidOffset.isPresent()) {
+                    return invalidUtf8(invalidOffset.getAsLong());
+                }
 
-            // the files on disk
-            var dataPath = path.resolve("data");
-            var actualFiles = fileService.getAllFiles(dataPath)
-                .stream()
-                .filter(i -> !dataPath.equals(i))
-                .map(path::relativize)
-                .collect(Collectors.toSet());
+                return RuleResult.error("Input not valid UTF-8: " + e.getMessage());
+            }
+        };
+    }
 
-            log.trace("Paths inside {}: {}", dataPath, fileXmlPaths);
+    private RuleResult invalidUtf8(long offset) {
+        return RuleResult.error(String.format("Input not valid UTF-8: invalid byte sequence at byte offset %d", offset));
+    }
 
-            var renamedFiles = mapping.stream().map(OriginalFilepathsService.OriginalFilePathItem::getRenamedFilename).collect(Collectors.toSet());
-            var originalFiles = mapping.stream().map(OriginalFilepathsService.OriginalFilePathItem::getOriginalFilename).collect(Collectors.toSet());
+    @Override
+    public BagValidatorRule isOriginalFilepathsFileComplete() {
+        return (path, context) -> {
+            if (!originalFilepathsService.exists(path)) {
+                return RuleResult.skipDependencies();
+            }
 
-            // disjunction returns the difference between 2 sets
-            // so {1,2,3} disjunction {2,3,4} would return {1,4}
-            var physicalFileSetsDiffer = CollectionUtils.disjunction(actualFiles, renamedFiles).size() > 0;
-            log.trace("Disjunction between files on disk and files referenced in original-filepaths.txt: {}", physicalFileSetsDiffer);
+            // the files on disk, in metadata/files.xml and in original-filepaths.txt, as compared once for all rules
+            var reconciliation = filesReconciler.reconcile(path, context);
 
-            var originalFileSetsDiffer = CollectionUtils.disjunction(fileXmlPaths, originalFiles).size() > 0;
-            log.trace("Disjunction between files.xml and files referenced in original-filepaths.txt: {}", originalFiles);
+            //  items that exist only in actual files, but not in the keyset of mapping and not in the files.xml
+            var onlyInBag = reconciliation.getPayloadFilesNotInOriginalFilepaths();
 
-            if (physicalFileSetsDiffer || originalFileSetsDiffer) {
-                log.debug("File sets are not equal, physicalFileSetsDiffer = {} and originalFileSetsDiffer = {}", physicalFileSetsDiffer, originalFileSetsDiffer);
+            // files that only exist in files.xml, but not in the original-filepaths.txt
+            var onlyInFilesXml = reconciliation.getFilesXmlPathsNotInOriginalFilepaths();
 
-                //  items that exist only in actual files, but not in the keyset of mapping and not in the files.xml
-                var onlyInBag = CollectionUtils.subtract(actualFiles, renamedFiles);
+            // files that only exist in original-filepaths.txt, but not on the disk
+            var onlyInFilepathsPhysical = reconciliation.getRenamedFilepathsNotInPayload();
 
-                // files that only exist in files.xml, but not in the original-filepaths.txt
-                var onlyInFilesXml = CollectionUtils.subtract(fileXmlPaths, originalFiles);
+            // files that only exist in original-filepaths.txt, but not in files.xml
+            var onlyInFilepathsOriginal = reconciliation.getOriginalFilepathsNotInFilesXml();
 
-                // files that only exist in original-filepaths.txt, but not on the disk
-                var onlyInFilepathsPhysical = CollectionUtils.subtract(renamedFiles, actualFiles);
+            var physicalFileSetsDiffer = !onlyInBag.isEmpty() || !onlyInFilepathsPhysical.isEmpty();
+            var originalFileSetsDiffer = !onlyInFilesXml.isEmpty() || !onlyInFilepathsOriginal.isEmpty();
 
-                // files that only exist in original-filepaths.txt, but not in files.xml
-                var onlyInFilepathsOriginal = CollectionUtils.subtract(originalFiles, fileXmlPaths);
+            if (physicalFileSetsDiffer || originalFileSetsDiffer) {
+                log.debug("File sets are not equal, physicalFileSetsDiffer = {} and originalFileSetsDiffer = {}", physicalFileSetsDiffer, originalFileSetsDiffer);
 
                 var message = new StringBuilder();
 
@@ -428,24 +428,21 @@ public class BagRulesImpl implements BagRules {
 
     @Override
     public BagValidatorRule ddmMayContainDctermsLicenseFromList() {
-        return (path) -> {
-            var document = xmlReader.readXmlFile(path.resolve("metadata/dataset.xml"));
-            var expr = "//ddm:dcmiMetadata/dcterms:license[@xsi:type]";
-
-            var nodes = xmlReader.xpathToStream(document, expr).collect(Collectors.toList());
+        return (path, context) -> {
+            var ddm = ddmReader.read(path.resolve("metadata/dataset.xml"), context);
+            var licenses = ddm.getLicenses();
 
-            log.debug("Checking {} nodes for correct licenses", nodes.size());
+            log.debug("Checking {} nodes for correct licenses", licenses.size());
 
-            if (nodes.size() == 0) {
+            if (licenses.size() == 0) {
                 return RuleResult.error("No licenses found");
             }
 
-            var node = nodes.get(0);
-            var license = nodes.get(0).getTextContent();
-            var attr = node.getAttributes().getNamedItem("xsi:type").getTextContent();
+            var license = licenses.get(0).getText();
+            var attr = licenses.get(0).getXsiType();
 
-            // converts a namespace uri into a prefix that is used in the document
-            var prefix = document.lookupPrefix(XmlReader.NAMESPACE_DCTERMS);
+            // the prefix that is used in the document for the dcterms namespace
+            var prefix = ddm.getDctermsPrefix();
 
             log.debug("Found namespace prefix {}, comparing to {}", prefix, attr);
 
@@ -465,12 +462,9 @@ public class BagRulesImpl implements BagRules {
 
     @Override
     public BagValidatorRule ddmDoiIdentifiersAreValid() {
-        return (path) -> {
-            var document = xmlReader.readXmlFile(path.resolve("metadata/dataset.xml"));
-            var expr = "//dcterms:identifier[@xsi:type=\"id-type:DOI\"]";
-
-            var nodes = xmlReader.xpathToStreamOfStrings(document, expr);
-            var match = nodes
+        return (path, context) -> {
+            var ddm = ddmReader.read(path.resolve("metadata/dataset.xml"), context);
+            var match = ddm.getDoiIdentifiers().stream()
                 .peek(node -> {
                     log.trace("Validating if {} matches pattern {}", node, doiPattern);
                 })
@@ -493,10 +487,9 @@ public class BagRulesImpl implements BagRules {
 
     @Override
     public BagValidatorRule ddmDaisAreValid() {
-        return (path) -> {
-            var document = xmlReader.readXmlFile(path.resolve("metadata/dataset.xml"));
-            var expr = "//dcx-dai:DAI";
-            var match = xmlReader.xpathToStreamOfStrings(document, expr)
+        return (path, context) -> {
+            var ddm = ddmReader.read(path.resolve("metadata/dataset.xml"), context);
+            var match = ddm.getDais().stream()
                 .peek(id -> {
                     log.trace("Validating if {} is a valid DAI", id);
                 })
@@ -516,10 +509,9 @@ public class BagRulesImpl implements BagRules {
 
     @Override
     public BagValidatorRule ddmIsnisAreValid() {
-        return (path) -> {
-            var document = xmlReader.readXmlFile(path.resolve("metadata/dataset.xml"));
-            var expr = "//dcx-dai:ISNI";
-            var match = xmlReader.xpathToStreamOfStrings(document, expr)
+        return (path, context) -> {
+            var ddm = ddmReader.read(path.resolve("metadata/dataset.xml"), context);
+            var match = ddm.getIsnis().stream()
                 .peek(id -> {
                     log.trace("Validating if {} is a valid ISNI", id);
                 })
@@ -539,10 +531,9 @@ public class BagRulesImpl implements BagRules {
 
     @Override
     public BagValidatorRule ddmOrcidsAreValid() {
-        return (path) -> {
-            var document = xmlReader.readXmlFile(path.resolve("metadata/dataset.xml"));
-            var expr = "//dcx-dai:ORCID";
-            var match = xmlReader.xpathToStreamOfStrings(document, expr)
+        return (path, context) -> {
+            var ddm = ddmReader.read(path.resolve("metadata/dataset.xml"), context);
+            var match = ddm.getOrcids().stream()
                 .peek(id -> {
                     log.trace("Validating if {} is a valid ISNI", id);
                 })
@@ -562,12 +553,9 @@ public class BagRulesImpl implements BagRules {
 
     @Override
     public BagValidatorRule ddmGmlPolygonPosListIsWellFormed() {
-        return (path) -> {
-            var document = xmlReader.readXmlFile(path.resolve("metadata/dataset.xml"));
-            var expr = "//dcx-gml:spatial//gml:posList";//*[local-name() = 'posList']";
-            var nodes = xmlReader.xpathToStreamOfStrings(document, expr);
-
-            var match = nodes
+        return (path, context) -> {
+            var ddm = ddmReader.read(path.resolve("metadata/dataset.xml"), context);
+            var match = ddm.getPosLists().stream()
                 .peek(posList -> {
                     log.trace("Validation posList value {}", posList);
                 })
@@ -589,28 +577,11 @@ public class BagRulesImpl implements BagRules {
 
     @Override
     public BagValidatorRule polygonsInSameMultiSurfaceHaveSameSrsName() {
-        return (path) -> {
-            var document = xmlReader.readXmlFile(path.resolve("metadata/dataset.xml"));
-            var expr = "//gml:MultiSurface";
-            var nodes = xmlReader.xpathToStream(document, expr);
-            var match = nodes.filter(node -> {
-                    try {
-                        var srsNames = xmlReader.xpathToStreamOfStrings(node, ".//gml:Polygon/@srsName")
-                            .filter(Objects::nonNull)
-                            .collect(Collectors.toSet());
-
-                        log.trace("Found unique srsName values: {}", srsNames);
-                        if (srsNames.size() > 1) {
-                            return true;
-                        }
-                    }
-                    catch (Throwable e) {
-                        log.error("Error checking srsNames attribute", e);
-                        return true;
-                    }
-
-                    return false;
-                })
+        return (path, context) -> {
+            var ddm = ddmReader.read(path.resolve("metadata/dataset.xml"), context);
+            var match = ddm.getMultiSurfaceSrsNames().stream()
+                .peek(srsNames -> log.trace("Found unique srsName values: {}", srsNames))
+                .filter(srsNames -> srsNames.size() > 1)
                 .collect(Collectors.toList());
 
             log.debug("Invalid MultiSurface elements that contain polygons with different srsNames: {}", match);
@@ -625,17 +596,14 @@ public class BagRulesImpl implements BagRules {
 
     @Override
     public BagValidatorRule pointsHaveAtLeastTwoValues() {
-        return (path) -> {
-            var document = xmlReader.readXmlFile(path.resolve("metadata/dataset.xml"));
+        return (path, context) -> {
+            var ddm = ddmReader.read(path.resolve("metadata/dataset.xml"), context);
 
             // points
-            var expr = "//gml:Point | //gml:lowerCorner | //gml:upperCorner";
-
-            var errors = xmlReader.xpathToStream(document, expr)
-                .map(value -> {
-                    var attr = value.getParentNode().getAttributes().getNamedItem("srsName");
-                    var text = value.getTextContent();
-                    var isRD = attr != null && "urn:ogc:def:crs:EPSG::28992".equals(attr.getTextContent());
+            var errors = ddm.getPoints().stream()
+                .map(point -> {
+                    var text = point.getText();
+                    var isRD = "urn:ogc:def:crs:EPSG::28992".equals(point.getParentSrsName());
 
                     log.trace("Validating point {} (isRD: {})", text, isRD);
 
@@ -686,12 +654,10 @@ public class BagRulesImpl implements BagRules {
 
     @Override
     public BagValidatorRule archisIdentifiersHaveAtMost10Characters() {
-        return (path) -> {
-            var document = xmlReader.readXmlFile(path.resolve("metadata/dataset.xml"));
+        return (path, context) -> {
+            var ddm = ddmReader.read(path.resolve("metadata/dataset.xml"), context);
 
-            // points
-            var expr = "//dcterms:identifier[@xsi:type = 'id-type:ARCHIS-ZAAK-IDENTIFICATIE']";
-            var match = xmlReader.xpathToStreamOfStrings(document, expr)
+            var match = ddm.getArchisIdentifiers().stream()
                 .filter(Objects::nonNull)
                 .peek(text -> {
                     log.trace("Validating element text '{}' for maximum length", text);
@@ -715,28 +681,11 @@ public class BagRulesImpl implements BagRules {
 
     @Override
     public BagValidatorRule allUrlsAreValid() {
-        return (path) -> {
-            var document = xmlReader.readXmlFile(path.resolve("metadata/dataset.xml"));
-
-            var hrefNodes = xmlReader.xpathToStreamOfStrings(document, "*/@href");
-            var schemeURINodes = xmlReader.xpathToStreamOfStrings(document, "//ddm:subject/@schemeURI");
-            var valueURINodes = xmlReader.xpathToStreamOfStrings(document, "//ddm:subject/@valueURI");
-
-            var expr = List.of(
-                "//*[@xsi:type='dcterms:URI']",
-                "//*[@xsi:type='dcterms:URL']",
-                "//*[@xsi:type='URI']",
-                "//*[@xsi:type='URL']",
-                "//*[@scheme='dcterms:URI']",
-                "//*[@scheme='dcterms:URL']",
-                "//*[@scheme='URI']",
-                "//*[@scheme='URL']"
-            );
-
-            var elementSelectors = xmlReader.xpathsToStreamOfStrings(document, expr);
-
-            var errors = Stream.of(hrefNodes, schemeURINodes, valueURINodes, elementSelectors)
-                .flatMap(i -> i)
+        return (path, context) -> {
+            var ddm = ddmReader.read(path.resolve("metadata/dataset.xml"), context);
+
+            // href of the root element, schemeURI and valueURI of subjects, and elements with an xsi:type or scheme of (dcterms:)URI or (dcterms:)URL
+            var errors = ddm.getUrls().stream()
                 .map(value -> {
                     log.trace("Validating URI '{}'", value);
 
@@ -770,11 +719,11 @@ public class BagRulesImpl implements BagRules {
 
     @Override
     public BagValidatorRule ddmMustHaveRightsHolderDeposit() {
-        return (path) -> {
-            var document = xmlReader.readXmlFile(path.resolve("metadata/dataset.xml"));
+        return (path, context) -> {
+            var ddm = ddmReader.read(path.resolve("metadata/dataset.xml"), context);
 
             // in case of deposit, it may also be in the dcterms:rightsHolder element
-            var rightsHolder = getRightsHolderInElement(document);
+            var rightsHolder = getRightsHolderInElement(ddm);
 
             if (rightsHolder.isEmpty()) {
                 return RuleResult.error("No RightsHolder found in <dcterms:rightsHolder> element");
@@ -786,11 +735,11 @@ public class BagRulesImpl implements BagRules {
 
     @Override
     public BagValidatorRule ddmMustHaveRightsHolderMigration() {
-        return (path) -> {
-            var document = xmlReader.readXmlFile(path.resolve("metadata/dataset.xml"));
+        return (path, context) -> {
+            var ddm = ddmReader.read(path.resolve("metadata/dataset.xml"), context);
 
-            var inRole = getRightsHolderInAuthor(document);
-            var rightsHolder = getRightsHolderInElement(document);
+            var inRole = getRightsHolderInAuthor(ddm);
+            var rightsHolder = getRightsHolderInElement(ddm);
             log.debug("Results for rights holder search, inRole {}, in rightsHolder element {}", inRole, rightsHolder);
 
             if (inRole.isEmpty() && rightsHolder.isEmpty()) {
@@ -803,10 +752,10 @@ public class BagRulesImpl implements BagRules {
 
     @Override
     public BagValidatorRule ddmMustNotHaveRightsHolderRole() {
-        return (path) -> {
-            var document = xmlReader.readXmlFile(path.resolve("metadata/dataset.xml"));
+        return (path, context) -> {
+            var ddm = ddmReader.read(path.resolve("metadata/dataset.xml"), context);
 
-            var inRole = getRightsHolderInAuthor(document);
+            var inRole = getRightsHolderInAuthor(ddm);
             log.debug("Results for rights holder search, inRole {}", inRole);
 
             if (inRole.isPresent()) {
@@ -817,16 +766,16 @@ public class BagRulesImpl implements BagRules {
         };
     }
 
-    private Optional<String> getRightsHolderInElement(Document document) throws XPathExpressionException {
-        return xmlReader.xpathToStreamOfStrings(document, "//ddm:dcmiMetadata//dcterms:rightsHolder")
+    private Optional<String> getRightsHolderInElement(DdmSummary ddm) {
+        return ddm.getRightsHolders().stream()
             .filter(Objects::nonNull)
             .map(String::trim)
             .filter(s -> !s.isEmpty())
             .findFirst();
     }
 
-    private Optional<String> getRightsHolderInAuthor(Document document) throws XPathExpressionException {
-        return xmlReader.xpathToStreamOfStrings(document, "//dcx-dai:author/dcx-dai:role")
+    private Optional<String> getRightsHolderInAuthor(DdmSummary ddm) {
+        return ddm.getAuthorRoles().stream()
             .filter(Objects::nonNull)
             .map(String::trim)
             .filter(value -> value.equals("RightsHolder"))
@@ -835,8 +784,8 @@ public class BagRulesImpl implements BagRules {
 
     @Override
     public BagValidatorRule containsNotJustMD5Manifest() {
-        return path -> {
-            var bag = bagItMetadataReader.getBag(path).orElseThrow(
+        return (path, context) -> {
+            var bag = bagItMetadataReader.getBag(path, context).orElseThrow(
                 () -> new BagNotFoundException(String.format("Bag on path %s could not be opened", path)));
 
             var manifests = bagItMetadataReader.getBagManifests(bag);
@@ -863,9 +812,9 @@ public class BagRulesImpl implements BagRules {
 
     @Override
     public BagValidatorRule organizationalIdentifierPrefixIsValid() {
-        return path -> {
-            var hasOrganizationalIdentifier = bagItMetadataReader.getSingleField(path, "Has-Organizational-Identifier");
-            var userAccount = bagItMetadataReader.getSingleField(path, "Data-Station-User-Account");
+        return (path, context) -> {
+            var hasOrganizationalIdentifier = bagItMetadataReader.getSingleField(path, "Has-Organizational-Identifier", context);
+            var userAccount = bagItMetadataReader.getSingleField(path, "Data-Station-User-Account", context);
 
             log.debug("Checking prefix on organizational identifier '{}'", hasOrganizationalIdentifier);
 
@@ -15,12 +15,13 @@
  */
 package nl.knaw.dans.validatedansbag.core.rules;
 
+import nl.knaw.dans.validatedansbag.core.engine.BagValidationContext;
 import nl.knaw.dans.validatedansbag.core.engine.RuleResult;
 
 import java.nio.file.Path;
 
 @FunctionalInterface
 public interface BagValidatorRule {
-    RuleResult validate(Path path) throws Exception;
+    RuleResult validate(Path path, BagValidationContext context) throws Exception;
 
 }
@@ -48,8 +48,8 @@ public class DatastationRulesImpl implements DatastationRules {
     @Override
     public BagValidatorRule bagExistsInDatastation() {
 
-        return (path) -> {
-            var isVersionOf = bagItMetadataReader.getSingleField(path, "Is-Version-Of");
+        return (path, context) -> {
+            var isVersionOf = bagItMetadataReader.getSingleField(path, "Is-Version-Of", context);
 
             log.trace("Using Is-Version-Of value '{}' to find a matching dataset", isVersionOf);
 
@@ -75,8 +75,8 @@ public class DatastationRulesImpl implements DatastationRules {
 
     @Override
     public BagValidatorRule organizationalIdentifierExistsInDataset() {
-        return path -> {
-            var isVersionOf = bagItMetadataReader.getSingleField(path, "Is-Version-Of");
+        return (path, context) -> {
+            var isVersionOf = bagItMetadataReader.getSingleField(path, "Is-Version-Of", context);
             var dataset = getDatasetBySwordToken(isVersionOf);
 
             if (dataset.isEmpty()) {
@@ -84,7 +84,7 @@ public class DatastationRulesImpl implements DatastationRules {
             }
 
             // (b) dansOtherId must match Has-Organizational-Identifier (or both are null)
-            var orgIdentifier = bagItMetadataReader.getSingleField(path, "Has-Organizational-Identifier");
+            var orgIdentifier = bagItMetadataReader.getSingleField(path, "Has-Organizational-Identifier", context);
 
             var otherId = Optional.ofNullable(dataset.get().getLatestVersion().getMetadataBlocks())
                 .map(m -> m.get("dansDataVaultMetadata"))
@@ -124,8 +124,8 @@ public class DatastationRulesImpl implements DatastationRules {
 
     @Override
     public BagValidatorRule userIsAuthorizedToCreateDataset() {
-        return path -> {
-            var userAccount = bagItMetadataReader.getSingleField(path, "Data-Station-User-Account");
+        return (path, context) -> {
+            var userAccount = bagItMetadataReader.getSingleField(path, "Data-Station-User-Account", context);
 
             if (userAccount != null) {
                 var result = Optional.ofNullable(dataverseService.getDataverseRoleAssignments("root"))
@@ -165,9 +165,9 @@ public class DatastationRulesImpl implements DatastationRules {
 
     @Override
     public BagValidatorRule userIsAuthorizedToUpdateDataset() {
-        return path -> {
-            var userAccount = bagItMetadataReader.getSingleField(path, "Data-Station-User-Account");
-            var isVersionOf = bagItMetadataReader.getSingleField(path, "Is-Version-Of");
+        return (path, context) -> {
+            var userAccount = bagItMetadataReader.getSingleField(path, "Data-Station-User-Account", context);
+            var isVersionOf = bagItMetadataReader.getSingleField(path, "Is-Version-Of", context);
 
             log.debug("Checking if user '{}' is authorized on dataset '{}'", userAccount, isVersionOf);
             // both userAccount and isVersionOf are required fields at this point, but they are checked in other steps
@@ -15,16 +15,16 @@
  */
 package nl.knaw.dans.validatedansbag.core.rules;
 
+import nl.knaw.dans.validatedansbag.core.engine.BagValidationContext;
 import nl.knaw.dans.validatedansbag.core.engine.RuleResult;
+import nl.knaw.dans.validatedansbag.core.service.DdmReader;
 import nl.knaw.dans.validatedansbag.core.service.FileService;
 import nl.knaw.dans.validatedansbag.core.service.XmlReader;
 import nl.knaw.dans.validatedansbag.core.service.XmlSchemaValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
 
-import javax.xml.parsers.ParserConfigurationException;
-import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -33,18 +33,41 @@ public class XmlRulesImpl implements XmlRules {
 
     private static final Logger log = LoggerFactory.getLogger(XmlRulesImpl.class);
     private final XmlReader xmlReader;
+    private final DdmReader ddmReader;
     private final XmlSchemaValidator xmlSchemaValidator;
     private final FileService fileService;
 
-    public XmlRulesImpl(XmlReader xmlReader, XmlSchemaValidator xmlSchemaValidator, FileService fileService) {
+    public XmlRulesImpl(XmlReader xmlReader, DdmReader ddmReader, XmlSchemaValidator xmlSchemaValidator, FileService fileService) {
         this.xmlReader = xmlReader;
+        this.ddmReader = ddmReader;
         this.xmlSchemaValidator = xmlSchemaValidator;
         this.fileService = fileService;
     }
 
-    private List<String> validateXmlFile(Path file, String schema) throws ParserConfigurationException, IOException, SAXException {
-        var document = xmlReader.readXmlFile(file);
-        var results = xmlSchemaValidator.validateDocument(document, schema);
+    private List<String> validateXmlFile(Path file, String schema, BagValidationContext context) throws Exception {
+        List<SAXParseException> results;
+
+        // the rules that follow read dataset.xml and files.xml as well, so what they need is collected while the file is being validated
+        if ("dataset.xml".equals(schema)) {
+            var handler = ddmReader.newHandler();
+            results = xmlSchemaValidator.validateFile(file, schema, handler);
+
+            if (handler.getSummary() != null) {
+                ddmReader.share(file, handler.getSummary(), context);
+            }
+        }
+        else if ("files.xml".equals(schema)) {
+            var handler = xmlReader.newDocumentHandler();
+            results = xmlSchemaValidator.validateFile(file, schema, handler);
+
+            if (handler.getDocument() != null) {
+                xmlReader.share(file, handler.getDocument(), context);
+            }
+        }
+        else {
+            results = xmlSchemaValidator.validateFile(file, schema, reader -> {
+            });
+        }
 
         return results.stream()
             .map(Throwable::getLocalizedMessage)
@@ -54,10 +77,10 @@ public class XmlRulesImpl implements XmlRules {
 
     @Override
     public BagValidatorRule xmlFileConformsToSchema(Path file, String schema) {
-        return (path) -> {
+        return (path, context) -> {
             var fileName = path.resolve(file);
             log.debug("Validating {} against schema {}", fileName, schema);
-            var errors = validateXmlFile(fileName, schema);
+            var errors = validateXmlFile(fileName, schema, context);
 
             if (errors.size() > 0) {
                 var msg = String.format("%s does not conform to %s: \n%s",
@@ -72,12 +95,12 @@ public class XmlRulesImpl implements XmlRules {
 
     @Override
     public BagValidatorRule xmlFileIfExistsConformsToSchema(Path file, String schema) {
-        return (path) -> {
+        return (path, context) -> {
             var fileName = path.resolve(file);
 
             if (fileService.exists(fileName)) {
                 log.debug("Validating {} against schema {}", fileName, schema);
-                return xmlFileConformsToSchema(file, schema).validate(path);
+                return xmlFileConformsToSchema(file, schema).validate(path, context);
             }
             else {
                 return RuleResult.skipDependencies();
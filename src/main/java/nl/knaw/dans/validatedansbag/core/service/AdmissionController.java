@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+/**
+ * Limits the number of validations that are handled at the same time and the resources their uploads use, so that a burst of requests is refused early instead of exhausting the heap or
+ * the temporary directory.
+ */
+public interface AdmissionController {
+
+    /**
+     * Admits a validation, waiting a limited time for a slot if all are taken.
+     *
+     * @param uploadSize the size of the uploaded bag in bytes, 0 if nothing is uploaded, or -1 if the size is not known in advance
+     * @return the admission, which must be closed when the validation is finished
+     * @throws AdmissionRejectedException if the validation cannot be admitted now
+     */
+    Admission admit(long uploadSize) throws AdmissionRejectedException;
+
+    int getValidationsInProgress();
+
+    int getQueuedValidations();
+
+    long getInFlightUploadSize();
+
+    interface Admission extends AutoCloseable {
+
+        /**
+         * Releases the resources of the admission. Closing it more than once has no effect.
+         */
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import nl.knaw.dans.validatedansbag.core.config.AdmissionConfig;
+import nl.knaw.dans.validatedansbag.core.service.AdmissionRejectedException.Reason;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+public class AdmissionControllerImpl implements AdmissionController {
+    private static final Logger log = LoggerFactory.getLogger(AdmissionControllerImpl.class);
+
+    private final int maxConcurrentValidations;
+    private final int maxQueuedValidations;
+    private final Duration maxQueueWait;
+    private final long maxInFlightUploadSize;
+    private final long minFreeTempSpace;
+    private final Duration retryAfter;
+    private final LongSupplier freeTempSpace;
+    // fair, so requests that wait are admitted in the order they arrived
+    private final Semaphore validations;
+    private final AtomicInteger queuedValidations = new AtomicInteger();
+    private final AtomicLong inFlightUploadSize = new AtomicLong();
+    private final MetricRegistry metricRegistry;
+
+    public AdmissionControllerImpl(AdmissionConfig config, Path tempDirectory, MetricRegistry metricRegistry) {
+        this(config, () -> getUsableSpace(tempDirectory), metricRegistry);
+    }
+
+    AdmissionControllerImpl(AdmissionConfig config, LongSupplier freeTempSpace, MetricRegistry metricRegistry) {
+        this.maxConcurrentValidations = config.getMaxConcurrentValidations();
+        this.maxQueuedValidations = config.getMaxQueuedValidations();
+        this.maxQueueWait = Duration.ofMillis(config.getMaxQueueWait().toMilliseconds());
+        this.maxInFlightUploadSize = config.getMaxInFlightUploadSize().toBytes();
+        this.minFreeTempSpace = config.getMinFreeTempSpace().toBytes();
+        this.retryAfter = Duration.ofMillis(config.getRetryAfter().toMilliseconds());
+        this.freeTempSpace = freeTempSpace;
+        this.validations = new Semaphore(maxConcurrentValidations, true);
+        this.metricRegistry = metricRegistry;
+
+        metricRegistry.register(MetricRegistry.name(AdmissionControllerImpl.class, "validations", "in-progress"), (Gauge<Integer>) this::getValidationsInProgress);
+        metricRegistry.register(MetricRegistry.name(AdmissionControllerImpl.class, "validations", "queued"), (Gauge<Integer>) this::getQueuedValidations);
+        metricRegistry.register(MetricRegistry.name(AdmissionControllerImpl.class, "uploads", "bytes-in-flight"), (Gauge<Long>) this::getInFlightUploadSize);
+    }
+
+    @Override
+    public Admission admit(long uploadSize) throws AdmissionRejectedException {
+        var reservedUploadSize = Math.max(uploadSize, 0);
+
+        if (uploadSize != 0) {
+            checkFreeTempSpace(reservedUploadSize);
+        }
+
+        reserveUploadSize(reservedUploadSize);
+
+        try {
+            acquireValidation();
+        }
+        catch (AdmissionRejectedException e) {
+            inFlightUploadSize.addAndGet(-reservedUploadSize);
+            throw e;
+        }
+
+        var released = new AtomicBoolean();
+
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                inFlightUploadSize.addAndGet(-reservedUploadSize);
+                validations.release();
+            }
+        };
+    }
+
+    @Override
+    public int getValidationsInProgress() {
+        return maxConcurrentValidations - validations.availablePermits();
+    }
+
+    @Override
+    public int getQueuedValidations() {
+        return queuedValidations.get();
+    }
+
+    @Override
+    public long getInFlightUploadSize() {
+        return inFlightUploadSize.get();
+    }
+
+    private void checkFreeTempSpace(long uploadSize) throws AdmissionRejectedException {
+        var free = freeTempSpace.getAsLong();
+
+        // the extracted bag is usually not much larger than the zip, and the zip itself is not stored
+        if (free - uploadSize < minFreeTempSpace) {
+            throw reject(Reason.INSUFFICIENT_TEMP_SPACE, String.format("Not enough space to extract the upload: %d bytes free, %d bytes must remain free", free, minFreeTempSpace));
+        }
+    }
+
+    private void reserveUploadSize(long uploadSize) throws AdmissionRejectedException {
+        while (uploadSize > 0) {
+            var current = inFlightUploadSize.get();
+
+            // an upload that is larger than the limit by itself is admitted when there are no other uploads, otherwise it could never be validated
+            if (current > 0 && current + uploadSize > maxInFlightUploadSize) {
+                throw reject(Reason.TOO_MANY_UPLOAD_BYTES, String.format("Too many uploads in progress: %d bytes are being received", current));
+            }
+
+            if (inFlightUploadSize.compareAndSet(current, current + uploadSize)) {
+                return;
+            }
+        }
+    }
+
+    private void acquireValidation() throws AdmissionRejectedException {
+        try {
+            // unlike tryAcquire(), a timed tryAcquire respects the fairness, so a new request does not take a slot before the ones that are already waiting
+            if (validations.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+
+            if (queuedValidations.incrementAndGet() > maxQueuedValidations) {
+                queuedValidations.decrementAndGet();
+                throw reject(Reason.TOO_MANY_VALIDATIONS, "Too many validations are waiting");
+            }
+
+            try {
+                if (!validations.tryAcquire(maxQueueWait.toMillis(), TimeUnit.MILLISECONDS)) {
+                    throw reject(Reason.TOO_MANY_VALIDATIONS, String.format("No validation could be started within %s", maxQueueWait));
+                }
+            }
+            finally {
+                queuedValidations.decrementAndGet();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw reject(Reason.TOO_MANY_VALIDATIONS, "Interrupted while waiting to start the validation");
+        }
+    }
+
+    private AdmissionRejectedException reject(Reason reason, String msg) {
+        metricRegistry.meter(MetricRegistry.name(AdmissionControllerImpl.class, "rejected", reason.name().toLowerCase())).mark();
+        return new AdmissionRejectedException(reason, msg, retryAfter);
+    }
+
+    private static long getUsableSpace(Path directory) {
+        try {
+            return Files.getFileStore(directory).getUsableSpace();
+        }
+        catch (IOException e) {
+            // not knowing the free space should not make the service refuse every upload
+            log.warn("Could not determine the free space in {}", directory, e);
+            return Long.MAX_VALUE;
+        }
+    }
+}
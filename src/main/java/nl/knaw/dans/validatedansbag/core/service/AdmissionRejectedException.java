@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import java.time.Duration;
+
+public class AdmissionRejectedException extends Exception {
+    private final Reason reason;
+    private final Duration retryAfter;
+
+    public AdmissionRejectedException(Reason reason, String msg, Duration retryAfter) {
+        super(msg);
+        this.reason = reason;
+        this.retryAfter = retryAfter;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    public enum Reason {
+        // all validation slots are taken and the queue is full, or the request waited too long
+        TOO_MANY_VALIDATIONS,
+        // the uploads that are already being received add up to the limit
+        TOO_MANY_UPLOAD_BYTES,
+        // the upload would not fit in the temporary directory
+        INSUFFICIENT_TEMP_SPACE
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public interface BagFingerprinter {
+
+    /**
+     * Computes a value that changes whenever the bag changes, without reading the payload. It is made of the names, sizes and modification times of all files and directories in the bag,
+     * and the content of the tag files in the root of the bag.
+     *
+     * @param bagDir the bag directory
+     * @return the fingerprint, which does not depend on the location of the bag
+     * @throws IOException if the bag could not be read
+     */
+    String fingerprint(Path bagDir) throws IOException;
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import nl.knaw.dans.validatedansbag.core.engine.Fingerprint;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+public class BagFingerprinterImpl implements BagFingerprinter {
+
+    @Override
+    public String fingerprint(Path bagDir) throws IOException {
+        var fingerprint = new Fingerprint();
+        addDirectory(fingerprint, bagDir, bagDir);
+        return fingerprint.toHex();
+    }
+
+    private void addDirectory(Fingerprint fingerprint, Path bagDir, Path directory) throws IOException {
+        for (var entry : Fingerprint.listSorted(directory)) {
+            var attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+
+            fingerprint.addEntry(Fingerprint.getRelativeName(bagDir, entry), entry, attributes);
+
+            if (attributes.isDirectory()) {
+                addDirectory(fingerprint, bagDir, entry);
+            }
+        }
+
+        // marks the end of the directory, so that an entry cannot be mistaken for an entry of its parent
+        fingerprint.addMarker('e');
+    }
+}
@@ -17,34 +17,25 @@ package nl.knaw.dans.validatedansbag.core.service;
 
 import gov.loc.repository.bagit.domain.Bag;
 import gov.loc.repository.bagit.domain.Manifest;
-import gov.loc.repository.bagit.exceptions.CorruptChecksumException;
-import gov.loc.repository.bagit.exceptions.FileNotInPayloadDirectoryException;
-import gov.loc.repository.bagit.exceptions.InvalidBagitFileFormatException;
-import gov.loc.repository.bagit.exceptions.MaliciousPathException;
-import gov.loc.repository.bagit.exceptions.MissingBagitFileException;
-import gov.loc.repository.bagit.exceptions.MissingPayloadDirectoryException;
-import gov.loc.repository.bagit.exceptions.MissingPayloadManifestException;
-import gov.loc.repository.bagit.exceptions.UnparsableVersionException;
-import gov.loc.repository.bagit.exceptions.UnsupportedAlgorithmException;
-import gov.loc.repository.bagit.exceptions.VerificationException;
-
-import java.io.IOException;
+import nl.knaw.dans.validatedansbag.core.engine.BagValidationContext;
+
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
+/**
+ * Reads the BagIt metadata of a bag. The bag is read at most once per validation; every method that takes a {@link BagValidationContext} works on the same snapshot of the bag.
+ */
 public interface BagItMetadataReader {
 
-    Optional<Bag> getBag(Path path);
+    Optional<Bag> getBag(Path path, BagValidationContext context);
 
-    void verifyBag(Path path) throws MaliciousPathException, UnsupportedAlgorithmException, InvalidBagitFileFormatException, IOException, MissingPayloadManifestException,
-        MissingPayloadDirectoryException, FileNotInPayloadDirectoryException, InterruptedException, MissingBagitFileException, CorruptChecksumException, VerificationException,
-        UnparsableVersionException;
+    void verifyBag(Path path, BagValidationContext context) throws Exception;
 
-    List<String> getField(Path bagDir, String field);
+    List<String> getField(Path bagDir, String field, BagValidationContext context) throws Exception;
 
-    String getSingleField(Path bagDir, String field);
+    String getSingleField(Path bagDir, String field, BagValidationContext context) throws Exception;
 
     Set<Manifest> getBagManifests(Bag bag);
 }
@@ -17,22 +17,12 @@ package nl.knaw.dans.validatedansbag.core.service;
 
 import gov.loc.repository.bagit.domain.Bag;
 import gov.loc.repository.bagit.domain.Manifest;
-import gov.loc.repository.bagit.exceptions.CorruptChecksumException;
-import gov.loc.repository.bagit.exceptions.FileNotInPayloadDirectoryException;
-import gov.loc.repository.bagit.exceptions.InvalidBagitFileFormatException;
-import gov.loc.repository.bagit.exceptions.MaliciousPathException;
-import gov.loc.repository.bagit.exceptions.MissingBagitFileException;
-import gov.loc.repository.bagit.exceptions.MissingPayloadDirectoryException;
-import gov.loc.repository.bagit.exceptions.MissingPayloadManifestException;
-import gov.loc.repository.bagit.exceptions.UnparsableVersionException;
-import gov.loc.repository.bagit.exceptions.UnsupportedAlgorithmException;
-import gov.loc.repository.bagit.exceptions.VerificationException;
 import gov.loc.repository.bagit.reader.BagReader;
 import gov.loc.repository.bagit.verify.BagVerifier;
+import nl.knaw.dans.validatedansbag.core.engine.BagValidationContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Optional;
@@ -41,10 +31,20 @@ import java.util.Set;
 public class BagItMetadataReaderImpl implements BagItMetadataReader {
     private static final Logger log = LoggerFactory.getLogger(BagItMetadataReaderImpl.class);
 
+    private final ChecksumVerifier checksumVerifier;
+
+    public BagItMetadataReaderImpl() {
+        this(new ChecksumVerifierImpl());
+    }
+
+    public BagItMetadataReaderImpl(ChecksumVerifier checksumVerifier) {
+        this.checksumVerifier = checksumVerifier;
+    }
+
     @Override
-    public Optional<Bag> getBag(Path path) {
+    public Optional<Bag> getBag(Path path, BagValidationContext context) {
         try {
-            return Optional.of(new BagReader().read(path));
+            return Optional.of(readBag(path, context));
         }
         catch (Exception e) {
             return Optional.empty();
@@ -52,35 +52,32 @@ public class BagItMetadataReaderImpl implements BagItMetadataReader {
     }
 
     @Override
-    public void verifyBag(Path path)
-        throws MaliciousPathException, UnsupportedAlgorithmException, InvalidBagitFileFormatException, IOException, MissingPayloadManifestException,
-        MissingPayloadDirectoryException, FileNotInPayloadDirectoryException, InterruptedException, MissingBagitFileException, CorruptChecksumException, VerificationException,
-        UnparsableVersionException {
-
-        var bag = new BagReader().read(path);
+    public void verifyBag(Path path, BagValidationContext context) throws Exception {
+        var bag = readBag(path, context);
 
         try (var verifier = new BagVerifier()) {
             var ignoreHiddenFiles = false;
 
             log.trace("Verifying bag is complete on path {}", path);
             verifier.isComplete(bag, ignoreHiddenFiles);
-
-            log.trace("Verifying bag is valid on path {}", path);
-            verifier.isValid(bag, ignoreHiddenFiles);
         }
+
+        // BagVerifier.isValid would check completeness again and read every file once for each manifest
+        log.trace("Verifying checksums of bag on path {}", path);
+        checksumVerifier.verifyChecksums(bag, context);
     }
 
     @Override
-    public List<String> getField(Path bagDir, String field) {
-        var bag = getBag(bagDir).orElseThrow();
+    public List<String> getField(Path bagDir, String field, BagValidationContext context) throws Exception {
+        var bag = readBag(bagDir, context);
 
         return Optional.ofNullable(bag.getMetadata().get(field))
             .orElse(List.of());
     }
 
     @Override
-    public String getSingleField(Path bagDir, String field) {
-        return getField(bagDir, field)
+    public String getSingleField(Path bagDir, String field, BagValidationContext context) throws Exception {
+        return getField(bagDir, field, context)
             .stream()
             .findFirst()
             .orElse(null);
@@ -90,4 +87,12 @@ public class BagItMetadataReaderImpl implements BagItMetadataReader {
     public Set<Manifest> getBagManifests(Bag bag) {
         return bag.getPayLoadManifests();
     }
+
+    // reading the bag parses bag-info.txt, bagit.txt and all manifests, so it is only done once per validation; a failure to read is also remembered and rethrown
+    private Bag readBag(Path path, BagValidationContext context) throws Exception {
+        return context.computeIfAbsent(context.getKey("bag", path), () -> {
+            log.trace("Reading bag on path {}", path);
+            return new BagReader().read(path);
+        });
+    }
 }
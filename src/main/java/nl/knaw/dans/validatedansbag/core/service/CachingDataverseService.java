@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import nl.knaw.dans.lib.dataverse.DataverseException;
+import nl.knaw.dans.lib.dataverse.DataverseResponse;
+import nl.knaw.dans.lib.dataverse.model.RoleAssignmentReadOnly;
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetLatestVersion;
+import nl.knaw.dans.lib.dataverse.model.search.SearchResult;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A {@link DataverseService} that keeps the responses of another one for a short time, so that the rules of a bag, and of other bags of the same depositor, do not look up the same
+ * dataset or role assignments over and over again. Concurrent requests for the same response wait for a single call to Dataverse. Failed calls are not kept.
+ */
+public class CachingDataverseService implements DataverseService {
+    private final DataverseService dataverseService;
+    private final Duration timeToLive;
+    private final Clock clock;
+    private final Map<String, Entry> entries;
+    private final Meter hits;
+    private final Meter misses;
+    private final Meter coalesced;
+
+    public CachingDataverseService(DataverseService dataverseService, int maxEntries, Duration timeToLive, MetricRegistry metricRegistry) {
+        this(dataverseService, maxEntries, timeToLive, metricRegistry, Clock.systemUTC());
+    }
+
+    CachingDataverseService(DataverseService dataverseService, int maxEntries, Duration timeToLive, MetricRegistry metricRegistry, Clock clock) {
+        this.dataverseService = dataverseService;
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+        this.entries = new LruMap<>(maxEntries);
+        this.hits = metricRegistry.meter(MetricRegistry.name(CachingDataverseService.class, "hits"));
+        this.misses = metricRegistry.meter(MetricRegistry.name(CachingDataverseService.class, "misses"));
+        this.coalesced = metricRegistry.meter(MetricRegistry.name(CachingDataverseService.class, "coalesced"));
+        metricRegistry.register(MetricRegistry.name(CachingDataverseService.class, "size"), (Gauge<Integer>) this::size);
+    }
+
+    @Override
+    public DataverseResponse<SearchResult> searchBySwordToken(String token) throws IOException, DataverseException {
+        return get("swordToken:" + token, () -> dataverseService.searchBySwordToken(token));
+    }
+
+    @Override
+    public DataverseResponse<SearchResult> searchDatasetsByOrganizationalIdentifier(String identifier) throws IOException, DataverseException {
+        return get("otherId:" + identifier, () -> dataverseService.searchDatasetsByOrganizationalIdentifier(identifier));
+    }
+
+    @Override
+    public DataverseResponse<List<RoleAssignmentReadOnly>> getDatasetRoleAssignments(String identifier) throws IOException, DataverseException {
+        return get("datasetRoleAssignments:" + identifier, () -> dataverseService.getDatasetRoleAssignments(identifier));
+    }
+
+    @Override
+    public DataverseResponse<DatasetLatestVersion> getDataset(String globalId) throws IOException, DataverseException {
+        return get("dataset:" + globalId, () -> dataverseService.getDataset(globalId));
+    }
+
+    @Override
+    public DataverseResponse<List<RoleAssignmentReadOnly>> getDataverseRoleAssignments(String itemId) throws IOException, DataverseException {
+        return get("dataverseRoleAssignments:" + itemId, () -> dataverseService.getDataverseRoleAssignments(itemId));
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T get(String key, Call<T> call) throws IOException, DataverseException {
+        Entry entry;
+        boolean caller = false;
+
+        synchronized (this) {
+            entry = entries.get(key);
+
+            if (entry != null && entry.isExpired(clock.instant())) {
+                entries.remove(key);
+                entry = null;
+            }
+
+            if (entry == null) {
+                entry = new Entry();
+                entries.put(key, entry);
+                caller = true;
+                misses.mark();
+            }
+            else if (entry.response.isDone()) {
+                hits.mark();
+            }
+            else {
+                coalesced.mark();
+            }
+        }
+
+        if (caller) {
+            return (T) call(key, entry, call);
+        }
+
+        return (T) await(entry);
+    }
+
+    private Object call(String key, Entry entry, Call<?> call) throws IOException, DataverseException {
+        try {
+            var response = call.call();
+            entry.expires = clock.instant().plus(timeToLive);
+            entry.response.complete(response);
+            return response;
+        }
+        catch (IOException | DataverseException | RuntimeException | Error e) {
+            // requests that are waiting get the same exception, but later requests try again
+            synchronized (this) {
+                entries.remove(key, entry);
+            }
+
+            entry.response.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private Object await(Entry entry) throws IOException, DataverseException {
+        try {
+            return entry.response.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a response from Dataverse");
+        }
+        catch (ExecutionException e) {
+            var cause = e.getCause();
+
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof DataverseException) {
+                throw (DataverseException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    @FunctionalInterface
+    interface Call<T> {
+        T call() throws IOException, DataverseException;
+    }
+
+    private static class Entry {
+        private final CompletableFuture<Object> response = new CompletableFuture<>();
+        // set when the response is complete, so a call that is still in progress never expires
+        private volatile Instant expires;
+
+        boolean isExpired(Instant now) {
+            var expires = this.expires;
+            return expires != null && !now.isBefore(expires);
+        }
+    }
+}
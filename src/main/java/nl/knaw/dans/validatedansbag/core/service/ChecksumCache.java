@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import gov.loc.repository.bagit.hash.SupportedAlgorithm;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Checksums of files that were computed during earlier validations, so that a file that has not changed since does not have to be read again. Whether a file has changed is decided
+ * from its attributes in the file system, not from its content.
+ */
+public interface ChecksumCache {
+
+    /**
+     * Looks up the checksums of the file in its current state. Checksums that are computed after this call must be stored through the returned lookup, so that they are recorded
+     * with the state of the file before it was read; if the file changes while it is being read, they are never used.
+     *
+     * @param file       the file
+     * @param algorithms the algorithms to look up
+     * @return the lookup
+     * @throws IOException if the attributes of the file could not be read
+     */
+    Lookup lookup(Path file, Collection<SupportedAlgorithm> algorithms) throws IOException;
+
+    /**
+     * Persists the checksums that were stored since the last call. Storing a checksum only updates the cache in memory, so that verifier threads do not wait for each other's
+     * writes; this is called once when a verification ends.
+     *
+     * @throws IOException if the checksums could not be written
+     */
+    void flush() throws IOException;
+
+    interface Lookup {
+
+        /**
+         * @return the checksums for all algorithms of the lookup, or empty if at least one of them is not cached for the state of the file
+         */
+        Optional<Map<SupportedAlgorithm, String>> getChecksums();
+
+        void store(Map<SupportedAlgorithm, String> checksums);
+    }
+}
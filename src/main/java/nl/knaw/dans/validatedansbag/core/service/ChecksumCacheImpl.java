@@ -0,0 +1,341 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import gov.loc.repository.bagit.hash.SupportedAlgorithm;
+import nl.knaw.dans.validatedansbag.core.config.ChecksumCacheConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link ChecksumCache} that keeps the checksums in memory and appends the new checksums to a file when it is flushed, from which they are loaded again when the service starts. A checksum is
+ * identified by the file key (device and inode on Unix) of the file and the algorithm, and it is only used while the size and times of the file are the same as when it was computed.
+ * The file is rewritten when most of its lines are superseded.
+ */
+public class ChecksumCacheImpl implements ChecksumCache, Closeable {
+    private static final Logger log = LoggerFactory.getLogger(ChecksumCacheImpl.class);
+    // rewriting a small file is not worth it
+    private static final int MIN_LINES_BEFORE_COMPACTION = 10_000;
+    private static final String NO_TIME = "-";
+
+    private final Path file;
+    private final ChecksumCacheConfig.TrustPolicy trustPolicy;
+    private final Duration maxAge;
+    private final Clock clock;
+    private final Map<String, Entry> entries;
+    private final Meter hits;
+    private final Meter misses;
+    private final Meter bytesAvoided;
+    // the lines of the checksums that were stored since the last flush
+    private final List<String> unflushedLines = new ArrayList<>();
+    private BufferedWriter writer;
+    // the number of lines in the file, including the ones that are superseded or evicted
+    private long lines;
+
+    /**
+     * @param file           the file the checksums are loaded from and appended to
+     * @param trustPolicy    decides when a file is considered unchanged
+     * @param maxAge         checksums older than this are not used
+     * @param maxEntries     the maximum number of checksums kept
+     * @param metricRegistry the registry to report the hit ratio to
+     * @throws IOException if the file could not be read or created
+     */
+    public ChecksumCacheImpl(Path file, ChecksumCacheConfig.TrustPolicy trustPolicy, Duration maxAge, int maxEntries, MetricRegistry metricRegistry) throws IOException {
+        this(file, trustPolicy, maxAge, maxEntries, metricRegistry, Clock.systemUTC());
+    }
+
+    ChecksumCacheImpl(Path file, ChecksumCacheConfig.TrustPolicy trustPolicy, Duration maxAge, int maxEntries, MetricRegistry metricRegistry, Clock clock) throws IOException {
+        this.file = file;
+        this.trustPolicy = trustPolicy;
+        this.maxAge = maxAge;
+        this.clock = clock;
+        this.entries = new LruMap<>(maxEntries);
+        this.hits = metricRegistry.meter(MetricRegistry.name(ChecksumCacheImpl.class, "hits"));
+        this.misses = metricRegistry.meter(MetricRegistry.name(ChecksumCacheImpl.class, "misses"));
+        this.bytesAvoided = metricRegistry.meter(MetricRegistry.name(ChecksumCacheImpl.class, "bytes-avoided"));
+        metricRegistry.register(MetricRegistry.name(ChecksumCacheImpl.class, "size"), (Gauge<Integer>) this::size);
+        metricRegistry.register(MetricRegistry.name(ChecksumCacheImpl.class, "hit-ratio"), (Gauge<Double>) this::getHitRatio);
+
+        load();
+        compactIfNeeded();
+
+        if (writer == null) {
+            writer = openForAppending();
+        }
+    }
+
+    @Override
+    public Lookup lookup(Path path, Collection<SupportedAlgorithm> algorithms) throws IOException {
+        var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        var fileKey = attributes.fileKey() == null ? null : attributes.fileKey().toString();
+        var changeTime = getChangeTime(path);
+
+        // without a file key there is nothing that identifies the file, and without a change time the CTIME policy cannot be applied
+        if (!attributes.isRegularFile() || fileKey == null || fileKey.contains("\t") || fileKey.contains("\n")
+            || (trustPolicy == ChecksumCacheConfig.TrustPolicy.CTIME && changeTime == null)) {
+            return new UncachedLookup();
+        }
+
+        var state = new Entry(attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS), changeTime, 0, null);
+        return new CachedLookup(fileKey, state, List.copyOf(algorithms));
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (unflushedLines.isEmpty()) {
+            return;
+        }
+
+        for (var line : unflushedLines) {
+            writer.write(line);
+            writer.newLine();
+        }
+
+        writer.flush();
+        lines += unflushedLines.size();
+        unflushedLines.clear();
+
+        compactIfNeeded();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    private double getHitRatio() {
+        var total = hits.getCount() + misses.getCount();
+        return total == 0 ? 0.0 : (double) hits.getCount() / total;
+    }
+
+    private Long getChangeTime(Path path) throws IOException {
+        if (!path.getFileSystem().supportedFileAttributeViews().contains("unix")) {
+            return null;
+        }
+
+        return ((FileTime) Files.getAttribute(path, "unix:ctime")).to(TimeUnit.NANOSECONDS);
+    }
+
+    private synchronized Optional<String> get(String key, Entry state) {
+        var entry = entries.get(key);
+
+        if (entry == null || !entry.hasSameState(state, trustPolicy) || isExpired(entry)) {
+            return Optional.empty();
+        }
+
+        return Optional.of(entry.checksum);
+    }
+
+    private synchronized void put(String key, Entry entry) {
+        entries.put(key, entry);
+        unflushedLines.add(toLine(key, entry));
+    }
+
+    private boolean isExpired(Entry entry) {
+        return clock.millis() >= entry.computed + maxAge.toMillis();
+    }
+
+    // a line that cannot be parsed, for instance because the service stopped while it was written, is ignored
+    private void load() throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        var invalid = 0;
+
+        try (var reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                var fields = line.split("\t", -1);
+
+                if (fields.length != 7) {
+                    invalid++;
+                    continue;
+                }
+
+                try {
+                    var entry = new Entry(Long.parseLong(fields[2]), Long.parseLong(fields[3]), NO_TIME.equals(fields[4]) ? null : Long.valueOf(fields[4]), Long.parseLong(fields[5]),
+                        fields[6]);
+
+                    if (!isExpired(entry)) {
+                        entries.put(fields[0] + "\t" + fields[1], entry);
+                    }
+                }
+                catch (NumberFormatException e) {
+                    invalid++;
+                }
+            }
+        }
+
+        log.info("Loaded {} checksums from {}", entries.size(), file);
+
+        if (invalid > 0) {
+            log.warn("Ignored {} invalid lines in {}", invalid, file);
+        }
+    }
+
+    private void compactIfNeeded() throws IOException {
+        if (lines < MIN_LINES_BEFORE_COMPACTION || lines < 2L * entries.size()) {
+            return;
+        }
+
+        log.debug("Rewriting {}, which has {} lines for {} checksums", file, lines, entries.size());
+
+        if (writer != null) {
+            writer.close();
+        }
+
+        // the old file stays complete until the new one replaces it
+        var newFile = file.resolveSibling(file.getFileName() + ".new");
+
+        // written from least to most recently used, so loading the file restores the order of eviction
+        try (var newWriter = Files.newBufferedWriter(newFile, StandardCharsets.UTF_8)) {
+            for (var entry : entries.entrySet()) {
+                newWriter.write(toLine(entry.getKey(), entry.getValue()));
+                newWriter.newLine();
+            }
+        }
+
+        Files.move(newFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        lines = entries.size();
+        writer = openForAppending();
+    }
+
+    private BufferedWriter openForAppending() throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+
+        return Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private String toLine(String key, Entry entry) {
+        return String.join("\t", key, String.valueOf(entry.size), String.valueOf(entry.modified), entry.changed == null ? NO_TIME : String.valueOf(entry.changed),
+            String.valueOf(entry.computed), entry.checksum);
+    }
+
+    private static class Entry {
+        private final long size;
+        private final long modified;
+        private final Long changed;
+        private final long computed;
+        private final String checksum;
+
+        Entry(long size, long modified, Long changed, long computed, String checksum) {
+            this.size = size;
+            this.modified = modified;
+            this.changed = changed;
+            this.computed = computed;
+            this.checksum = checksum;
+        }
+
+        boolean hasSameState(Entry other, ChecksumCacheConfig.TrustPolicy trustPolicy) {
+            return size == other.size && modified == other.modified
+                && (trustPolicy == ChecksumCacheConfig.TrustPolicy.MTIME || (changed != null && changed.equals(other.changed)));
+        }
+    }
+
+    private class CachedLookup implements Lookup {
+        private final String fileKey;
+        private final Entry state;
+        private final List<SupportedAlgorithm> algorithms;
+
+        CachedLookup(String fileKey, Entry state, List<SupportedAlgorithm> algorithms) {
+            this.fileKey = fileKey;
+            this.state = state;
+            this.algorithms = algorithms;
+        }
+
+        @Override
+        public Optional<Map<SupportedAlgorithm, String>> getChecksums() {
+            var checksums = new HashMap<SupportedAlgorithm, String>();
+
+            for (var algorithm : algorithms) {
+                var checksum = get(getKey(algorithm), state);
+
+                if (checksum.isEmpty()) {
+                    misses.mark();
+                    return Optional.empty();
+                }
+
+                checksums.put(algorithm, checksum.get());
+            }
+
+            hits.mark();
+            bytesAvoided.mark(state.size);
+            return Optional.of(checksums);
+        }
+
+        @Override
+        public void store(Map<SupportedAlgorithm, String> checksums) {
+            var computed = clock.millis();
+
+            for (var checksum : checksums.entrySet()) {
+                put(getKey(checksum.getKey()), new Entry(state.size, state.modified, state.changed, computed, checksum.getValue()));
+            }
+        }
+
+        private String getKey(SupportedAlgorithm algorithm) {
+            return fileKey + "\t" + algorithm.getBagitName();
+        }
+    }
+
+    private static class UncachedLookup implements Lookup {
+
+        @Override
+        public Optional<Map<SupportedAlgorithm, String>> getChecksums() {
+            return Optional.empty();
+        }
+
+        @Override
+        public void store(Map<SupportedAlgorithm, String> checksums) {
+        }
+    }
+}
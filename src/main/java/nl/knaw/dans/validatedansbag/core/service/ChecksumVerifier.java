@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import gov.loc.repository.bagit.domain.Bag;
+import nl.knaw.dans.validatedansbag.core.engine.BagValidationContext;
+
+public interface ChecksumVerifier {
+
+    /**
+     * Verifies the checksums of all files listed in the payload and tag manifests of the bag. Each file is read once, and all of its checksums are computed from that single read.
+     *
+     * @param bag     the bag to verify
+     * @param context the validation the verification is part of; the verification stops when it is cancelled
+     * @throws gov.loc.repository.bagit.exceptions.CorruptChecksumException             if a computed checksum does not match the one in the manifest
+     * @throws nl.knaw.dans.validatedansbag.core.engine.ValidationCancelledException if the validation was cancelled
+     * @throws Exception                                                               if a file could not be read
+     */
+    void verifyChecksums(Bag bag, BagValidationContext context) throws Exception;
+}
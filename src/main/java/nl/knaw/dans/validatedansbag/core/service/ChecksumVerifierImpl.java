@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import gov.loc.repository.bagit.domain.Bag;
+import gov.loc.repository.bagit.domain.Manifest;
+import gov.loc.repository.bagit.exceptions.CorruptChecksumException;
+import gov.loc.repository.bagit.hash.SupportedAlgorithm;
+import nl.knaw.dans.validatedansbag.core.engine.BagValidationContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+
+public class ChecksumVerifierImpl implements ChecksumVerifier {
+    private static final Logger log = LoggerFactory.getLogger(ChecksumVerifierImpl.class);
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final Executor executor;
+    private final int parallelism;
+    private final int bufferSize;
+    private final PrecomputedChecksums precomputedChecksums;
+    private final ChecksumCache checksumCache;
+    private final Meter bytesRead;
+    private final Meter filesVerified;
+    private final Timer verifications;
+
+    public ChecksumVerifierImpl() {
+        // verifies the files one after the other on the calling thread
+        this(Runnable::run, 1, DEFAULT_BUFFER_SIZE, new PrecomputedChecksumsImpl(), new MetricRegistry());
+    }
+
+    /**
+     * @param executor             the executor that reads and hashes the files
+     * @param parallelism          the maximum number of files of a single bag that are verified at the same time; this should not exceed the number of threads of the executor
+     * @param bufferSize           the number of bytes read from a file at a time
+     * @param precomputedChecksums the checksums of files whose content was not extracted from a zip
+     * @param metricRegistry       the registry to report throughput to
+     */
+    public ChecksumVerifierImpl(Executor executor, int parallelism, int bufferSize, PrecomputedChecksums precomputedChecksums, MetricRegistry metricRegistry) {
+        this(executor, parallelism, bufferSize, precomputedChecksums, null, metricRegistry);
+    }
+
+    /**
+     * @param executor             the executor that reads and hashes the files
+     * @param parallelism          the maximum number of files of a single bag that are verified at the same time; this should not exceed the number of threads of the executor
+     * @param bufferSize           the number of bytes read from a file at a time
+     * @param precomputedChecksums the checksums of files whose content was not extracted from a zip
+     * @param checksumCache        the checksums of payload files computed during earlier validations; null to always read the payload files
+     * @param metricRegistry       the registry to report throughput to
+     */
+    public ChecksumVerifierImpl(Executor executor, int parallelism, int bufferSize, PrecomputedChecksums precomputedChecksums, ChecksumCache checksumCache,
+        MetricRegistry metricRegistry) {
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.bufferSize = bufferSize;
+        this.precomputedChecksums = precomputedChecksums;
+        this.checksumCache = checksumCache;
+        this.bytesRead = metricRegistry.meter(MetricRegistry.name(ChecksumVerifierImpl.class, "bytes"));
+        this.filesVerified = metricRegistry.meter(MetricRegistry.name(ChecksumVerifierImpl.class, "files"));
+        this.verifications = metricRegistry.timer(MetricRegistry.name(ChecksumVerifierImpl.class, "verifications"));
+    }
+
+    @Override
+    public void verifyChecksums(Bag bag, BagValidationContext context) throws Exception {
+        var expectedChecksums = getExpectedChecksums(bag);
+        var payloadDir = bag.getRootDir().resolve("data");
+        log.debug("Verifying checksums of {} files in bag {}", expectedChecksums.size(), bag.getRootDir());
+
+        var completionService = new ExecutorCompletionService<Void>(executor);
+        var running = new HashSet<Future<Void>>();
+        var remaining = expectedChecksums.entrySet().iterator();
+
+        try (var ignored = verifications.time()) {
+            while (remaining.hasNext() || !running.isEmpty()) {
+                // keep the number of submitted files bounded, so a large bag does not monopolize the executor and a corrupt file stops the verification early
+                while (remaining.hasNext() && running.size() < parallelism) {
+                    context.throwIfCancelled();
+                    var entry = remaining.next();
+
+                    running.add(completionService.submit(() -> {
+                        verifyFile(entry.getKey(), entry.getValue(), entry.getKey().startsWith(payloadDir), context);
+                        return null;
+                    }));
+                }
+
+                var future = completionService.take();
+                running.remove(future);
+                getResult(future);
+            }
+        }
+        finally {
+            for (var future : running) {
+                future.cancel(true);
+            }
+
+            flushChecksumCache();
+        }
+    }
+
+    // the checksums that were computed before a failure are still valid; not being able to keep them should not change the result of the validation
+    private void flushChecksumCache() {
+        if (checksumCache == null) {
+            return;
+        }
+
+        try {
+            checksumCache.flush();
+        }
+        catch (IOException e) {
+            log.warn("Could not write the checksum cache", e);
+        }
+    }
+
+    // combines all payload and tag manifests, so that each file is only listed once with all of its checksums
+    private Map<Path, Map<SupportedAlgorithm, String>> getExpectedChecksums(Bag bag) {
+        var result = new LinkedHashMap<Path, Map<SupportedAlgorithm, String>>();
+        var manifests = new HashSet<Manifest>(bag.getPayLoadManifests());
+        manifests.addAll(bag.getTagManifests());
+
+        for (var manifest : manifests) {
+            for (var entry : manifest.getFileToChecksumMap().entrySet()) {
+                result.computeIfAbsent(entry.getKey(), k -> new LinkedHashMap<>())
+                    .put(manifest.getAlgorithm(), entry.getValue());
+            }
+        }
+
+        return result;
+    }
+
+    private void verifyFile(Path file, Map<SupportedAlgorithm, String> expectedChecksums, boolean isPayload, BagValidationContext context) throws Exception {
+        // the content of files that were streamed from a zip is not on disk, so they must not be read
+        var precomputed = precomputedChecksums.getChecksums(file);
+        var actualChecksums = precomputed.isPresent() ? precomputed.get() : getChecksums(file, expectedChecksums.keySet(), isPayload, context);
+
+        filesVerified.mark();
+
+        for (var entry : expectedChecksums.entrySet()) {
+            var algorithm = entry.getKey();
+            var expected = entry.getValue();
+            var actual = actualChecksums.get(algorithm);
+
+            if (actual == null) {
+                throw new IOException(String.format("No %s checksum was computed for file %s while it was streamed", algorithm.getBagitName(), file));
+            }
+
+            if (!actual.equalsIgnoreCase(expected)) {
+                throw new CorruptChecksumException(String.format(
+                    "File [%s] is supposed to have a [%s] hash of [%s] but was computed [%s].", file, algorithm.getBagitName(), expected, actual
+                ));
+            }
+        }
+    }
+
+    // only payload files are cached; tag files are small, and they are what changes when a bag is fixed
+    private Map<SupportedAlgorithm, String> getChecksums(Path file, Collection<SupportedAlgorithm> algorithms, boolean isPayload, BagValidationContext context) throws Exception {
+        if (checksumCache == null || !isPayload) {
+            return computeChecksums(file, algorithms, context);
+        }
+
+        var lookup = checksumCache.lookup(file, algorithms);
+        var cached = lookup.getChecksums();
+
+        if (cached.isPresent()) {
+            log.trace("Using cached checksums for file {}", file);
+            return cached.get();
+        }
+
+        var checksums = computeChecksums(file, algorithms, context);
+        lookup.store(checksums);
+        return checksums;
+    }
+
+    private Map<SupportedAlgorithm, String> computeChecksums(Path file, Collection<SupportedAlgorithm> algorithms, BagValidationContext context) throws Exception {
+        log.trace("Computing {} for file {}", algorithms, file);
+        var digest = new MultiDigest(algorithms);
+        var buffer = new byte[bufferSize];
+
+        try (var inputStream = Files.newInputStream(file)) {
+            int read;
+
+            while ((read = inputStream.read(buffer)) != -1) {
+                // hashing a large file can take minutes, so check between reads if the result is still needed
+                context.throwIfCancelled();
+                digest.update(buffer, 0, read);
+                bytesRead.mark(read);
+            }
+        }
+
+        return digest.getChecksums();
+    }
+
+    private void getResult(Future<Void> future) throws Exception {
+        try {
+            future.get();
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+
+            throw e;
+        }
+    }
+}
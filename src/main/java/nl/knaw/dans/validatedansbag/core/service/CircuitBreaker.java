@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Refuses calls to a remote service after a number of consecutive calls failed, so that callers fail fast instead of each waiting for their own timeout. After a while a single trial
+ * call is let through: if it succeeds, calls are allowed again, otherwise they are refused for another while.
+ */
+public class CircuitBreaker {
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private final Clock clock;
+    private State state = State.CLOSED;
+    private int failures;
+    private Instant openUntil = Instant.MIN;
+    private boolean trialInProgress;
+
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        this(failureThreshold, openDuration, Clock.systemUTC());
+    }
+
+    CircuitBreaker(int failureThreshold, Duration openDuration, Clock clock) {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns whether a call may be made now. Every call that is allowed must be followed by {@link #recordSuccess()}, {@link #recordFailure()} or {@link #release()}.
+     *
+     * @return true if the call may be made
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && !clock.instant().isBefore(openUntil)) {
+            state = State.HALF_OPEN;
+        }
+
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (trialInProgress) {
+                    return false;
+                }
+
+                trialInProgress = true;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+        trialInProgress = false;
+    }
+
+    public synchronized void recordFailure() {
+        failures += 1;
+        trialInProgress = false;
+
+        if (state == State.HALF_OPEN || failures >= failureThreshold) {
+            state = State.OPEN;
+            openUntil = clock.instant().plus(openDuration);
+        }
+    }
+
+    /**
+     * Ends a call whose outcome says nothing about the availability of the service. If it was the trial call, the next call becomes the trial call.
+     */
+    public synchronized void release() {
+        trialInProgress = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getFailures() {
+        return failures;
+    }
+
+    /**
+     * Returns how long calls are still refused; zero if they are not, or if only a trial call is in progress.
+     *
+     * @return the remaining time
+     */
+    public synchronized Duration getRetryAfter() {
+        var remaining = Duration.between(clock.instant(), openUntil);
+        return state == State.OPEN && !remaining.isNegative() ? remaining : Duration.ZERO;
+    }
+
+    public enum State {
+        // calls are allowed
+        CLOSED,
+        // calls are refused
+        OPEN,
+        // a single trial call is allowed, to find out if the service is available again
+        HALF_OPEN
+    }
+}
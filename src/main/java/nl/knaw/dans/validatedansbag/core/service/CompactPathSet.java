@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A set of relative paths that needs about half the memory of a {@link HashSet} of {@link Path} objects. The paths are stored as UTF-8 bytes, one after the other in a shared
+ * array, and found through an open-addressed hash table of entry numbers. {@link Path} objects are only created when the set is iterated.
+ *
+ * <p>Memory is bought with time: every lookup encodes the path, so {@link #contains} and {@link #difference} are slower than with a {@link HashSet}. See
+ * {@code CompactPathSetBenchmark}.</p>
+ *
+ * <p>Paths cannot be removed. The set is not thread-safe.</p>
+ */
+class CompactPathSet extends AbstractSet<Path> {
+    private static final int EMPTY = -1;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private byte[] bytes = new byte[1024];
+    // entry i is stored in bytes[starts[i]] up to bytes[starts[i + 1]]
+    private int[] starts = new int[17];
+    private int[] hashes = new int[16];
+    private int[] slots = newSlots(16);
+    private int size;
+
+    @Override
+    public boolean add(Path path) {
+        return add(encode(path));
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Path)) {
+            return false;
+        }
+
+        var key = encode((Path) o);
+        return slots[findSlot(key, 0, key.length, hash(key, 0, key.length))] != EMPTY;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<Path> iterator() {
+        return new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Path next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+
+                return get(next++);
+            }
+        };
+    }
+
+    /**
+     * Returns the paths in this set that are not in the other set. The stored bytes are compared directly, so only the paths in the result are turned into {@link Path} objects.
+     *
+     * @param other the paths to leave out
+     * @return a new set with the difference
+     */
+    Set<Path> difference(CompactPathSet other) {
+        var result = new HashSet<Path>();
+
+        for (var i = 0; i < size; ++i) {
+            if (other.slots[other.findSlot(bytes, starts[i], starts[i + 1], hashes[i])] == EMPTY) {
+                result.add(get(i));
+            }
+        }
+
+        return result;
+    }
+
+    private boolean add(byte[] key) {
+        var hash = hash(key, 0, key.length);
+        var slot = findSlot(key, 0, key.length, hash);
+
+        if (slots[slot] != EMPTY) {
+            return false;
+        }
+
+        // growing by half instead of doubling keeps the unused part of the arrays smaller
+        if (size == hashes.length) {
+            hashes = Arrays.copyOf(hashes, grow(size, size + 1));
+            starts = Arrays.copyOf(starts, hashes.length + 1);
+        }
+
+        var start = starts[size];
+
+        if (start + key.length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, grow(bytes.length, start + key.length));
+        }
+
+        System.arraycopy(key, 0, bytes, start, key.length);
+        hashes[size] = hash;
+        starts[size + 1] = start + key.length;
+        slots[slot] = size;
+        size += 1;
+
+        if (size > slots.length * LOAD_FACTOR) {
+            rehash();
+        }
+
+        return true;
+    }
+
+    private int findSlot(byte[] key, int from, int to, int hash) {
+        var mask = slots.length - 1;
+
+        for (var slot = hash & mask; ; slot = (slot + 1) & mask) {
+            var entry = slots[slot];
+
+            if (entry == EMPTY || hashes[entry] == hash && Arrays.equals(bytes, starts[entry], starts[entry + 1], key, from, to)) {
+                return slot;
+            }
+        }
+    }
+
+    private void rehash() {
+        slots = newSlots(slots.length * 2);
+        var mask = slots.length - 1;
+
+        for (var entry = 0; entry < size; ++entry) {
+            var slot = hashes[entry] & mask;
+
+            while (slots[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+
+            slots[slot] = entry;
+        }
+    }
+
+    private Path get(int entry) {
+        return Path.of(new String(bytes, starts[entry], starts[entry + 1] - starts[entry], StandardCharsets.UTF_8));
+    }
+
+    private static byte[] encode(Path path) {
+        return path.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int hash(byte[] key, int from, int to) {
+        var hash = 1;
+
+        for (var i = from; i < to; ++i) {
+            hash = 31 * hash + key[i];
+        }
+
+        // paths often differ only in their last characters, so spread those over the bits that select the slot
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int grow(int length, int minimum) {
+        return Math.max(length + (length >> 1), minimum);
+    }
+
+    private static int[] newSlots(int length) {
+        var slots = new int[length];
+        Arrays.fill(slots, EMPTY);
+        return slots;
+    }
+}
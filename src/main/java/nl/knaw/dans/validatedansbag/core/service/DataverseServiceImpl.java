@@ -25,6 +25,9 @@ import nl.knaw.dans.lib.dataverse.model.dataset.DatasetLatestVersion;
 import nl.knaw.dans.lib.dataverse.model.search.SearchItemType;
 import nl.knaw.dans.lib.dataverse.model.search.SearchResult;
 import nl.knaw.dans.validatedansbag.core.config.DataverseConfig;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.HttpClients;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,15 +45,32 @@ public class DataverseServiceImpl implements DataverseService {
         this.dataverseConfig = dataverseConfig;
     }
 
-    public DataverseClient getDataverseClient() {
+    // the rules of a validation are executed concurrently, so they may ask for the client at the same time
+    public synchronized DataverseClient getDataverseClient() {
         if (this.dataverseClient == null) {
             var config = new DataverseClientConfig(URI.create(dataverseConfig.getBaseUrl()), dataverseConfig.getApiToken());
-            this.dataverseClient = new DataverseClient(config);
+            // null makes the client use its own object mapper, which knows how to read the polymorphic parts of the responses
+            this.dataverseClient = new DataverseClient(config, createHttpClient(), null);
         }
 
         return dataverseClient;
     }
 
+    // without timeouts, a Dataverse that does not respond keeps the validation threads waiting forever
+    private HttpClient createHttpClient() {
+        var requestConfig = RequestConfig.custom()
+            .setConnectTimeout((int) dataverseConfig.getConnectTimeout().toMilliseconds())
+            .setConnectionRequestTimeout((int) dataverseConfig.getConnectTimeout().toMilliseconds())
+            .setSocketTimeout((int) dataverseConfig.getReadTimeout().toMilliseconds())
+            .build();
+
+        return HttpClients.custom()
+            .setDefaultRequestConfig(requestConfig)
+            .setMaxConnTotal(dataverseConfig.getMaxConnections())
+            .setMaxConnPerRoute(dataverseConfig.getMaxConnections())
+            .build();
+    }
+
     DataverseResponse<SearchResult> searchDataset(String query) throws IOException, DataverseException {
         var client = this.getDataverseClient();
         var options = new SearchOptions();
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import nl.knaw.dans.validatedansbag.core.engine.BagValidationContext;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Reads the values that the dataset.xml rules check in a single streaming pass over the file, without building a DOM.
+ */
+public interface DdmReader {
+
+    DdmSummary read(Path path) throws IOException, XMLStreamException;
+
+    /**
+     * Reads the file at most once per validation. The returned summary is shared by all rules using the same context.
+     *
+     * @param path    the dataset.xml file to read
+     * @param context the context of the current validation
+     * @return the values found in the file
+     * @throws Exception if the file could not be read or parsed
+     */
+    default DdmSummary read(Path path, BagValidationContext context) throws Exception {
+        return context.computeIfAbsent(context.getKey("ddm", path), () -> read(path));
+    }
+
+    /**
+     * Creates a handler that collects a summary from the events of a dataset.xml that is read elsewhere, for example while it is validated against its schema.
+     *
+     * @return a new handler
+     */
+    Handler newHandler();
+
+    /**
+     * Makes a summary that was collected by a handler available to {@link #read(Path, BagValidationContext)} for the rest of the validation, unless the file has been read already.
+     *
+     * @param path    the dataset.xml file the summary was collected from
+     * @param summary the summary
+     * @param context the context of the current validation
+     * @throws Exception if the file was read before and that failed
+     */
+    default void share(Path path, DdmSummary summary, BagValidationContext context) throws Exception {
+        context.computeIfAbsent(context.getKey("ddm", path), () -> summary);
+    }
+
+    interface Handler extends XmlStreamHandler {
+
+        /**
+         * @return the collected summary, or null if the end of the document has not been reached
+         */
+        DdmSummary getSummary();
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static nl.knaw.dans.validatedansbag.core.service.XmlReader.NAMESPACE_DCTERMS;
+import static nl.knaw.dans.validatedansbag.core.service.XmlReader.NAMESPACE_DCX_DAI;
+import static nl.knaw.dans.validatedansbag.core.service.XmlReader.NAMESPACE_DCX_GML;
+import static nl.knaw.dans.validatedansbag.core.service.XmlReader.NAMESPACE_DDM;
+import static nl.knaw.dans.validatedansbag.core.service.XmlReader.NAMESPACE_OPEN_GIS;
+import static nl.knaw.dans.validatedansbag.core.service.XmlReader.NAMESPACE_XSI;
+
+/**
+ * Walks dataset.xml once with StAX and collects the values of the elements and attributes that the rules check. Only these values are kept, so the memory used does not depend on the
+ * size of the rest of the file. The values are the same as those selected by the XPath expressions that the rules used before, in the same order.
+ */
+public class DdmReaderImpl implements DdmReader {
+    // attributes that mark an element whose text must be a URI, in the order in which the values are reported
+    static final List<UriMarker> URI_MARKERS = List.of(
+        new UriMarker(NAMESPACE_XSI, "type", "dcterms:URI"),
+        new UriMarker(NAMESPACE_XSI, "type", "dcterms:URL"),
+        new UriMarker(NAMESPACE_XSI, "type", "URI"),
+        new UriMarker(NAMESPACE_XSI, "type", "URL"),
+        new UriMarker(XMLConstants.NULL_NS_URI, "scheme", "dcterms:URI"),
+        new UriMarker(XMLConstants.NULL_NS_URI, "scheme", "dcterms:URL"),
+        new UriMarker(XMLConstants.NULL_NS_URI, "scheme", "URI"),
+        new UriMarker(XMLConstants.NULL_NS_URI, "scheme", "URL")
+    );
+
+    private static final QName DCMI_METADATA = new QName(NAMESPACE_DDM, "dcmiMetadata");
+    private static final QName SUBJECT = new QName(NAMESPACE_DDM, "subject");
+    private static final QName LICENSE = new QName(NAMESPACE_DCTERMS, "license");
+    private static final QName IDENTIFIER = new QName(NAMESPACE_DCTERMS, "identifier");
+    private static final QName RIGHTS_HOLDER = new QName(NAMESPACE_DCTERMS, "rightsHolder");
+    private static final QName DAI = new QName(NAMESPACE_DCX_DAI, "DAI");
+    private static final QName ISNI = new QName(NAMESPACE_DCX_DAI, "ISNI");
+    private static final QName ORCID = new QName(NAMESPACE_DCX_DAI, "ORCID");
+    private static final QName AUTHOR = new QName(NAMESPACE_DCX_DAI, "author");
+    private static final QName ROLE = new QName(NAMESPACE_DCX_DAI, "role");
+    private static final QName SPATIAL = new QName(NAMESPACE_DCX_GML, "spatial");
+    private static final QName POS_LIST = new QName(NAMESPACE_OPEN_GIS, "posList");
+    private static final QName MULTI_SURFACE = new QName(NAMESPACE_OPEN_GIS, "MultiSurface");
+    private static final QName POLYGON = new QName(NAMESPACE_OPEN_GIS, "Polygon");
+    private static final Set<QName> POINTS = Set.of(
+        new QName(NAMESPACE_OPEN_GIS, "Point"),
+        new QName(NAMESPACE_OPEN_GIS, "lowerCorner"),
+        new QName(NAMESPACE_OPEN_GIS, "upperCorner")
+    );
+
+    // XMLInputFactory is not guaranteed to be thread-safe, so each thread has its own
+    private final ThreadLocal<XMLInputFactory> inputFactories = ThreadLocal.withInitial(DdmReaderImpl::createInputFactory);
+
+    @Override
+    public DdmSummary read(Path path) throws IOException, XMLStreamException {
+        try (var inputStream = Files.newInputStream(path)) {
+            return read(new DoctypeRejectingStreamReader(inputFactories.get().createXMLStreamReader(path.toString(), inputStream)));
+        }
+    }
+
+    public DdmSummary readString(String str) throws XMLStreamException {
+        return read(new DoctypeRejectingStreamReader(inputFactories.get().createXMLStreamReader(new StringReader(str))));
+    }
+
+    @Override
+    public Handler newHandler() {
+        return new Walker();
+    }
+
+    private DdmSummary read(XMLStreamReader reader) throws XMLStreamException {
+        try {
+            var walker = new Walker();
+
+            while (reader.hasNext()) {
+                reader.next();
+                walker.handleEvent(reader);
+            }
+
+            return walker.getSummary();
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        var factory = XMLInputFactory.newFactory();
+        // same restrictions as for the DOM parser in XmlReaderImpl
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    static class UriMarker {
+        private final String namespace;
+        private final String localName;
+        private final String value;
+
+        UriMarker(String namespace, String localName, String value) {
+            this.namespace = namespace;
+            this.localName = localName;
+            this.value = value;
+        }
+    }
+
+    private static class Frame {
+        private final QName name;
+        private final String srsName;
+        private final List<Capture> captures = new ArrayList<>(1);
+
+        Frame(QName name, String srsName) {
+            this.name = name;
+            this.srsName = srsName;
+        }
+    }
+
+    // collects the text content of an element, including that of its descendants
+    private static class Capture {
+        private final StringBuilder text = new StringBuilder();
+        private final Consumer<String> onEnd;
+
+        Capture(Consumer<String> onEnd) {
+            this.onEnd = onEnd;
+        }
+    }
+
+    private static class Walker implements Handler {
+        private final DdmSummary summary = new DdmSummary();
+        private final Deque<Frame> frames = new ArrayDeque<>();
+        private final List<Capture> activeCaptures = new ArrayList<>();
+        private final Deque<Set<String>> multiSurfaces = new ArrayDeque<>();
+        private int dcmiMetadataDepth;
+        private int spatialDepth;
+        private boolean complete;
+        // the reader that delivered the current event
+        private XMLStreamReader reader;
+
+        Walker() {
+            for (var ignored : URI_MARKERS) {
+                summary.uriElementValues.add(new ArrayList<>());
+            }
+        }
+
+        @Override
+        public void handleEvent(XMLStreamReader reader) {
+            this.reader = reader;
+
+            switch (reader.getEventType()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    startElement();
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    endElement();
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    for (var capture : activeCaptures) {
+                        capture.text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    }
+                    break;
+                case XMLStreamConstants.END_DOCUMENT:
+                    complete = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public DdmSummary getSummary() {
+            return complete ? summary : null;
+        }
+
+        private void startElement() {
+            var name = reader.getName();
+            var parent = frames.peek();
+            var frame = new Frame(name, getUnqualifiedAttribute("srsName"));
+            var xsiType = reader.getAttributeValue(NAMESPACE_XSI, "type");
+
+            if (parent == null) {
+                startRootElement();
+            }
+
+            if (LICENSE.equals(name) && parent != null && DCMI_METADATA.equals(parent.name) && xsiType != null) {
+                var index = reserve(summary.licenses);
+                capture(frame, text -> summary.licenses.set(index, new DdmSummary.License(text, xsiType)));
+            }
+            else if (IDENTIFIER.equals(name) && "id-type:DOI".equals(xsiType)) {
+                captureInto(frame, summary.doiIdentifiers);
+            }
+            else if (IDENTIFIER.equals(name) && "id-type:ARCHIS-ZAAK-IDENTIFICATIE".equals(xsiType)) {
+                captureInto(frame, summary.archisIdentifiers);
+            }
+            else if (DAI.equals(name)) {
+                captureInto(frame, summary.dais);
+            }
+            else if (ISNI.equals(name)) {
+                captureInto(frame, summary.isnis);
+            }
+            else if (ORCID.equals(name)) {
+                captureInto(frame, summary.orcids);
+            }
+            else if (POS_LIST.equals(name) && spatialDepth > 0) {
+                captureInto(frame, summary.posLists);
+            }
+            else if (POINTS.contains(name)) {
+                var parentSrsName = parent == null ? null : parent.srsName;
+                var index = reserve(summary.points);
+                capture(frame, text -> summary.points.set(index, new DdmSummary.Point(text, parentSrsName)));
+            }
+            else if (RIGHTS_HOLDER.equals(name) && dcmiMetadataDepth > 0) {
+                captureInto(frame, summary.rightsHolders);
+            }
+            else if (ROLE.equals(name) && parent != null && AUTHOR.equals(parent.name)) {
+                captureInto(frame, summary.authorRoles);
+            }
+
+            if (DCMI_METADATA.equals(name)) {
+                dcmiMetadataDepth += 1;
+            }
+            else if (SPATIAL.equals(name)) {
+                spatialDepth += 1;
+            }
+            else if (MULTI_SURFACE.equals(name)) {
+                var srsNames = new HashSet<String>();
+                summary.multiSurfaceSrsNames.add(srsNames);
+                multiSurfaces.push(srsNames);
+            }
+            else if (POLYGON.equals(name) && frame.srsName != null) {
+                // a polygon counts for every MultiSurface it is in
+                for (var srsNames : multiSurfaces) {
+                    srsNames.add(frame.srsName);
+                }
+            }
+            else if (SUBJECT.equals(name)) {
+                addIfNotNull(summary.subjectSchemeUris, getUnqualifiedAttribute("schemeURI"));
+                addIfNotNull(summary.subjectValueUris, getUnqualifiedAttribute("valueURI"));
+            }
+
+            for (var i = 0; i < URI_MARKERS.size(); ++i) {
+                var marker = URI_MARKERS.get(i);
+
+                if (marker.value.equals(getAttribute(marker.namespace, marker.localName))) {
+                    captureInto(frame, summary.uriElementValues.get(i));
+                }
+            }
+
+            frames.push(frame);
+        }
+
+        private void startRootElement() {
+            addIfNotNull(summary.rootHrefs, getUnqualifiedAttribute("href"));
+
+            // like Node.lookupPrefix, the prefix of the element itself comes first, then the declared prefixes in alphabetical order
+            var name = reader.getName();
+
+            if (NAMESPACE_DCTERMS.equals(name.getNamespaceURI()) && !name.getPrefix().isEmpty()) {
+                summary.dctermsPrefix = name.getPrefix();
+                return;
+            }
+
+            for (var i = 0; i < reader.getNamespaceCount(); ++i) {
+                var prefix = reader.getNamespacePrefix(i);
+
+                if (prefix != null && !prefix.isEmpty() && NAMESPACE_DCTERMS.equals(reader.getNamespaceURI(i))
+                    && (summary.dctermsPrefix == null || prefix.compareTo(summary.dctermsPrefix) < 0)) {
+                    summary.dctermsPrefix = prefix;
+                }
+            }
+        }
+
+        private void endElement() {
+            var frame = frames.pop();
+
+            for (var capture : frame.captures) {
+                activeCaptures.remove(capture);
+                capture.onEnd.accept(capture.text.toString());
+            }
+
+            if (DCMI_METADATA.equals(frame.name)) {
+                dcmiMetadataDepth -= 1;
+            }
+            else if (SPATIAL.equals(frame.name)) {
+                spatialDepth -= 1;
+            }
+            else if (MULTI_SURFACE.equals(frame.name)) {
+                multiSurfaces.pop();
+            }
+        }
+
+        // values are added when the element starts, so they are in document order even if the elements are nested
+        private <T> int reserve(List<T> values) {
+            values.add(null);
+            return values.size() - 1;
+        }
+
+        private void captureInto(Frame frame, List<String> values) {
+            var index = reserve(values);
+            capture(frame, text -> values.set(index, text));
+        }
+
+        private void capture(Frame frame, Consumer<String> onEnd) {
+            var capture = new Capture(onEnd);
+            frame.captures.add(capture);
+            activeCaptures.add(capture);
+        }
+
+        // an attribute without a namespace, which is what XPath selects with @name
+        private String getUnqualifiedAttribute(String localName) {
+            return getAttribute(XMLConstants.NULL_NS_URI, localName);
+        }
+
+        private String getAttribute(String namespace, String localName) {
+            for (var i = 0; i < reader.getAttributeCount(); ++i) {
+                var attributeNamespace = reader.getAttributeNamespace(i);
+
+                if (namespace.equals(attributeNamespace == null ? XMLConstants.NULL_NS_URI : attributeNamespace) && localName.equals(reader.getAttributeLocalName(i))) {
+                    return reader.getAttributeValue(i);
+                }
+            }
+
+            return null;
+        }
+
+        private void addIfNotNull(List<String> values, String value) {
+            if (value != null) {
+                values.add(value);
+            }
+        }
+    }
+}
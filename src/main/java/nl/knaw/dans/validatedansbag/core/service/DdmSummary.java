@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The values in dataset.xml that the rules check, in document order. Text values are the complete text content of the element, including whitespace, as with
+ * {@link org.w3c.dom.Node#getTextContent()}.
+ */
+public class DdmSummary {
+    // the prefix that the root element binds to the dcterms namespace, as with Document.lookupPrefix
+    String dctermsPrefix;
+    final List<License> licenses = new ArrayList<>();
+    final List<String> doiIdentifiers = new ArrayList<>();
+    final List<String> archisIdentifiers = new ArrayList<>();
+    final List<String> dais = new ArrayList<>();
+    final List<String> isnis = new ArrayList<>();
+    final List<String> orcids = new ArrayList<>();
+    final List<String> posLists = new ArrayList<>();
+    final List<Set<String>> multiSurfaceSrsNames = new ArrayList<>();
+    final List<Point> points = new ArrayList<>();
+    final List<String> rootHrefs = new ArrayList<>();
+    final List<String> subjectSchemeUris = new ArrayList<>();
+    final List<String> subjectValueUris = new ArrayList<>();
+    // one list per attribute value that marks an element as containing a URI; see DdmReaderImpl.URI_MARKERS
+    final List<List<String>> uriElementValues = new ArrayList<>();
+    final List<String> rightsHolders = new ArrayList<>();
+    final List<String> authorRoles = new ArrayList<>();
+
+    public String getDctermsPrefix() {
+        return dctermsPrefix;
+    }
+
+    /**
+     * @return the ddm:dcmiMetadata/dcterms:license elements that have an xsi:type attribute
+     */
+    public List<License> getLicenses() {
+        return Collections.unmodifiableList(licenses);
+    }
+
+    public List<String> getDoiIdentifiers() {
+        return Collections.unmodifiableList(doiIdentifiers);
+    }
+
+    public List<String> getArchisIdentifiers() {
+        return Collections.unmodifiableList(archisIdentifiers);
+    }
+
+    public List<String> getDais() {
+        return Collections.unmodifiableList(dais);
+    }
+
+    public List<String> getIsnis() {
+        return Collections.unmodifiableList(isnis);
+    }
+
+    public List<String> getOrcids() {
+        return Collections.unmodifiableList(orcids);
+    }
+
+    /**
+     * @return the gml:posList elements inside a dcx-gml:spatial element
+     */
+    public List<String> getPosLists() {
+        return Collections.unmodifiableList(posLists);
+    }
+
+    /**
+     * @return for each gml:MultiSurface, the distinct srsName attributes of the gml:Polygon elements in it
+     */
+    public List<Set<String>> getMultiSurfaceSrsNames() {
+        return Collections.unmodifiableList(multiSurfaceSrsNames);
+    }
+
+    /**
+     * @return the gml:Point, gml:lowerCorner and gml:upperCorner elements
+     */
+    public List<Point> getPoints() {
+        return Collections.unmodifiableList(points);
+    }
+
+    /**
+     * @return the values that must be URLs: the href attribute of the root element, the schemeURI and valueURI attributes of ddm:subject, and the elements that are marked as URI or URL
+     */
+    public List<String> getUrls() {
+        var result = new ArrayList<String>(rootHrefs);
+        result.addAll(subjectSchemeUris);
+        result.addAll(subjectValueUris);
+
+        for (var values : uriElementValues) {
+            result.addAll(values);
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the dcterms:rightsHolder elements inside ddm:dcmiMetadata
+     */
+    public List<String> getRightsHolders() {
+        return Collections.unmodifiableList(rightsHolders);
+    }
+
+    /**
+     * @return the dcx-dai:role elements of dcx-dai:author elements
+     */
+    public List<String> getAuthorRoles() {
+        return Collections.unmodifiableList(authorRoles);
+    }
+
+    public static class License {
+        private final String text;
+        private final String xsiType;
+
+        public License(String text, String xsiType) {
+            this.text = text;
+            this.xsiType = xsiType;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public String getXsiType() {
+            return xsiType;
+        }
+    }
+
+    public static class Point {
+        private final String text;
+        // the srsName attribute of the parent element, or null
+        private final String parentSrsName;
+
+        public Point(String text, String parentSrsName) {
+            this.text = text;
+            this.parentSrsName = parentSrsName;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public String getParentSrsName() {
+            return parentSrsName;
+        }
+    }
+}
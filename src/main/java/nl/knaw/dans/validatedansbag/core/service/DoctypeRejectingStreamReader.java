@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+
+/**
+ * Fails on a DOCTYPE declaration, like the DOM parser in {@link XmlReaderImpl} does with disallow-doctype-decl. Without this, a StAX reader with SUPPORT_DTD set to false would silently skip it.
+ */
+class DoctypeRejectingStreamReader extends StreamReaderDelegate {
+
+    DoctypeRejectingStreamReader(XMLStreamReader reader) {
+        super(reader);
+    }
+
+    @Override
+    public int next() throws XMLStreamException {
+        var event = super.next();
+
+        if (event == XMLStreamConstants.DTD) {
+            throw new XMLStreamException("DOCTYPE is disallowed", getLocation());
+        }
+
+        return event;
+    }
+}
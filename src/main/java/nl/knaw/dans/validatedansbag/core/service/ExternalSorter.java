@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts more strings than fit in memory. Strings are collected in chunks of a fixed size; every full chunk is sorted and written to a spill file, and the spill files are merged while the
+ * sorted strings are read. Closing the sorter deletes the spill files.
+ */
+class ExternalSorter implements Closeable {
+    private final Path spillDirectory;
+    private final int chunkSize;
+    private final List<String> chunk = new ArrayList<>();
+    private final List<Run> runs = new ArrayList<>();
+
+    ExternalSorter(Path spillDirectory, int chunkSize) {
+        this.spillDirectory = spillDirectory;
+        this.chunkSize = chunkSize;
+    }
+
+    void add(String value) throws IOException {
+        chunk.add(value);
+
+        if (chunk.size() >= chunkSize) {
+            spill();
+        }
+    }
+
+    /**
+     * Returns all strings that were added, in their natural order and including duplicates. Can only be called once, after the last string was added.
+     *
+     * @return the sorted strings; reading a spill file may throw an {@link UncheckedIOException}
+     * @throws IOException if a spill file could not be opened
+     */
+    Iterator<String> sorted() throws IOException {
+        Collections.sort(chunk);
+
+        var heads = new PriorityQueue<Head>(Comparator.comparing(h -> h.value));
+
+        for (var run : runs) {
+            run.open();
+            addHead(heads, run);
+        }
+
+        addHead(heads, chunk.iterator());
+
+        return new Iterator<>() {
+
+            @Override
+            public boolean hasNext() {
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public String next() {
+                var head = heads.poll();
+
+                if (head == null) {
+                    throw new NoSuchElementException();
+                }
+
+                addHead(heads, head.source);
+                return head.value;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException exception = null;
+
+        for (var run : runs) {
+            try {
+                run.close();
+            }
+            catch (IOException e) {
+                exception = e;
+            }
+        }
+
+        runs.clear();
+        chunk.clear();
+
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private void spill() throws IOException {
+        Collections.sort(chunk);
+
+        var run = new Run(Files.createTempFile(spillDirectory, "reconciliation-", ".run"), chunk.size());
+        runs.add(run);
+
+        // writeUTF keeps line breaks and any other character in a path intact
+        try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run.file)))) {
+            for (var value : chunk) {
+                output.writeUTF(value);
+            }
+        }
+
+        chunk.clear();
+    }
+
+    private static void addHead(PriorityQueue<Head> heads, Iterator<String> source) {
+        if (source.hasNext()) {
+            heads.add(new Head(source.next(), source));
+        }
+    }
+
+    private static class Head {
+        private final String value;
+        private final Iterator<String> source;
+
+        Head(String value, Iterator<String> source) {
+            this.value = value;
+            this.source = source;
+        }
+    }
+
+    private static class Run implements Iterator<String>, Closeable {
+        private final Path file;
+        private int remaining;
+        private DataInputStream input;
+
+        Run(Path file, int size) {
+            this.file = file;
+            this.remaining = size;
+        }
+
+        void open() throws IOException {
+            input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public String next() {
+            if (remaining == 0) {
+                throw new NoSuchElementException();
+            }
+
+            try {
+                remaining -= 1;
+                return input.readUTF();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (input != null) {
+                    input.close();
+                }
+            }
+            finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The entries below a directory, as found by a single walk over it. Entries are kept as sorted strings relative to the root, which takes far less memory than a Path per entry and
+ * makes the entries below any subdirectory a contiguous range that is found with a binary search.
+ */
+public class FileIndex {
+    private final Path root;
+    private final String separator;
+    private final String[] files;
+    // directories and anything else that is not a regular file
+    private final String[] others;
+
+    FileIndex(Path root, Collection<String> files, Collection<String> others) {
+        this.root = root;
+        this.separator = root.getFileSystem().getSeparator();
+        this.files = files.stream().sorted().toArray(String[]::new);
+        this.others = others.stream().sorted().toArray(String[]::new);
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    public int getFileCount() {
+        return files.length;
+    }
+
+    /**
+     * Returns the regular files below the given directory, like {@link FileService#getAllFiles(Path)}.
+     *
+     * @param dir the root or a directory below it; for a file, only that file is returned
+     * @return the files, resolved against the root
+     * @throws NoSuchFileException if dir is not a directory in this index
+     */
+    public List<Path> getFiles(Path dir) throws NoSuchFileException {
+        if (isFile(dir)) {
+            return List.of(dir);
+        }
+
+        var prefix = getPrefix(dir);
+        var result = new ArrayList<Path>();
+        addEntries(files, prefix, result);
+        return result;
+    }
+
+    /**
+     * Returns the given directory and all files and directories below it, like {@link FileService#getAllFilesAndDirectories(Path)}.
+     *
+     * @param dir the root or a directory below it; for a file, only that file is returned
+     * @return the entries, resolved against the root
+     * @throws NoSuchFileException if dir is not a directory in this index
+     */
+    public List<Path> getFilesAndDirectories(Path dir) throws NoSuchFileException {
+        if (isFile(dir)) {
+            return List.of(dir);
+        }
+
+        var prefix = getPrefix(dir);
+        var result = new ArrayList<Path>();
+        result.add(dir);
+        addEntries(others, prefix, result);
+        addEntries(files, prefix, result);
+        return result;
+    }
+
+    /**
+     * Returns the regular files below the given directory as paths relative to the root, in the natural order of {@link String}. The list is a view on the index, so nothing is copied,
+     * not even for a directory with millions of files.
+     *
+     * @param dir the root or a directory below it; for a file, only that file is returned
+     * @return the sorted relative paths of the files
+     * @throws NoSuchFileException if dir is not a directory in this index
+     */
+    public List<String> getRelativeFiles(Path dir) throws NoSuchFileException {
+        if (isFile(dir)) {
+            return List.of(getRelativePath(dir));
+        }
+
+        var prefix = getPrefix(dir);
+        var start = getStart(files, prefix);
+        var end = start;
+
+        while (end < files.length && files[end].startsWith(prefix)) {
+            ++end;
+        }
+
+        return Collections.unmodifiableList(Arrays.asList(files).subList(start, end));
+    }
+
+    private boolean isFile(Path path) {
+        return Arrays.binarySearch(files, getRelativePath(path)) >= 0;
+    }
+
+    private String getRelativePath(Path path) {
+        if (!path.startsWith(root)) {
+            throw new IllegalArgumentException(String.format("%s is not below %s", path, root));
+        }
+
+        return root.relativize(path).toString();
+    }
+
+    private String getPrefix(Path dir) throws NoSuchFileException {
+        var relative = getRelativePath(dir);
+
+        if (relative.isEmpty()) {
+            return "";
+        }
+
+        if (Arrays.binarySearch(others, relative) < 0) {
+            throw new NoSuchFileException(dir.toString());
+        }
+
+        return relative + separator;
+    }
+
+    private void addEntries(String[] entries, String prefix, List<Path> result) {
+        for (var i = getStart(entries, prefix); i < entries.length && entries[i].startsWith(prefix); ++i) {
+            result.add(root.resolve(entries[i]));
+        }
+    }
+
+    private int getStart(String[] entries, String prefix) {
+        // all entries that start with the prefix sort right after it
+        var index = Arrays.binarySearch(entries, prefix);
+        return index < 0 ? -index - 1 : index;
+    }
+}
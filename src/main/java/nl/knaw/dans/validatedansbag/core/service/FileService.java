@@ -15,6 +15,8 @@
  */
 package nl.knaw.dans.validatedansbag.core.service;
 
+import nl.knaw.dans.validatedansbag.core.engine.BagValidationContext;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.CharBuffer;
@@ -22,6 +24,7 @@ import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
 
 public interface FileService {
 
@@ -33,16 +36,78 @@ public interface FileService {
 
     List<Path> getAllFilesAndDirectories(Path path) throws IOException;
 
+    /**
+     * Walks the directory once and records all entries below it.
+     *
+     * @param path the directory to walk
+     * @return the index of the entries
+     * @throws IOException if the directory could not be walked
+     */
+    FileIndex indexFiles(Path path) throws IOException;
+
+    /**
+     * Walks the bag directory at most once per validation. The index is shared by all rules using the same context.
+     *
+     * @param context the context of the current validation
+     * @return the index of all entries in the bag
+     * @throws Exception if the bag directory could not be walked
+     */
+    default FileIndex indexFiles(BagValidationContext context) throws Exception {
+        return context.computeIfAbsent(context.getKey("files", context.getBagDir()), () -> indexFiles(context.getBagDir()));
+    }
+
+    /**
+     * Like {@link #getAllFiles(Path)}, but answered from the index of the bag if the path is inside the bag.
+     *
+     * @param path    the directory to list
+     * @param context the context of the current validation
+     * @return the regular files below the directory
+     * @throws Exception if the directory does not exist or could not be walked
+     */
+    default List<Path> getAllFiles(Path path, BagValidationContext context) throws Exception {
+        return path.startsWith(context.getBagDir()) ? indexFiles(context).getFiles(path) : getAllFiles(path);
+    }
+
+    /**
+     * Like {@link #getAllFilesAndDirectories(Path)}, but answered from the index of the bag if the path is inside the bag.
+     *
+     * @param path    the directory to list
+     * @param context the context of the current validation
+     * @return the directory itself and all entries below it
+     * @throws Exception if the directory does not exist or could not be walked
+     */
+    default List<Path> getAllFilesAndDirectories(Path path, BagValidationContext context) throws Exception {
+        return path.startsWith(context.getBagDir()) ? indexFiles(context).getFilesAndDirectories(path) : getAllFilesAndDirectories(path);
+    }
+
     byte[] readFileContents(Path path) throws IOException;
 
+    InputStream newInputStream(Path path) throws IOException;
+
     boolean exists(Path path);
     boolean isReadable(Path path);
 
     CharBuffer readFileContents(Path path, Charset charset) throws IOException;
 
+    /**
+     * Checks that a file is well-formed UTF-8. The file is read in chunks of a fixed size, so this works for files of any size without decoding them.
+     *
+     * @param path the file to check
+     * @return the byte offset of the first invalid sequence, or empty if the whole file is valid UTF-8
+     * @throws IOException if the file could not be read
+     */
+    OptionalLong findInvalidUtf8(Path path) throws IOException;
+
     Path extractZipFile(InputStream inputStream) throws IOException;
 
     void deleteDirectoryAndContents(Path path) throws IOException;
 
     Optional<Path> getFirstDirectory(Path path) throws IOException;
+
+    /**
+     * @param path the directory to list
+     * @return the directories directly below the directory, sorted by name
+     * @throws IOException if the directory could not be listed
+     */
+    List<Path> getDirectories(Path path) throws IOException;
 }
@@ -15,22 +15,61 @@
  */
 package nl.knaw.dans.validatedansbag.core.service;
 
+import gov.loc.repository.bagit.hash.StandardSupportedAlgorithms;
+import gov.loc.repository.bagit.hash.SupportedAlgorithm;
 import org.apache.commons.io.FileUtils;
 
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.stream.Collectors;
 import java.util.zip.ZipInputStream;
 
 public class FileServiceImpl implements FileService {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // null if the payload files in a zip are extracted like all other files
+    private final PrecomputedChecksums precomputedChecksums;
+
+    /**
+     * Creates a file service that extracts all files from a zip.
+     */
+    public FileServiceImpl() {
+        this.precomputedChecksums = null;
+    }
+
+    /**
+     * Creates a file service that does not extract the content of payload files from a zip. Instead, their checksums are computed while the zip is streamed and registered with
+     * precomputedChecksums, and an empty sparse file of the same size is created in their place. That way, all rules still see the complete bag, but the payload is read only once
+     * and hardly uses any temporary disk space.
+     * <p>
+     * The checksums are the only way to observe the content of such a file: reading it through this service fails with an IOException instead of returning zeros. Only the
+     * algorithms of the payload manifests that come before a payload file in the zip are computed, so a payload file that comes before all payload manifests is extracted as usual.
+     *
+     * @param precomputedChecksums where to register the checksums of the payload files
+     */
+    public FileServiceImpl(PrecomputedChecksums precomputedChecksums) {
+        this.precomputedChecksums = precomputedChecksums;
+    }
 
     @Override
     public boolean isDirectory(Path path) {
@@ -44,23 +83,59 @@ public class FileServiceImpl implements FileService {
 
     @Override
     public List<Path> getAllFiles(Path path) throws IOException {
-        try (var stream = Files.walk(path)) {
-            return stream.filter(Files::isRegularFile).collect(Collectors.toList());
-        }
+        return indexFiles(path).getFiles(path);
     }
 
     @Override
     public List<Path> getAllFilesAndDirectories(Path path) throws IOException {
-        try (var stream = Files.walk(path)) {
-            return stream.collect(Collectors.toList());
-        }
+        return indexFiles(path).getFilesAndDirectories(path);
+    }
+
+    @Override
+    public FileIndex indexFiles(Path path) throws IOException {
+        var files = new ArrayList<String>();
+        var others = new ArrayList<String>();
+
+        Files.walkFileTree(path, new SimpleFileVisitor<>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (!dir.equals(path)) {
+                    others.add(path.relativize(dir).toString());
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                // the attributes come with the directory listing; only a symbolic link needs another look, because a link to a regular file counts as a file
+                if (attrs.isRegularFile() || (attrs.isSymbolicLink() && Files.isRegularFile(file))) {
+                    files.add(path.relativize(file).toString());
+                }
+                else {
+                    others.add(path.relativize(file).toString());
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        return new FileIndex(path, files, others);
     }
 
     @Override
     public byte[] readFileContents(Path path) throws IOException {
+        checkContentWasExtracted(path);
         return Files.readAllBytes(path);
     }
 
+    @Override
+    public InputStream newInputStream(Path path) throws IOException {
+        checkContentWasExtracted(path);
+        return Files.newInputStream(path);
+    }
+
     @Override
     public boolean exists(Path path) {
         return Files.exists(path);
@@ -77,26 +152,66 @@ public class FileServiceImpl implements FileService {
         return charset.newDecoder().decode(ByteBuffer.wrap(contents));
     }
 
+    @Override
+    public OptionalLong findInvalidUtf8(Path path) throws IOException {
+        checkContentWasExtracted(path);
+        var validator = new Utf8Validator();
+        // one buffer for the whole file, so memory use does not depend on its size
+        var buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                if (!validator.update(buffer.array(), 0, buffer.position())) {
+                    break;
+                }
+
+                buffer.clear();
+            }
+        }
+
+        var offset = validator.finish();
+        return offset < 0 ? OptionalLong.empty() : OptionalLong.of(offset);
+    }
+
     @Override
     public Path extractZipFile(InputStream inputStream) throws IOException {
         var tempPath = Files.createTempDirectory("bag-");
+        // the algorithms of the payload manifests seen so far; the order of the entries in a zip is arbitrary
+        var manifestAlgorithms = new LinkedHashSet<SupportedAlgorithm>();
 
         try (var input = new ZipInputStream(inputStream)) {
             var entry = input.getNextEntry();
 
             while (entry != null) {
-                var targetPath = tempPath.resolve(entry.getName());
+                var targetPath = tempPath.resolve(entry.getName()).normalize();
+
+                if (!targetPath.startsWith(tempPath)) {
+                    throw new IOException(String.format("Zip entry '%s' points outside of the directory it is extracted to", entry.getName()));
+                }
+
+                // the zip must contain exactly one directory, which is the bag
+                var pathInZip = tempPath.relativize(targetPath);
 
                 if (entry.isDirectory()) {
                     Files.createDirectories(targetPath);
                 }
+                else if (precomputedChecksums != null && isPayloadFile(pathInZip) && !manifestAlgorithms.isEmpty()) {
+                    Files.createDirectories(targetPath.getParent());
+                    writeChecksumsAndSparseFile(input, targetPath, manifestAlgorithms);
+                }
                 else {
+                    Files.createDirectories(targetPath.getParent());
                     writeStreamToFile(input, targetPath);
+                    getPayloadManifestAlgorithm(pathInZip).ifPresent(manifestAlgorithms::add);
                 }
 
                 entry = input.getNextEntry();
             }
         }
+        catch (IOException | RuntimeException e) {
+            deleteDirectoryAndContents(tempPath);
+            throw e;
+        }
 
         return tempPath;
     }
@@ -104,6 +219,10 @@ public class FileServiceImpl implements FileService {
     @Override
     public void deleteDirectoryAndContents(Path path) throws IOException {
         FileUtils.deleteDirectory(path.toFile());
+
+        if (precomputedChecksums != null) {
+            precomputedChecksums.removeAll(path);
+        }
     }
 
     @Override
@@ -113,10 +232,17 @@ public class FileServiceImpl implements FileService {
         }
     }
 
+    @Override
+    public List<Path> getDirectories(Path path) throws IOException {
+        try (var s = Files.list(path)) {
+            return s.filter(this::isDirectory).sorted().collect(Collectors.toList());
+        }
+    }
+
     void writeStreamToFile(InputStream inputStream, Path target) throws IOException {
 
         try (var output = new FileOutputStream(target.toFile())) {
-            byte[] buf = new byte[8 * 1024];
+            byte[] buf = new byte[BUFFER_SIZE];
             var bytesRead = 0;
 
             while ((bytesRead = inputStream.read(buf)) != -1) {
@@ -125,4 +251,57 @@ public class FileServiceImpl implements FileService {
         }
 
     }
+
+    // computes the checksums of a payload file and writes a file of the same size without content, so that Payload-Oxum can still be verified
+    void writeChecksumsAndSparseFile(InputStream inputStream, Path target, Collection<SupportedAlgorithm> algorithms) throws IOException {
+        MultiDigest digest;
+
+        try {
+            digest = new MultiDigest(algorithms);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        var buffer = new byte[BUFFER_SIZE];
+        var size = 0L;
+        int read;
+
+        while ((read = inputStream.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+            size += read;
+        }
+
+        try (var file = new RandomAccessFile(target.toFile(), "rw")) {
+            file.setLength(size);
+        }
+
+        precomputedChecksums.putChecksums(target, digest.getChecksums());
+    }
+
+    // a rule that read the content of a payload file of an upload would silently see zeros
+    private void checkContentWasExtracted(Path path) throws IOException {
+        if (precomputedChecksums != null && precomputedChecksums.getChecksums(path).isPresent()) {
+            throw new IOException(String.format("The content of %s was not extracted from the zip; only its checksums are available", path));
+        }
+    }
+
+    // a manifest with an algorithm the BagIt library does not support is reported by the validation, so it is ignored here
+    private Optional<SupportedAlgorithm> getPayloadManifestAlgorithm(Path pathInZip) {
+        if (pathInZip.getNameCount() != 2) {
+            return Optional.empty();
+        }
+
+        var name = pathInZip.getFileName().toString();
+
+        return Arrays.stream(StandardSupportedAlgorithms.values())
+            .filter(algorithm -> name.equals("manifest-" + algorithm.getBagitName() + ".txt"))
+            .map(algorithm -> (SupportedAlgorithm) algorithm)
+            .findFirst();
+    }
+
+    // the path is relative to the root of the zip, so the first element is the bag directory
+    private boolean isPayloadFile(Path pathInZip) {
+        return pathInZip.getNameCount() > 2 && pathInZip.getName(1).toString().equals("data");
+    }
 }
@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import nl.knaw.dans.validatedansbag.core.engine.BagValidationContext;
+
+import java.nio.file.Path;
+
+/**
+ * Compares the payload with files.xml and original-filepaths.txt for all rules that check how they correspond.
+ */
+public interface FilesReconciler {
+
+    /**
+     * Reads the payload, files.xml and original-filepaths.txt and compares them, at most once per validation.
+     *
+     * @param bagDir  the bag directory
+     * @param context the context of the current validation
+     * @return the comparison, shared by all rules using the same context
+     * @throws Exception if files.xml could not be read or the payload could not be listed
+     */
+    FilesReconciliation reconcile(Path bagDir, BagValidationContext context) throws Exception;
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import nl.knaw.dans.validatedansbag.core.engine.BagValidationContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compares the paths in memory, or, for payloads with more files than a threshold, by sorting the paths into spill files and merging the sorted lists. The second way keeps the memory
+ * that is needed bounded, independent of the number of files, and reports the same differences.
+ */
+public class FilesReconcilerImpl implements FilesReconciler {
+    private static final Logger log = LoggerFactory.getLogger(FilesReconcilerImpl.class);
+
+    // separates the fields of a mapping in original-filepaths.txt; it cannot occur in a path and sorts before any other character, so mappings sort by original path first
+    private static final char FIELD_SEPARATOR = '\0';
+
+    private final FileService fileService;
+    private final OriginalFilepathsService originalFilepathsService;
+    private final FilesXmlService filesXmlService;
+    private final int externalMergeThreshold;
+    private final Path spillDirectory;
+    private final int sortChunkSize;
+
+    /**
+     * Creates a reconciler that always compares in memory.
+     */
+    public FilesReconcilerImpl(FileService fileService, OriginalFilepathsService originalFilepathsService, FilesXmlService filesXmlService) {
+        this(fileService, originalFilepathsService, filesXmlService, Integer.MAX_VALUE, null, 0);
+    }
+
+    /**
+     * @param externalMergeThreshold payloads with more files than this are compared with spill files
+     * @param spillDirectory         the directory for the spill files
+     * @param sortChunkSize          the number of paths that is sorted in memory before it is written to a spill file
+     */
+    public FilesReconcilerImpl(FileService fileService, OriginalFilepathsService originalFilepathsService, FilesXmlService filesXmlService, int externalMergeThreshold,
+        Path spillDirectory, int sortChunkSize) {
+        this.fileService = fileService;
+        this.originalFilepathsService = originalFilepathsService;
+        this.filesXmlService = filesXmlService;
+        this.externalMergeThreshold = externalMergeThreshold;
+        this.spillDirectory = spillDirectory;
+        this.sortChunkSize = sortChunkSize;
+    }
+
+    @Override
+    public FilesReconciliation reconcile(Path bagDir, BagValidationContext context) throws Exception {
+        return context.computeIfAbsent(context.getKey("files-reconciliation", bagDir), () -> compute(bagDir, context));
+    }
+
+    private FilesReconciliation compute(Path bagDir, BagValidationContext context) throws Exception {
+        // the index of the bag has the payload files sorted already, without creating a Path for each of them
+        if (externalMergeThreshold < Integer.MAX_VALUE && bagDir.equals(context.getBagDir())) {
+            var payloadFiles = fileService.indexFiles(context).getRelativeFiles(bagDir.resolve("data"));
+
+            if (payloadFiles.size() > externalMergeThreshold) {
+                log.info("Bag {} has {} payload files, comparing them with files.xml and original-filepaths.txt using spill files in {}", bagDir, payloadFiles.size(),
+                    spillDirectory);
+                return computeByMerging(bagDir, context, payloadFiles);
+            }
+        }
+
+        return computeInMemory(bagDir, context);
+    }
+
+    private FilesReconciliation computeInMemory(Path bagDir, BagValidationContext context) throws Exception {
+        // compact sets, because a Path object and a hash table node for every file are what makes large payloads expensive
+        var payloadFiles = new CompactPathSet();
+
+        for (var file : fileService.getAllFiles(bagDir.resolve("data"), context)) {
+            payloadFiles.add(bagDir.relativize(file));
+        }
+
+        log.trace("Paths that exist in the payload of {}: {}", bagDir, payloadFiles);
+
+        // original-filepaths.txt maps the paths in the payload to the paths that files.xml uses
+        var renamedFilepaths = new CompactPathSet();
+        var originalFilepaths = new CompactPathSet();
+        var originalToRenamed = new HashMap<Path, Path>();
+
+        for (var item : originalFilepathsService.getMapping(bagDir, context)) {
+            renamedFilepaths.add(item.getRenamedFilename());
+            originalFilepaths.add(item.getOriginalFilename());
+            originalToRenamed.put(item.getOriginalFilename(), item.getRenamedFilename());
+        }
+
+        var filesXmlPaths = new CompactPathSet();
+        var normalizedFilesXmlPaths = new CompactPathSet();
+        var duplicateFilesXmlPaths = new HashSet<Path>();
+        var mappedFilesXmlPaths = new CompactPathSet();
+
+        try (var paths = filesXmlService.readFilepaths(bagDir, context)) {
+            for (var iterator = paths.iterator(); iterator.hasNext(); ) {
+                var filePath = iterator.next();
+                var normalized = filePath.normalize();
+
+                filesXmlPaths.add(filePath);
+
+                if (!normalizedFilesXmlPaths.add(normalized)) {
+                    duplicateFilesXmlPaths.add(normalized);
+                }
+
+                mappedFilesXmlPaths.add(originalToRenamed.getOrDefault(normalized, normalized));
+            }
+        }
+
+        log.trace("Paths that are defined in files.xml: {}", mappedFilesXmlPaths);
+
+        var payloadFilesNotInFilesXml = payloadFiles.difference(mappedFilesXmlPaths);
+        var filesXmlPathsNotInPayload = mappedFilesXmlPaths.difference(payloadFiles);
+
+        log.debug("Payload files not in files.xml: {}; paths in files.xml not in the payload: {}", payloadFilesNotInFilesXml, filesXmlPathsNotInPayload);
+
+        if (!originalFilepathsService.exists(bagDir)) {
+            return new FilesReconciliation(duplicateFilesXmlPaths, payloadFilesNotInFilesXml, filesXmlPathsNotInPayload, Set.of(), Set.of(), Set.of(), Set.of());
+        }
+
+        return new FilesReconciliation(duplicateFilesXmlPaths, payloadFilesNotInFilesXml, filesXmlPathsNotInPayload,
+            payloadFiles.difference(renamedFilepaths), renamedFilepaths.difference(payloadFiles),
+            filesXmlPaths.difference(originalFilepaths), originalFilepaths.difference(filesXmlPaths));
+    }
+
+    private FilesReconciliation computeByMerging(Path bagDir, BagValidationContext context, List<String> payloadFiles) throws Exception {
+        try (var filesXmlPaths = new ExternalSorter(spillDirectory, sortChunkSize);
+            var normalizedFilesXmlPaths = new ExternalSorter(spillDirectory, sortChunkSize);
+            var mappedFilesXmlPaths = new ExternalSorter(spillDirectory, sortChunkSize);
+            var mappings = new ExternalSorter(spillDirectory, sortChunkSize);
+            var renamedFilepaths = new ExternalSorter(spillDirectory, sortChunkSize);
+            var originalFilepaths = new ExternalSorter(spillDirectory, sortChunkSize)) {
+
+            var sequence = 0L;
+
+            for (var item : originalFilepathsService.getMapping(bagDir, context)) {
+                var original = item.getOriginalFilename().toString();
+                var renamed = item.getRenamedFilename().toString();
+
+                // the sequence number makes the last mapping of an original path win, as it does in memory
+                mappings.add(original + FIELD_SEPARATOR + String.format("%019d", sequence++) + FIELD_SEPARATOR + renamed);
+                renamedFilepaths.add(renamed);
+                originalFilepaths.add(original);
+            }
+
+            try (var paths = filesXmlService.readFilepaths(bagDir, context)) {
+                for (var iterator = paths.iterator(); iterator.hasNext(); ) {
+                    var filePath = iterator.next();
+                    filesXmlPaths.add(filePath.toString());
+                    normalizedFilesXmlPaths.add(filePath.normalize().toString());
+                }
+            }
+
+            context.throwIfCancelled();
+
+            // a merge join of the normalized paths with the mappings, which finds the duplicates on the way
+            var duplicateFilesXmlPaths = new HashSet<Path>();
+            var mapping = mappings.sorted();
+            var nextMapping = next(mapping);
+            String previous = null;
+
+            for (var normalized = normalizedFilesXmlPaths.sorted(); normalized.hasNext(); ) {
+                var path = normalized.next();
+
+                if (path.equals(previous)) {
+                    duplicateFilesXmlPaths.add(Path.of(path));
+                    continue;
+                }
+
+                previous = path;
+                String renamed = null;
+
+                while (nextMapping != null && getOriginal(nextMapping).compareTo(path) <= 0) {
+                    if (getOriginal(nextMapping).equals(path)) {
+                        renamed = getRenamed(nextMapping);
+                    }
+
+                    nextMapping = next(mapping);
+                }
+
+                mappedFilesXmlPaths.add(renamed != null ? renamed : path);
+            }
+
+            context.throwIfCancelled();
+
+            var payloadFilesNotInFilesXml = new HashSet<Path>();
+            var filesXmlPathsNotInPayload = new HashSet<Path>();
+            difference(payloadFiles.iterator(), mappedFilesXmlPaths.sorted(), payloadFilesNotInFilesXml, filesXmlPathsNotInPayload);
+
+            log.debug("Payload files not in files.xml: {}; paths in files.xml not in the payload: {}", payloadFilesNotInFilesXml, filesXmlPathsNotInPayload);
+
+            if (!originalFilepathsService.exists(bagDir)) {
+                return new FilesReconciliation(duplicateFilesXmlPaths, payloadFilesNotInFilesXml, filesXmlPathsNotInPayload, Set.of(), Set.of(), Set.of(), Set.of());
+            }
+
+            var payloadFilesNotInOriginalFilepaths = new HashSet<Path>();
+            var renamedFilepathsNotInPayload = new HashSet<Path>();
+            difference(payloadFiles.iterator(), renamedFilepaths.sorted(), payloadFilesNotInOriginalFilepaths, renamedFilepathsNotInPayload);
+
+            var filesXmlPathsNotInOriginalFilepaths = new HashSet<Path>();
+            var originalFilepathsNotInFilesXml = new HashSet<Path>();
+            difference(filesXmlPaths.sorted(), originalFilepaths.sorted(), filesXmlPathsNotInOriginalFilepaths, originalFilepathsNotInFilesXml);
+
+            return new FilesReconciliation(duplicateFilesXmlPaths, payloadFilesNotInFilesXml, filesXmlPathsNotInPayload, payloadFilesNotInOriginalFilepaths,
+                renamedFilepathsNotInPayload, filesXmlPathsNotInOriginalFilepaths, originalFilepathsNotInFilesXml);
+        }
+    }
+
+    /**
+     * Merges two sorted lists of paths, which may contain duplicates, and collects the paths that occur in only one of them.
+     */
+    private static void difference(Iterator<String> a, Iterator<String> b, Set<Path> onlyInA, Set<Path> onlyInB) {
+        var nextA = next(a);
+        var nextB = next(b);
+
+        while (nextA != null || nextB != null) {
+            var comparison = nextA == null ? 1 : nextB == null ? -1 : nextA.compareTo(nextB);
+
+            if (comparison < 0) {
+                onlyInA.add(Path.of(nextA));
+                nextA = next(a);
+            }
+            else if (comparison > 0) {
+                onlyInB.add(Path.of(nextB));
+                nextB = next(b);
+            }
+            else {
+                var value = nextA;
+
+                while (value.equals(nextA)) {
+                    nextA = next(a);
+                }
+
+                while (value.equals(nextB)) {
+                    nextB = next(b);
+                }
+            }
+        }
+    }
+
+    private static String next(Iterator<String> iterator) {
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    private static String getOriginal(String mapping) {
+        return mapping.substring(0, mapping.indexOf(FIELD_SEPARATOR));
+    }
+
+    private static String getRenamed(String mapping) {
+        return mapping.substring(mapping.lastIndexOf(FIELD_SEPARATOR) + 1);
+    }
+}
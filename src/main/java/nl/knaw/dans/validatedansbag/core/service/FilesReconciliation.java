@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * The payload files on disk, the paths in files.xml and the paths in original-filepaths.txt of a bag, compared with each other. All paths are relative to the bag directory.
+ *
+ * <p>Only the differences are kept, not the complete lists of paths, because the lists can be very large while the differences of a valid bag are empty.</p>
+ */
+public class FilesReconciliation {
+    private final Set<Path> duplicateFilesXmlPaths;
+    private final Set<Path> payloadFilesNotInFilesXml;
+    private final Set<Path> filesXmlPathsNotInPayload;
+    private final Set<Path> payloadFilesNotInOriginalFilepaths;
+    private final Set<Path> renamedFilepathsNotInPayload;
+    private final Set<Path> filesXmlPathsNotInOriginalFilepaths;
+    private final Set<Path> originalFilepathsNotInFilesXml;
+
+    FilesReconciliation(Set<Path> duplicateFilesXmlPaths, Set<Path> payloadFilesNotInFilesXml, Set<Path> filesXmlPathsNotInPayload, Set<Path> payloadFilesNotInOriginalFilepaths,
+        Set<Path> renamedFilepathsNotInPayload, Set<Path> filesXmlPathsNotInOriginalFilepaths, Set<Path> originalFilepathsNotInFilesXml) {
+        this.duplicateFilesXmlPaths = duplicateFilesXmlPaths;
+        this.payloadFilesNotInFilesXml = payloadFilesNotInFilesXml;
+        this.filesXmlPathsNotInPayload = filesXmlPathsNotInPayload;
+        this.payloadFilesNotInOriginalFilepaths = payloadFilesNotInOriginalFilepaths;
+        this.renamedFilepathsNotInPayload = renamedFilepathsNotInPayload;
+        this.filesXmlPathsNotInOriginalFilepaths = filesXmlPathsNotInOriginalFilepaths;
+        this.originalFilepathsNotInFilesXml = originalFilepathsNotInFilesXml;
+    }
+
+    /**
+     * @return the normalized filepath attributes that occur more than once in files.xml
+     */
+    public Set<Path> getDuplicateFilesXmlPaths() {
+        return Collections.unmodifiableSet(duplicateFilesXmlPaths);
+    }
+
+    /**
+     * @return the payload files that no path in files.xml refers to, after mapping original file paths to the names in the payload
+     */
+    public Set<Path> getPayloadFilesNotInFilesXml() {
+        return Collections.unmodifiableSet(payloadFilesNotInFilesXml);
+    }
+
+    /**
+     * @return the (normalized and mapped) paths in files.xml that are not a payload file
+     */
+    public Set<Path> getFilesXmlPathsNotInPayload() {
+        return Collections.unmodifiableSet(filesXmlPathsNotInPayload);
+    }
+
+    // the differences with original-filepaths.txt are empty if the bag does not have that file
+
+    /**
+     * @return the payload files that are not a renamed path in original-filepaths.txt
+     */
+    public Set<Path> getPayloadFilesNotInOriginalFilepaths() {
+        return Collections.unmodifiableSet(payloadFilesNotInOriginalFilepaths);
+    }
+
+    /**
+     * @return the renamed paths in original-filepaths.txt that are not a payload file
+     */
+    public Set<Path> getRenamedFilepathsNotInPayload() {
+        return Collections.unmodifiableSet(renamedFilepathsNotInPayload);
+    }
+
+    /**
+     * @return the filepath attributes in files.xml, as written, that are not an original path in original-filepaths.txt
+     */
+    public Set<Path> getFilesXmlPathsNotInOriginalFilepaths() {
+        return Collections.unmodifiableSet(filesXmlPathsNotInOriginalFilepaths);
+    }
+
+    /**
+     * @return the original paths in original-filepaths.txt that are not a filepath attribute in files.xml
+     */
+    public Set<Path> getOriginalFilepathsNotInFilesXml() {
+        return Collections.unmodifiableSet(originalFilepathsNotInFilesXml);
+    }
+}
@@ -15,15 +15,12 @@
  */
 package nl.knaw.dans.validatedansbag.core.service;
 
-import org.xml.sax.SAXException;
+import nl.knaw.dans.validatedansbag.core.engine.BagValidationContext;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPathExpressionException;
-import java.io.IOException;
 import java.nio.file.Path;
 import java.util.stream.Stream;
 
 public interface FilesXmlService {
 
-    Stream<Path> readFilepaths(Path bagDir) throws ParserConfigurationException, IOException, SAXException, XPathExpressionException;
+    Stream<Path> readFilepaths(Path bagDir, BagValidationContext context) throws Exception;
 }
@@ -15,11 +15,8 @@
  */
 package nl.knaw.dans.validatedansbag.core.service;
 
-import org.xml.sax.SAXException;
+import nl.knaw.dans.validatedansbag.core.engine.BagValidationContext;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPathExpressionException;
-import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.stream.Stream;
@@ -32,8 +29,8 @@ public class FilesXmlServiceImpl implements FilesXmlService {
     }
 
     @Override
-    public Stream<Path> readFilepaths(Path path) throws ParserConfigurationException, IOException, SAXException, XPathExpressionException {
-        var document = xmlReader.readXmlFile(path.resolve("metadata/files.xml"));
+    public Stream<Path> readFilepaths(Path path, BagValidationContext context) throws Exception {
+        var document = xmlReader.readXmlFile(path.resolve("metadata/files.xml"), context);
 
         // elements may be namespaced, or not, so find both versions
         var searchExpressions = List.of(
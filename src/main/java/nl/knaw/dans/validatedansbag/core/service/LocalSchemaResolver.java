@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.ls.DOMImplementationLS;
+import org.w3c.dom.ls.LSInput;
+import org.w3c.dom.ls.LSResourceResolver;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Resolves XML schemas, and the schemas they import or include, to local copies instead of downloading them. A schema with URL http(s)://host/path is looked up as host/path, first in the
+ * configured local directory and then in the schemas directory on the classpath. Both http and https URLs map to the same file.
+ */
+public class LocalSchemaResolver implements LSResourceResolver {
+    private static final Logger log = LoggerFactory.getLogger(LocalSchemaResolver.class);
+    private static final String CLASSPATH_DIRECTORY = "schemas/";
+
+    private final Path localDirectory;
+    private final boolean allowDownload;
+    private final DOMImplementationLS domImplementation;
+
+    /**
+     * @param localDirectory the directory with local copies of schemas, or null to only use the schemas on the classpath
+     * @param allowDownload  whether schemas that are not available locally may be downloaded
+     */
+    public LocalSchemaResolver(Path localDirectory, boolean allowDownload) {
+        // the files that are looked up are normalized, so the directory must be too, or they would never be inside it
+        this.localDirectory = localDirectory == null ? null : localDirectory.toAbsolutePath().normalize();
+        this.allowDownload = allowDownload;
+
+        try {
+            this.domImplementation = (DOMImplementationLS) DocumentBuilderFactory.newInstance()
+                .newDocumentBuilder()
+                .getDOMImplementation();
+        }
+        catch (ParserConfigurationException e) {
+            throw new RuntimeException("Unable to create inputs for XML schemas", e);
+        }
+    }
+
+    /**
+     * Returns the source of a top-level schema. The system id of the source is the original URL, so that relative imports in it are resolved against that URL, and then back to a local copy
+     * by {@link #resolveResource(String, String, String, String, String)}.
+     *
+     * @param url the URL of the schema
+     * @return the local copy, or the URL itself if there is no local copy and downloading is allowed
+     * @throws IOException if there is no local copy and downloading is not allowed
+     */
+    public Source getSource(String url) throws IOException {
+        var localCopy = openLocalCopy(URI.create(url));
+
+        if (localCopy.isPresent()) {
+            return new StreamSource(localCopy.get(), url);
+        }
+
+        return new StreamSource(getDownloadUrl(URI.create(url)));
+    }
+
+    @Override
+    public LSInput resolveResource(String type, String namespaceURI, String publicId, String systemId, String baseURI) {
+        if (systemId == null) {
+            return null;
+        }
+
+        var uri = baseURI == null ? URI.create(systemId) : URI.create(baseURI).resolve(systemId);
+
+        try {
+            var localCopy = openLocalCopy(uri);
+
+            if (localCopy.isEmpty()) {
+                // returning null makes the schema factory download it
+                getDownloadUrl(uri);
+                return null;
+            }
+
+            var input = domImplementation.createLSInput();
+            input.setPublicId(publicId);
+            input.setSystemId(uri.toString());
+            input.setBaseURI(baseURI);
+            input.setByteStream(localCopy.get());
+            return input;
+        }
+        catch (IOException e) {
+            // the resolver interface does not allow checked exceptions; the schema factory passes this on to the caller
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    Optional<InputStream> openLocalCopy(URI uri) throws IOException {
+        if (uri.getHost() == null) {
+            return Optional.empty();
+        }
+
+        var relativePath = uri.getHost() + uri.getPath();
+
+        if (localDirectory != null) {
+            var file = localDirectory.resolve(relativePath).normalize();
+
+            if (file.startsWith(localDirectory) && Files.isRegularFile(file)) {
+                log.trace("Using local copy {} of schema {}", file, uri);
+                return Optional.of(Files.newInputStream(file));
+            }
+        }
+
+        return Optional.ofNullable(getClass().getClassLoader().getResourceAsStream(CLASSPATH_DIRECTORY + relativePath));
+    }
+
+    private String getDownloadUrl(URI uri) throws FileNotFoundException {
+        if (!allowDownload) {
+            throw new FileNotFoundException(String.format("No local copy of XML schema %s, and downloading schemas is disabled", uri));
+        }
+
+        log.warn("No local copy of XML schema {}, downloading it", uri);
+        return uri.toString();
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import gov.loc.repository.bagit.hash.SupportedAlgorithm;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// computes the checksums of several algorithms from the same bytes
+class MultiDigest {
+    private final Map<SupportedAlgorithm, MessageDigest> digests = new LinkedHashMap<>();
+
+    MultiDigest(Collection<SupportedAlgorithm> algorithms) throws NoSuchAlgorithmException {
+        for (var algorithm : algorithms) {
+            digests.put(algorithm, MessageDigest.getInstance(algorithm.getMessageDigestName()));
+        }
+    }
+
+    void update(byte[] buffer, int offset, int length) {
+        for (var digest : digests.values()) {
+            digest.update(buffer, offset, length);
+        }
+    }
+
+    Map<SupportedAlgorithm, String> getChecksums() {
+        var result = new LinkedHashMap<SupportedAlgorithm, String>();
+
+        for (var entry : digests.entrySet()) {
+            result.put(entry.getKey(), toHex(entry.getValue().digest()));
+        }
+
+        return result;
+    }
+
+    private String toHex(byte[] digest) {
+        return String.format("%0" + (digest.length * 2) + "x", new BigInteger(1, digest));
+    }
+}
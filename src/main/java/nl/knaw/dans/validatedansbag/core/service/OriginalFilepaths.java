@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The contents of original-filepaths.txt, as a list of mappings in the order of the file and as a map from original to renamed path, both built while the file is read.
+ */
+public class OriginalFilepaths {
+    private final List<OriginalFilepathsService.OriginalFilePathItem> items;
+    private final Map<Path, Path> originalToRenamed;
+
+    OriginalFilepaths(List<OriginalFilepathsService.OriginalFilePathItem> items, Map<Path, Path> originalToRenamed) {
+        this.items = items;
+        this.originalToRenamed = originalToRenamed;
+    }
+
+    public List<OriginalFilepathsService.OriginalFilePathItem> getItems() {
+        return Collections.unmodifiableList(items);
+    }
+
+    /**
+     * @return the renamed path for each original path; if an original path occurs more than once, the last mapping wins
+     */
+    public Map<Path, Path> getOriginalToRenamed() {
+        return Collections.unmodifiableMap(originalToRenamed);
+    }
+}
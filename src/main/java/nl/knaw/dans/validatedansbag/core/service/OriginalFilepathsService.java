@@ -15,6 +15,9 @@
  */
 package nl.knaw.dans.validatedansbag.core.service;
 
+import nl.knaw.dans.validatedansbag.core.engine.BagValidationContext;
+
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
@@ -24,10 +27,41 @@ public interface OriginalFilepathsService {
 
     List<OriginalFilePathItem> getMapping(Path bagDir);
 
+    /**
+     * Like {@link #getMapping(Path)}, but from the contents of the file as read once per validation.
+     *
+     * @param bagDir  the bag directory
+     * @param context the context of the current validation
+     * @return the mappings, or an empty list if the file does not exist or could not be read
+     */
+    List<OriginalFilePathItem> getMapping(Path bagDir, BagValidationContext context);
+
     Map<Path, Path> getMappingsFromOriginalToRenamed(Path bagDir);
 
     boolean exists(Path path);
 
+    /**
+     * Reads original-filepaths.txt in a single pass, decoding it strictly as UTF-8.
+     *
+     * @param bagDir the bag directory
+     * @return the contents of the file
+     * @throws java.nio.charset.CharacterCodingException if the file is not valid UTF-8
+     * @throws IOException                               if the file does not exist or could not be read
+     */
+    OriginalFilepaths read(Path bagDir) throws IOException;
+
+    /**
+     * Reads original-filepaths.txt at most once per validation. The result, or the exception, is shared by all rules using the same context.
+     *
+     * @param bagDir  the bag directory
+     * @param context the context of the current validation
+     * @return the contents of the file
+     * @throws Exception if the file is not valid UTF-8, does not exist or could not be read
+     */
+    default OriginalFilepaths read(Path bagDir, BagValidationContext context) throws Exception {
+        return context.computeIfAbsent(context.getKey("original-filepaths", bagDir.resolve("original-filepaths.txt")), () -> read(bagDir));
+    }
+
     class OriginalFilePathItem {
         private final Path originalFilename;
         private final Path renamedFilename;
@@ -15,16 +15,21 @@
  */
 package nl.knaw.dans.validatedansbag.core.service;
 
+import nl.knaw.dans.validatedansbag.core.engine.BagValidationContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 public class OriginalFilepathsServiceImpl implements OriginalFilepathsService {
 
@@ -39,44 +44,131 @@ public class OriginalFilepathsServiceImpl implements OriginalFilepathsService {
 
     @Override
     public List<OriginalFilePathItem> getMapping(Path bagDir) {
-        var file = bagDir.resolve(filename);
+        try {
+            return read(bagDir).getItems();
+        }
+        catch (Exception e) {
+            return handleReadError(bagDir, e);
+        }
+    }
 
+    @Override
+    public List<OriginalFilePathItem> getMapping(Path bagDir, BagValidationContext context) {
         try {
-            var bytes = fileService.readFileContents(file);
-            var content = new String(bytes);
-
-            // the mapping between files on disk and what they used to be called
-            return Arrays.stream(content.split("\n"))
-                .filter(s -> !s.isBlank())
-                .map(s -> s.split("\\s+", 2))
-                .filter(p -> p.length == 2)
-                .map(p -> new OriginalFilePathItem(Path.of(p[1]), Path.of(p[0])))
-                .collect(Collectors.toList());
+            return read(bagDir, context).getItems();
         }
-        catch (NoSuchFileException e) {
-            log.debug("File {} not found", file);
+        catch (Exception e) {
+            return handleReadError(bagDir, e);
+        }
+    }
+
+    @Override
+    public Map<Path, Path> getMappingsFromOriginalToRenamed(Path bagDir) {
+        try {
+            return read(bagDir).getOriginalToRenamed();
         }
         catch (Exception e) {
+            handleReadError(bagDir, e);
+            return Map.of();
+        }
+    }
+
+    @Override
+    public boolean exists(Path path) {
+        return fileService.exists(path.resolve(filename));
+    }
+
+    @Override
+    public OriginalFilepaths read(Path bagDir) throws IOException {
+        var items = new ArrayList<OriginalFilePathItem>();
+        var originalToRenamed = new HashMap<Path, Path>();
+
+        // newDecoder() reports malformed input instead of replacing it, so this is also the check that the file is valid UTF-8
+        try (var reader = new InputStreamReader(fileService.newInputStream(bagDir.resolve(filename)), StandardCharsets.UTF_8.newDecoder())) {
+            forEachLine(reader, line -> {
+                var item = parseLine(line);
+
+                // the mapping between files on disk and what they used to be called
+                if (item != null) {
+                    items.add(item);
+                    originalToRenamed.put(item.getOriginalFilename(), item.getRenamedFilename());
+                }
+            });
+        }
+
+        return new OriginalFilepaths(items, originalToRenamed);
+    }
+
+    private List<OriginalFilePathItem> handleReadError(Path bagDir, Exception e) {
+        var file = bagDir.resolve(filename);
+
+        if (e instanceof NoSuchFileException) {
+            log.debug("File {} not found", file);
+        }
+        else {
             log.error("Error while reading {}", file, e);
         }
 
         return List.of();
     }
 
-    @Override
-    public Map<Path, Path> getMappingsFromOriginalToRenamed(Path bagDir) {
-        var mappings = getMapping(bagDir);
-        var result = new HashMap<Path, Path>();
+    // lines are only separated by \n; a \r before it is part of the line, as it always was
+    private static void forEachLine(Reader reader, Consumer<String> handler) throws IOException {
+        var buffer = new char[8192];
+        var line = new StringBuilder();
+        int length;
+
+        while ((length = reader.read(buffer)) != -1) {
+            var start = 0;
+
+            for (var i = 0; i < length; ++i) {
+                if (buffer[i] == '\n') {
+                    line.append(buffer, start, i - start);
+                    handler.accept(line.toString());
+                    line.setLength(0);
+                    start = i + 1;
+                }
+            }
 
-        for (var m : mappings) {
-            result.put(m.getOriginalFilename(), m.getRenamedFilename());
+            line.append(buffer, start, length - start);
         }
 
-        return result;
+        if (line.length() > 0) {
+            handler.accept(line.toString());
+        }
     }
 
-    @Override
-    public boolean exists(Path path) {
-        return fileService.exists(path.resolve(filename));
+    /**
+     * Parses a line with the renamed path, whitespace and the original path, which may contain whitespace itself.
+     *
+     * @return the mapping, or null if the line does not have both paths
+     */
+    static OriginalFilePathItem parseLine(String line) {
+        if (line.isBlank()) {
+            return null;
+        }
+
+        var end = 0;
+
+        while (end < line.length() && !isSeparator(line.charAt(end))) {
+            ++end;
+        }
+
+        if (end == line.length()) {
+            return null;
+        }
+
+        var start = end;
+
+        while (start < line.length() && isSeparator(line.charAt(start))) {
+            ++start;
+        }
+
+        return new OriginalFilePathItem(Path.of(line.substring(start)), Path.of(line.substring(0, end)));
+    }
+
+    // the characters that \s matches
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
     }
 }
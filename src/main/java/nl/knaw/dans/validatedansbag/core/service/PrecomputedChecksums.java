@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import gov.loc.repository.bagit.hash.SupportedAlgorithm;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Checksums of payload files that were computed while a zipped bag was streamed, instead of being extracted. The content of these files is not on disk, so their checksums can only be
+ * verified against the values registered here. These checksums are the only way to observe their content; {@link FileServiceImpl} refuses to read the files.
+ */
+public interface PrecomputedChecksums {
+
+    void putChecksums(Path file, Map<SupportedAlgorithm, String> checksums);
+
+    /**
+     * @param file the file
+     * @return the checksums computed for the file, or empty if the content of the file is on disk
+     */
+    Optional<Map<SupportedAlgorithm, String>> getChecksums(Path file);
+
+    /**
+     * Forgets the checksums of all files in the directory, for instance because it was deleted.
+     *
+     * @param directory the directory
+     */
+    void removeAll(Path directory);
+}
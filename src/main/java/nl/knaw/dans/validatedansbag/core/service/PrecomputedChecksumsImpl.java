@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import gov.loc.repository.bagit.hash.SupportedAlgorithm;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class PrecomputedChecksumsImpl implements PrecomputedChecksums {
+    private final Map<Path, Map<SupportedAlgorithm, String>> checksums = new ConcurrentHashMap<>();
+
+    @Override
+    public void putChecksums(Path file, Map<SupportedAlgorithm, String> checksums) {
+        this.checksums.put(normalize(file), Map.copyOf(checksums));
+    }
+
+    @Override
+    public Optional<Map<SupportedAlgorithm, String>> getChecksums(Path file) {
+        return Optional.ofNullable(checksums.get(normalize(file)));
+    }
+
+    @Override
+    public void removeAll(Path directory) {
+        var normalized = normalize(directory);
+        checksums.keySet().removeIf(file -> file.startsWith(normalized));
+    }
+
+    private Path normalize(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+}
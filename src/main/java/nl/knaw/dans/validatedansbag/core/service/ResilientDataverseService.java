@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import nl.knaw.dans.lib.dataverse.DataverseException;
+import nl.knaw.dans.lib.dataverse.DataverseResponse;
+import nl.knaw.dans.lib.dataverse.model.RoleAssignmentReadOnly;
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetLatestVersion;
+import nl.knaw.dans.lib.dataverse.model.search.SearchResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A {@link DataverseService} that retries calls of another one that failed because Dataverse could not be reached or had a server error, and that stops calling Dataverse for a while
+ * when it keeps failing. In both cases a {@link DataverseUnavailableException} is thrown. All calls only read from Dataverse, so retrying them is safe. The latency of every attempt is
+ * recorded per endpoint.
+ */
+public class ResilientDataverseService implements DataverseService {
+    private static final Logger log = LoggerFactory.getLogger(ResilientDataverseService.class);
+
+    private final DataverseService dataverseService;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final CircuitBreaker circuitBreaker;
+    private final MetricRegistry metricRegistry;
+    private final Meter retries;
+    private final Meter failures;
+    private final Meter rejected;
+
+    public ResilientDataverseService(DataverseService dataverseService, int maxAttempts, Duration initialBackoff, Duration maxBackoff, CircuitBreaker circuitBreaker,
+        MetricRegistry metricRegistry) {
+        this.dataverseService = dataverseService;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.circuitBreaker = circuitBreaker;
+        this.metricRegistry = metricRegistry;
+        this.retries = metricRegistry.meter(MetricRegistry.name(ResilientDataverseService.class, "retries"));
+        this.failures = metricRegistry.meter(MetricRegistry.name(ResilientDataverseService.class, "failures"));
+        this.rejected = metricRegistry.meter(MetricRegistry.name(ResilientDataverseService.class, "rejected"));
+        metricRegistry.register(MetricRegistry.name(ResilientDataverseService.class, "circuit-breaker-state"), (Gauge<String>) () -> circuitBreaker.getState().name());
+    }
+
+    @Override
+    public DataverseResponse<SearchResult> searchBySwordToken(String token) throws IOException, DataverseException {
+        return call("searchBySwordToken", () -> dataverseService.searchBySwordToken(token));
+    }
+
+    @Override
+    public DataverseResponse<SearchResult> searchDatasetsByOrganizationalIdentifier(String identifier) throws IOException, DataverseException {
+        return call("searchDatasetsByOrganizationalIdentifier", () -> dataverseService.searchDatasetsByOrganizationalIdentifier(identifier));
+    }
+
+    @Override
+    public DataverseResponse<List<RoleAssignmentReadOnly>> getDatasetRoleAssignments(String identifier) throws IOException, DataverseException {
+        return call("getDatasetRoleAssignments", () -> dataverseService.getDatasetRoleAssignments(identifier));
+    }
+
+    @Override
+    public DataverseResponse<DatasetLatestVersion> getDataset(String globalId) throws IOException, DataverseException {
+        return call("getDataset", () -> dataverseService.getDataset(globalId));
+    }
+
+    @Override
+    public DataverseResponse<List<RoleAssignmentReadOnly>> getDataverseRoleAssignments(String itemId) throws IOException, DataverseException {
+        return call("getDataverseRoleAssignments", () -> dataverseService.getDataverseRoleAssignments(itemId));
+    }
+
+    <T> T call(String endpoint, Call<T> call) throws IOException, DataverseException {
+        var timer = metricRegistry.timer(MetricRegistry.name(ResilientDataverseService.class, endpoint));
+
+        for (var attempt = 1; ; attempt++) {
+            if (!circuitBreaker.tryAcquire()) {
+                throw reject(endpoint);
+            }
+
+            Exception failure;
+
+            try (var ignored = timer.time()) {
+                var response = call.call();
+                circuitBreaker.recordSuccess();
+                return response;
+            }
+            catch (IOException e) {
+                failure = e;
+            }
+            catch (DataverseException e) {
+                // Dataverse answered, so it is available; only server errors may go away by trying again
+                if (!isServerError(e)) {
+                    circuitBreaker.recordSuccess();
+                    throw e;
+                }
+
+                failure = e;
+            }
+            catch (RuntimeException | Error e) {
+                // a bug or an unreadable response says nothing about whether Dataverse is available, so it neither opens nor closes the circuit breaker
+                circuitBreaker.release();
+                throw e;
+            }
+
+            circuitBreaker.recordFailure();
+            failures.mark();
+
+            if (attempt >= maxAttempts) {
+                throw new DataverseUnavailableException(String.format(
+                    "Dataverse is unavailable: %s failed %d times, the last time with: %s", endpoint, attempt, failure.getMessage()
+                ), Duration.ZERO, failure);
+            }
+
+            var backoff = getBackoff(attempt);
+            log.warn("Call to {} failed (attempt {} of {}), trying again in {} ms: {}", endpoint, attempt, maxAttempts, backoff.toMillis(), failure.getMessage());
+            retries.mark();
+            sleep(backoff);
+        }
+    }
+
+    private DataverseUnavailableException reject(String endpoint) {
+        rejected.mark();
+        // rounded up and at least a second, so a client is never told to try again after 0 seconds
+        var retryAfter = Duration.ofSeconds(Math.max(1, (circuitBreaker.getRetryAfter().toMillis() + 999) / 1000));
+
+        // while half open there is no end time to report; the call is refused because the one trial call is still in progress
+        if (circuitBreaker.getState() == CircuitBreaker.State.HALF_OPEN) {
+            return new DataverseUnavailableException(String.format(
+                "Dataverse is unavailable: %d consecutive calls failed, so %s is not called until a trial call shows that Dataverse is available again",
+                circuitBreaker.getFailures(), endpoint
+            ), retryAfter, null);
+        }
+
+        return new DataverseUnavailableException(String.format(
+            "Dataverse is unavailable: %d consecutive calls failed, so %s is not called for another %d seconds",
+            circuitBreaker.getFailures(), endpoint, retryAfter.toSeconds()
+        ), retryAfter, null);
+    }
+
+    /**
+     * Returns the wait before the given retry: the initial backoff doubled for every earlier retry, up to the maximum, of which a random part of up to half is left out, so that
+     * validations that failed at the same time do not all retry at the same time.
+     *
+     * @param attempt the number of the attempt that failed, starting at 1
+     * @return the wait
+     */
+    Duration getBackoff(int attempt) {
+        var exponential = initialBackoff.multipliedBy(1L << Math.min(attempt - 1, 30));
+        var bound = exponential.compareTo(maxBackoff) > 0 ? maxBackoff : exponential;
+        var half = bound.toMillis() / 2;
+        return Duration.ofMillis(bound.toMillis() - ThreadLocalRandom.current().nextLong(half + 1));
+    }
+
+    private boolean isServerError(DataverseException e) {
+        return e.getStatus() >= 500;
+    }
+
+    private void sleep(Duration duration) throws InterruptedIOException {
+        try {
+            Thread.sleep(duration.toMillis());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to call Dataverse again");
+        }
+    }
+
+    @FunctionalInterface
+    interface Call<T> {
+        T call() throws IOException, DataverseException;
+    }
+}
@@ -24,6 +24,11 @@ import java.util.List;
 
 public interface RuleEngineService {
 
-    List<RuleValidationResult> validateBag(Path path, DepositType depositType, ValidationLevel validationLevel) throws Exception;
+    List<RuleValidationResult> validateBag(Path path, DepositType depositType, ValidationLevel validationLevel, boolean failFast) throws Exception;
+
+    /**
+     * Validates a bag that was extracted from an upload. Such a bag is in a new temporary directory every time, so nothing about its validation is kept for later ones.
+     */
+    List<RuleValidationResult> validateExtractedBag(Path path, DepositType depositType, ValidationLevel validationLevel, boolean failFast) throws Exception;
 
 }
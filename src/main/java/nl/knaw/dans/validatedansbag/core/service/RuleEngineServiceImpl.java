@@ -30,43 +30,72 @@ import nl.knaw.dans.validatedansbag.core.rules.XmlRules;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Optional;
 
 public class RuleEngineServiceImpl implements RuleEngineService {
     private static final Logger log = LoggerFactory.getLogger(RuleEngineServiceImpl.class);
+    // the files in the root of the bag, all of which are read by the BagIt library
+    private static final String TAG_FILES = "*";
+    private static final String PAYLOAD_FILES = "data/**";
     private final RuleEngine ruleEngine;
     private final FileService fileService;
     private final NumberedRule[] defaultRules;
     private final Path datasetPath = Path.of("metadata/dataset.xml");
     private final Path metadataPath = Path.of("metadata");
     private final Path metadataFilesPath = Path.of("metadata/files.xml");
+    private final BagFingerprinter bagFingerprinter;
+    private final ValidationResultCache resultCache;
+    private final boolean cacheDataStationContext;
+    private final RuleResultHistoryStore historyStore;
 
     public RuleEngineServiceImpl(RuleEngine ruleEngine, BagRules bagRules, XmlRules xmlRules, FilesXmlRules filesXmlRules, FileService fileService, DatastationRules datastationRules) {
+        this(ruleEngine, bagRules, xmlRules, filesXmlRules, fileService, datastationRules, null, null, false);
+    }
+
+    public RuleEngineServiceImpl(RuleEngine ruleEngine, BagRules bagRules, XmlRules xmlRules, FilesXmlRules filesXmlRules, FileService fileService, DatastationRules datastationRules,
+        BagFingerprinter bagFingerprinter, ValidationResultCache resultCache, boolean cacheDataStationContext) {
+        this(ruleEngine, bagRules, xmlRules, filesXmlRules, fileService, datastationRules, bagFingerprinter, resultCache, cacheDataStationContext, null);
+    }
+
+    /**
+     * @param bagFingerprinter        computes the key under which the result of a bag is cached; null to disable caching
+     * @param resultCache             the results of earlier validations; null to disable caching
+     * @param cacheDataStationContext whether results of validations with data station context are cached too
+     * @param historyStore            the results per rule of earlier validations, used to only execute the rules whose inputs have changed; null to always execute all rules
+     */
+    public RuleEngineServiceImpl(RuleEngine ruleEngine, BagRules bagRules, XmlRules xmlRules, FilesXmlRules filesXmlRules, FileService fileService, DatastationRules datastationRules,
+        BagFingerprinter bagFingerprinter, ValidationResultCache resultCache, boolean cacheDataStationContext, RuleResultHistoryStore historyStore) {
         this.ruleEngine = ruleEngine;
         this.fileService = fileService;
+        this.bagFingerprinter = bagFingerprinter;
+        this.resultCache = resultCache;
+        this.cacheDataStationContext = cacheDataStationContext;
+        this.historyStore = historyStore;
 
         // validity
         this.defaultRules = new NumberedRule[] {
-            new NumberedRule("1.1.1", bagRules.bagIsValid()),
+            new NumberedRule("1.1.1", bagRules.bagIsValid()).withInputs("**"),
 
             // bag-info.txt
-            new NumberedRule("1.2.1", bagRules.bagInfoExistsAndIsWellFormed()),
-            new NumberedRule("1.2.2(a)", bagRules.bagInfoContainsExactlyOneOf("Created"), List.of("1.2.1")),
-            new NumberedRule("1.2.2(b)", bagRules.bagInfoCreatedElementIsIso8601Date(), List.of("1.2.2(a)")),
-            new NumberedRule("1.2.3", bagRules.bagInfoContainsAtMostOneOf("Data-Station-User-Account"), List.of("1.2.1")),
-            new NumberedRule("1.2.4(a)", bagRules.bagInfoContainsAtMostOneOf("Is-Version-Of"), List.of("1.2.1")),
-            new NumberedRule("1.2.4(b)", bagRules.bagInfoIsVersionOfIsValidUrnUuid(), List.of("1.2.4(a)")),
-            new NumberedRule("1.2.5(a)", bagRules.bagInfoContainsAtMostOneOf("Has-Organizational-Identifier"), List.of("1.2.1")),
-            new NumberedRule("1.2.5(b)", bagRules.bagInfoContainsAtMostOneOf("Has-Organizational-Identifier-Version"), List.of("1.2.5(a)")),
+            new NumberedRule("1.2.1", bagRules.bagInfoExistsAndIsWellFormed()).withInputs(TAG_FILES),
+            new NumberedRule("1.2.2(a)", bagRules.bagInfoContainsExactlyOneOf("Created"), List.of("1.2.1")).withInputs(TAG_FILES),
+            new NumberedRule("1.2.2(b)", bagRules.bagInfoCreatedElementIsIso8601Date(), List.of("1.2.2(a)")).withInputs(TAG_FILES),
+            new NumberedRule("1.2.3", bagRules.bagInfoContainsAtMostOneOf("Data-Station-User-Account"), List.of("1.2.1")).withInputs(TAG_FILES),
+            new NumberedRule("1.2.4(a)", bagRules.bagInfoContainsAtMostOneOf("Is-Version-Of"), List.of("1.2.1")).withInputs(TAG_FILES),
+            new NumberedRule("1.2.4(b)", bagRules.bagInfoIsVersionOfIsValidUrnUuid(), List.of("1.2.4(a)")).withInputs(TAG_FILES),
+            new NumberedRule("1.2.5(a)", bagRules.bagInfoContainsAtMostOneOf("Has-Organizational-Identifier"), List.of("1.2.1")).withInputs(TAG_FILES),
+            new NumberedRule("1.2.5(b)", bagRules.bagInfoContainsAtMostOneOf("Has-Organizational-Identifier-Version"), List.of("1.2.5(a)")).withInputs(TAG_FILES),
 
             // manifests
-            new NumberedRule("1.3.1", bagRules.containsNotJustMD5Manifest(), List.of("1.1.1")),
+            new NumberedRule("1.3.1", bagRules.containsNotJustMD5Manifest(), List.of("1.1.1")).withInputs(TAG_FILES),
 
             // Structural
-            new NumberedRule("2.1", bagRules.containsDir(metadataPath), List.of("1.1.1")),
-            new NumberedRule("2.2(a)", bagRules.containsFile(metadataPath.resolve("dataset.xml")), List.of("2.1")),
-            new NumberedRule("2.2(b)", bagRules.containsFile(metadataPath.resolve("files.xml")), List.of("2.1")),
+            new NumberedRule("2.1", bagRules.containsDir(metadataPath), List.of("1.1.1")).withInputs("metadata"),
+            new NumberedRule("2.2(a)", bagRules.containsFile(metadataPath.resolve("dataset.xml")), List.of("2.1")).withInputs("metadata/dataset.xml"),
+            new NumberedRule("2.2(b)", bagRules.containsFile(metadataPath.resolve("files.xml")), List.of("2.1")).withInputs("metadata/files.xml"),
 
             // this also covers 2.3 and 2.4 for MIGRATION status deposits
             new NumberedRule("2.4", bagRules.containsNothingElseThan(metadataPath, new String[] {
@@ -85,56 +114,56 @@ public class RuleEngineServiceImpl implements RuleEngineService {
                 "license.html",
                 "license.txt",
                 "license.pdf"
-            }), DepositType.MIGRATION, List.of("2.1")),
+            }), DepositType.MIGRATION, List.of("2.1")).withInputs("metadata/**"),
 
             new NumberedRule("2.4", bagRules.containsNothingElseThan(metadataPath, new String[] {
                 "dataset.xml",
                 "files.xml"
-            }), DepositType.DEPOSIT, List.of("2.1")),
+            }), DepositType.DEPOSIT, List.of("2.1")).withInputs("metadata/**"),
 
-            new NumberedRule("2.5", bagRules.hasOnlyValidFileNames(), List.of("2.1")),
+            new NumberedRule("2.5", bagRules.hasOnlyValidFileNames(), List.of("2.1")).withInputs(PAYLOAD_FILES),
 
             // original-filepaths.txt
-            new NumberedRule("2.6.1", bagRules.optionalFileIsUtf8Decodable(Path.of("original-filepaths.txt")), List.of("1.1.1")),
-            new NumberedRule("2.6.2", bagRules.isOriginalFilepathsFileComplete(), List.of("2.6.1")),
+            new NumberedRule("2.6.1", bagRules.originalFilepathsFileIsUtf8Decodable(), List.of("1.1.1")).withInputs("original-filepaths.txt"),
+            new NumberedRule("2.6.2", bagRules.isOriginalFilepathsFileComplete(), List.of("2.6.1")).withInputs("original-filepaths.txt", "metadata/files.xml", PAYLOAD_FILES),
 
             // metadata/dataset.xml
-            new NumberedRule("3.1.1", xmlRules.xmlFileConformsToSchema(datasetPath, "dataset.xml"), List.of("1.1.1", "2.2(a)")),
-            new NumberedRule("3.1.2", bagRules.ddmMayContainDctermsLicenseFromList(), List.of("3.1.1")),
-            new NumberedRule("3.1.3", bagRules.ddmDoiIdentifiersAreValid(), List.of("3.1.1")),
-
-            new NumberedRule("3.1.4(a)", bagRules.ddmDaisAreValid(), List.of("3.1.1")),
-            new NumberedRule("3.1.4(b)", bagRules.ddmIsnisAreValid(), List.of("3.1.1")),
-            new NumberedRule("3.1.4(c)", bagRules.ddmOrcidsAreValid(), List.of("3.1.1")),
-            new NumberedRule("3.1.5", bagRules.ddmGmlPolygonPosListIsWellFormed(), List.of("3.1.1")),
-            new NumberedRule("3.1.6", bagRules.polygonsInSameMultiSurfaceHaveSameSrsName(), List.of("3.1.1")),
-            new NumberedRule("3.1.7", bagRules.pointsHaveAtLeastTwoValues(), List.of("3.1.1")),
-            new NumberedRule("3.1.8", bagRules.archisIdentifiersHaveAtMost10Characters(), List.of("3.1.1")),
-            new NumberedRule("3.1.9", bagRules.allUrlsAreValid(), List.of("3.1.1")),
-
-            new NumberedRule("3.1.10(a)", bagRules.ddmMustHaveRightsHolderDeposit(), DepositType.DEPOSIT, List.of("3.1.1")),
-            new NumberedRule("3.1.10(b)", bagRules.ddmMustHaveRightsHolderDeposit(), DepositType.MIGRATION, List.of("3.1.1")),
-            new NumberedRule("3.1.11", bagRules.ddmMustNotHaveRightsHolderRole(), DepositType.DEPOSIT, List.of("3.1.1")),
-
-            new NumberedRule("3.2.1", xmlRules.xmlFileConformsToSchema(metadataFilesPath, "files.xml"), List.of("3.1.1")),
-            new NumberedRule("3.2.2", filesXmlRules.filesXmlFilePathAttributesContainLocalBagPathAndNonPayloadFilesAreNotDescribed(), List.of("2.2(b)")),
-            new NumberedRule("3.2.3", filesXmlRules.filesXmlNoDuplicateFilesAndEveryPayloadFileIsDescribed(), List.of("2.2(b)")),
+            new NumberedRule("3.1.1", xmlRules.xmlFileConformsToSchema(datasetPath, "dataset.xml"), List.of("1.1.1", "2.2(a)")).withInputs("metadata/dataset.xml"),
+            new NumberedRule("3.1.2", bagRules.ddmMayContainDctermsLicenseFromList(), List.of("3.1.1")).withInputs("metadata/dataset.xml"),
+            new NumberedRule("3.1.3", bagRules.ddmDoiIdentifiersAreValid(), List.of("3.1.1")).withInputs("metadata/dataset.xml"),
+
+            new NumberedRule("3.1.4(a)", bagRules.ddmDaisAreValid(), List.of("3.1.1")).withInputs("metadata/dataset.xml"),
+            new NumberedRule("3.1.4(b)", bagRules.ddmIsnisAreValid(), List.of("3.1.1")).withInputs("metadata/dataset.xml"),
+            new NumberedRule("3.1.4(c)", bagRules.ddmOrcidsAreValid(), List.of("3.1.1")).withInputs("metadata/dataset.xml"),
+            new NumberedRule("3.1.5", bagRules.ddmGmlPolygonPosListIsWellFormed(), List.of("3.1.1")).withInputs("metadata/dataset.xml"),
+            new NumberedRule("3.1.6", bagRules.polygonsInSameMultiSurfaceHaveSameSrsName(), List.of("3.1.1")).withInputs("metadata/dataset.xml"),
+            new NumberedRule("3.1.7", bagRules.pointsHaveAtLeastTwoValues(), List.of("3.1.1")).withInputs("metadata/dataset.xml"),
+            new NumberedRule("3.1.8", bagRules.archisIdentifiersHaveAtMost10Characters(), List.of("3.1.1")).withInputs("metadata/dataset.xml"),
+            new NumberedRule("3.1.9", bagRules.allUrlsAreValid(), List.of("3.1.1")).withInputs("metadata/dataset.xml"),
+
+            new NumberedRule("3.1.10(a)", bagRules.ddmMustHaveRightsHolderDeposit(), DepositType.DEPOSIT, List.of("3.1.1")).withInputs("metadata/dataset.xml"),
+            new NumberedRule("3.1.10(b)", bagRules.ddmMustHaveRightsHolderDeposit(), DepositType.MIGRATION, List.of("3.1.1")).withInputs("metadata/dataset.xml"),
+            new NumberedRule("3.1.11", bagRules.ddmMustNotHaveRightsHolderRole(), DepositType.DEPOSIT, List.of("3.1.1")).withInputs("metadata/dataset.xml"),
+
+            new NumberedRule("3.2.1", xmlRules.xmlFileConformsToSchema(metadataFilesPath, "files.xml"), List.of("3.1.1")).withInputs("metadata/files.xml"),
+            new NumberedRule("3.2.2", filesXmlRules.filesXmlFilePathAttributesContainLocalBagPathAndNonPayloadFilesAreNotDescribed(), List.of("2.2(b)")).withInputs("metadata/files.xml", "original-filepaths.txt", PAYLOAD_FILES),
+            new NumberedRule("3.2.3", filesXmlRules.filesXmlNoDuplicateFilesAndEveryPayloadFileIsDescribed(), List.of("2.2(b)")).withInputs("metadata/files.xml", "original-filepaths.txt", PAYLOAD_FILES),
 
             // agreements.xml
-            new NumberedRule("3.3.1", xmlRules.xmlFileIfExistsConformsToSchema(Path.of("metadata/depositor-info/agreements.xml"), "agreements.xml"), DepositType.MIGRATION),
+            new NumberedRule("3.3.1", xmlRules.xmlFileIfExistsConformsToSchema(Path.of("metadata/depositor-info/agreements.xml"), "agreements.xml"), DepositType.MIGRATION).withInputs("metadata/depositor-info/agreements.xml"),
 
             // amd.xml
-            new NumberedRule("3.3.2", xmlRules.xmlFileIfExistsConformsToSchema(Path.of("metadata/amd.xml"), "amd.xml"), DepositType.MIGRATION),
+            new NumberedRule("3.3.2", xmlRules.xmlFileIfExistsConformsToSchema(Path.of("metadata/amd.xml"), "amd.xml"), DepositType.MIGRATION).withInputs("metadata/amd.xml"),
 
             // emd.xml
-            new NumberedRule("3.3.3", xmlRules.xmlFileIfExistsConformsToSchema(Path.of("metadata/emd.xml"), "emd.xml"), DepositType.MIGRATION),
+            new NumberedRule("3.3.3", xmlRules.xmlFileIfExistsConformsToSchema(Path.of("metadata/emd.xml"), "emd.xml"), DepositType.MIGRATION).withInputs("metadata/emd.xml"),
 
             // provenance.xml
-            new NumberedRule("3.3.4", xmlRules.xmlFileIfExistsConformsToSchema(Path.of("metadata/provenance.xml"), "provenance.xml"), DepositType.MIGRATION),
+            new NumberedRule("3.3.4", xmlRules.xmlFileIfExistsConformsToSchema(Path.of("metadata/provenance.xml"), "provenance.xml"), DepositType.MIGRATION).withInputs("metadata/provenance.xml"),
 
-            new NumberedRule("4.1", bagRules.bagInfoContainsAtMostOneOf("Data-Station-User-Account"), ValidationContext.WITH_DATA_STATION_CONTEXT, List.of("1.2.1")),
+            new NumberedRule("4.1", bagRules.bagInfoContainsAtMostOneOf("Data-Station-User-Account"), ValidationContext.WITH_DATA_STATION_CONTEXT, List.of("1.2.1")).withInputs(TAG_FILES),
             new NumberedRule("4.2", datastationRules.userIsAuthorizedToCreateDataset(), ValidationContext.WITH_DATA_STATION_CONTEXT, List.of("4.1")),
-            new NumberedRule("4.3", bagRules.organizationalIdentifierPrefixIsValid(), ValidationContext.WITH_DATA_STATION_CONTEXT, List.of("4.1", "1.2.5(a)")),
+            new NumberedRule("4.3", bagRules.organizationalIdentifierPrefixIsValid(), ValidationContext.WITH_DATA_STATION_CONTEXT, List.of("4.1", "1.2.5(a)")).withInputs(TAG_FILES),
             new NumberedRule("4.4(a)", datastationRules.bagExistsInDatastation(), ValidationContext.WITH_DATA_STATION_CONTEXT, List.of("4.1")),
             new NumberedRule("4.4(b)", datastationRules.organizationalIdentifierExistsInDataset(), ValidationContext.WITH_DATA_STATION_CONTEXT, List.of("4.1")),
             new NumberedRule("4.4(c)", datastationRules.userIsAuthorizedToUpdateDataset(), ValidationContext.WITH_DATA_STATION_CONTEXT, List.of("4.1")),
@@ -144,15 +173,67 @@ public class RuleEngineServiceImpl implements RuleEngineService {
     }
 
     @Override
-    public List<RuleValidationResult> validateBag(Path path, DepositType depositType, ValidationLevel validationLevel) throws Exception {
-        log.info("Validating bag on path '{}', deposit type is {} and validation level {}", path, depositType, validationLevel);
+    public List<RuleValidationResult> validateBag(Path path, DepositType depositType, ValidationLevel validationLevel, boolean failFast) throws Exception {
+        return validateBag(path, depositType, validationLevel, failFast, true);
+    }
+
+    @Override
+    public List<RuleValidationResult> validateExtractedBag(Path path, DepositType depositType, ValidationLevel validationLevel, boolean failFast) throws Exception {
+        return validateBag(path, depositType, validationLevel, failFast, false);
+    }
+
+    /**
+     * @param byLocation whether the bag was given by its location; a bag extracted from an upload is never seen again, and its payload files only have the right size, so it is not
+     *                   worth fingerprinting, nor worth keeping a history of
+     */
+    private List<RuleValidationResult> validateBag(Path path, DepositType depositType, ValidationLevel validationLevel, boolean failFast, boolean byLocation) throws Exception {
+        log.info("Validating bag on path '{}', deposit type is {}, validation level {} and fail-fast {}", path, depositType, validationLevel, failFast);
 
         if (!fileService.isReadable(path)) {
             log.warn("Path {} could not not be found or is not readable", path);
             throw new BagNotFoundException(String.format("Bag on path '%s' could not be found or read", path));
         }
 
-        return ruleEngine.validateRules(path, this.defaultRules, depositType, validationLevel);
+        Optional<String> cacheKey = byLocation ? getCacheKey(path, depositType, validationLevel, failFast) : Optional.empty();
+
+        if (cacheKey.isPresent()) {
+            var cached = resultCache.get(cacheKey.get());
+
+            if (cached.isPresent()) {
+                log.info("Bag on path '{}' has not changed since it was validated; returning the earlier result", path);
+                return cached.get();
+            }
+        }
+
+        var results = validateRules(path, depositType, validationLevel, failFast, byLocation);
+        cacheKey.ifPresent(key -> resultCache.put(key, results));
+
+        return results;
+    }
+
+    private List<RuleValidationResult> validateRules(Path path, DepositType depositType, ValidationLevel validationLevel, boolean failFast, boolean byLocation) throws Exception {
+        if (historyStore == null || !byLocation) {
+            return ruleEngine.validateRules(path, this.defaultRules, depositType, validationLevel, failFast);
+        }
+
+        // the selected rules, and therefore the meaning of a rule number, depend on the deposit type and validation level
+        var history = historyStore.getHistory(String.format("%s:%s:%s", path.toAbsolutePath().normalize(), depositType, validationLevel));
+        return ruleEngine.validateRules(path, this.defaultRules, depositType, validationLevel, failFast, history);
+    }
+
+    private Optional<String> getCacheKey(Path path, DepositType depositType, ValidationLevel validationLevel, boolean failFast) {
+        if (resultCache == null || (validationLevel == ValidationLevel.WITH_DATA_STATION_CONTEXT && !cacheDataStationContext)) {
+            return Optional.empty();
+        }
+
+        try {
+            return Optional.of(String.format("%s:%s:%s:%s", bagFingerprinter.fingerprint(path), depositType, validationLevel, failFast));
+        }
+        catch (IOException e) {
+            // the validation itself will report what is wrong with the bag
+            log.warn("Could not compute the fingerprint of bag on path '{}'; validating it without the cache", path, e);
+            return Optional.empty();
+        }
     }
 
     public void validateRuleConfiguration() {
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import nl.knaw.dans.validatedansbag.core.engine.RuleResultHistory;
+import nl.knaw.dans.validatedansbag.core.engine.RuleValidationResult;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The results per rule of earlier validations, by bag. The number of bags is bounded: when it is full, the least recently validated bag is evicted. The results of a bag also expire a
+ * fixed time after its last validation.
+ */
+public class RuleResultHistoryStore {
+    private final Duration timeToLive;
+    private final Clock clock;
+    private final Map<String, Entry> entries;
+
+    public RuleResultHistoryStore(int maxBags, Duration timeToLive, MetricRegistry metricRegistry) {
+        this(maxBags, timeToLive, metricRegistry, Clock.systemUTC());
+    }
+
+    RuleResultHistoryStore(int maxBags, Duration timeToLive, MetricRegistry metricRegistry, Clock clock) {
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+        this.entries = new LruMap<>(maxBags);
+        metricRegistry.register(MetricRegistry.name(RuleResultHistoryStore.class, "size"), (Gauge<Integer>) this::size);
+    }
+
+    /**
+     * Returns the history of the bag with the given key, which is empty if the bag was not validated before or its history has expired. The history expires {@code timeToLive} after
+     * this call.
+     *
+     * @param key the key of the bag
+     * @return the history
+     */
+    public synchronized RuleResultHistory getHistory(String key) {
+        var now = clock.instant();
+        var entry = entries.get(key);
+
+        if (entry == null || !now.isBefore(entry.expires)) {
+            entry = new Entry();
+            entries.put(key, entry);
+        }
+
+        entry.expires = now.plus(timeToLive);
+        return entry.history;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static class Entry {
+        private final History history = new History();
+        private Instant expires;
+    }
+
+    // rules of one validation may be executed concurrently, and the same bag may be validated by concurrent requests
+    private static class History implements RuleResultHistory {
+        private final Map<String, Map.Entry<String, RuleValidationResult>> results = new ConcurrentHashMap<>();
+
+        @Override
+        public Optional<RuleValidationResult> get(String ruleNumber, String inputsFingerprint) {
+            return Optional.ofNullable(results.get(ruleNumber))
+                .filter(e -> e.getKey().equals(inputsFingerprint))
+                .map(Map.Entry::getValue);
+        }
+
+        @Override
+        public void put(String ruleNumber, String inputsFingerprint, RuleValidationResult result) {
+            results.put(ruleNumber, Map.entry(inputsFingerprint, result));
+        }
+    }
+}
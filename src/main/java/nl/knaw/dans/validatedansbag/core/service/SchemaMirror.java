@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Copies XML schemas, everything they import, include or redefine, and the DTDs they refer to, to a directory laid out as &lt;host&gt;/&lt;path&gt;, which is where
+ * {@link LocalSchemaResolver} looks them up. The build does not run it, so that the build needs no network and always bundles the same schemas. To refresh the bundled schemas, run
+ * it by hand on src/main/resources/schemas and commit the result; it can also fill the local directory of a host. Files that are already in the directory are not downloaded again, so
+ * delete the directory first to pick up changed schemas.
+ */
+public class SchemaMirror {
+    private static final Logger log = LoggerFactory.getLogger(SchemaMirror.class);
+    private static final Set<String> SCHEMA_REFERENCES = Set.of("import", "include", "redefine", "override");
+    private static final String EXTERNAL_ID = "(?:PUBLIC\\s+(?:\"[^\"]*\"|'[^']*')|SYSTEM)\\s+(?:\"([^\"]*)\"|'([^']*)')";
+    private static final Pattern DOCTYPE = Pattern.compile("<!DOCTYPE\\s+[^\\s\\[>]+\\s+" + EXTERNAL_ID);
+    private static final Pattern EXTERNAL_ENTITY = Pattern.compile("<!ENTITY\\s+(?:%\\s+)?[^\\s]+\\s+" + EXTERNAL_ID);
+
+    private final Path directory;
+    private final HttpClient httpClient;
+
+    public SchemaMirror(Path directory) {
+        this.directory = directory.toAbsolutePath().normalize();
+        this.httpClient = HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(Duration.ofSeconds(30))
+            .build();
+    }
+
+    /**
+     * Mirrors the schemas that the application validates against.
+     *
+     * @param args the directory to copy the schemas to
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length != 1) {
+            System.err.println("Usage: SchemaMirror <directory>");
+            System.exit(1);
+        }
+
+        new SchemaMirror(Path.of(args[0])).mirror(XmlSchemaValidatorImpl.SCHEMA_URLS.values());
+    }
+
+    /**
+     * Copies the schemas with the given URLs, and everything they refer to.
+     *
+     * @param urls the URLs of the top-level schemas
+     * @return the files in the directory that the schemas and the files they refer to are in
+     */
+    public List<Path> mirror(Collection<String> urls) throws IOException, InterruptedException {
+        var queue = new ArrayDeque<URI>();
+        var files = new ArrayList<Path>();
+        // http and https URLs map to the same file, so visited files are tracked instead of URLs
+        var visited = new HashSet<Path>();
+
+        for (var url : urls) {
+            queue.add(URI.create(url));
+        }
+
+        while (!queue.isEmpty()) {
+            var uri = queue.remove();
+            var file = getFile(uri);
+
+            if (!visited.add(file)) {
+                continue;
+            }
+
+            byte[] content;
+
+            if (Files.isRegularFile(file)) {
+                content = Files.readAllBytes(file);
+            }
+            else {
+                content = download(uri);
+                Files.createDirectories(file.getParent());
+                Files.write(file, content);
+                log.info("Copied {} to {}", uri, file);
+            }
+
+            files.add(file);
+
+            for (var reference : getReferences(uri, content)) {
+                queue.add(uri.resolve(reference));
+            }
+        }
+
+        return files;
+    }
+
+    Path getFile(URI uri) throws IOException {
+        if (uri.getHost() == null) {
+            throw new IOException(String.format("Cannot copy %s, because it is not a URL with a host", uri));
+        }
+
+        var file = directory.resolve(uri.getHost() + uri.getPath()).normalize();
+
+        if (!file.startsWith(directory)) {
+            throw new IOException(String.format("Cannot copy %s, because it points outside of %s", uri, directory));
+        }
+
+        return file;
+    }
+
+    private byte[] download(URI uri) throws IOException, InterruptedException {
+        var request = HttpRequest.newBuilder(uri)
+            .timeout(Duration.ofSeconds(60))
+            .GET()
+            .build();
+        var response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+
+        if (response.statusCode() != 200) {
+            throw new IOException(String.format("Could not download %s: HTTP status %d", uri, response.statusCode()));
+        }
+
+        return response.body();
+    }
+
+    // the schema loader also reads the DTD of a schema, and the DTDs that one refers to, so these are needed as well
+    private List<String> getReferences(URI uri, byte[] content) throws IOException {
+        var references = new ArrayList<String>();
+        var text = new String(content, StandardCharsets.UTF_8);
+
+        for (var pattern : List.of(DOCTYPE, EXTERNAL_ENTITY)) {
+            var matcher = pattern.matcher(text);
+
+            while (matcher.find()) {
+                references.add(matcher.group(1) != null ? matcher.group(1) : matcher.group(2));
+            }
+        }
+
+        if (!uri.getPath().endsWith(".dtd")) {
+            references.addAll(getSchemaLocations(uri, content));
+        }
+
+        return references;
+    }
+
+    private List<String> getSchemaLocations(URI uri, byte[] content) throws IOException {
+        var factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        var locations = new ArrayList<String>();
+
+        try {
+            var reader = factory.createXMLStreamReader(new ByteArrayInputStream(content));
+
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT
+                        && XMLConstants.W3C_XML_SCHEMA_NS_URI.equals(reader.getNamespaceURI())
+                        && SCHEMA_REFERENCES.contains(reader.getLocalName())) {
+                        var location = reader.getAttributeValue(null, "schemaLocation");
+
+                        // an import without a location relies on the schema being loaded some other way
+                        if (location != null) {
+                            locations.add(location.trim());
+                        }
+                    }
+                }
+            }
+            finally {
+                reader.close();
+            }
+        }
+        catch (XMLStreamException e) {
+            throw new IOException(String.format("Could not read schema %s", uri), e);
+        }
+
+        return locations;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+/**
+ * Checks that bytes are well-formed UTF-8, as defined in table 3-7 of the Unicode standard, which is also what the UTF-8 decoder of the JDK accepts. The bytes can be passed in chunks
+ * of any size; a sequence that is split over two chunks is continued in the next one. Nothing is allocated while checking.
+ */
+class Utf8Validator {
+    private long offset;
+    // the offset of the first byte of the sequence that is being checked
+    private long sequenceStart;
+    // the number of continuation bytes that the current sequence still needs, and the range that the next one must be in
+    private int needed;
+    private int lower = 0x80;
+    private int upper = 0xBF;
+    private long invalidOffset = -1;
+
+    /**
+     * Checks the next chunk of bytes.
+     *
+     * @param bytes  the buffer
+     * @param from   the index of the first byte of the chunk
+     * @param to     the index after the last byte of the chunk
+     * @return false if an invalid sequence was found, in this chunk or before; the remaining bytes are then ignored
+     */
+    boolean update(byte[] bytes, int from, int to) {
+        if (invalidOffset >= 0) {
+            return false;
+        }
+
+        for (var i = from; i < to; ++i, ++offset) {
+            var b = bytes[i] & 0xFF;
+
+            if (needed > 0) {
+                if (b < lower || b > upper) {
+                    invalidOffset = sequenceStart;
+                    return false;
+                }
+
+                needed -= 1;
+                lower = 0x80;
+                upper = 0xBF;
+            }
+            else if (b >= 0x80 && !start(b)) {
+                invalidOffset = offset;
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Finishes the check; a sequence that is not complete at the end of the input is invalid.
+     *
+     * @return the offset of the first byte of the first invalid sequence, or -1 if all bytes were well-formed UTF-8
+     */
+    long finish() {
+        if (invalidOffset < 0 && needed > 0) {
+            invalidOffset = sequenceStart;
+        }
+
+        return invalidOffset;
+    }
+
+    // starts a multibyte sequence, or returns false if the byte cannot start one
+    private boolean start(int b) {
+        sequenceStart = offset;
+
+        if (b >= 0xC2 && b <= 0xDF) {
+            needed = 1;
+        }
+        else if (b >= 0xE0 && b <= 0xEF) {
+            needed = 2;
+
+            if (b == 0xE0) {
+                // no overlong encodings
+                lower = 0xA0;
+            }
+            else if (b == 0xED) {
+                // no surrogates
+                upper = 0x9F;
+            }
+        }
+        else if (b >= 0xF0 && b <= 0xF4) {
+            needed = 3;
+
+            if (b == 0xF0) {
+                lower = 0x90;
+            }
+            else if (b == 0xF4) {
+                // nothing above U+10FFFF
+                upper = 0x8F;
+            }
+        }
+        else {
+            return false;
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import java.time.Instant;
+
+/**
+ * A validation that runs in the background. The status and the other values change while the job runs; a job that is DONE or FAILED does not change anymore.
+ *
+ * @param <T> the type of the result
+ */
+public class ValidationJob<T> {
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        DONE,
+        FAILED
+    }
+
+    private final String id;
+    private final Instant submitted;
+    // the status is written last, so whoever sees DONE or FAILED also sees the result or the exception
+    private volatile Status status = Status.QUEUED;
+    private volatile Instant started;
+    private volatile Instant finished;
+    private volatile T result;
+    private volatile Exception exception;
+
+    ValidationJob(String id, Instant submitted) {
+        this.id = id;
+        this.submitted = submitted;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Instant getSubmitted() {
+        return submitted;
+    }
+
+    public Instant getStarted() {
+        return started;
+    }
+
+    public Instant getFinished() {
+        return finished;
+    }
+
+    /**
+     * @return the result if the job is DONE, otherwise null
+     */
+    public T getResult() {
+        return result;
+    }
+
+    /**
+     * @return the reason the job FAILED, otherwise null
+     */
+    public Exception getException() {
+        return exception;
+    }
+
+    void start(Instant now) {
+        started = now;
+        status = Status.RUNNING;
+    }
+
+    void succeed(T result, Instant now) {
+        this.result = result;
+        finished = now;
+        status = Status.DONE;
+    }
+
+    void fail(Exception exception, Instant now) {
+        this.exception = exception;
+        finished = now;
+        status = Status.FAILED;
+    }
+
+    @Override
+    public String toString() {
+        return "ValidationJob{" +
+            "id='" + id + '\'' +
+            ", status=" + status +
+            ", submitted=" + submitted +
+            ", started=" + started +
+            ", finished=" + finished +
+            '}';
+    }
+}
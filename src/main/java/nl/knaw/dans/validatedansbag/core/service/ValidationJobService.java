@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs validations in the background and keeps their results for a while, so clients can poll for them instead of keeping a connection open for the whole validation.
+ *
+ * @param <T> the type of the result of a validation
+ */
+public interface ValidationJobService<T> {
+
+    /**
+     * Queues a validation.
+     *
+     * @param task the validation
+     * @return the job, with status QUEUED or later
+     * @throws RejectedExecutionException if the queue is full
+     */
+    ValidationJob<T> submit(Callable<T> task);
+
+    /**
+     * @param id the id of the job
+     * @return the job, or empty if there is no such job or its result has expired
+     */
+    Optional<ValidationJob<T>> getJob(String id);
+
+    /**
+     * Removes the jobs that finished longer ago than the retention period.
+     */
+    void evictExpiredJobs();
+
+    /**
+     * @return the number of jobs that are kept, whether they are queued, running or finished
+     */
+    int getJobCount();
+}
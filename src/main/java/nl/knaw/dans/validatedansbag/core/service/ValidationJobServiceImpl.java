@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+public class ValidationJobServiceImpl<T> implements ValidationJobService<T> {
+    private static final Logger log = LoggerFactory.getLogger(ValidationJobServiceImpl.class);
+
+    private final Executor executor;
+    private final Duration retention;
+    private final int maxRetainedJobs;
+    private final Clock clock;
+    private final Map<String, ValidationJob<T>> jobs = new ConcurrentHashMap<>();
+    // in the order in which they finished, so that the oldest results are evicted first when too many are kept; guarded by this
+    private final Queue<ValidationJob<T>> finishedJobs = new ArrayDeque<>();
+
+    /**
+     * @param executor        runs the jobs; its work queue limits the number of jobs that can wait, and it must throw a {@link RejectedExecutionException} if that queue is full
+     * @param retention       how long the result of a finished job is kept
+     * @param maxRetainedJobs the largest number of finished jobs whose result is kept; when another job finishes, the result of the job that finished first is evicted
+     */
+    public ValidationJobServiceImpl(Executor executor, Duration retention, int maxRetainedJobs) {
+        this(executor, retention, maxRetainedJobs, Clock.systemUTC());
+    }
+
+    ValidationJobServiceImpl(Executor executor, Duration retention, int maxRetainedJobs, Clock clock) {
+        this.executor = executor;
+        this.retention = retention;
+        this.maxRetainedJobs = maxRetainedJobs;
+        this.clock = clock;
+    }
+
+    @Override
+    public ValidationJob<T> submit(Callable<T> task) {
+        var job = new ValidationJob<T>(UUID.randomUUID().toString(), clock.instant());
+        jobs.put(job.getId(), job);
+
+        try {
+            executor.execute(() -> run(job, task));
+        }
+        catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw e;
+        }
+
+        log.debug("Submitted {}", job);
+        return job;
+    }
+
+    @Override
+    public Optional<ValidationJob<T>> getJob(String id) {
+        return Optional.ofNullable(jobs.get(id))
+            .filter(job -> !isExpired(job, clock.instant()));
+    }
+
+    @Override
+    public synchronized void evictExpiredJobs() {
+        var now = clock.instant();
+        jobs.values().removeIf(job -> isExpired(job, now));
+        finishedJobs.removeIf(job -> isExpired(job, now));
+    }
+
+    @Override
+    public int getJobCount() {
+        return jobs.size();
+    }
+
+    private void run(ValidationJob<T> job, Callable<T> task) {
+        job.start(clock.instant());
+        log.debug("Started {}", job);
+
+        try {
+            job.succeed(task.call(), clock.instant());
+        }
+        catch (Exception e) {
+            log.error("Validation job {} failed", job.getId(), e);
+            job.fail(e, clock.instant());
+        }
+        catch (Throwable e) {
+            // the job must still finish, otherwise it stays RUNNING and is never evicted; the error itself is left to the executor
+            log.error("Validation job {} failed", job.getId(), e);
+            job.fail(new ExecutionException(e), clock.instant());
+            throw e;
+        }
+        finally {
+            retain(job);
+        }
+
+        log.debug("Finished {}", job);
+    }
+
+    // the retention period alone does not bound the memory, because a client can submit many jobs and never fetch their results
+    private synchronized void retain(ValidationJob<T> job) {
+        finishedJobs.add(job);
+
+        while (finishedJobs.size() > maxRetainedJobs) {
+            var evicted = finishedJobs.remove();
+            jobs.remove(evicted.getId());
+            log.debug("Evicted {}, because more than {} finished jobs are kept", evicted, maxRetainedJobs);
+        }
+    }
+
+    private boolean isExpired(ValidationJob<T> job, Instant now) {
+        var finished = job.getFinished();
+        return finished != null && !now.isBefore(finished.plus(retention));
+    }
+}
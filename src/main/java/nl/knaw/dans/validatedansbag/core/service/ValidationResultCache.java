@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import nl.knaw.dans.validatedansbag.core.engine.RuleValidationResult;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Results of earlier validations, by key. The number of results is bounded: when it is full, the least recently used result is evicted. Results also expire after a fixed time.
+ */
+public class ValidationResultCache {
+    private final Duration timeToLive;
+    private final Clock clock;
+    private final Map<String, Entry> entries;
+    private final Meter hits;
+    private final Meter misses;
+
+    public ValidationResultCache(int maxEntries, Duration timeToLive, MetricRegistry metricRegistry) {
+        this(maxEntries, timeToLive, metricRegistry, Clock.systemUTC());
+    }
+
+    ValidationResultCache(int maxEntries, Duration timeToLive, MetricRegistry metricRegistry, Clock clock) {
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+        this.entries = new LruMap<>(maxEntries);
+        this.hits = metricRegistry.meter(MetricRegistry.name(ValidationResultCache.class, "hits"));
+        this.misses = metricRegistry.meter(MetricRegistry.name(ValidationResultCache.class, "misses"));
+        metricRegistry.register(MetricRegistry.name(ValidationResultCache.class, "size"), (Gauge<Integer>) this::size);
+    }
+
+    public synchronized Optional<List<RuleValidationResult>> get(String key) {
+        var entry = entries.get(key);
+
+        if (entry != null && !clock.instant().isBefore(entry.expires)) {
+            entries.remove(key);
+            entry = null;
+        }
+
+        if (entry == null) {
+            misses.mark();
+            return Optional.empty();
+        }
+
+        hits.mark();
+        return Optional.of(entry.results);
+    }
+
+    public synchronized void put(String key, List<RuleValidationResult> results) {
+        entries.put(key, new Entry(List.copyOf(results), clock.instant().plus(timeToLive)));
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static class Entry {
+        private final List<RuleValidationResult> results;
+        private final Instant expires;
+
+        Entry(List<RuleValidationResult> results, Instant expires) {
+            this.results = results;
+            this.expires = expires;
+        }
+    }
+}
@@ -15,6 +15,7 @@
  */
 package nl.knaw.dans.validatedansbag.core.service;
 
+import nl.knaw.dans.validatedansbag.core.engine.BagValidationContext;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
@@ -40,6 +41,37 @@ public interface XmlReader {
 
     Document readXmlFile(Path path) throws ParserConfigurationException, IOException, SAXException;
 
+    /**
+     * Reads the XML file at most once per validation. The returned document is shared by all rules using the same context, so it must not be modified.
+     *
+     * @param path    the file to read
+     * @param context the context of the current validation
+     * @return the parsed document
+     * @throws Exception if the file could not be read or parsed
+     */
+    default Document readXmlFile(Path path, BagValidationContext context) throws Exception {
+        return context.computeIfAbsent(context.getKey("xml", path), () -> readXmlFile(path));
+    }
+
+    /**
+     * Creates a handler that builds a document from the events of an XML file that is read elsewhere, for example while it is validated against its schema.
+     *
+     * @return a new handler
+     */
+    DocumentHandler newDocumentHandler();
+
+    /**
+     * Makes a document that was built by a handler available to {@link #readXmlFile(Path, BagValidationContext)} for the rest of the validation, unless the file has been read already.
+     *
+     * @param path     the file the document was built from
+     * @param document the document
+     * @param context  the context of the current validation
+     * @throws Exception if the file was read before and that failed
+     */
+    default void share(Path path, Document document, BagValidationContext context) throws Exception {
+        context.computeIfAbsent(context.getKey("xml", path), () -> document);
+    }
+
     Stream<Node> xpathToStream(Node node, String expression) throws XPathExpressionException;
 
     Stream<Node> xpathsToStream(Node node, Collection<String> expressions) throws XPathExpressionException;
@@ -47,4 +79,12 @@ public interface XmlReader {
     Stream<String> xpathToStreamOfStrings(Node node, String expression) throws XPathExpressionException;
 
     Stream<String> xpathsToStreamOfStrings(Node node, Collection<String> expressions) throws XPathExpressionException;
+
+    interface DocumentHandler extends XmlStreamHandler {
+
+        /**
+         * @return the document, or null if the end of the document has not been reached
+         */
+        Document getDocument();
+    }
 }
@@ -24,82 +24,112 @@ import org.xml.sax.SAXException;
 import javax.xml.XMLConstants;
 import javax.xml.namespace.NamespaceContext;
 import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 import java.io.IOException;
 import java.io.StringReader;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Objects;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 public class XmlReaderImpl implements XmlReader {
+    private static final Map<String, String> NAMESPACES = Map.of(
+        "dc", NAMESPACE_DC,
+        "dcx-dai", NAMESPACE_DCX_DAI,
+        "ddm", NAMESPACE_DDM,
+        "dcterms", NAMESPACE_DCTERMS,
+        "xsi", NAMESPACE_XSI,
+        "id-type", NAMESPACE_ID_TYPE,
+        "dcx-gml", NAMESPACE_DCX_GML,
+        "files", NAMESPACE_FILES_XML,
+        "gml", NAMESPACE_OPEN_GIS
+    );
 
-    private final XPath xpath;
+    private static final NamespaceContext NAMESPACE_CONTEXT = new NamespaceContext() {
 
-    public XmlReaderImpl() {
-        this.xpath = XPathFactory
-            .newInstance()
-            .newXPath();
-
-        final var namespaceMap = Map.of(
-            "dc", NAMESPACE_DC,
-            "dcx-dai", NAMESPACE_DCX_DAI,
-            "ddm", NAMESPACE_DDM,
-            "dcterms", NAMESPACE_DCTERMS,
-            "xsi", NAMESPACE_XSI,
-            "id-type", NAMESPACE_ID_TYPE,
-            "dcx-gml", NAMESPACE_DCX_GML,
-            "files", NAMESPACE_FILES_XML,
-            "gml", NAMESPACE_OPEN_GIS
-        );
-
-        xpath.setNamespaceContext(new NamespaceContext() {
-
-            @Override
-            public String getNamespaceURI(String s) {
-                return namespaceMap.get(s);
-            }
+        @Override
+        public String getNamespaceURI(String s) {
+            return NAMESPACES.get(s);
+        }
 
-            @Override
-            public String getPrefix(String s) {
-                return null;
-            }
+        @Override
+        public String getPrefix(String s) {
+            return null;
+        }
 
-            @Override
-            public Iterator<String> getPrefixes(String s) {
-                return null;
-            }
-        });
+        @Override
+        public Iterator<String> getPrefixes(String s) {
+            return null;
+        }
+    };
+
+    private final DocumentBuilderFactory documentBuilderFactory;
+    private final XPathFactory xPathFactory;
+
+    // a DocumentBuilder can only parse one document at a time, so each thread keeps its own and resets it before every use
+    private final ThreadLocal<DocumentBuilder> documentBuilders = new ThreadLocal<>();
+
+    // XPath and XPathExpression objects are not thread-safe, so each thread compiles the (constant) expressions it evaluates once and keeps them
+    private final ThreadLocal<CompiledExpressions> compiledExpressions;
+
+    public XmlReaderImpl() {
+        try {
+            this.documentBuilderFactory = createDocumentBuilderFactory();
+        }
+        catch (ParserConfigurationException e) {
+            throw new RuntimeException("Unable to configure the XML parser", e);
+        }
 
+        this.xPathFactory = XPathFactory.newInstance();
+        this.compiledExpressions = ThreadLocal.withInitial(() -> new CompiledExpressions(newXPath()));
     }
 
     @Override
     public Document readXmlFile(Path path) throws ParserConfigurationException, IOException, SAXException {
-        var factory = getFactory();
-
-        return factory
-            .newDocumentBuilder()
-            .parse(path.toFile());
+        return getDocumentBuilder().parse(path.toFile());
     }
 
     public Document readXmlString(String str) throws ParserConfigurationException, IOException, SAXException {
-        var factory = getFactory();
+        return getDocumentBuilder().parse(new InputSource(new StringReader(str)));
+    }
 
-        return factory
-            .newDocumentBuilder()
-            .parse(new InputSource(new StringReader(str)));
+    @Override
+    public DocumentHandler newDocumentHandler() {
+        try {
+            return new DocumentBuildingHandler(getDocumentBuilder().newDocument());
+        }
+        catch (ParserConfigurationException e) {
+            throw new IllegalStateException("The XML parser was configured in the constructor", e);
+        }
     }
 
     private Object evaluateXpath(Node node, String expr, QName type) throws XPathExpressionException {
-        return xpath.compile(expr).evaluate(node, type);
+        return compiledExpressions.get().get(expr).evaluate(node, type);
+    }
+
+    private XPath newXPath() {
+        // the factory is only used when a thread evaluates its first expression, which is rare enough to simply lock it
+        synchronized (xPathFactory) {
+            var xpath = xPathFactory.newXPath();
+            xpath.setNamespaceContext(NAMESPACE_CONTEXT);
+            return xpath;
+        }
     }
 
     @Override
@@ -132,11 +162,121 @@ public class XmlReaderImpl implements XmlReader {
         return xpathsToStream(node, expressions).map(Node::getTextContent);
     }
 
-    private DocumentBuilderFactory getFactory() throws ParserConfigurationException {
+    private DocumentBuilder getDocumentBuilder() throws ParserConfigurationException {
+        var builder = documentBuilders.get();
+
+        if (builder == null) {
+            // DocumentBuilderFactory is not thread-safe either, but new builders are only needed for new threads
+            synchronized (documentBuilderFactory) {
+                builder = documentBuilderFactory.newDocumentBuilder();
+            }
+
+            documentBuilders.set(builder);
+        }
+        else {
+            builder.reset();
+        }
+
+        return builder;
+    }
+
+    private DocumentBuilderFactory createDocumentBuilderFactory() throws ParserConfigurationException {
         var factory = DocumentBuilderFactory.newInstance();
         factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
         factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        // documents are shared by rules that run concurrently; a deferred DOM expands its nodes on first access, which makes even reading it unsafe from multiple threads
+        factory.setFeature("http://apache.org/xml/features/dom/defer-node-expansion", false);
         factory.setNamespaceAware(true);
         return factory;
     }
+
+    // builds the same tree as the DocumentBuilder would, except that the text of CDATA sections is merged into the surrounding text nodes
+    private static class DocumentBuildingHandler implements DocumentHandler {
+        private final Document document;
+        private final Deque<Node> parents = new ArrayDeque<>();
+        private boolean complete;
+
+        DocumentBuildingHandler(Document document) {
+            this.document = document;
+            this.parents.push(document);
+        }
+
+        @Override
+        public void handleEvent(XMLStreamReader reader) {
+            switch (reader.getEventType()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    var element = document.createElementNS(emptyToNull(reader.getNamespaceURI()), getQualifiedName(reader.getPrefix(), reader.getLocalName()));
+
+                    for (var i = 0; i < reader.getNamespaceCount(); ++i) {
+                        var prefix = reader.getNamespacePrefix(i);
+                        var name = prefix == null || prefix.isEmpty() ? XMLConstants.XMLNS_ATTRIBUTE : XMLConstants.XMLNS_ATTRIBUTE + ":" + prefix;
+                        element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, name, Objects.requireNonNullElse(reader.getNamespaceURI(i), ""));
+                    }
+
+                    for (var i = 0; i < reader.getAttributeCount(); ++i) {
+                        element.setAttributeNS(emptyToNull(reader.getAttributeNamespace(i)), getQualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+                            reader.getAttributeValue(i));
+                    }
+
+                    parents.peek().appendChild(element);
+                    parents.push(element);
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    parents.pop();
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    // like the DocumentBuilder, ignore whitespace outside the root element
+                    if (parents.peek() != document) {
+                        parents.peek().appendChild(document.createTextNode(reader.getText()));
+                    }
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    parents.peek().appendChild(document.createComment(reader.getText()));
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    parents.peek().appendChild(document.createProcessingInstruction(reader.getPITarget(), reader.getPIData()));
+                    break;
+                case XMLStreamConstants.END_DOCUMENT:
+                    complete = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public Document getDocument() {
+            return complete ? document : null;
+        }
+
+        private static String emptyToNull(String namespace) {
+            return namespace == null || namespace.isEmpty() ? null : namespace;
+        }
+
+        private static String getQualifiedName(String prefix, String localName) {
+            return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+        }
+    }
+
+    private static class CompiledExpressions {
+        private final XPath xpath;
+        private final Map<String, XPathExpression> expressions = new HashMap<>();
+
+        CompiledExpressions(XPath xpath) {
+            this.xpath = xpath;
+        }
+
+        XPathExpression get(String expression) throws XPathExpressionException {
+            var compiled = expressions.get(expression);
+
+            if (compiled == null) {
+                compiled = xpath.compile(expression);
+                expressions.put(expression, compiled);
+            }
+
+            return compiled;
+        }
+    }
 }
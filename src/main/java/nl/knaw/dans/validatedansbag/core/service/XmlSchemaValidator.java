@@ -19,10 +19,26 @@ import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
+import javax.xml.stream.XMLStreamException;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
 
 public interface XmlSchemaValidator {
 
     List<SAXParseException> validateDocument(Node node, String schema) throws IOException, SAXException;
+
+    /**
+     * Validates the file while streaming through it, without building a DOM. Every event that is read is also passed to the handler, so that the values other rules need can be
+     * collected in the same pass.
+     *
+     * @param file    the file to validate
+     * @param schema  the name of the file type, for example "dataset.xml"
+     * @param handler receives the events of the file
+     * @return the problems found
+     * @throws IOException        if the file could not be read
+     * @throws SAXException       if the validation could not be completed
+     * @throws XMLStreamException if the file is not well-formed
+     */
+    List<SAXParseException> validateFile(Path file, String schema, XmlStreamHandler handler) throws IOException, SAXException, XMLStreamException;
 }
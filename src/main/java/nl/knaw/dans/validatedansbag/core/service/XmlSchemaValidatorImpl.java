@@ -15,6 +15,8 @@
  */
 package nl.knaw.dans.validatedansbag.core.service;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Node;
@@ -22,21 +24,34 @@ import org.xml.sax.ErrorHandler;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.util.StreamReaderDelegate;
 import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stax.StAXSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
-import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class XmlSchemaValidatorImpl implements XmlSchemaValidator {
 
     private static final Logger log = LoggerFactory.getLogger(XmlSchemaValidatorImpl.class);
-    protected final Map<String, String> schemaUrls = Map.of(
+    public static final Map<String, String> SCHEMA_URLS = Map.of(
         "ddm", "https://easy.dans.knaw.nl/schemas/md/ddm/ddm.xsd",
         "files", "https://easy.dans.knaw.nl/schemas/bag/metadata/files/files.xsd",
         "agreements", "https://easy.dans.knaw.nl/schemas/bag/metadata/agreements/agreements.xsd",
@@ -45,6 +60,8 @@ public class XmlSchemaValidatorImpl implements XmlSchemaValidator {
         "emd", "https://easy.dans.knaw.nl/schemas/md/emd/emd.xsd"
     );
 
+    protected final Map<String, String> schemaUrls = SCHEMA_URLS;
+
     protected final Map<String, String> filenameToSchemaMap = Map.of(
         "dataset.xml", "ddm",
         "files.xml", "files",
@@ -54,26 +71,81 @@ public class XmlSchemaValidatorImpl implements XmlSchemaValidator {
         "emd.xml", "emd"
     );
 
-    protected final Map<String, Schema> validators = new HashMap<>();
-    private final SchemaFactory schemaFactory;
+    protected final Map<String, Schema> validators = new ConcurrentHashMap<>();
+    private final LocalSchemaResolver schemaResolver;
+    private final Meter incompleteStreams;
+
+    // XMLInputFactory is not guaranteed to be thread-safe, so each thread has its own
+    private final ThreadLocal<XMLInputFactory> inputFactories = ThreadLocal.withInitial(XmlSchemaValidatorImpl::createInputFactory);
 
     public XmlSchemaValidatorImpl() {
-        this.schemaFactory = SchemaFactory.newInstance("http://www.w3.org/2001/XMLSchema");
+        this(new LocalSchemaResolver(null, false), new MetricRegistry());
+    }
 
-        for (var filename : filenameToSchemaMap.keySet()) {
-            try {
-                log.info("Loading validator for {}...", filename);
-                getValidatorForFilename(filename);
-                log.info("Validator for {} loaded.", filename);
+    /**
+     * Loads all schemas. Each schema is compiled on its own thread, because most of the time is spent resolving and parsing the schemas they import.
+     *
+     * @param schemaResolver resolves the schemas and their imports to local copies
+     * @param metricRegistry the registry to report the time it took to load the schemas, and the files whose handler did not see the end of the document, to
+     */
+    public XmlSchemaValidatorImpl(LocalSchemaResolver schemaResolver, MetricRegistry metricRegistry) {
+        this.schemaResolver = schemaResolver;
+        this.incompleteStreams = metricRegistry.meter(MetricRegistry.name(XmlSchemaValidatorImpl.class, "incomplete-streams"));
+
+        var timer = metricRegistry.timer(MetricRegistry.name(XmlSchemaValidatorImpl.class, "schema-loading"));
+
+        try (var ignored = timer.time()) {
+            loadSchemas();
+        }
+    }
+
+    private void loadSchemas() {
+        var executor = Executors.newFixedThreadPool(filenameToSchemaMap.size());
+
+        try {
+            var futures = new HashMap<String, Future<Schema>>();
+
+            for (var filename : filenameToSchemaMap.keySet()) {
+                futures.put(filename, executor.submit(() -> loadSchema(filename)));
             }
-            catch (MalformedURLException | SAXException e) {
-                log.error("Unable to load validator for filename {}", filename, e);
-                // throw a runtime exception because
-                var name = filenameToSchemaMap.get(filename);
-                var url = schemaUrls.get(name);
-                throw new RuntimeException(String.format("Unable to load XSD '%s'", url), e);
+
+            for (var entry : futures.entrySet()) {
+                var filename = entry.getKey();
+                var url = schemaUrls.get(filenameToSchemaMap.get(filename));
+
+                try {
+                    validators.put(filename, entry.getValue().get());
+                    log.info("Validator for {} loaded.", filename);
+                }
+                catch (ExecutionException e) {
+                    log.error("Unable to load validator for filename {}", filename, e.getCause());
+                    throw new RuntimeException(String.format("Unable to load XSD '%s'", url), e.getCause());
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(String.format("Interrupted while loading XSD '%s'", url), e);
+                }
             }
         }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Schema loadSchema(String filename) throws IOException, SAXException {
+        var url = schemaUrls.get(filenameToSchemaMap.get(filename));
+        log.info("Loading validator for {}...", filename);
+
+        // a SchemaFactory is not thread-safe, so every schema gets its own
+        var schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+        schemaFactory.setResourceResolver(schemaResolver);
+
+        try {
+            return schemaFactory.newSchema(schemaResolver.getSource(url));
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
     }
 
     Schema getValidatorForFilename(String filename) throws MalformedURLException, SAXException {
@@ -82,17 +154,7 @@ public class XmlSchemaValidatorImpl implements XmlSchemaValidator {
         log.debug("Found validator schema {}", result);
 
         if (result == null) {
-            var schema = filenameToSchemaMap.get(filename);
-
-            if (schema != null) {
-                result = schemaFactory.newSchema(new URL(schemaUrls.get(schema)));
-                log.debug("Saving schema validator");
-                validators.put(filename, result);
-            }
-            else {
-                log.warn("Requested XML schema for filename {} but this filename is unknown", filename);
-                return null;
-            }
+            log.warn("Requested XML schema for filename {} but this filename is unknown", filename);
         }
 
         return result;
@@ -100,6 +162,48 @@ public class XmlSchemaValidatorImpl implements XmlSchemaValidator {
 
     @Override
     public List<SAXParseException> validateDocument(Node node, String schema) throws IOException, SAXException {
+        var exceptions = new ArrayList<SAXParseException>();
+        createValidator(schema, exceptions).validate(new DOMSource(node));
+
+        return exceptions;
+    }
+
+    @Override
+    public List<SAXParseException> validateFile(Path file, String schema, XmlStreamHandler handler) throws IOException, SAXException, XMLStreamException {
+        var exceptions = new ArrayList<SAXParseException>();
+        var validator = createValidator(schema, exceptions);
+
+        try (var inputStream = Files.newInputStream(file)) {
+            var reader = new DoctypeRejectingStreamReader(inputFactories.get().createXMLStreamReader(file.toString(), inputStream));
+
+            try {
+                // the validator pulls the events from the reader; the handler sees each of them right after
+                validator.validate(new StAXSource(new StreamReaderDelegate(reader) {
+
+                    @Override
+                    public int next() throws XMLStreamException {
+                        var event = super.next();
+                        handler.handleEvent(this);
+                        return event;
+                    }
+                }));
+
+                // a StAX-to-SAX bridge may stop pulling events after the root element; the handler then never sees END_DOCUMENT, and the file is parsed again by the rules
+                // that need its content
+                if (reader.getEventType() != XMLStreamConstants.END_DOCUMENT) {
+                    log.debug("Validation of {} stopped before the end of the document; it will be parsed again", file);
+                    incompleteStreams.mark();
+                }
+            }
+            finally {
+                reader.close();
+            }
+        }
+
+        return exceptions;
+    }
+
+    private Validator createValidator(String schema, List<SAXParseException> exceptions) throws IOException, SAXException {
         var schemaInstance = getValidatorForFilename(schema);
 
         if (schemaInstance == null) {
@@ -107,7 +211,6 @@ public class XmlSchemaValidatorImpl implements XmlSchemaValidator {
         }
 
         var validator = schemaInstance.newValidator();
-        var exceptions = new ArrayList<SAXParseException>();
 
         validator.setErrorHandler(new ErrorHandler() {
 
@@ -128,8 +231,16 @@ public class XmlSchemaValidatorImpl implements XmlSchemaValidator {
             }
         });
 
-        validator.validate(new DOMSource(node));
+        return validator;
+    }
 
-        return exceptions;
+    private static XMLInputFactory createInputFactory() {
+        var factory = XMLInputFactory.newFactory();
+        // same restrictions as for the DOM parser in XmlReaderImpl
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
     }
 }
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Receives the events of an XML document that is being read for another purpose, so that one pass over the file can serve several consumers.
+ */
+@FunctionalInterface
+public interface XmlStreamHandler {
+
+    /**
+     * Called every time the reader has moved to the next event. The handler may inspect the current event, but must not move the reader.
+     *
+     * @param reader the reader, positioned at the new event
+     * @throws XMLStreamException if the event could not be read
+     */
+    void handleEvent(XMLStreamReader reader) throws XMLStreamException;
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.resource;
+
+import io.dropwizard.jersey.errors.ErrorMessage;
+import nl.knaw.dans.validatedansbag.core.service.AdmissionController;
+import nl.knaw.dans.validatedansbag.core.service.AdmissionRejectedException;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Admits requests to methods annotated with {@link Admitted}. Filters run before the request body is read, so a refused upload is not received at all; this matters for multipart
+ * requests, which are read completely before the resource method is called.
+ *
+ * <p>The admission is closed when the response has been written. If that never happens, for example because the client went away before a streamed response was written, it is closed
+ * when Jersey finishes the request.</p>
+ */
+@Admitted
+public class AdmissionFilter implements ContainerRequestFilter, ContainerResponseFilter, ApplicationEventListener {
+    private static final Logger log = LoggerFactory.getLogger(AdmissionFilter.class);
+    private static final String ADMISSION_PROPERTY = AdmissionFilter.class.getName() + ".admission";
+
+    private final AdmissionController admissionController;
+
+    public AdmissionFilter(AdmissionController admissionController) {
+        this.admissionController = admissionController;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        var uploadSize = requestContext.hasEntity() ? requestContext.getLength() : 0;
+
+        try {
+            requestContext.setProperty(ADMISSION_PROPERTY, admissionController.admit(uploadSize));
+        }
+        catch (AdmissionRejectedException e) {
+            log.warn("Refused request: {}", e.getMessage());
+            requestContext.abortWith(toResponse(e));
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        var admission = (AdmissionController.Admission) requestContext.getProperty(ADMISSION_PROPERTY);
+
+        if (admission == null) {
+            return;
+        }
+
+        // a streamed response, like that of a batch, is produced while it is written, which happens after this filter
+        if (responseContext.getEntity() instanceof StreamingOutput) {
+            var output = (StreamingOutput) responseContext.getEntity();
+
+            // the property is kept, so the admission is still closed when the request finishes without the output being written
+            responseContext.setEntity((StreamingOutput) out -> {
+                try {
+                    output.write(out);
+                }
+                finally {
+                    admission.close();
+                }
+            });
+        }
+        else {
+            closeAdmission(requestContext);
+        }
+    }
+
+    @Override
+    public void onEvent(ApplicationEvent event) {
+    }
+
+    @Override
+    public RequestEventListener onRequest(RequestEvent requestEvent) {
+        return event -> {
+            // FINISHED is also sent when the request failed or the response could not be written
+            if (event.getType() == RequestEvent.Type.FINISHED) {
+                closeAdmission(event.getContainerRequest());
+            }
+        };
+    }
+
+    private void closeAdmission(ContainerRequestContext requestContext) {
+        var admission = (AdmissionController.Admission) requestContext.getProperty(ADMISSION_PROPERTY);
+
+        if (admission != null) {
+            requestContext.removeProperty(ADMISSION_PROPERTY);
+            admission.close();
+        }
+    }
+
+    Response toResponse(AdmissionRejectedException e) {
+        // a full temporary directory is a problem of the service; the other limits are reached because of the number of requests
+        var status = e.getReason() == AdmissionRejectedException.Reason.INSUFFICIENT_TEMP_SPACE
+            ? Response.Status.SERVICE_UNAVAILABLE
+            : Response.Status.TOO_MANY_REQUESTS;
+
+        return Response.status(status)
+            .header(HttpHeaders.RETRY_AFTER, Math.max(1, e.getRetryAfter().toSeconds()))
+            .type(MediaType.APPLICATION_JSON_TYPE)
+            .entity(new ErrorMessage(status.getStatusCode(), e.getMessage()))
+            .build();
+    }
+}
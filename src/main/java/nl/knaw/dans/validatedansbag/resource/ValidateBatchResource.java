@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.resource;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import nl.knaw.dans.openapi.api.ValidateBatchCommandDto;
+import nl.knaw.dans.openapi.api.ValidateBatchErrorDto;
+import nl.knaw.dans.validatedansbag.core.BagNotFoundException;
+import nl.knaw.dans.validatedansbag.core.engine.DepositType;
+import nl.knaw.dans.validatedansbag.core.engine.ValidationLevel;
+import nl.knaw.dans.validatedansbag.core.service.AdmissionController;
+import nl.knaw.dans.validatedansbag.core.service.AdmissionRejectedException;
+import nl.knaw.dans.validatedansbag.core.service.FileService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.InternalServerErrorException;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+@Path("/validate/batch")
+public class ValidateBatchResource {
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    private static final Logger log = LoggerFactory.getLogger(ValidateBatchResource.class);
+
+    private final ValidateResource validateResource;
+
+    private final FileService fileService;
+
+    private final AdmissionController admissionController;
+
+    private final Executor executor;
+
+    private final int concurrency;
+
+    private final int maxBags;
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * @param validateResource    validates a single bag and converts the result
+     * @param fileService         lists the bags in a parent directory
+     * @param admissionController admits each bag as a separate validation, so a batch uses as many slots as it validates bags at the same time
+     * @param executor            validates the bags; it is shared by all requests
+     * @param concurrency         the largest number of bags of one request that are validated at the same time
+     * @param maxBags             the largest number of bags in one request
+     * @param objectMapper        writes the results
+     */
+    public ValidateBatchResource(ValidateResource validateResource, FileService fileService, AdmissionController admissionController, Executor executor, int concurrency, int maxBags,
+        ObjectMapper objectMapper) {
+        this.validateResource = validateResource;
+        this.fileService = fileService;
+        this.admissionController = admissionController;
+        this.executor = executor;
+        this.concurrency = concurrency;
+        this.maxBags = maxBags;
+        this.objectMapper = objectMapper;
+    }
+
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(APPLICATION_NDJSON)
+    public StreamingOutput validateBatch(@Valid @NotNull ValidateBatchCommandDto command) {
+        var bagLocations = getBagLocations(command);
+        var depositType = toDepositType(command.getPackageType());
+        var validationLevel = toValidationLevel(command.getLevel());
+        var failFast = Boolean.TRUE.equals(command.getFailFast());
+
+        log.info("Received request to validate {} bags", bagLocations.size());
+
+        return output -> writeResults(bagLocations, depositType, validationLevel, failFast, output);
+    }
+
+    List<String> getBagLocations(ValidateBatchCommandDto command) {
+        var bagLocations = command.getBagLocations();
+        var parentDirectory = command.getParentDirectory();
+
+        if ((bagLocations == null) == (parentDirectory == null)) {
+            throw new BadRequestException("Either bagLocations or parentDirectory must be given, but not both");
+        }
+
+        if (parentDirectory != null) {
+            var parentPath = java.nio.file.Path.of(parentDirectory);
+
+            if (!fileService.isDirectory(parentPath)) {
+                throw new BadRequestException(String.format("Parent directory %s does not exist", parentDirectory));
+            }
+
+            try {
+                bagLocations = fileService.getDirectories(parentPath).stream()
+                    .map(java.nio.file.Path::toString)
+                    .collect(Collectors.toList());
+            }
+            catch (IOException e) {
+                log.error("Internal server error", e);
+                throw new InternalServerErrorException("Internal server error", e);
+            }
+        }
+
+        if (bagLocations.size() > maxBags) {
+            throw new BadRequestException(String.format("Too many bags: %d; at most %d bags can be validated in one request", bagLocations.size(), maxBags));
+        }
+
+        return bagLocations;
+    }
+
+    // the bags are submitted as results come in, so one request does not fill the executor's queue and the bags of other requests can be interleaved with it
+    void writeResults(List<String> bagLocations, DepositType depositType, ValidationLevel validationLevel, boolean failFast, OutputStream output) throws IOException {
+        var completionService = new ExecutorCompletionService<Object>(executor);
+        var futures = new ArrayList<Future<Object>>();
+        var next = 0;
+        var pending = 0;
+
+        try {
+            while (next < bagLocations.size() || pending > 0) {
+                while (next < bagLocations.size() && pending < concurrency) {
+                    var bagLocation = bagLocations.get(next++);
+                    futures.add(completionService.submit(() -> validateBag(bagLocation, depositType, validationLevel, failFast)));
+                    pending += 1;
+                }
+
+                var result = completionService.take().get();
+                pending -= 1;
+
+                output.write(objectMapper.writeValueAsBytes(result));
+                output.write('\n');
+                output.flush();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the validation of a bag");
+        }
+        catch (ExecutionException e) {
+            // validateBag catches all exceptions, so this can only be an error
+            throw new IllegalStateException("Validation of a bag failed unexpectedly", e.getCause());
+        }
+        finally {
+            // if the client went away, the remaining bags are not needed anymore
+            for (var future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private Object validateBag(String bagLocation, DepositType depositType, ValidationLevel validationLevel, boolean failFast) {
+        // a rejected bag is reported like a bag that could not be validated, so the client can retry just that bag
+        try (var admission = admissionController.admit(0)) {
+            var result = validateResource.validatePath(java.nio.file.Path.of(bagLocation), depositType, validationLevel, failFast);
+
+            // this information is lost during the validation, so set it again here
+            result.setBagLocation(bagLocation);
+
+            return result;
+        }
+        catch (Exception e) {
+            if (e instanceof BagNotFoundException) {
+                log.error("Bag not found", e);
+            }
+            else if (e instanceof AdmissionRejectedException) {
+                log.warn("Refused validation of bag {}: {}", bagLocation, e.getMessage());
+            }
+            else {
+                log.error("Validation of bag {} failed", bagLocation, e);
+            }
+
+            var error = new ValidateBatchErrorDto();
+            error.setBagLocation(bagLocation);
+            error.setError(ValidateResource.toErrorMessage(e));
+            return error;
+        }
+    }
+
+    DepositType toDepositType(ValidateBatchCommandDto.PackageTypeEnum value) {
+        if (ValidateBatchCommandDto.PackageTypeEnum.MIGRATION.equals(value)) {
+            return DepositType.MIGRATION;
+        }
+        return DepositType.DEPOSIT;
+    }
+
+    ValidationLevel toValidationLevel(ValidateBatchCommandDto.LevelEnum value) {
+        if (ValidateBatchCommandDto.LevelEnum.WITH_DATA_STATION_CONTEXT.equals(value)) {
+            return ValidationLevel.WITH_DATA_STATION_CONTEXT;
+        }
+        return ValidationLevel.STAND_ALONE;
+    }
+}
@@ -18,12 +18,17 @@ package nl.knaw.dans.validatedansbag.resource;
 import nl.knaw.dans.openapi.api.ValidateCommandDto;
 import nl.knaw.dans.openapi.api.ValidateOkDto;
 import nl.knaw.dans.openapi.api.ValidateOkRuleViolationsDto;
+import nl.knaw.dans.openapi.api.ValidationJobDto;
 import nl.knaw.dans.validatedansbag.core.BagNotFoundException;
 import nl.knaw.dans.validatedansbag.core.engine.DepositType;
 import nl.knaw.dans.validatedansbag.core.engine.RuleValidationResult;
 import nl.knaw.dans.validatedansbag.core.engine.ValidationLevel;
+import nl.knaw.dans.validatedansbag.core.service.AdmissionRejectedException;
+import nl.knaw.dans.validatedansbag.core.service.DataverseUnavailableException;
 import nl.knaw.dans.validatedansbag.core.service.FileService;
 import nl.knaw.dans.validatedansbag.core.service.RuleEngineService;
+import nl.knaw.dans.validatedansbag.core.service.ValidationJob;
+import nl.knaw.dans.validatedansbag.core.service.ValidationJobService;
 import org.glassfish.jersey.media.multipart.FormDataParam;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,13 +37,25 @@ import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.BadRequestException;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
 import javax.ws.rs.InternalServerErrorException;
+import javax.ws.rs.NotFoundException;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.ServiceUnavailableException;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 @Path("/validate")
@@ -50,12 +67,16 @@ public class ValidateResource {
 
     private final FileService fileService;
 
-    public ValidateResource(RuleEngineService ruleEngineService, FileService fileService) {
+    private final ValidationJobService<ValidateOkDto> validationJobService;
+
+    public ValidateResource(RuleEngineService ruleEngineService, FileService fileService, ValidationJobService<ValidateOkDto> validationJobService) {
         this.ruleEngineService = ruleEngineService;
         this.fileService = fileService;
+        this.validationJobService = validationJobService;
     }
 
     @POST
+    @Admitted
     @Consumes(MediaType.MULTIPART_FORM_DATA)
     @Produces({MediaType.APPLICATION_JSON, MediaType.TEXT_PLAIN})
     public ValidateOkDto validateFormData(
@@ -65,6 +86,7 @@ public class ValidateResource {
         var location = command.getBagLocation();
         var depositType = toDepositType(command.getPackageType());
         var validationLevel = toValidationLevel(command.getLevel());
+        var failFast = Boolean.TRUE.equals(command.getFailFast());
 
         log.info("Received request to validate bag: {}", command);
 
@@ -72,11 +94,11 @@ public class ValidateResource {
             ValidateOkDto validateResult;
 
             if (location == null) {
-                validateResult = validateInputStream(zipInputStream, depositType, validationLevel);
+                validateResult = validateInputStream(zipInputStream, depositType, validationLevel, failFast);
             }
             else {
                 var locationPath = java.nio.file.Path.of(location);
-                validateResult = validatePath(locationPath, depositType, validationLevel);
+                validateResult = validatePath(locationPath, depositType, validationLevel, failFast);
             }
 
             // this information is lost during the validation, so set it again here
@@ -88,6 +110,10 @@ public class ValidateResource {
             log.error("Bag not found", e);
             throw new BadRequestException("Request could not be processed: " + e.getMessage(), e);
         }
+        catch (DataverseUnavailableException e) {
+            log.error("Data station unavailable", e);
+            throw new ServiceUnavailableException(e.getMessage(), Math.max(1, e.getRetryAfter().toSeconds()), e);
+        }
         catch (Exception e) {
             log.error("Internal server error", e);
             throw new InternalServerErrorException("Internal server error", e);
@@ -95,50 +121,145 @@ public class ValidateResource {
     }
 
     @POST
+    @Admitted
     @Consumes({ "application/zip" })
     @Produces({ MediaType.APPLICATION_JSON, MediaType.TEXT_PLAIN })
     public ValidateOkDto validateZip(InputStream inputStream) {
         try {
             log.info("Received request to validate zip file");
-            return validateInputStream(inputStream, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE);
+            return validateInputStream(inputStream, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE, false);
         }
         catch (BagNotFoundException e) {
             log.error("Bag not found", e);
             throw new BadRequestException("Request could not be processed: " + e.getMessage(), e);
         }
+        catch (DataverseUnavailableException e) {
+            log.error("Data station unavailable", e);
+            throw new ServiceUnavailableException(e.getMessage(), Math.max(1, e.getRetryAfter().toSeconds()), e);
+        }
+        catch (Exception e) {
+            log.error("Internal server error", e);
+            throw new InternalServerErrorException("Internal server error", e);
+        }
+    }
+
+    @POST
+    @Admitted
+    @Path("/jobs")
+    @Consumes(MediaType.MULTIPART_FORM_DATA)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response submitFormData(
+        @Valid @NotNull @FormDataParam(value = "command") ValidateCommandDto command,
+        @FormDataParam(value = "zip") InputStream zipInputStream
+    ) {
+        var location = command.getBagLocation();
+        var depositType = toDepositType(command.getPackageType());
+        var validationLevel = toValidationLevel(command.getLevel());
+        var failFast = Boolean.TRUE.equals(command.getFailFast());
+
+        log.info("Received request to queue the validation of bag: {}", command);
+
+        if (location != null) {
+            return submitJob(() -> {
+                var validateResult = validatePath(java.nio.file.Path.of(location), depositType, validationLevel, failFast);
+                validateResult.setBagLocation(location);
+                return validateResult;
+            }, null);
+        }
+
+        var tempPath = extractZipFile(zipInputStream);
+        return submitJob(() -> validateExtractedZip(tempPath, depositType, validationLevel, failFast), tempPath);
+    }
+
+    @POST
+    @Admitted
+    @Path("/jobs")
+    @Consumes({ "application/zip" })
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response submitZip(InputStream inputStream) {
+        log.info("Received request to queue the validation of a zip file");
+
+        var tempPath = extractZipFile(inputStream);
+        return submitJob(() -> validateExtractedZip(tempPath, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE, false), tempPath);
+    }
+
+    @GET
+    @Path("/jobs/{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public ValidationJobDto getJob(@PathParam("id") String id) {
+        return validationJobService.getJob(id)
+            .map(this::toJobDto)
+            .orElseThrow(() -> new NotFoundException(String.format("No validation job with id %s", id)));
+    }
+
+    // the upload has to be read before the request ends, so a zip is extracted on the request thread and only validated by the job
+    private java.nio.file.Path extractZipFile(InputStream inputStream) {
+        try {
+            return fileService.extractZipFile(inputStream);
+        }
         catch (Exception e) {
             log.error("Internal server error", e);
             throw new InternalServerErrorException("Internal server error", e);
         }
     }
 
-    ValidateOkDto validateInputStream(InputStream inputStream, DepositType depositType, ValidationLevel validationLevel) throws Exception {
+    private Response submitJob(Callable<ValidateOkDto> task, java.nio.file.Path tempPath) {
+        try {
+            var job = validationJobService.submit(task);
+            log.info("Queued validation job {}", job.getId());
+
+            var jobLocation = UriBuilder.fromResource(ValidateResource.class).path("jobs/{id}").build(job.getId());
+            return Response.accepted(toJobDto(job)).location(jobLocation).build();
+        }
+        catch (RejectedExecutionException e) {
+            log.warn("Refused validation job, because the queue is full");
+
+            if (tempPath != null) {
+                deleteTempPath(tempPath);
+            }
+
+            throw new ServiceUnavailableException("Too many validation jobs are waiting; try again later");
+        }
+    }
+
+    ValidateOkDto validateInputStream(InputStream inputStream, DepositType depositType, ValidationLevel validationLevel, boolean failFast) throws Exception {
         var tempPath = fileService.extractZipFile(inputStream);
+        return validateExtractedZip(tempPath, depositType, validationLevel, failFast);
+    }
 
+    ValidateOkDto validateExtractedZip(java.nio.file.Path tempPath, DepositType depositType, ValidationLevel validationLevel, boolean failFast) throws Exception {
         try {
             var bagDir = fileService.getFirstDirectory(tempPath)
                 .orElseThrow(() -> new BagNotFoundException("Extracted zip does not contain a directory"));
 
-            return validatePath(bagDir, depositType, validationLevel);
+            return toValidateOkDto(bagDir, ruleEngineService.validateExtractedBag(bagDir, depositType, validationLevel, failFast), depositType, validationLevel);
         }
         finally {
-            try {
-                fileService.deleteDirectoryAndContents(tempPath);
-            }
-            catch (IOException e) {
-                log.error("Error cleaning up temporary directory");
-            }
+            deleteTempPath(tempPath);
+        }
+    }
+
+    private void deleteTempPath(java.nio.file.Path tempPath) {
+        try {
+            fileService.deleteDirectoryAndContents(tempPath);
         }
+        catch (IOException e) {
+            log.error("Error cleaning up temporary directory");
+        }
+    }
 
+    ValidateOkDto validatePath(java.nio.file.Path bagDir, DepositType depositType, ValidationLevel validationLevel, boolean failFast) throws Exception {
+        return toValidateOkDto(bagDir, ruleEngineService.validateBag(bagDir, depositType, validationLevel, failFast), depositType, validationLevel);
     }
 
-    ValidateOkDto validatePath(java.nio.file.Path bagDir, DepositType depositType, ValidationLevel validationLevel) throws Exception {
-        var results = ruleEngineService.validateBag(bagDir, depositType, validationLevel);
+    private ValidateOkDto toValidateOkDto(java.nio.file.Path bagDir, List<RuleValidationResult> results, DepositType depositType, ValidationLevel validationLevel) {
         var isValid = results.stream().noneMatch(r -> r.getStatus().equals(RuleValidationResult.RuleValidationResultStatus.FAILURE));
+        var isPartial = results.stream().anyMatch(r -> r.getStatus().equals(RuleValidationResult.RuleValidationResultStatus.CANCELLED));
 
         var result = new ValidateOkDto();
         result.setBagLocation(null);
         result.setIsCompliant(isValid);
+        result.setIsPartial(isPartial);
         result.setName(bagDir.getFileName().toString());
         result.setProfileVersion("1.0.0");
         result.setInformationPackageType(toInfoPackageType(depositType));
@@ -165,6 +286,39 @@ public class ValidateResource {
         return result;
     }
 
+    ValidationJobDto toJobDto(ValidationJob<ValidateOkDto> job) {
+        var result = new ValidationJobDto();
+        result.setId(job.getId());
+        result.setStatus(ValidationJobDto.StatusEnum.valueOf(job.getStatus().name()));
+        result.setSubmitted(toOffsetDateTime(job.getSubmitted()));
+        result.setStarted(toOffsetDateTime(job.getStarted()));
+        result.setFinished(toOffsetDateTime(job.getFinished()));
+        result.setResult(job.getResult());
+
+        if (job.getException() != null) {
+            result.setError(toErrorMessage(job.getException()));
+        }
+
+        return result;
+    }
+
+    // the same messages as the synchronous requests give
+    static String toErrorMessage(Exception e) {
+        if (e instanceof BagNotFoundException) {
+            return "Request could not be processed: " + e.getMessage();
+        }
+
+        if (e instanceof DataverseUnavailableException || e instanceof AdmissionRejectedException) {
+            return e.getMessage();
+        }
+
+        return "Internal server error";
+    }
+
+    private OffsetDateTime toOffsetDateTime(Instant instant) {
+        return instant == null ? null : instant.atOffset(ZoneOffset.UTC);
+    }
+
     DepositType toDepositType(ValidateCommandDto.PackageTypeEnum value) {
         if (ValidateCommandDto.PackageTypeEnum.MIGRATION.equals(value)) {
             return DepositType.MIGRATION;
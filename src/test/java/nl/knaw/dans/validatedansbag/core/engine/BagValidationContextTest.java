@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BagValidationContextTest {
+
+    @Test
+    void computeIfAbsentLoadsOnlyOnce() throws Exception {
+        var context = new BagValidationContext(Path.of("bagdir"));
+        var loads = new AtomicInteger();
+
+        var first = context.computeIfAbsent("key", () -> {
+            loads.incrementAndGet();
+            return new Object();
+        });
+        var second = context.computeIfAbsent("key", () -> {
+            loads.incrementAndGet();
+            return new Object();
+        });
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void computeIfAbsentRethrowsTheSameExceptionWithoutLoadingAgain() {
+        var context = new BagValidationContext(Path.of("bagdir"));
+        var loads = new AtomicInteger();
+
+        BagValidationContext.Loader<Object> loader = () -> {
+            loads.incrementAndGet();
+            throw new IOException("broken");
+        };
+
+        var first = assertThrows(IOException.class, () -> context.computeIfAbsent("key", loader));
+        var second = assertThrows(IOException.class, () -> context.computeIfAbsent("key", loader));
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void getKeyIsRelativeToBagDir() {
+        var context = new BagValidationContext(Path.of("/tmp/bagdir"));
+
+        assertEquals("xml:metadata/dataset.xml", context.getKey("xml", Path.of("/tmp/bagdir/metadata/dataset.xml")));
+        assertEquals("xml:metadata/files.xml", context.getKey("xml", Path.of("metadata/files.xml")));
+    }
+
+    @Test
+    void getLoadStatisticsCountsRequests() throws Exception {
+        var context = new BagValidationContext(Path.of("bagdir"));
+
+        context.computeIfAbsent("b", () -> "value");
+        context.computeIfAbsent("a", () -> "value");
+        context.computeIfAbsent("a", () -> "value");
+
+        var statistics = context.getLoadStatistics();
+
+        assertEquals(2, statistics.size());
+        assertEquals("a", statistics.get(0).getKey());
+        assertEquals(2, statistics.get(0).getRequests());
+        assertEquals("b", statistics.get(1).getKey());
+        assertEquals(1, statistics.get(1).getRequests());
+    }
+}
@@ -15,23 +15,40 @@
  */
 package nl.knaw.dans.validatedansbag.core.engine;
 
+import com.codahale.metrics.MetricRegistry;
 import nl.knaw.dans.validatedansbag.core.rules.BagValidatorRule;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class RuleEngineImplTest {
 
+    @TempDir
+    Path tempDir;
+
     @Test
     void testRules() throws Exception {
         var fakeRule = Mockito.mock(BagValidatorRule.class);
         var result = new RuleResult(RuleResult.Status.SUCCESS, List.of());
-        Mockito.when(fakeRule.validate(Mockito.any())).thenReturn(result);
+        Mockito.when(fakeRule.validate(Mockito.any(), Mockito.any())).thenReturn(result);
         var rules = new NumberedRule[] {
             new NumberedRule("1.1", fakeRule),
             new NumberedRule("1.2", fakeRule),
@@ -43,7 +60,7 @@ class RuleEngineImplTest {
         assertDoesNotThrow(() -> engine.validateRuleConfiguration(rules));
         assertDoesNotThrow(() -> engine.validateRules(Path.of("somedir"), rules, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE));
 
-        Mockito.verify(fakeRule, Mockito.times(4)).validate(Mockito.any());
+        Mockito.verify(fakeRule, Mockito.times(4)).validate(Mockito.any(), Mockito.any());
     }
 
     @Test
@@ -51,7 +68,7 @@ class RuleEngineImplTest {
         var fakeRule = Mockito.mock(BagValidatorRule.class);
         var fakeRuleSkipped = Mockito.mock(BagValidatorRule.class);
         var result = new RuleResult(RuleResult.Status.SUCCESS, List.of());
-        Mockito.when(fakeRule.validate(Mockito.any())).thenReturn(result);
+        Mockito.when(fakeRule.validate(Mockito.any(), Mockito.any())).thenReturn(result);
         var rules = new NumberedRule[] {
             new NumberedRule("1.1", fakeRule),
             new NumberedRule("1.2", fakeRuleSkipped),
@@ -60,14 +77,14 @@ class RuleEngineImplTest {
         };
 
         var failedResult = new RuleResult(RuleResult.Status.ERROR, List.of());
-        Mockito.when(fakeRuleSkipped.validate(Mockito.any())).thenReturn(failedResult);
+        Mockito.when(fakeRuleSkipped.validate(Mockito.any(), Mockito.any())).thenReturn(failedResult);
 
         var engine = new RuleEngineImpl();
         assertDoesNotThrow(() -> engine.validateRuleConfiguration(rules));
         assertDoesNotThrow(() -> engine.validateRules(Path.of("somedir"), rules, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE));
 
-        Mockito.verify(fakeRule, Mockito.times(2)).validate(Mockito.any());
-        Mockito.verify(fakeRuleSkipped).validate(Mockito.any());
+        Mockito.verify(fakeRule, Mockito.times(2)).validate(Mockito.any(), Mockito.any());
+        Mockito.verify(fakeRuleSkipped).validate(Mockito.any(), Mockito.any());
     }
 
     @Test
@@ -75,7 +92,7 @@ class RuleEngineImplTest {
         var fakeRule = Mockito.mock(BagValidatorRule.class);
         var fakeRuleFailed = Mockito.mock(BagValidatorRule.class);
         var result = new RuleResult(RuleResult.Status.SUCCESS, List.of());
-        Mockito.when(fakeRule.validate(Mockito.any())).thenReturn(result);
+        Mockito.when(fakeRule.validate(Mockito.any(), Mockito.any())).thenReturn(result);
         var rules = new NumberedRule[] {
             new NumberedRule("1.1", fakeRule),
             new NumberedRule("1.2", fakeRuleFailed),
@@ -84,21 +101,21 @@ class RuleEngineImplTest {
         };
 
         var failedResult = new RuleResult(RuleResult.Status.ERROR, List.of());
-        Mockito.doReturn(failedResult).when(fakeRuleFailed).validate(Mockito.any());
+        Mockito.doReturn(failedResult).when(fakeRuleFailed).validate(Mockito.any(), Mockito.any());
 
         var engine = new RuleEngineImpl();
         assertDoesNotThrow(() -> engine.validateRuleConfiguration(rules));
         assertDoesNotThrow(() -> engine.validateRules(Path.of("somedir"), rules, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE));
 
-        Mockito.verify(fakeRule, Mockito.times(2)).validate(Mockito.any());
-        Mockito.verify(fakeRuleFailed).validate(Mockito.any());
+        Mockito.verify(fakeRule, Mockito.times(2)).validate(Mockito.any(), Mockito.any());
+        Mockito.verify(fakeRuleFailed).validate(Mockito.any(), Mockito.any());
     }
 
     @Test
     void testRulesWithTwoDepositTypes() throws Exception {
         var fakeRule = Mockito.mock(BagValidatorRule.class);
         var result = new RuleResult(RuleResult.Status.SUCCESS, List.of());
-        Mockito.when(fakeRule.validate(Mockito.any())).thenReturn(result);
+        Mockito.when(fakeRule.validate(Mockito.any(), Mockito.any())).thenReturn(result);
 
         var rules = new NumberedRule[] {
             new NumberedRule("1.1", fakeRule),
@@ -112,14 +129,14 @@ class RuleEngineImplTest {
         assertDoesNotThrow(() -> engine.validateRuleConfiguration(rules));
         assertDoesNotThrow(() -> engine.validateRules(Path.of("somedir"), rules, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE));
 
-        Mockito.verify(fakeRule, Mockito.times(4)).validate(Mockito.any());
+        Mockito.verify(fakeRule, Mockito.times(4)).validate(Mockito.any(), Mockito.any());
     }
 
     @Test
     void testRulesWithDuplicateNumbers() throws Exception {
         var fakeRule = Mockito.mock(BagValidatorRule.class);
         var result = new RuleResult(RuleResult.Status.SUCCESS, List.of());
-        Mockito.when(fakeRule.validate(Mockito.any())).thenReturn(result);
+        Mockito.when(fakeRule.validate(Mockito.any(), Mockito.any())).thenReturn(result);
         var rules = new NumberedRule[] {
             new NumberedRule("1.1", fakeRule),
             new NumberedRule("1.2", fakeRule, DepositType.DEPOSIT),
@@ -139,7 +156,7 @@ class RuleEngineImplTest {
     void testRulesWithMissingDependencies() throws Exception {
         var fakeRule = Mockito.mock(BagValidatorRule.class);
         var result = new RuleResult(RuleResult.Status.SUCCESS, List.of());
-        Mockito.when(fakeRule.validate(Mockito.any())).thenReturn(result);
+        Mockito.when(fakeRule.validate(Mockito.any(), Mockito.any())).thenReturn(result);
         var rules = new NumberedRule[] {
             new NumberedRule("1.1", fakeRule),
             new NumberedRule("1.3", fakeRule, List.of("1.2")),
@@ -157,7 +174,7 @@ class RuleEngineImplTest {
     void testRulesWithMissingDependenciesDueToDepositTypes() throws Exception {
         var fakeRule = Mockito.mock(BagValidatorRule.class);
         var result = new RuleResult(RuleResult.Status.SUCCESS, List.of());
-        Mockito.when(fakeRule.validate(Mockito.any())).thenReturn(result);
+        Mockito.when(fakeRule.validate(Mockito.any(), Mockito.any())).thenReturn(result);
         var rules = new NumberedRule[] {
             new NumberedRule("1.1", fakeRule),
             new NumberedRule("1.2", fakeRule, DepositType.DEPOSIT),
@@ -176,7 +193,7 @@ class RuleEngineImplTest {
     void testRulesWithTooManyRules() throws Exception {
         var fakeRule = Mockito.mock(BagValidatorRule.class);
         var result = new RuleResult(RuleResult.Status.SUCCESS, List.of());
-        Mockito.when(fakeRule.validate(Mockito.any())).thenReturn(result);
+        Mockito.when(fakeRule.validate(Mockito.any(), Mockito.any())).thenReturn(result);
         var rules = new NumberedRule[] {
             new NumberedRule("1.1", fakeRule),
             new NumberedRule("1.2", fakeRule),
@@ -196,7 +213,7 @@ class RuleEngineImplTest {
     void testRulesWithDifferentDepositTypesDependOnAllRule() throws Exception {
         var fakeRule = Mockito.mock(BagValidatorRule.class);
         var result = new RuleResult(RuleResult.Status.SUCCESS, List.of());
-        Mockito.when(fakeRule.validate(Mockito.any())).thenReturn(result);
+        Mockito.when(fakeRule.validate(Mockito.any(), Mockito.any())).thenReturn(result);
         var rules = new NumberedRule[] {
             new NumberedRule("1.1", fakeRule),
             new NumberedRule("1.2", fakeRule),
@@ -216,7 +233,7 @@ class RuleEngineImplTest {
     void testRulesWithDifferentDepositTypesDependOnAllRuleTwoLevels() throws Exception {
         var fakeRule = Mockito.mock(BagValidatorRule.class);
         var result = new RuleResult(RuleResult.Status.SUCCESS, List.of());
-        Mockito.when(fakeRule.validate(Mockito.any())).thenReturn(result);
+        Mockito.when(fakeRule.validate(Mockito.any(), Mockito.any())).thenReturn(result);
         var rules = new NumberedRule[] {
             new NumberedRule("1.1", fakeRule),
             new NumberedRule("1.2", fakeRule),
@@ -233,4 +250,254 @@ class RuleEngineImplTest {
             () -> engine.validateRuleConfiguration(rules));
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void testIndependentRulesAreExecutedConcurrently() throws Exception {
+        var latch = new CountDownLatch(2);
+        BagValidatorRule waitForOther = (path, context) -> {
+            latch.countDown();
+            // only succeeds if the other rule is running at the same time
+            return latch.await(10, TimeUnit.SECONDS) ? RuleResult.ok() : RuleResult.error("not concurrent");
+        };
+
+        var rules = new NumberedRule[] {
+            new NumberedRule("1.1", waitForOther),
+            new NumberedRule("1.2", waitForOther),
+            new NumberedRule("1.3", (path, context) -> RuleResult.ok(), List.of("1.1", "1.2")),
+        };
+
+        var executor = Executors.newFixedThreadPool(4);
+
+        try {
+            var engine = new RuleEngineImpl(new MetricRegistry(), executor);
+            var results = engine.validateRules(Path.of("somedir"), rules, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE);
+
+            assertEquals(List.of("1.1", "1.2", "1.3"), results.stream().map(RuleValidationResult::getNumber).collect(Collectors.toList()));
+            assertTrue(results.stream().allMatch(r -> RuleValidationResult.RuleValidationResultStatus.SUCCESS.equals(r.getStatus())));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testParallelResultsAreTheSameAsSequentialResults() throws Exception {
+        var rules = new NumberedRule[] {
+            new NumberedRule("1.1", (path, context) -> RuleResult.ok()),
+            new NumberedRule("1.2", (path, context) -> RuleResult.error("failed"), List.of("1.1")),
+            new NumberedRule("1.3", (path, context) -> RuleResult.ok(), List.of("1.2")),
+            new NumberedRule("1.4", (path, context) -> RuleResult.ok(), List.of("1.3", "1.1")),
+            new NumberedRule("2.1", (path, context) -> RuleResult.skipDependencies()),
+            new NumberedRule("2.2", (path, context) -> RuleResult.ok(), List.of("2.1")),
+            new NumberedRule("3.1", (path, context) -> RuleResult.ok(), DepositType.MIGRATION),
+            new NumberedRule("3.2", (path, context) -> RuleResult.ok(), List.of("1.1")),
+        };
+
+        var executor = Executors.newFixedThreadPool(4);
+
+        try {
+            var sequential = new RuleEngineImpl().validateRules(Path.of("somedir"), rules, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE);
+            var parallel = new RuleEngineImpl(new MetricRegistry(), executor).validateRules(Path.of("somedir"), rules, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE);
+
+            assertEquals(sequential.toString(), parallel.toString());
+            assertEquals(List.of("1.1", "1.2", "1.3", "1.4", "2.1", "2.2", "3.2"), parallel.stream().map(RuleValidationResult::getNumber).collect(Collectors.toList()));
+            assertEquals(RuleValidationResult.RuleValidationResultStatus.FAILURE, parallel.get(1).getStatus());
+            assertEquals(RuleValidationResult.RuleValidationResultStatus.SKIPPED, parallel.get(2).getStatus());
+            assertEquals(RuleValidationResult.RuleValidationResultStatus.SKIPPED, parallel.get(3).getStatus());
+            assertEquals(RuleValidationResult.RuleValidationResultStatus.SKIPPED, parallel.get(5).getStatus());
+            assertEquals(RuleValidationResult.RuleValidationResultStatus.SUCCESS, parallel.get(6).getStatus());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testExceptionThrownByRuleIsPropagated() {
+        var rules = new NumberedRule[] {
+            new NumberedRule("1.1", (path, context) -> {
+                throw new IOException("broken");
+            }),
+            new NumberedRule("1.2", (path, context) -> RuleResult.ok(), List.of("1.1")),
+        };
+
+        var executor = Executors.newFixedThreadPool(2);
+
+        try {
+            var engine = new RuleEngineImpl(new MetricRegistry(), executor);
+            var e = assertThrows(IOException.class, () -> engine.validateRules(Path.of("somedir"), rules, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE));
+            assertEquals("broken", e.getMessage());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testFailFastStopsAtTheFirstFailure() throws Exception {
+        var fakeRule = Mockito.mock(BagValidatorRule.class);
+        Mockito.when(fakeRule.validate(Mockito.any(), Mockito.any())).thenReturn(RuleResult.ok());
+
+        var rules = new NumberedRule[] {
+            new NumberedRule("1.1", fakeRule),
+            new NumberedRule("1.2", (path, context) -> RuleResult.error("failed")),
+            new NumberedRule("1.3", fakeRule, List.of("1.2")),
+            new NumberedRule("1.4", fakeRule),
+            new NumberedRule("1.5", fakeRule),
+        };
+
+        var results = new RuleEngineImpl().validateRules(Path.of("somedir"), rules, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE, true);
+
+        assertEquals(List.of(
+            RuleValidationResult.RuleValidationResultStatus.SUCCESS,
+            RuleValidationResult.RuleValidationResultStatus.FAILURE,
+            RuleValidationResult.RuleValidationResultStatus.SKIPPED,
+            RuleValidationResult.RuleValidationResultStatus.CANCELLED,
+            RuleValidationResult.RuleValidationResultStatus.CANCELLED
+        ), results.stream().map(RuleValidationResult::getStatus).collect(Collectors.toList()));
+
+        Mockito.verify(fakeRule, Mockito.times(1)).validate(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    void testFailFastCancelsRunningRules() throws Exception {
+        var started = new CountDownLatch(1);
+        var cancelled = new CountDownLatch(1);
+
+        var rules = new NumberedRule[] {
+            new NumberedRule("1.1", (path, context) -> {
+                started.countDown();
+
+                // simulates long-running work that ignores interrupts, but checks for cancellation
+                while (!context.isCancelled()) {
+                    Thread.onSpinWait();
+                }
+
+                cancelled.countDown();
+                context.throwIfCancelled();
+                return RuleResult.ok();
+            }),
+            new NumberedRule("1.2", (path, context) -> {
+                started.await();
+                return RuleResult.error("failed");
+            }),
+        };
+
+        var executor = Executors.newFixedThreadPool(2);
+
+        try {
+            var engine = new RuleEngineImpl(new MetricRegistry(), executor);
+            var results = engine.validateRules(Path.of("somedir"), rules, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE, true);
+
+            assertEquals(RuleValidationResult.RuleValidationResultStatus.CANCELLED, results.get(0).getStatus());
+            assertEquals(RuleValidationResult.RuleValidationResultStatus.FAILURE, results.get(1).getStatus());
+            assertTrue(cancelled.await(10, TimeUnit.SECONDS));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void validateRulesReusesTheResultsOfRulesWhoseInputsHaveNotChanged() throws Exception {
+        Files.writeString(tempDir.resolve("a.txt"), "a");
+        Files.writeString(tempDir.resolve("b.txt"), "b");
+
+        var executions = new AtomicInteger();
+        BagValidatorRule rule = (path, context) -> {
+            executions.incrementAndGet();
+            return RuleResult.ok();
+        };
+        var rules = new NumberedRule[] {
+            new NumberedRule("1.1", rule).withInputs("a.txt"),
+            new NumberedRule("1.2", rule, List.of("1.1")).withInputs("b.txt"),
+        };
+
+        var engine = new RuleEngineImpl();
+        var history = new MapHistory();
+        engine.validateRules(tempDir, rules, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE, false, history);
+
+        Files.writeString(tempDir.resolve("b.txt"), "changed");
+        var results = engine.validateRules(tempDir, rules, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE, false, history);
+
+        // 1.1 was reused, 1.2 was executed again
+        assertEquals(3, executions.get());
+        assertEquals(2, results.size());
+        assertTrue(results.stream().allMatch(r -> RuleValidationResult.RuleValidationResultStatus.SUCCESS.equals(r.getStatus())));
+    }
+
+    @Test
+    void validateRulesAlwaysExecutesRulesWithoutInputs() throws Exception {
+        var executions = new AtomicInteger();
+        var rules = new NumberedRule[] {
+            new NumberedRule("1.1", (path, context) -> {
+                executions.incrementAndGet();
+                return RuleResult.ok();
+            }),
+        };
+
+        var engine = new RuleEngineImpl();
+        var history = new MapHistory();
+        engine.validateRules(tempDir, rules, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE, false, history);
+        engine.validateRules(tempDir, rules, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE, false, history);
+
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void validateRulesSkipsAnUnchangedRuleIfItsDependencyNowFails() throws Exception {
+        Files.writeString(tempDir.resolve("a.txt"), "ok");
+        Files.writeString(tempDir.resolve("b.txt"), "b");
+
+        var rules = new NumberedRule[] {
+            new NumberedRule("1.1", (path, context) -> "ok".equals(Files.readString(path.resolve("a.txt"))) ? RuleResult.ok() : RuleResult.error("not ok")).withInputs("a.txt"),
+            new NumberedRule("1.2", (path, context) -> RuleResult.ok(), List.of("1.1")).withInputs("b.txt"),
+        };
+
+        var engine = new RuleEngineImpl();
+        var history = new MapHistory();
+        engine.validateRules(tempDir, rules, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE, false, history);
+
+        Files.writeString(tempDir.resolve("a.txt"), "broken");
+        var results = engine.validateRules(tempDir, rules, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE, false, history);
+
+        assertEquals(RuleValidationResult.RuleValidationResultStatus.FAILURE, results.get(0).getStatus());
+        assertEquals(RuleValidationResult.RuleValidationResultStatus.SKIPPED, results.get(1).getStatus());
+    }
+
+    @Test
+    void validateRulesDoesNotRecordResultsWithAnException() throws Exception {
+        Files.writeString(tempDir.resolve("a.txt"), "a");
+
+        var executions = new AtomicInteger();
+        var rules = new NumberedRule[] {
+            new NumberedRule("1.1", (path, context) -> {
+                executions.incrementAndGet();
+                return RuleResult.error("could not read", new IOException("temporarily unavailable"));
+            }).withInputs("a.txt"),
+        };
+
+        var engine = new RuleEngineImpl();
+        var history = new MapHistory();
+        engine.validateRules(tempDir, rules, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE, false, history);
+        engine.validateRules(tempDir, rules, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE, false, history);
+
+        assertEquals(2, executions.get());
+    }
+
+    private static class MapHistory implements RuleResultHistory {
+        private final Map<String, Map.Entry<String, RuleValidationResult>> results = new HashMap<>();
+
+        @Override
+        public Optional<RuleValidationResult> get(String ruleNumber, String inputsFingerprint) {
+            return Optional.ofNullable(results.get(ruleNumber))
+                .filter(e -> e.getKey().equals(inputsFingerprint))
+                .map(Map.Entry::getValue);
+        }
+
+        @Override
+        public void put(String ruleNumber, String inputsFingerprint, RuleValidationResult result) {
+            results.put(ruleNumber, Map.entry(inputsFingerprint, result));
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class RuleInputFingerprinterTest {
+    private final RuleInputFingerprinter fingerprinter = new RuleInputFingerprinter();
+
+    @TempDir
+    Path tempDir;
+
+    private void createBag() throws Exception {
+        Files.createDirectories(tempDir.resolve("data/sub"));
+        Files.createDirectories(tempDir.resolve("metadata"));
+        Files.writeString(tempDir.resolve("bag-info.txt"), "Created: 2022-01-01T00:00:00Z\n");
+        Files.writeString(tempDir.resolve("data/a.txt"), "a");
+        Files.writeString(tempDir.resolve("data/sub/b.txt"), "b");
+        Files.writeString(tempDir.resolve("metadata/dataset.xml"), "<ddm/>");
+    }
+
+    // every validation has its own context
+    private String fingerprint(String... inputs) throws Exception {
+        return fingerprinter.fingerprint(new BagValidationContext(tempDir), List.of(inputs));
+    }
+
+    @Test
+    void fingerprintIsTheSameForUnchangedFiles() throws Exception {
+        createBag();
+
+        assertEquals(fingerprint("**"), fingerprint("**"));
+        assertEquals(fingerprint("metadata/dataset.xml", "data/**"), fingerprint("metadata/dataset.xml", "data/**"));
+    }
+
+    @Test
+    void fingerprintChangesWhenTheContentOfAMetadataFileChanges() throws Exception {
+        createBag();
+        var file = tempDir.resolve("metadata/dataset.xml");
+        var before = fingerprint("metadata/dataset.xml");
+
+        // same size and modification time
+        var lastModified = Files.getLastModifiedTime(file);
+        Files.writeString(file, "<DDM>");
+        Files.setLastModifiedTime(file, lastModified);
+
+        assertNotEquals(before, fingerprint("metadata/dataset.xml"));
+    }
+
+    @Test
+    void fingerprintOnlyChangesWhenAMatchingFileChanges() throws Exception {
+        createBag();
+        var datasetBefore = fingerprint("metadata/dataset.xml");
+        var payloadBefore = fingerprint("data/**");
+
+        Files.writeString(tempDir.resolve("data/sub/b.txt"), "changed");
+
+        assertEquals(datasetBefore, fingerprint("metadata/dataset.xml"));
+        assertNotEquals(payloadBefore, fingerprint("data/**"));
+    }
+
+    @Test
+    void fingerprintChangesWhenAMatchingFileIsAdded() throws Exception {
+        createBag();
+        var before = fingerprint("data/**");
+
+        Files.writeString(tempDir.resolve("data/sub/c.txt"), "c");
+
+        assertNotEquals(before, fingerprint("data/**"));
+    }
+
+    @Test
+    void patternWithoutDoubleAsteriskDoesNotMatchFilesInSubdirectories() throws Exception {
+        createBag();
+        var before = fingerprint("*");
+
+        Files.writeString(tempDir.resolve("metadata/dataset.xml"), "<ddm></ddm>");
+        Files.writeString(tempDir.resolve("data/a.txt"), "changed");
+
+        assertEquals(before, fingerprint("*"));
+
+        Files.writeString(tempDir.resolve("bag-info.txt"), "Created: 2023-01-01T00:00:00Z\n");
+
+        assertNotEquals(before, fingerprint("*"));
+    }
+
+    @Test
+    void fingerprintOfAMissingFileDiffersFromThatOfAnExistingFile() throws Exception {
+        createBag();
+        var before = fingerprint("original-filepaths.txt");
+
+        Files.writeString(tempDir.resolve("original-filepaths.txt"), "");
+
+        assertNotEquals(before, fingerprint("original-filepaths.txt"));
+    }
+}
@@ -20,14 +20,16 @@ import gov.loc.repository.bagit.domain.Manifest;
 import gov.loc.repository.bagit.exceptions.InvalidBagitFileFormatException;
 import gov.loc.repository.bagit.hash.StandardSupportedAlgorithms;
 import nl.knaw.dans.validatedansbag.core.config.OtherIdPrefix;
+import nl.knaw.dans.validatedansbag.core.engine.BagValidationContext;
 import nl.knaw.dans.validatedansbag.core.engine.RuleResult;
 import nl.knaw.dans.validatedansbag.core.service.BagItMetadataReader;
 import nl.knaw.dans.validatedansbag.core.service.DataverseService;
+import nl.knaw.dans.validatedansbag.core.service.DdmReader;
+import nl.knaw.dans.validatedansbag.core.service.DdmReaderImpl;
 import nl.knaw.dans.validatedansbag.core.service.FileService;
+import nl.knaw.dans.validatedansbag.core.service.FilesReconcilerImpl;
 import nl.knaw.dans.validatedansbag.core.service.FilesXmlService;
 import nl.knaw.dans.validatedansbag.core.service.OriginalFilepathsService;
-import nl.knaw.dans.validatedansbag.core.service.XmlReader;
-import nl.knaw.dans.validatedansbag.core.service.XmlReaderImpl;
 import nl.knaw.dans.validatedansbag.core.validator.IdentifierValidator;
 import nl.knaw.dans.validatedansbag.core.validator.IdentifierValidatorImpl;
 import nl.knaw.dans.validatedansbag.core.validator.LicenseValidator;
@@ -39,18 +41,14 @@ import nl.knaw.dans.validatedansbag.core.validator.PolygonListValidatorImpl;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
-import org.w3c.dom.Document;
-import org.xml.sax.SAXException;
 
-import javax.xml.parsers.ParserConfigurationException;
-import java.io.IOException;
-import java.nio.CharBuffer;
 import java.nio.charset.CharacterCodingException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Set;
 import java.util.stream.Stream;
 
@@ -59,7 +57,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class BagRulesImplTest {
     final FileService fileService = Mockito.mock(FileService.class);
-    final XmlReader xmlReader = Mockito.mock(XmlReader.class);
+    final DdmReader ddmReader = Mockito.mock(DdmReader.class);
     final IdentifierValidator identifierValidator = new IdentifierValidatorImpl();
     final BagItMetadataReader bagItMetadataReader = Mockito.mock(BagItMetadataReader.class);
     final PolygonListValidator polygonListValidator = new PolygonListValidatorImpl();
@@ -76,30 +74,30 @@ class BagRulesImplTest {
     @AfterEach
     void afterEach() {
         Mockito.reset(fileService);
-        Mockito.reset(xmlReader);
+        Mockito.reset(ddmReader);
         Mockito.reset(bagItMetadataReader);
         Mockito.reset(dataverseService);
         Mockito.reset(originalFilepathsService);
     }
 
     BagRules getBagRules() {
-        return new BagRulesImpl(fileService, bagItMetadataReader, xmlReader, originalFilepathsService, identifierValidator, polygonListValidator, licenseValidator,
-            organizationIdentifierPrefixValidator, filesXmlService);
+        return new BagRulesImpl(fileService, bagItMetadataReader, ddmReader, originalFilepathsService, identifierValidator, polygonListValidator, licenseValidator,
+            organizationIdentifierPrefixValidator, new FilesReconcilerImpl(fileService, originalFilepathsService, filesXmlService));
     }
 
-    BagRules getBagRulesWithXmlReader(XmlReader xmlReader) {
-        return new BagRulesImpl(fileService, bagItMetadataReader, xmlReader, originalFilepathsService, identifierValidator, polygonListValidator, licenseValidator,
-            organizationIdentifierPrefixValidator, filesXmlService);
+    BagRules getBagRulesWithDdmReader(DdmReader ddmReader) {
+        return new BagRulesImpl(fileService, bagItMetadataReader, ddmReader, originalFilepathsService, identifierValidator, polygonListValidator, licenseValidator,
+            organizationIdentifierPrefixValidator, new FilesReconcilerImpl(fileService, originalFilepathsService, filesXmlService));
     }
 
     @Test
     void testBagIsValid() throws Exception {
         var checker = getBagRules();
 
-        var result = checker.bagIsValid().validate(Path.of("testpath"));
+        var result = checker.bagIsValid().validate(Path.of("testpath"), new BagValidationContext(Path.of("testpath")));
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
 
-        Mockito.verify(bagItMetadataReader).verifyBag(Path.of("testpath"));
+        Mockito.verify(bagItMetadataReader).verifyBag(Mockito.eq(Path.of("testpath")), Mockito.any());
     }
 
     @Test
@@ -107,9 +105,9 @@ class BagRulesImplTest {
         var checker = getBagRules();
 
         Mockito.doThrow(new InvalidBagitFileFormatException("Invalid file format"))
-            .when(bagItMetadataReader).verifyBag(Mockito.any());
+            .when(bagItMetadataReader).verifyBag(Mockito.any(), Mockito.any());
 
-        var result = checker.bagIsValid().validate(Path.of("testpath"));
+        var result = checker.bagIsValid().validate(Path.of("testpath"), new BagValidationContext(Path.of("testpath")));
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
 
@@ -120,7 +118,7 @@ class BagRulesImplTest {
         Mockito.when(fileService.isDirectory(Mockito.any()))
             .thenReturn(true);
 
-        var result = checker.containsDir(Path.of("testpath")).validate(Path.of("bagdir"));
+        var result = checker.containsDir(Path.of("testpath")).validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
         Mockito.verify(fileService).isDirectory(Path.of("bagdir/testpath"));
@@ -133,7 +131,7 @@ class BagRulesImplTest {
         Mockito.when(fileService.isDirectory(Mockito.any()))
             .thenReturn(false);
 
-        var result = checker.containsDir(Path.of("testpath")).validate(Path.of("bagdir"));
+        var result = checker.containsDir(Path.of("testpath")).validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
 
@@ -144,7 +142,7 @@ class BagRulesImplTest {
         Mockito.when(fileService.isFile(Mockito.any()))
             .thenReturn(true);
 
-        var result = checker.containsFile(Path.of("testpath")).validate(Path.of("bagdir"));
+        var result = checker.containsFile(Path.of("testpath")).validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
 
         Mockito.verify(fileService).isFile(Path.of("bagdir/testpath"));
@@ -157,7 +155,7 @@ class BagRulesImplTest {
         Mockito.when(fileService.isFile(Mockito.any()))
             .thenReturn(false);
 
-        var result = checker.containsFile(Path.of("testpath")).validate(Path.of("bagdir"));
+        var result = checker.containsFile(Path.of("testpath")).validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
 
@@ -168,10 +166,10 @@ class BagRulesImplTest {
         Mockito.when(fileService.isFile(Mockito.any()))
             .thenReturn(true);
 
-        Mockito.when(bagItMetadataReader.getBag(Mockito.any()))
+        Mockito.when(bagItMetadataReader.getBag(Mockito.any(), Mockito.any()))
             .thenReturn(Optional.of(new Bag()));
 
-        var result = checker.bagInfoExistsAndIsWellFormed().validate(Path.of("bagdir"));
+        var result = checker.bagInfoExistsAndIsWellFormed().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
     }
 
@@ -182,7 +180,7 @@ class BagRulesImplTest {
         Mockito.when(fileService.isFile(Mockito.any()))
             .thenReturn(false);
 
-        var result = checker.bagInfoExistsAndIsWellFormed().validate(Path.of("bagdir"));
+        var result = checker.bagInfoExistsAndIsWellFormed().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
 
@@ -193,10 +191,10 @@ class BagRulesImplTest {
         Mockito.when(fileService.isFile(Mockito.any()))
             .thenReturn(true);
 
-        Mockito.when(bagItMetadataReader.getBag(Mockito.any()))
+        Mockito.when(bagItMetadataReader.getBag(Mockito.any(), Mockito.any()))
             .thenReturn(Optional.empty());
 
-        var result = checker.bagInfoExistsAndIsWellFormed().validate(Path.of("bagdir"));
+        var result = checker.bagInfoExistsAndIsWellFormed().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
 
@@ -204,10 +202,10 @@ class BagRulesImplTest {
     void bagInfoCreatedElementIsIso8601Date() throws Exception {
         var checker = getBagRules();
 
-        Mockito.when(bagItMetadataReader.getSingleField(Mockito.any(), Mockito.eq("Created")))
+        Mockito.when(bagItMetadataReader.getSingleField(Mockito.any(), Mockito.eq("Created"), Mockito.any()))
             .thenReturn("2022-01-01T01:23:45.678+00:00");
 
-        var result = checker.bagInfoCreatedElementIsIso8601Date().validate(Path.of("bagdir"));
+        var result = checker.bagInfoCreatedElementIsIso8601Date().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
     }
 
@@ -215,22 +213,22 @@ class BagRulesImplTest {
     void bagInfoCreatedElementIsNotAValidDate() throws Exception {
         var checker = getBagRules();
 
-        Mockito.when(bagItMetadataReader.getField(Mockito.any(), Mockito.eq("Created")))
+        Mockito.when(bagItMetadataReader.getField(Mockito.any(), Mockito.eq("Created"), Mockito.any()))
             .thenReturn(List.of("2022-01-01 01:23:45.678"))
             .thenReturn(List.of("2022-01-01 01:23:45+00:00"));
 
-        assertEquals(RuleResult.Status.ERROR, checker.bagInfoCreatedElementIsIso8601Date().validate(Path.of("bagdir")).getStatus());
-        assertEquals(RuleResult.Status.ERROR, checker.bagInfoCreatedElementIsIso8601Date().validate(Path.of("bagdir")).getStatus());
+        assertEquals(RuleResult.Status.ERROR, checker.bagInfoCreatedElementIsIso8601Date().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir"))).getStatus());
+        assertEquals(RuleResult.Status.ERROR, checker.bagInfoCreatedElementIsIso8601Date().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir"))).getStatus());
     }
 
     @Test
     void bagInfoContainsExactlyOneOf() throws Exception {
         var checker = getBagRules();
 
-        Mockito.when(bagItMetadataReader.getField(Mockito.any(), Mockito.eq("Key")))
+        Mockito.when(bagItMetadataReader.getField(Mockito.any(), Mockito.eq("Key"), Mockito.any()))
             .thenReturn(List.of("value"));
 
-        var result = checker.bagInfoContainsExactlyOneOf("Key").validate(Path.of("bagdir"));
+        var result = checker.bagInfoContainsExactlyOneOf("Key").validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
     }
 
@@ -238,10 +236,10 @@ class BagRulesImplTest {
     void bagInfoContainsExactlyOneOfButInRealityItIsTwo() throws Exception {
         var checker = getBagRules();
 
-        Mockito.when(bagItMetadataReader.getField(Mockito.any(), Mockito.eq("Key")))
+        Mockito.when(bagItMetadataReader.getField(Mockito.any(), Mockito.eq("Key"), Mockito.any()))
             .thenReturn(List.of("value", "secondvalue"));
 
-        var result = checker.bagInfoContainsExactlyOneOf("Key").validate(Path.of("bagdir"));
+        var result = checker.bagInfoContainsExactlyOneOf("Key").validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
 
@@ -249,10 +247,10 @@ class BagRulesImplTest {
     void bagInfoContainsExactlyOneOfButInRealityItIsZero() throws Exception {
         var checker = getBagRules();
 
-        Mockito.when(bagItMetadataReader.getField(Mockito.any(), Mockito.eq("Key")))
+        Mockito.when(bagItMetadataReader.getField(Mockito.any(), Mockito.eq("Key"), Mockito.any()))
             .thenReturn(new ArrayList<>());
 
-        var result = checker.bagInfoContainsExactlyOneOf("Key").validate(Path.of("bagdir"));
+        var result = checker.bagInfoContainsExactlyOneOf("Key").validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
 
@@ -260,10 +258,10 @@ class BagRulesImplTest {
     void bagInfoContainsAtMostOne() throws Exception {
         var checker = getBagRules();
 
-        Mockito.when(bagItMetadataReader.getField(Mockito.any(), Mockito.eq("Key")))
+        Mockito.when(bagItMetadataReader.getField(Mockito.any(), Mockito.eq("Key"), Mockito.any()))
             .thenReturn(List.of("value"));
 
-        var result = checker.bagInfoContainsAtMostOneOf("Key").validate(Path.of("bagdir"));
+        var result = checker.bagInfoContainsAtMostOneOf("Key").validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
     }
 
@@ -271,10 +269,10 @@ class BagRulesImplTest {
     void bagInfoIsVersionOfIsValidUrnUuid() throws Exception {
         var checker = getBagRules();
 
-        Mockito.when(bagItMetadataReader.getField(Mockito.any(), Mockito.eq("Is-Version-Of")))
+        Mockito.when(bagItMetadataReader.getField(Mockito.any(), Mockito.eq("Is-Version-Of"), Mockito.any()))
             .thenReturn(List.of("urn:uuid:76cfdebf-e43d-4c56-a886-e8375c745429"));
 
-        var result = checker.bagInfoIsVersionOfIsValidUrnUuid().validate(Path.of("bagdir"));
+        var result = checker.bagInfoIsVersionOfIsValidUrnUuid().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
     }
 
@@ -282,24 +280,24 @@ class BagRulesImplTest {
     void bagInfoIsVersionOfIsNotValidUrnUuid() throws Exception {
         var checker = getBagRules();
 
-        Mockito.when(bagItMetadataReader.getField(Mockito.any(), Mockito.eq("Is-Version-Of")))
+        Mockito.when(bagItMetadataReader.getField(Mockito.any(), Mockito.eq("Is-Version-Of"), Mockito.any()))
             .thenReturn(List.of("http://google.com"))
             .thenReturn(List.of("urn:uuid:1234"))
             .thenReturn(List.of("urn:notuuid:1234"));
 
-        assertEquals(RuleResult.Status.ERROR, checker.bagInfoIsVersionOfIsValidUrnUuid().validate(Path.of("bagdir")).getStatus());
-        assertEquals(RuleResult.Status.ERROR, checker.bagInfoIsVersionOfIsValidUrnUuid().validate(Path.of("bagdir")).getStatus());
-        assertEquals(RuleResult.Status.ERROR, checker.bagInfoIsVersionOfIsValidUrnUuid().validate(Path.of("bagdir")).getStatus());
+        assertEquals(RuleResult.Status.ERROR, checker.bagInfoIsVersionOfIsValidUrnUuid().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir"))).getStatus());
+        assertEquals(RuleResult.Status.ERROR, checker.bagInfoIsVersionOfIsValidUrnUuid().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir"))).getStatus());
+        assertEquals(RuleResult.Status.ERROR, checker.bagInfoIsVersionOfIsValidUrnUuid().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir"))).getStatus());
     }
 
     @Test
     void bagInfoContainsAtMostOneButItReturnsTwo() throws Exception {
         var checker = getBagRules();
 
-        Mockito.when(bagItMetadataReader.getField(Mockito.any(), Mockito.eq("Key")))
+        Mockito.when(bagItMetadataReader.getField(Mockito.any(), Mockito.eq("Key"), Mockito.any()))
             .thenReturn(List.of("value", "secondvalue"));
 
-        var result = checker.bagInfoContainsAtMostOneOf("Key").validate(Path.of("bagdir"));
+        var result = checker.bagInfoContainsAtMostOneOf("Key").validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
 
@@ -307,10 +305,10 @@ class BagRulesImplTest {
     void bagInfoContainsAtMostOneOfButInRealityItIsZero() throws Exception {
         var checker = getBagRules();
 
-        Mockito.when(bagItMetadataReader.getField(Mockito.any(), Mockito.eq("Key")))
+        Mockito.when(bagItMetadataReader.getField(Mockito.any(), Mockito.eq("Key"), Mockito.any()))
             .thenReturn(new ArrayList<>());
 
-        var result = checker.bagInfoContainsAtMostOneOf("Key").validate(Path.of("bagdir"));
+        var result = checker.bagInfoContainsAtMostOneOf("Key").validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.SKIP_DEPENDENCIES, result.getStatus());
     }
 
@@ -319,14 +317,14 @@ class BagRulesImplTest {
         var checker = getBagRules();
         var basePath = Path.of("bagdir/metadata");
 
-        Mockito.when(fileService.getAllFilesAndDirectories(Mockito.eq(basePath)))
+        Mockito.when(fileService.getAllFilesAndDirectories(Mockito.eq(basePath), Mockito.any()))
             .thenReturn(List.of(basePath.resolve("1.txt"), basePath.resolve("2.txt")));
 
         var result = checker.containsNothingElseThan(Path.of("metadata"), new String[] {
             "1.txt",
             "2.txt",
             "3.txt"
-        }).validate(Path.of("bagdir"));
+        }).validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
     }
 
@@ -336,7 +334,7 @@ class BagRulesImplTest {
 
         var basePath = Path.of("bagdir/metadata");
 
-        Mockito.when(fileService.getAllFilesAndDirectories(Mockito.eq(basePath)))
+        Mockito.when(fileService.getAllFilesAndDirectories(Mockito.eq(basePath), Mockito.any()))
             .thenReturn(List.of(basePath.resolve("1.txt"), basePath.resolve("2.txt"), basePath.resolve("oh no.txt")));
 
         var result = checker.containsNothingElseThan(Path.of("metadata"), new String[] {
@@ -344,14 +342,10 @@ class BagRulesImplTest {
             ,
             "2.txt",
             "3.txt"
-        }).validate(Path.of("bagdir"));
+        }).validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
 
-    private Document parseXmlString(String str) throws ParserConfigurationException, IOException, SAXException {
-        return new XmlReaderImpl().readXmlString(str);
-    }
-
     @Test
     void ddmDoiIdentifiersAreValid() throws Exception {
         final String xml = "<ddm:DDM\n"
@@ -367,14 +361,13 @@ class BagRulesImplTest {
             + "    </ddm:dcmiMetadata>\n"
             + "</ddm:DDM>";
 
-        var document = parseXmlString(xml);
-        var reader = Mockito.spy(new XmlReaderImpl());
+        var reader = Mockito.spy(new DdmReaderImpl());
 
-        Mockito.doReturn(document).when(reader).readXmlFile(Mockito.any());
+        Mockito.doReturn(reader.readString(xml)).when(reader).read(Mockito.any());
 
-        var checker = getBagRulesWithXmlReader(reader);
+        var checker = getBagRulesWithDdmReader(reader);
 
-        var result = checker.ddmDoiIdentifiersAreValid().validate(Path.of("bagdir"));
+        var result = checker.ddmDoiIdentifiersAreValid().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
     }
 
@@ -393,14 +386,13 @@ class BagRulesImplTest {
             + "    </ddm:dcmiMetadata>\n"
             + "</ddm:DDM>";
 
-        var document = parseXmlString(xml);
-        var reader = Mockito.spy(new XmlReaderImpl());
+        var reader = Mockito.spy(new DdmReaderImpl());
 
-        Mockito.doReturn(document).when(reader).readXmlFile(Mockito.any());
+        Mockito.doReturn(reader.readString(xml)).when(reader).read(Mockito.any());
 
-        var checker = getBagRulesWithXmlReader(reader);
+        var checker = getBagRulesWithDdmReader(reader);
 
-        var result = checker.ddmDoiIdentifiersAreValid().validate(Path.of("bagdir"));
+        var result = checker.ddmDoiIdentifiersAreValid().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
 
@@ -427,16 +419,44 @@ class BagRulesImplTest {
             + "    </ddm:profile>\n"
             + "</ddm:DDM>";
 
-        var document = parseXmlString(xml);
-        var reader = Mockito.spy(new XmlReaderImpl());
+        var reader = Mockito.spy(new DdmReaderImpl());
 
-        Mockito.doReturn(document).when(reader).readXmlFile(Mockito.any());
+        Mockito.doReturn(reader.readString(xml)).when(reader).read(Mockito.any());
 
-        var checker = getBagRulesWithXmlReader(reader);
+        var checker = getBagRulesWithDdmReader(reader);
 
-        assertEquals(RuleResult.Status.SUCCESS, checker.ddmDaisAreValid().validate(Path.of("bagdir")).getStatus());
-        assertEquals(RuleResult.Status.SUCCESS, checker.ddmOrcidsAreValid().validate(Path.of("bagdir")).getStatus());
-        assertEquals(RuleResult.Status.SUCCESS, checker.ddmIsnisAreValid().validate(Path.of("bagdir")).getStatus());
+        assertEquals(RuleResult.Status.SUCCESS, checker.ddmDaisAreValid().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir"))).getStatus());
+        assertEquals(RuleResult.Status.SUCCESS, checker.ddmOrcidsAreValid().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir"))).getStatus());
+        assertEquals(RuleResult.Status.SUCCESS, checker.ddmIsnisAreValid().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir"))).getStatus());
+    }
+
+    @Test
+    void datasetXmlIsReadOnceForRulesSharingAContext() throws Exception {
+        final String xml = "<ddm:DDM\n"
+            + "        xmlns:dcx-dai=\"http://easy.dans.knaw.nl/schemas/dcx/dai/\"\n"
+            + "        xmlns:ddm=\"http://easy.dans.knaw.nl/schemas/md/ddm/\">\n"
+            + "    <ddm:profile>\n"
+            + "        <dcx-dai:creatorDetails>\n"
+            + "            <dcx-dai:author>\n"
+            + "                <dcx-dai:ISNI>http://www.isni.org/isni/0000000114559647</dcx-dai:ISNI>\n"
+            + "                <dcx-dai:ORCID>http://orcid.org/0000-0002-1825-0097</dcx-dai:ORCID>\n"
+            + "            </dcx-dai:author>\n"
+            + "        </dcx-dai:creatorDetails>\n"
+            + "    </ddm:profile>\n"
+            + "</ddm:DDM>";
+
+        var reader = Mockito.spy(new DdmReaderImpl());
+
+        Mockito.doReturn(reader.readString(xml)).when(reader).read(Mockito.any());
+
+        var checker = getBagRulesWithDdmReader(reader);
+        var context = new BagValidationContext(Path.of("bagdir"));
+
+        assertEquals(RuleResult.Status.SUCCESS, checker.ddmDaisAreValid().validate(Path.of("bagdir"), context).getStatus());
+        assertEquals(RuleResult.Status.SUCCESS, checker.ddmOrcidsAreValid().validate(Path.of("bagdir"), context).getStatus());
+        assertEquals(RuleResult.Status.SUCCESS, checker.ddmIsnisAreValid().validate(Path.of("bagdir"), context).getStatus());
+
+        Mockito.verify(reader, Mockito.times(1)).read(Path.of("bagdir/metadata/dataset.xml"));
     }
 
     @Test
@@ -460,14 +480,13 @@ class BagRulesImplTest {
             + "    </ddm:profile>\n"
             + "</ddm:DDM>";
 
-        var document = parseXmlString(xml);
-        var reader = Mockito.spy(new XmlReaderImpl());
+        var reader = Mockito.spy(new DdmReaderImpl());
 
-        Mockito.doReturn(document).when(reader).readXmlFile(Mockito.any());
+        Mockito.doReturn(reader.readString(xml)).when(reader).read(Mockito.any());
 
-        var checker = getBagRulesWithXmlReader(reader);
+        var checker = getBagRulesWithDdmReader(reader);
 
-        var result = checker.ddmDaisAreValid().validate(Path.of("bagdir"));
+        var result = checker.ddmDaisAreValid().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
 
@@ -510,14 +529,13 @@ class BagRulesImplTest {
             + "    </ddm:dcmiMetadata>\n"
             + "</ddm:DDM>";
 
-        var document = parseXmlString(xml);
-        var reader = Mockito.spy(new XmlReaderImpl());
+        var reader = Mockito.spy(new DdmReaderImpl());
 
-        Mockito.doReturn(document).when(reader).readXmlFile(Mockito.any());
+        Mockito.doReturn(reader.readString(xml)).when(reader).read(Mockito.any());
 
-        var checker = getBagRulesWithXmlReader(reader);
+        var checker = getBagRulesWithDdmReader(reader);
 
-        var result = checker.ddmGmlPolygonPosListIsWellFormed().validate(Path.of("bagdir"));
+        var result = checker.ddmGmlPolygonPosListIsWellFormed().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
     }
 
@@ -560,14 +578,13 @@ class BagRulesImplTest {
             + "    </ddm:dcmiMetadata>\n"
             + "</ddm:DDM>";
 
-        var document = parseXmlString(xml);
-        var reader = Mockito.spy(new XmlReaderImpl());
+        var reader = Mockito.spy(new DdmReaderImpl());
 
-        Mockito.doReturn(document).when(reader).readXmlFile(Mockito.any());
+        Mockito.doReturn(reader.readString(xml)).when(reader).read(Mockito.any());
 
-        var checker = getBagRulesWithXmlReader(reader);
+        var checker = getBagRulesWithDdmReader(reader);
 
-        var result = checker.ddmGmlPolygonPosListIsWellFormed().validate(Path.of("bagdir"));
+        var result = checker.ddmGmlPolygonPosListIsWellFormed().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
 
@@ -600,14 +617,13 @@ class BagRulesImplTest {
             + "    </ddm:dcmiMetadata>\n"
             + "</ddm:DDM>";
 
-        var document = parseXmlString(xml);
-        var reader = Mockito.spy(new XmlReaderImpl());
+        var reader = Mockito.spy(new DdmReaderImpl());
 
-        Mockito.doReturn(document).when(reader).readXmlFile(Mockito.any());
+        Mockito.doReturn(reader.readString(xml)).when(reader).read(Mockito.any());
 
-        var checker = getBagRulesWithXmlReader(reader);
+        var checker = getBagRulesWithDdmReader(reader);
 
-        var result = checker.polygonsInSameMultiSurfaceHaveSameSrsName().validate(Path.of("bagdir"));
+        var result = checker.polygonsInSameMultiSurfaceHaveSameSrsName().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
     }
 
@@ -640,14 +656,13 @@ class BagRulesImplTest {
             + "    </ddm:dcmiMetadata>\n"
             + "</ddm:DDM>";
 
-        var document = parseXmlString(xml);
-        var reader = Mockito.spy(new XmlReaderImpl());
+        var reader = Mockito.spy(new DdmReaderImpl());
 
-        Mockito.doReturn(document).when(reader).readXmlFile(Mockito.any());
+        Mockito.doReturn(reader.readString(xml)).when(reader).read(Mockito.any());
 
-        var checker = getBagRulesWithXmlReader(reader);
+        var checker = getBagRulesWithDdmReader(reader);
 
-        var result = checker.polygonsInSameMultiSurfaceHaveSameSrsName().validate(Path.of("bagdir"));
+        var result = checker.polygonsInSameMultiSurfaceHaveSameSrsName().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
 
@@ -682,14 +697,13 @@ class BagRulesImplTest {
             + "    </ddm:dcmiMetadata>\n"
             + "</ddm:DDM>";
 
-        var document = parseXmlString(xml);
-        var reader = Mockito.spy(new XmlReaderImpl());
+        var reader = Mockito.spy(new DdmReaderImpl());
 
-        Mockito.doReturn(document).when(reader).readXmlFile(Mockito.any());
+        Mockito.doReturn(reader.readString(xml)).when(reader).read(Mockito.any());
 
-        var checker = getBagRulesWithXmlReader(reader);
+        var checker = getBagRulesWithDdmReader(reader);
 
-        var result = checker.polygonsInSameMultiSurfaceHaveSameSrsName().validate(Path.of("bagdir"));
+        var result = checker.polygonsInSameMultiSurfaceHaveSameSrsName().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
     }
 
@@ -720,14 +734,13 @@ class BagRulesImplTest {
             + "    </ddm:dcmiMetadata>\n"
             + "</ddm:DDM>";
 
-        var document = parseXmlString(xml);
-        var reader = Mockito.spy(new XmlReaderImpl());
+        var reader = Mockito.spy(new DdmReaderImpl());
 
-        Mockito.doReturn(document).when(reader).readXmlFile(Mockito.any());
+        Mockito.doReturn(reader.readString(xml)).when(reader).read(Mockito.any());
 
-        var checker = getBagRulesWithXmlReader(reader);
+        var checker = getBagRulesWithDdmReader(reader);
 
-        var result = checker.pointsHaveAtLeastTwoValues().validate(Path.of("bagdir"));
+        var result = checker.pointsHaveAtLeastTwoValues().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
         assertEquals(3, result.getErrorMessages().size());
     }
@@ -748,14 +761,13 @@ class BagRulesImplTest {
             + "    </ddm:dcmiMetadata>\n"
             + "</ddm:DDM>\n";
 
-        var document = parseXmlString(xml);
-        var reader = Mockito.spy(new XmlReaderImpl());
+        var reader = Mockito.spy(new DdmReaderImpl());
 
-        Mockito.doReturn(document).when(reader).readXmlFile(Mockito.any());
+        Mockito.doReturn(reader.readString(xml)).when(reader).read(Mockito.any());
 
-        var checker = getBagRulesWithXmlReader(reader);
+        var checker = getBagRulesWithDdmReader(reader);
 
-        var result = checker.archisIdentifiersHaveAtMost10Characters().validate(Path.of("bagdir"));
+        var result = checker.archisIdentifiersHaveAtMost10Characters().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
     }
 
@@ -775,14 +787,13 @@ class BagRulesImplTest {
             + "    </ddm:dcmiMetadata>\n"
             + "</ddm:DDM>\n";
 
-        var document = parseXmlString(xml);
-        var reader = Mockito.spy(new XmlReaderImpl());
+        var reader = Mockito.spy(new DdmReaderImpl());
 
-        Mockito.doReturn(document).when(reader).readXmlFile(Mockito.any());
+        Mockito.doReturn(reader.readString(xml)).when(reader).read(Mockito.any());
 
-        var checker = getBagRulesWithXmlReader(reader);
+        var checker = getBagRulesWithDdmReader(reader);
 
-        var result = checker.archisIdentifiersHaveAtMost10Characters().validate(Path.of("bagdir"));
+        var result = checker.archisIdentifiersHaveAtMost10Characters().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
         assertEquals(2, result.getErrorMessages().size());
@@ -844,14 +855,13 @@ class BagRulesImplTest {
             + "    </ddm:dcmiMetadata>\n"
             + "</ddm:DDM>\n";
 
-        var document = parseXmlString(xml);
-        var reader = Mockito.spy(new XmlReaderImpl());
+        var reader = Mockito.spy(new DdmReaderImpl());
 
-        Mockito.doReturn(document).when(reader).readXmlFile(Mockito.any());
+        Mockito.doReturn(reader.readString(xml)).when(reader).read(Mockito.any());
 
-        var checker = getBagRulesWithXmlReader(reader);
+        var checker = getBagRulesWithDdmReader(reader);
 
-        var result = checker.allUrlsAreValid().validate(Path.of("bagdir"));
+        var result = checker.allUrlsAreValid().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
     }
 
@@ -902,14 +912,13 @@ class BagRulesImplTest {
             + "    </ddm:dcmiMetadata>\n"
             + "</ddm:DDM>\n";
 
-        var document = parseXmlString(xml);
-        var reader = Mockito.spy(new XmlReaderImpl());
+        var reader = Mockito.spy(new DdmReaderImpl());
 
-        Mockito.doReturn(document).when(reader).readXmlFile(Mockito.any());
+        Mockito.doReturn(reader.readString(xml)).when(reader).read(Mockito.any());
 
-        var checker = getBagRulesWithXmlReader(reader);
+        var checker = getBagRulesWithDdmReader(reader);
 
-        var result = checker.allUrlsAreValid().validate(Path.of("bagdir"));
+        var result = checker.allUrlsAreValid().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
         assertEquals(4, result.getErrorMessages().size());
     }
@@ -936,14 +945,13 @@ class BagRulesImplTest {
             + "    </ddm:dcmiMetadata>\n"
             + "</ddm:DDM>\n";
 
-        var document = parseXmlString(xml);
-        var reader = Mockito.spy(new XmlReaderImpl());
+        var reader = Mockito.spy(new DdmReaderImpl());
 
-        Mockito.doReturn(document).when(reader).readXmlFile(Mockito.any());
+        Mockito.doReturn(reader.readString(xml)).when(reader).read(Mockito.any());
 
-        var checker = getBagRulesWithXmlReader(reader);
+        var checker = getBagRulesWithDdmReader(reader);
 
-        var result = checker.ddmMustHaveRightsHolderDeposit().validate(Path.of("bagdir"));
+        var result = checker.ddmMustHaveRightsHolderDeposit().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
     }
 
@@ -968,14 +976,13 @@ class BagRulesImplTest {
             + "    </ddm:dcmiMetadata>\n"
             + "</ddm:DDM>\n";
 
-        var document = parseXmlString(xml);
-        var reader = Mockito.spy(new XmlReaderImpl());
+        var reader = Mockito.spy(new DdmReaderImpl());
 
-        Mockito.doReturn(document).when(reader).readXmlFile(Mockito.any());
+        Mockito.doReturn(reader.readString(xml)).when(reader).read(Mockito.any());
 
-        var checker = getBagRulesWithXmlReader(reader);
+        var checker = getBagRulesWithDdmReader(reader);
 
-        var result = checker.ddmMustHaveRightsHolderDeposit().validate(Path.of("bagdir"));
+        var result = checker.ddmMustHaveRightsHolderDeposit().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
 
@@ -1000,14 +1007,13 @@ class BagRulesImplTest {
             + "    </ddm:dcmiMetadata>\n"
             + "</ddm:DDM>\n";
 
-        var document = parseXmlString(xml);
-        var reader = Mockito.spy(new XmlReaderImpl());
+        var reader = Mockito.spy(new DdmReaderImpl());
 
-        Mockito.doReturn(document).when(reader).readXmlFile(Mockito.any());
+        Mockito.doReturn(reader.readString(xml)).when(reader).read(Mockito.any());
 
-        var checker = getBagRulesWithXmlReader(reader);
+        var checker = getBagRulesWithDdmReader(reader);
 
-        var result = checker.ddmMustHaveRightsHolderMigration().validate(Path.of("bagdir"));
+        var result = checker.ddmMustHaveRightsHolderMigration().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
     }
 
@@ -1032,14 +1038,13 @@ class BagRulesImplTest {
             + "    </ddm:dcmiMetadata>\n"
             + "</ddm:DDM>\n";
 
-        var document = parseXmlString(xml);
-        var reader = Mockito.spy(new XmlReaderImpl());
+        var reader = Mockito.spy(new DdmReaderImpl());
 
-        Mockito.doReturn(document).when(reader).readXmlFile(Mockito.any());
+        Mockito.doReturn(reader.readString(xml)).when(reader).read(Mockito.any());
 
-        var checker = getBagRulesWithXmlReader(reader);
+        var checker = getBagRulesWithDdmReader(reader);
 
-        var result = checker.ddmMustHaveRightsHolderMigration().validate(Path.of("bagdir"));
+        var result = checker.ddmMustHaveRightsHolderMigration().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
 
@@ -1051,10 +1056,10 @@ class BagRulesImplTest {
             new Manifest(StandardSupportedAlgorithms.MD5)
         );
 
-        Mockito.when(bagItMetadataReader.getBag(Mockito.any())).thenReturn(Optional.of(new Bag()));
+        Mockito.when(bagItMetadataReader.getBag(Mockito.any(), Mockito.any())).thenReturn(Optional.of(new Bag()));
         Mockito.when(bagItMetadataReader.getBagManifests(Mockito.any())).thenReturn(manifests);
 
-        var result = checker.containsNotJustMD5Manifest().validate(Path.of("bagdir"));
+        var result = checker.containsNotJustMD5Manifest().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
     }
@@ -1066,10 +1071,10 @@ class BagRulesImplTest {
             new Manifest(StandardSupportedAlgorithms.MD5)
         );
 
-        Mockito.when(bagItMetadataReader.getBag(Mockito.any())).thenReturn(Optional.of(new Bag()));
+        Mockito.when(bagItMetadataReader.getBag(Mockito.any(), Mockito.any())).thenReturn(Optional.of(new Bag()));
         Mockito.when(bagItMetadataReader.getBagManifests(Mockito.any())).thenReturn(manifests);
 
-        var result = checker.containsNotJustMD5Manifest().validate(Path.of("bagdir"));
+        var result = checker.containsNotJustMD5Manifest().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
@@ -1079,10 +1084,10 @@ class BagRulesImplTest {
         var checker = getBagRules();
         var manifests = new HashSet<Manifest>();
 
-        Mockito.when(bagItMetadataReader.getBag(Mockito.any())).thenReturn(Optional.of(new Bag()));
+        Mockito.when(bagItMetadataReader.getBag(Mockito.any(), Mockito.any())).thenReturn(Optional.of(new Bag()));
         Mockito.when(bagItMetadataReader.getBagManifests(Mockito.any())).thenReturn(manifests);
 
-        var result = checker.containsNotJustMD5Manifest().validate(Path.of("bagdir"));
+        var result = checker.containsNotJustMD5Manifest().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
@@ -1092,11 +1097,11 @@ class BagRulesImplTest {
 
         var checker = getBagRules();
 
-        Mockito.when(bagItMetadataReader.getSingleField(Mockito.any(), Mockito.any()))
+        Mockito.when(bagItMetadataReader.getSingleField(Mockito.any(), Mockito.any(), Mockito.any()))
             .thenReturn("USER1-organizational-identifier")
             .thenReturn("user001");
 
-        var result = checker.organizationalIdentifierPrefixIsValid().validate(Path.of("bagdir"));
+        var result = checker.organizationalIdentifierPrefixIsValid().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
     }
@@ -1106,11 +1111,11 @@ class BagRulesImplTest {
 
         var checker = getBagRules();
 
-        Mockito.when(bagItMetadataReader.getSingleField(Mockito.any(), Mockito.any()))
+        Mockito.when(bagItMetadataReader.getSingleField(Mockito.any(), Mockito.any(), Mockito.any()))
             .thenReturn("WRONG-organizational-identifier")
             .thenReturn("user001");
 
-        var result = checker.organizationalIdentifierPrefixIsValid().validate(Path.of("bagdir"));
+        var result = checker.organizationalIdentifierPrefixIsValid().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
@@ -1120,11 +1125,11 @@ class BagRulesImplTest {
 
         var checker = getBagRules();
 
-        Mockito.when(bagItMetadataReader.getSingleField(Mockito.any(), Mockito.any()))
+        Mockito.when(bagItMetadataReader.getSingleField(Mockito.any(), Mockito.any(), Mockito.any()))
             .thenReturn("WRONG-organizational-identifier")
             .thenReturn(null);
 
-        var result = checker.organizationalIdentifierPrefixIsValid().validate(Path.of("bagdir"));
+        var result = checker.organizationalIdentifierPrefixIsValid().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(RuleResult.Status.SKIP_DEPENDENCIES, result.getStatus());
     }
@@ -1133,7 +1138,7 @@ class BagRulesImplTest {
     void hasOnlyValidFileNames() throws Exception {
         // invalidCharacters = ":*?\"<>|;#";
 
-        Mockito.when(fileService.getAllFiles(Mockito.any()))
+        Mockito.when(fileService.getAllFiles(Mockito.any(), Mockito.any()))
             .thenReturn(List.of(
                 Path.of("some/path.txt"),
                 Path.of("some/other_path-\\backslash.txt"),
@@ -1141,7 +1146,7 @@ class BagRulesImplTest {
             ));
 
         var checker = getBagRules();
-        var result = checker.hasOnlyValidFileNames().validate(Path.of("bagdir"));
+        var result = checker.hasOnlyValidFileNames().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
     }
@@ -1150,13 +1155,13 @@ class BagRulesImplTest {
     void hasAlsoInvalidFileNames() throws Exception {
         // invalidCharacters = ":*?\"<>|;#";
 
-        Mockito.when(fileService.getAllFiles(Mockito.any()))
+        Mockito.when(fileService.getAllFiles(Mockito.any(), Mockito.any()))
             .thenReturn(List.of(
                 Path.of("some/path:\\?.txt")
             ));
 
         var checker = getBagRules();
-        var result = checker.hasOnlyValidFileNames().validate(Path.of("bagdir"));
+        var result = checker.hasOnlyValidFileNames().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
@@ -1164,10 +1169,10 @@ class BagRulesImplTest {
     @Test
     void optionalFileIsUtf8Decodable() throws Exception {
         Mockito.when(fileService.exists(Mockito.any())).thenReturn(true);
-        Mockito.when(fileService.readFileContents(Mockito.any(), Mockito.any())).thenReturn(CharBuffer.allocate(1));
+        Mockito.when(fileService.findInvalidUtf8(Mockito.any())).thenReturn(OptionalLong.empty());
 
         var checker = getBagRules();
-        var result = checker.optionalFileIsUtf8Decodable(Path.of("somefile.txt")).validate(Path.of("bagdir"));
+        var result = checker.optionalFileIsUtf8Decodable(Path.of("somefile.txt")).validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
     }
@@ -1175,10 +1180,9 @@ class BagRulesImplTest {
     @Test
     void optionalFileIsUtf8DecodableAndDoesNotExist() throws Exception {
         Mockito.when(fileService.exists(Mockito.any())).thenReturn(false);
-        Mockito.when(fileService.readFileContents(Mockito.any(), Mockito.any())).thenReturn(CharBuffer.allocate(1));
 
         var checker = getBagRules();
-        var result = checker.optionalFileIsUtf8Decodable(Path.of("somefile.txt")).validate(Path.of("bagdir"));
+        var result = checker.optionalFileIsUtf8Decodable(Path.of("somefile.txt")).validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(RuleResult.Status.SKIP_DEPENDENCIES, result.getStatus());
     }
@@ -1186,38 +1190,73 @@ class BagRulesImplTest {
     @Test
     void optionalFileIsUtf8DecodableButThrowsException() throws Exception {
         Mockito.when(fileService.exists(Mockito.any())).thenReturn(true);
-        Mockito.when(fileService.readFileContents(Mockito.any(), Mockito.any()))
-            .thenThrow(new CharacterCodingException());
+        Mockito.when(fileService.findInvalidUtf8(Mockito.any())).thenReturn(OptionalLong.of(1234));
+
+        var checker = getBagRules();
+        var result = checker.optionalFileIsUtf8Decodable(Path.of("somefile.txt")).validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
+
+        assertEquals(RuleResult.Status.ERROR, result.getStatus());
+        assertEquals(List.of("Input not valid UTF-8: invalid byte sequence at byte offset 1234"), result.getErrorMessages());
+    }
+
+    @Test
+    void originalFilepathsFileIsUtf8Decodable() throws Exception {
+        Mockito.when(originalFilepathsService.exists(Mockito.any())).thenReturn(true);
+        Mockito.when(originalFilepathsService.read(Mockito.any(), Mockito.any())).thenReturn(null);
+
+        var checker = getBagRules();
+        var result = checker.originalFilepathsFileIsUtf8Decodable().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
+
+        assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
+    }
+
+    @Test
+    void originalFilepathsFileIsUtf8DecodableAndDoesNotExist() throws Exception {
+        Mockito.when(originalFilepathsService.exists(Mockito.any())).thenReturn(false);
+
+        var checker = getBagRules();
+        var result = checker.originalFilepathsFileIsUtf8Decodable().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
+
+        assertEquals(RuleResult.Status.SKIP_DEPENDENCIES, result.getStatus());
+        Mockito.verify(originalFilepathsService, Mockito.never()).read(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    void originalFilepathsFileIsUtf8DecodableButThrowsException() throws Exception {
+        Mockito.when(originalFilepathsService.exists(Mockito.any())).thenReturn(true);
+        Mockito.when(originalFilepathsService.read(Mockito.any(), Mockito.any())).thenThrow(new CharacterCodingException());
+        Mockito.when(fileService.findInvalidUtf8(Path.of("bagdir/original-filepaths.txt"))).thenReturn(OptionalLong.of(42));
 
         var checker = getBagRules();
-        var result = checker.optionalFileIsUtf8Decodable(Path.of("somefile.txt")).validate(Path.of("bagdir"));
+        var result = checker.originalFilepathsFileIsUtf8Decodable().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
+        assertEquals(List.of("Input not valid UTF-8: invalid byte sequence at byte offset 42"), result.getErrorMessages());
     }
 
     @Test
     void isOriginalFilepathsFileComplete() throws Exception {
         Mockito.when(originalFilepathsService.exists(Mockito.any())).thenReturn(true);
-        Mockito.when(filesXmlService.readFilepaths(Mockito.any()))
+        Mockito.when(filesXmlService.readFilepaths(Mockito.any(), Mockito.any()))
             .thenReturn(Stream.of(
                 Path.of("data/1.txt"),
                 Path.of("data/2.txt")
             ));
 
-        Mockito.when(fileService.getAllFiles(Mockito.any()))
+        Mockito.when(fileService.getAllFiles(Mockito.any(), Mockito.any()))
             .thenReturn(List.of(
                 Path.of("bagdir/data/a.txt"),
                 Path.of("bagdir/data/b.txt")
             ));
 
-        Mockito.when(originalFilepathsService.getMapping(Mockito.any()))
+        Mockito.when(originalFilepathsService.getMapping(Mockito.any(), Mockito.any()))
             .thenReturn(List.of(
                 new OriginalFilepathsService.OriginalFilePathItem(Path.of("data/1.txt"), Path.of("data/a.txt")),
                 new OriginalFilepathsService.OriginalFilePathItem(Path.of("data/2.txt"), Path.of("data/b.txt"))
             ));
 
         var checker = getBagRules();
-        var result = checker.isOriginalFilepathsFileComplete().validate(Path.of("bagdir"));
+        var result = checker.isOriginalFilepathsFileComplete().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
     }
@@ -1225,26 +1264,26 @@ class BagRulesImplTest {
     @Test
     void isOriginalFilepathsFileCompleteWithWrongMapping() throws Exception {
         Mockito.when(originalFilepathsService.exists(Mockito.any())).thenReturn(true);
-        Mockito.when(filesXmlService.readFilepaths(Mockito.any()))
+        Mockito.when(filesXmlService.readFilepaths(Mockito.any(), Mockito.any()))
             .thenReturn(Stream.of(
                 Path.of("data/1.txt"),
                 Path.of("data/2.txt")
             ));
 
-        Mockito.when(fileService.getAllFiles(Mockito.any()))
+        Mockito.when(fileService.getAllFiles(Mockito.any(), Mockito.any()))
             .thenReturn(List.of(
                 Path.of("bagdir/data/a.txt"),
                 Path.of("bagdir/data/b.txt")
             ));
 
-        Mockito.when(originalFilepathsService.getMapping(Mockito.any()))
+        Mockito.when(originalFilepathsService.getMapping(Mockito.any(), Mockito.any()))
             .thenReturn(List.of(
                 new OriginalFilepathsService.OriginalFilePathItem(Path.of("data/1.txt"), Path.of("data/a.txt")),
                 new OriginalFilepathsService.OriginalFilePathItem(Path.of("data/2.txt"), Path.of("data/c.txt")) // this one is wrong
             ));
 
         var checker = getBagRules();
-        var result = checker.isOriginalFilepathsFileComplete().validate(Path.of("bagdir"));
+        var result = checker.isOriginalFilepathsFileComplete().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
@@ -1252,25 +1291,25 @@ class BagRulesImplTest {
     @Test
     void isOriginalFilepathsFileCompleteWithMissingMapping() throws Exception {
         Mockito.when(originalFilepathsService.exists(Mockito.any())).thenReturn(true);
-        Mockito.when(filesXmlService.readFilepaths(Mockito.any()))
+        Mockito.when(filesXmlService.readFilepaths(Mockito.any(), Mockito.any()))
             .thenReturn(Stream.of(
                 Path.of("data/1.txt"),
                 Path.of("data/2.txt")
             ));
 
-        Mockito.when(fileService.getAllFiles(Mockito.any()))
+        Mockito.when(fileService.getAllFiles(Mockito.any(), Mockito.any()))
             .thenReturn(List.of(
                 Path.of("bagdir/data/a.txt"),
                 Path.of("bagdir/data/b.txt")
             ));
 
-        Mockito.when(originalFilepathsService.getMapping(Mockito.any()))
+        Mockito.when(originalFilepathsService.getMapping(Mockito.any(), Mockito.any()))
             .thenReturn(List.of(
                 new OriginalFilepathsService.OriginalFilePathItem(Path.of("data/2.txt"), Path.of("data/b.txt")) // this one is wrong
             ));
 
         var checker = getBagRules();
-        var result = checker.isOriginalFilepathsFileComplete().validate(Path.of("bagdir"));
+        var result = checker.isOriginalFilepathsFileComplete().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
@@ -1278,24 +1317,24 @@ class BagRulesImplTest {
     @Test
     void isOriginalFilepathsFileCompleteWithMissingFiles() throws Exception {
         Mockito.when(originalFilepathsService.exists(Mockito.any())).thenReturn(true);
-        Mockito.when(filesXmlService.readFilepaths(Mockito.any()))
+        Mockito.when(filesXmlService.readFilepaths(Mockito.any(), Mockito.any()))
             .thenReturn(Stream.of(
                 Path.of("data/1.txt")
             ));
 
-        Mockito.when(fileService.getAllFiles(Mockito.any()))
+        Mockito.when(fileService.getAllFiles(Mockito.any(), Mockito.any()))
             .thenReturn(List.of(
                 Path.of("bagdir/data/a.txt")
             ));
 
-        Mockito.when(originalFilepathsService.getMapping(Mockito.any()))
+        Mockito.when(originalFilepathsService.getMapping(Mockito.any(), Mockito.any()))
             .thenReturn(List.of(
                 new OriginalFilepathsService.OriginalFilePathItem(Path.of("data/1.txt"), Path.of("data/a.txt")),
                 new OriginalFilepathsService.OriginalFilePathItem(Path.of("data/2.txt"), Path.of("data/b.txt"))
             ));
 
         var checker = getBagRules();
-        var result = checker.isOriginalFilepathsFileComplete().validate(Path.of("bagdir"));
+        var result = checker.isOriginalFilepathsFileComplete().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
@@ -1303,7 +1342,7 @@ class BagRulesImplTest {
     void isOriginalFilepathsFileCompleteSkipped() throws Exception {
         Mockito.when(originalFilepathsService.exists(Mockito.any())).thenReturn(false);
         var checker = getBagRules();
-        var result = checker.isOriginalFilepathsFileComplete().validate(Path.of("bagdir"));
+        var result = checker.isOriginalFilepathsFileComplete().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(RuleResult.Status.SKIP_DEPENDENCIES, result.getStatus());
     }
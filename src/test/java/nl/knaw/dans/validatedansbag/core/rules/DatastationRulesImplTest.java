@@ -20,6 +20,7 @@ import nl.knaw.dans.lib.dataverse.DataverseClient;
 import nl.knaw.dans.lib.dataverse.DataverseClientConfig;
 import nl.knaw.dans.validatedansbag.core.config.DataverseConfig;
 import nl.knaw.dans.validatedansbag.core.config.SwordDepositorRoles;
+import nl.knaw.dans.validatedansbag.core.engine.BagValidationContext;
 import nl.knaw.dans.validatedansbag.core.engine.RuleResult;
 import nl.knaw.dans.validatedansbag.core.service.BagItMetadataReader;
 import nl.knaw.dans.validatedansbag.core.service.DataverseService;
@@ -78,7 +79,7 @@ class DatastationRulesImplTest {
         var checker = new DatastationRulesImpl(bagItMetadataReader, dv, swordDepositorRoles);
 
         Mockito.doReturn("is-version-of-id")
-            .when(bagItMetadataReader).getSingleField(Mockito.any(), Mockito.anyString());
+            .when(bagItMetadataReader).getSingleField(Mockito.any(), Mockito.anyString(), Mockito.any());
 
         var doi = "doi:10.5072/FK2/QZZSST";
         var searchResult = getSearchResult(doi);
@@ -88,7 +89,7 @@ class DatastationRulesImplTest {
             .thenReturn(createStringResponse(searchResult))
             .thenReturn(createStringResponse(latestVersionResult));
 
-        var result = checker.bagExistsInDatastation().validate(Path.of("bagdir"));
+        var result = checker.bagExistsInDatastation().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
     }
 
@@ -98,14 +99,14 @@ class DatastationRulesImplTest {
         var checker = new DatastationRulesImpl(bagItMetadataReader, dv, swordDepositorRoles);
 
         Mockito.doReturn("is-version-of-id")
-            .when(bagItMetadataReader).getSingleField(Mockito.any(), Mockito.anyString());
+            .when(bagItMetadataReader).getSingleField(Mockito.any(), Mockito.anyString(), Mockito.any());
 
         var searchResult = getEmptySearchResult();
 
         Mockito.when(httpClient.execute(Mockito.any()))
             .thenReturn(createStringResponse(searchResult));
 
-        var result = checker.bagExistsInDatastation().validate(Path.of("bagdir"));
+        var result = checker.bagExistsInDatastation().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
 
@@ -116,7 +117,7 @@ class DatastationRulesImplTest {
         var checker = new DatastationRulesImpl(bagItMetadataReader, dv, swordDepositorRoles);
 
         Mockito.doReturn("dans-other-id")
-            .when(bagItMetadataReader).getSingleField(Mockito.any(), Mockito.anyString());
+            .when(bagItMetadataReader).getSingleField(Mockito.any(), Mockito.anyString(), Mockito.any());
 
         var doi = "doi:10.5072/FK2/QZZSST";
         var dansOtherId = "dans-other-id";
@@ -127,7 +128,7 @@ class DatastationRulesImplTest {
             .thenReturn(createStringResponse(searchResult))
             .thenReturn(createStringResponse(latestVersionResult));
 
-        var result = checker.organizationalIdentifierExistsInDataset().validate(Path.of("bagdir"));
+        var result = checker.organizationalIdentifierExistsInDataset().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
     }
 
@@ -138,7 +139,7 @@ class DatastationRulesImplTest {
         var checker = new DatastationRulesImpl(bagItMetadataReader, dv, swordDepositorRoles);
 
         Mockito.doReturn(null)
-            .when(bagItMetadataReader).getSingleField(Mockito.any(), Mockito.anyString());
+            .when(bagItMetadataReader).getSingleField(Mockito.any(), Mockito.anyString(), Mockito.any());
 
         var doi = "doi:10.5072/FK2/QZZSST";
         var searchResult = getSearchResult(doi);
@@ -148,7 +149,7 @@ class DatastationRulesImplTest {
             .thenReturn(createStringResponse(searchResult))
             .thenReturn(createStringResponse(latestVersionResult));
 
-        var result = checker.organizationalIdentifierExistsInDataset().validate(Path.of("bagdir"));
+        var result = checker.organizationalIdentifierExistsInDataset().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
     }
 
@@ -158,7 +159,7 @@ class DatastationRulesImplTest {
         var dv = createDataverseServiceSpy();
         var checker = new DatastationRulesImpl(bagItMetadataReader, dv, swordDepositorRoles);
 
-        Mockito.when(bagItMetadataReader.getSingleField(Mockito.any(), Mockito.anyString()))
+        Mockito.when(bagItMetadataReader.getSingleField(Mockito.any(), Mockito.anyString(), Mockito.any()))
             .thenReturn("is_version_of")
             .thenReturn("has_organizational_identifier");
 
@@ -170,7 +171,7 @@ class DatastationRulesImplTest {
             .thenReturn(createStringResponse(searchResult))
             .thenReturn(createStringResponse(latestVersionResult));
 
-        var result = checker.organizationalIdentifierExistsInDataset().validate(Path.of("bagdir"));
+        var result = checker.organizationalIdentifierExistsInDataset().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
 
@@ -180,7 +181,7 @@ class DatastationRulesImplTest {
         var dv = createDataverseServiceSpy();
         var checker = new DatastationRulesImpl(bagItMetadataReader, dv, swordDepositorRoles);
 
-        Mockito.when(bagItMetadataReader.getSingleField(Mockito.any(), Mockito.anyString()))
+        Mockito.when(bagItMetadataReader.getSingleField(Mockito.any(), Mockito.anyString(), Mockito.any()))
             .thenReturn("is_version_of")
             .thenReturn("has_organizational_identifier");
 
@@ -192,7 +193,7 @@ class DatastationRulesImplTest {
             .thenReturn(createStringResponse(searchResult))
             .thenReturn(createStringResponse(latestVersionResult));
 
-        var result = checker.organizationalIdentifierExistsInDataset().validate(Path.of("bagdir"));
+        var result = checker.organizationalIdentifierExistsInDataset().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
 
@@ -204,7 +205,7 @@ class DatastationRulesImplTest {
 
         Mockito
             .doReturn("user-account-name")
-            .when(bagItMetadataReader).getSingleField(Mockito.any(), Mockito.anyString());
+            .when(bagItMetadataReader).getSingleField(Mockito.any(), Mockito.anyString(), Mockito.any());
 
         var assignmentResult = "{\n"
             + "  \"status\": \"OK\",\n"
@@ -229,7 +230,7 @@ class DatastationRulesImplTest {
         Mockito.when(httpClient.execute(Mockito.any()))
             .thenReturn(createStringResponse(assignmentResult));
 
-        var result = checker.userIsAuthorizedToCreateDataset().validate(Path.of("bagdir"));
+        var result = checker.userIsAuthorizedToCreateDataset().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
     }
@@ -241,7 +242,7 @@ class DatastationRulesImplTest {
 
         Mockito
             .doReturn("user-account-name")
-            .when(bagItMetadataReader).getSingleField(Mockito.any(), Mockito.anyString());
+            .when(bagItMetadataReader).getSingleField(Mockito.any(), Mockito.anyString(), Mockito.any());
 
         // trimmed down versions of what dataverse would actually spit out
         var assignmentResult = "{\n"
@@ -274,7 +275,7 @@ class DatastationRulesImplTest {
         Mockito.when(httpClient.execute(Mockito.any()))
             .thenReturn(createStringResponse(assignmentResult));
 
-        var result = checker.userIsAuthorizedToCreateDataset().validate(Path.of("bagdir"));
+        var result = checker.userIsAuthorizedToCreateDataset().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
@@ -286,7 +287,7 @@ class DatastationRulesImplTest {
 
         Mockito
             .doReturn(null)
-            .when(bagItMetadataReader).getSingleField(Mockito.any(), Mockito.anyString());
+            .when(bagItMetadataReader).getSingleField(Mockito.any(), Mockito.anyString(), Mockito.any());
 
         var assignmentResult = "{\n"
             + "  \"status\": \"OK\",\n"
@@ -311,7 +312,7 @@ class DatastationRulesImplTest {
         Mockito.when(httpClient.execute(Mockito.any()))
             .thenReturn(createStringResponse(assignmentResult));
 
-        var result = checker.userIsAuthorizedToCreateDataset().validate(Path.of("bagdir"));
+        var result = checker.userIsAuthorizedToCreateDataset().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.SKIP_DEPENDENCIES, result.getStatus());
     }
 
@@ -323,7 +324,7 @@ class DatastationRulesImplTest {
         Mockito
             .doReturn("user-name")
             .doReturn("urn:uuid:the_id")
-            .when(bagItMetadataReader).getSingleField(Mockito.any(), Mockito.anyString());
+            .when(bagItMetadataReader).getSingleField(Mockito.any(), Mockito.anyString(), Mockito.any());
 
         // trimmed down versions of what dataverse would actually spit out
         var assignmentResult = "{\n"
@@ -349,7 +350,7 @@ class DatastationRulesImplTest {
         Mockito.when(httpClient.execute(Mockito.any()))
             .thenReturn(createStringResponse(assignmentResult));
 
-        var result = checker.userIsAuthorizedToCreateDataset().validate(Path.of("bagdir"));
+        var result = checker.userIsAuthorizedToCreateDataset().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
@@ -364,7 +365,7 @@ class DatastationRulesImplTest {
         Mockito
             .doReturn("user-account-name")
             .doReturn("urn:uuid:the_id")
-            .when(bagItMetadataReader).getSingleField(Mockito.any(), Mockito.anyString());
+            .when(bagItMetadataReader).getSingleField(Mockito.any(), Mockito.anyString(), Mockito.any());
 
         var searchResult = getSearchResult("doi");
         var latestVersionResult = getLatestVersion("doi", "otherid");
@@ -394,7 +395,7 @@ class DatastationRulesImplTest {
             .thenReturn(createStringResponse(latestVersionResult))
             .thenReturn(createStringResponse(assignmentResult));
 
-        var result = checker.userIsAuthorizedToUpdateDataset().validate(Path.of("bagdir"));
+        var result = checker.userIsAuthorizedToUpdateDataset().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
 
@@ -409,7 +410,7 @@ class DatastationRulesImplTest {
         Mockito
             .doReturn("user-account-name")
             .doReturn("urn:uuid:the_id")
-            .when(bagItMetadataReader).getSingleField(Mockito.any(), Mockito.anyString());
+            .when(bagItMetadataReader).getSingleField(Mockito.any(), Mockito.anyString(), Mockito.any());
 
         // trimmed down versions of what dataverse would actually spit out
         var searchResult = getSearchResult("doi");
@@ -439,7 +440,7 @@ class DatastationRulesImplTest {
             .thenReturn(createStringResponse(latestVersionResult))
             .thenReturn(createStringResponse(assignmentResult));
 
-        var result = checker.userIsAuthorizedToUpdateDataset().validate(Path.of("bagdir"));
+        var result = checker.userIsAuthorizedToUpdateDataset().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
         Mockito.verify(dv).getDataset(Mockito.eq("doi"));
@@ -453,7 +454,7 @@ class DatastationRulesImplTest {
         Mockito
             .doReturn("user-account-name")
             .doReturn("urn:uuid:the_id")
-            .when(bagItMetadataReader).getSingleField(Mockito.any(), Mockito.anyString());
+            .when(bagItMetadataReader).getSingleField(Mockito.any(), Mockito.anyString(), Mockito.any());
 
         var searchResult = getSearchResult("doi");
         var latestVersionResult = getLatestVersion("doi", "otherid");
@@ -482,7 +483,7 @@ class DatastationRulesImplTest {
             .thenReturn(createStringResponse(latestVersionResult))
             .thenReturn(createStringResponse(assignmentResult));
 
-        var result = checker.userIsAuthorizedToUpdateDataset().validate(Path.of("bagdir"));
+        var result = checker.userIsAuthorizedToUpdateDataset().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
         assertTrue(result.getErrorMessages().get(0).contains("user-account-name"));
@@ -499,7 +500,7 @@ class DatastationRulesImplTest {
         Mockito
             .doReturn(null)
             .doReturn("urn:uuid:the_id")
-            .when(bagItMetadataReader).getSingleField(Mockito.any(), Mockito.anyString());
+            .when(bagItMetadataReader).getSingleField(Mockito.any(), Mockito.anyString(), Mockito.any());
 
         var searchResult = getSearchResult("doi");
         var assignmentResult = "{\n"
@@ -526,7 +527,7 @@ class DatastationRulesImplTest {
             .thenReturn(createStringResponse(searchResult))
             .thenReturn(createStringResponse(assignmentResult));
 
-        var result = checker.userIsAuthorizedToUpdateDataset().validate(Path.of("bagdir"));
+        var result = checker.userIsAuthorizedToUpdateDataset().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.SKIP_DEPENDENCIES, result.getStatus());
 
     }
@@ -539,7 +540,7 @@ class DatastationRulesImplTest {
         Mockito
             .doReturn("user-name")
             .doReturn("urn:uuid:the_id")
-            .when(bagItMetadataReader).getSingleField(Mockito.any(), Mockito.anyString());
+            .when(bagItMetadataReader).getSingleField(Mockito.any(), Mockito.anyString(), Mockito.any());
 
         // trimmed down versions of what dataverse would actually spit out
         var searchResult = getEmptySearchResult();
@@ -568,7 +569,7 @@ class DatastationRulesImplTest {
             .thenReturn(createStringResponse(searchResult))
             .thenReturn(createStringResponse(assignmentResult));
 
-        var result = checker.userIsAuthorizedToUpdateDataset().validate(Path.of("bagdir"));
+        var result = checker.userIsAuthorizedToUpdateDataset().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertTrue(result.getErrorMessages().get(0).contains("it must be a valid SWORD token in the data station"));
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
@@ -15,8 +15,10 @@
  */
 package nl.knaw.dans.validatedansbag.core.rules;
 
+import nl.knaw.dans.validatedansbag.core.engine.BagValidationContext;
 import nl.knaw.dans.validatedansbag.core.engine.RuleResult;
 import nl.knaw.dans.validatedansbag.core.service.FileService;
+import nl.knaw.dans.validatedansbag.core.service.FilesReconcilerImpl;
 import nl.knaw.dans.validatedansbag.core.service.FilesXmlService;
 import nl.knaw.dans.validatedansbag.core.service.OriginalFilepathsService;
 import nl.knaw.dans.validatedansbag.core.service.XmlReaderImpl;
@@ -54,41 +56,41 @@ class FilesXmlRulesImplTest {
 
     @Test
     void filesXmlFilePathAttributesContainLocalBagPathAndNonPayloadFilesAreNotDescribed() throws Exception {
-        var checker = Mockito.spy(new FilesXmlRulesImpl(fileService, originalFilepathsService, filesXmlService));
-        Mockito.doReturn(Set.of()).when(checker).filesXmlDescribesOnlyPayloadFiles(Mockito.any());
+        var checker = Mockito.spy(new FilesXmlRulesImpl(new FilesReconcilerImpl(fileService, originalFilepathsService, filesXmlService)));
+        Mockito.doReturn(Set.of()).when(checker).filesXmlDescribesOnlyPayloadFiles(Mockito.any(), Mockito.any());
 
-        var result = checker.filesXmlFilePathAttributesContainLocalBagPathAndNonPayloadFilesAreNotDescribed().validate(Path.of("bagdir"));
+        var result = checker.filesXmlFilePathAttributesContainLocalBagPathAndNonPayloadFilesAreNotDescribed().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
     }
 
     @Test
     void filesXmlFilePathAttributesContainLocalBagPathAndNonPayloadFilesAreNotDescribedThrowsDoubleError() throws Exception {
-        var checker = Mockito.spy(new FilesXmlRulesImpl(fileService, originalFilepathsService, filesXmlService));
-        Mockito.doReturn(Set.of(Path.of("some/path.txt"))).when(checker).filesXmlDescribesOnlyPayloadFiles(Mockito.any());
+        var checker = Mockito.spy(new FilesXmlRulesImpl(new FilesReconcilerImpl(fileService, originalFilepathsService, filesXmlService)));
+        Mockito.doReturn(Set.of(Path.of("some/path.txt"))).when(checker).filesXmlDescribesOnlyPayloadFiles(Mockito.any(), Mockito.any());
 
-        var result = checker.filesXmlFilePathAttributesContainLocalBagPathAndNonPayloadFilesAreNotDescribed().validate(Path.of("bagdir"));
+        var result = checker.filesXmlFilePathAttributesContainLocalBagPathAndNonPayloadFilesAreNotDescribed().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
 
     @Test
     void filesXmlNoDuplicateFilesAndEveryPayloadFileIsDescribed() throws Exception {
-        var checker = Mockito.spy(new FilesXmlRulesImpl(fileService, originalFilepathsService, filesXmlService));
-        Mockito.doReturn(Set.of()).when(checker).filesXmlNoDuplicates(Mockito.any());
-        Mockito.doReturn(Set.of()).when(checker).filesXmlDescribesAllPayloadFiles(Mockito.any());
+        var checker = Mockito.spy(new FilesXmlRulesImpl(new FilesReconcilerImpl(fileService, originalFilepathsService, filesXmlService)));
+        Mockito.doReturn(Set.of()).when(checker).filesXmlNoDuplicates(Mockito.any(), Mockito.any());
+        Mockito.doReturn(Set.of()).when(checker).filesXmlDescribesAllPayloadFiles(Mockito.any(), Mockito.any());
 
-        var result = checker.filesXmlNoDuplicateFilesAndEveryPayloadFileIsDescribed().validate(Path.of("bagdir"));
+        var result = checker.filesXmlNoDuplicateFilesAndEveryPayloadFileIsDescribed().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
     }
 
     @Test
     void filesXmlNoDuplicateFilesAndEveryPayloadFileIsDescribedThrowsDoubleError() throws Exception {
-        var checker = Mockito.spy(new FilesXmlRulesImpl(fileService, originalFilepathsService, filesXmlService));
-        Mockito.doReturn(Set.of(Path.of("broken"))).when(checker).filesXmlNoDuplicates(Mockito.any());
-        Mockito.doReturn(Set.of(Path.of("another"))).when(checker).filesXmlDescribesAllPayloadFiles(Mockito.any());
+        var checker = Mockito.spy(new FilesXmlRulesImpl(new FilesReconcilerImpl(fileService, originalFilepathsService, filesXmlService)));
+        Mockito.doReturn(Set.of(Path.of("broken"))).when(checker).filesXmlNoDuplicates(Mockito.any(), Mockito.any());
+        Mockito.doReturn(Set.of(Path.of("another"))).when(checker).filesXmlDescribesAllPayloadFiles(Mockito.any(), Mockito.any());
 
-        var result = checker.filesXmlNoDuplicateFilesAndEveryPayloadFileIsDescribed().validate(Path.of("bagdir"));
+        var result = checker.filesXmlNoDuplicateFilesAndEveryPayloadFileIsDescribed().validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
         assertEquals(2, result.getErrorMessages().size());
@@ -100,7 +102,7 @@ class FilesXmlRulesImplTest {
             Path.of("data/random images/image01.png")
         );
 
-        Mockito.doReturn(fromFilesXml).when(filesXmlService).readFilepaths(Mockito.any());
+        Mockito.doReturn(fromFilesXml).when(filesXmlService).readFilepaths(Mockito.any(), Mockito.any());
 
         // even though image02 is not defined in the files.xml, this partial rule does not check for that
         var files = List.of(
@@ -108,10 +110,10 @@ class FilesXmlRulesImplTest {
             Path.of("bagdir/data/random images/image02.png")
         );
 
-        Mockito.doReturn(files).when(fileService).getAllFiles(Mockito.any());
+        Mockito.doReturn(files).when(fileService).getAllFiles(Mockito.any(), Mockito.any());
 
-        var checker = new FilesXmlRulesImpl(fileService, originalFilepathsService, filesXmlService);
-        var result = checker.filesXmlDescribesOnlyPayloadFiles(Path.of("bagdir"));
+        var checker = new FilesXmlRulesImpl(new FilesReconcilerImpl(fileService, originalFilepathsService, filesXmlService));
+        var result = checker.filesXmlDescribesOnlyPayloadFiles(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(0, result.size());
     }
@@ -123,16 +125,16 @@ class FilesXmlRulesImplTest {
             Path.of("data/random images/image02.png")
         );
 
-        Mockito.doReturn(fromFilesXml).when(filesXmlService).readFilepaths(Mockito.any());
+        Mockito.doReturn(fromFilesXml).when(filesXmlService).readFilepaths(Mockito.any(), Mockito.any());
 
         var files = List.of(
             Path.of("bagdir/data/random images/image01.png")
         );
 
-        Mockito.doReturn(files).when(fileService).getAllFiles(Mockito.any());
+        Mockito.doReturn(files).when(fileService).getAllFiles(Mockito.any(), Mockito.any());
 
-        var checker = new FilesXmlRulesImpl(fileService, originalFilepathsService, filesXmlService);
-        var result = checker.filesXmlDescribesOnlyPayloadFiles(Path.of("bagdir"));
+        var checker = new FilesXmlRulesImpl(new FilesReconcilerImpl(fileService, originalFilepathsService, filesXmlService));
+        var result = checker.filesXmlDescribesOnlyPayloadFiles(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(1, result.size());
     }
@@ -146,11 +148,11 @@ class FilesXmlRulesImplTest {
             Path.of("data/random images/image03.png")
         );
 
-        Mockito.doReturn(fromFilesXml).when(filesXmlService).readFilepaths(Mockito.any());
+        Mockito.doReturn(fromFilesXml).when(filesXmlService).readFilepaths(Mockito.any(), Mockito.any());
 
-        var checker = new FilesXmlRulesImpl(fileService, originalFilepathsService, filesXmlService);
+        var checker = new FilesXmlRulesImpl(new FilesReconcilerImpl(fileService, originalFilepathsService, filesXmlService));
 
-        var result = checker.filesXmlNoDuplicates(Path.of("bagdir"));
+        var result = checker.filesXmlNoDuplicates(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(0, result.size());
     }
 
@@ -163,9 +165,9 @@ class FilesXmlRulesImplTest {
             Path.of("data/random images/image02.png")
         );
 
-        Mockito.doReturn(fromFilesXml).when(filesXmlService).readFilepaths(Mockito.any());
-        var checker = new FilesXmlRulesImpl(fileService, originalFilepathsService, filesXmlService);
-        var result = checker.filesXmlNoDuplicates(Path.of("bagdir"));
+        Mockito.doReturn(fromFilesXml).when(filesXmlService).readFilepaths(Mockito.any(), Mockito.any());
+        var checker = new FilesXmlRulesImpl(new FilesReconcilerImpl(fileService, originalFilepathsService, filesXmlService));
+        var result = checker.filesXmlNoDuplicates(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(1, result.size());
     }
 
@@ -177,7 +179,7 @@ class FilesXmlRulesImplTest {
             Path.of("data/random images/image03.png")
         );
 
-        Mockito.doReturn(fromFilesXml).when(filesXmlService).readFilepaths(Mockito.any());
+        Mockito.doReturn(fromFilesXml).when(filesXmlService).readFilepaths(Mockito.any(), Mockito.any());
 
         var files = List.of(
             Path.of("bagdir/data/random images/image01.png"),
@@ -185,10 +187,10 @@ class FilesXmlRulesImplTest {
             Path.of("bagdir/data/random images/image03.png")
         );
 
-        Mockito.doReturn(files).when(fileService).getAllFiles(Mockito.any());
+        Mockito.doReturn(files).when(fileService).getAllFiles(Mockito.any(), Mockito.any());
 
-        var checker = new FilesXmlRulesImpl(fileService, originalFilepathsService, filesXmlService);
-        var result = checker.filesXmlDescribesAllPayloadFiles(Path.of("bagdir"));
+        var checker = new FilesXmlRulesImpl(new FilesReconcilerImpl(fileService, originalFilepathsService, filesXmlService));
+        var result = checker.filesXmlDescribesAllPayloadFiles(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(0, result.size());
     }
@@ -202,7 +204,7 @@ class FilesXmlRulesImplTest {
             Path.of("data/random images/image03.png")
         );
 
-        Mockito.doReturn(fromFilesXml).when(filesXmlService).readFilepaths(Mockito.any());
+        Mockito.doReturn(fromFilesXml).when(filesXmlService).readFilepaths(Mockito.any(), Mockito.any());
         var files = List.of(
             Path.of("bagdir/data/random images/image01.png"),
             Path.of("bagdir/data/random images/image02.png"),
@@ -210,10 +212,10 @@ class FilesXmlRulesImplTest {
             Path.of("bagdir/data/random images/image04.png")
         );
 
-        Mockito.doReturn(files).when(fileService).getAllFiles(Mockito.any());
+        Mockito.doReturn(files).when(fileService).getAllFiles(Mockito.any(), Mockito.any());
 
-        var checker = new FilesXmlRulesImpl(fileService, originalFilepathsService, filesXmlService);
-        var result = checker.filesXmlDescribesAllPayloadFiles(Path.of("bagdir"));
+        var checker = new FilesXmlRulesImpl(new FilesReconcilerImpl(fileService, originalFilepathsService, filesXmlService));
+        var result = checker.filesXmlDescribesAllPayloadFiles(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
 
         assertEquals(1, result.size());
         assertTrue(result.stream().findAny().get().toString().contains("image04.png"));
@@ -15,26 +15,30 @@
  */
 package nl.knaw.dans.validatedansbag.core.rules;
 
+import nl.knaw.dans.validatedansbag.core.engine.BagValidationContext;
 import nl.knaw.dans.validatedansbag.core.engine.RuleResult;
 import nl.knaw.dans.validatedansbag.core.service.BagItMetadataReader;
+import nl.knaw.dans.validatedansbag.core.service.DdmReaderImpl;
 import nl.knaw.dans.validatedansbag.core.service.FileService;
 import nl.knaw.dans.validatedansbag.core.service.OriginalFilepathsService;
 import nl.knaw.dans.validatedansbag.core.service.XmlReaderImpl;
 import nl.knaw.dans.validatedansbag.core.service.XmlSchemaValidator;
+import nl.knaw.dans.validatedansbag.core.service.XmlStreamHandler;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
-import org.w3c.dom.Document;
-import org.xml.sax.SAXException;
+import org.mockito.stubbing.Answer;
 import org.xml.sax.SAXParseException;
 
-import javax.xml.parsers.ParserConfigurationException;
-import java.io.IOException;
+import javax.xml.stream.XMLInputFactory;
+import java.io.StringReader;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 class XmlRulesImplTest {
 
@@ -51,90 +55,115 @@ class XmlRulesImplTest {
         Mockito.reset(originalFilepathsService);
     }
 
-    private Document parseXmlString(String str) throws ParserConfigurationException, IOException, SAXException {
-        return new XmlReaderImpl().readXmlString(str);
+    // passes the events of the xml to the handler, like the validator does while validating
+    private Answer<List<SAXParseException>> streamAndReturn(String xml, List<SAXParseException> result) {
+        return invocation -> {
+            var handler = invocation.getArgument(2, XmlStreamHandler.class);
+            var reader = XMLInputFactory.newFactory().createXMLStreamReader(new StringReader(xml));
+
+            while (reader.hasNext()) {
+                reader.next();
+                handler.handleEvent(reader);
+            }
+
+            return result;
+        };
     }
 
     @Test
     void xmlFileConfirmsToSchema() throws Exception {
-
-        var xml = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n"
-            + "<ddm:DDM xmlns:ddm=\"http://easy.dans.knaw.nl/schemas/md/ddm/\" xmlns=\"http://easy.dans.knaw.nl/schemas/bag/metadata/files/\" xmlns:abr=\"http://www.den.nl/standaard/166/Archeologisch-Basisregister/\" xmlns:dc=\"http://purl.org/dc/elements/1.1/\" xmlns:dcterms=\"http://purl.org/dc/terms/\" xmlns:dcx-dai=\"http://easy.dans.knaw.nl/schemas/dcx/dai/\" xmlns:dcx-gml=\"http://easy.dans.knaw.nl/schemas/dcx/gml/\" xmlns:id-type=\"http://easy.dans.knaw.nl/schemas/vocab/identifier-type/\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:schemaLocation=\"http://easy.dans.knaw.nl/schemas/md/ddm/ https://easy.dans.knaw.nl/schemas/md/ddm/ddm.xsd\">\n"
-            + "    <ddm:profile>\n"
-            + "        <dc:title>PAN-00008136 - knobbed sickle</dc:title>\n"
-            + "    </ddm:profile>\n"
-            + "</ddm:DDM>\n";
-
-        var document = parseXmlString(xml);
-        var reader = Mockito.spy(new XmlReaderImpl());
-
-        Mockito.doReturn(document).when(reader).readXmlFile(Mockito.any());
         Mockito.doReturn(new ArrayList<SAXParseException>())
-            .when(xmlSchemaValidator).validateDocument(Mockito.any(), Mockito.anyString());
+            .when(xmlSchemaValidator).validateFile(Mockito.any(), Mockito.anyString(), Mockito.any());
 
-        var checker = new XmlRulesImpl(reader, xmlSchemaValidator, fileService);
+        var checker = new XmlRulesImpl(new XmlReaderImpl(), new DdmReaderImpl(), xmlSchemaValidator, fileService);
 
-        var result = checker.xmlFileConformsToSchema(Path.of("metadata/dataset.xml"), "ddm").validate(Path.of("bagdir"));
+        var result = checker.xmlFileConformsToSchema(Path.of("metadata/dataset.xml"), "ddm").validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
+        Mockito.verify(xmlSchemaValidator).validateFile(Mockito.eq(Path.of("bagdir/metadata/dataset.xml")), Mockito.eq("ddm"), Mockito.any());
     }
 
     @Test
     void xmlFileDoesNotConformToSchema() throws Exception {
+        Mockito.doReturn(List.of(new SAXParseException("msg", null)))
+            .when(xmlSchemaValidator).validateFile(Mockito.any(), Mockito.anyString(), Mockito.any());
 
-        var xml = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n"
-            + "<ddm:DDM xmlns:ddm=\"http://easy.dans.knaw.nl/schemas/md/ddm/\" xmlns=\"http://easy.dans.knaw.nl/schemas/bag/metadata/files/\" xmlns:abr=\"http://www.den.nl/standaard/166/Archeologisch-Basisregister/\" xmlns:dc=\"http://purl.org/dc/elements/1.1/\" xmlns:dcterms=\"http://purl.org/dc/terms/\" xmlns:dcx-dai=\"http://easy.dans.knaw.nl/schemas/dcx/dai/\" xmlns:dcx-gml=\"http://easy.dans.knaw.nl/schemas/dcx/gml/\" xmlns:id-type=\"http://easy.dans.knaw.nl/schemas/vocab/identifier-type/\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:schemaLocation=\"http://easy.dans.knaw.nl/schemas/md/ddm/ https://easy.dans.knaw.nl/schemas/md/ddm/ddm.xsd\">\n"
-            + "    <ddm:profile>\n"
-            + "        <dcterms:description xml:lang=\"en\">This find is registered at Portable Antiquities of the Netherlands with number PAN-00008136</dcterms:description>\n"
-            + "    </ddm:profile>\n"
-            + "</ddm:DDM>\n";
-
-        var document = parseXmlString(xml);
-        var reader = Mockito.spy(new XmlReaderImpl());
+        var checker = new XmlRulesImpl(new XmlReaderImpl(), new DdmReaderImpl(), xmlSchemaValidator, fileService);
 
-        Mockito.doReturn(document).when(reader).readXmlFile(Mockito.any());
+        var result = checker.xmlFileConformsToSchema(Path.of("metadata/dataset.xml"), "ddm").validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
+        assertEquals(RuleResult.Status.ERROR, result.getStatus());
+    }
 
+    @Test
+    void xmlFileIfExistsConformsToSchema() throws Exception {
+        Mockito.doReturn(true).when(fileService).exists(Path.of("bagdir/metadata/dataset.xml"));
         Mockito.doReturn(List.of(new SAXParseException("msg", null)))
-            .when(xmlSchemaValidator).validateDocument(Mockito.any(), Mockito.anyString());
+            .when(xmlSchemaValidator).validateFile(Mockito.any(), Mockito.anyString(), Mockito.any());
 
-        var checker = new XmlRulesImpl(reader, xmlSchemaValidator, fileService);
+        var checker = new XmlRulesImpl(new XmlReaderImpl(), new DdmReaderImpl(), xmlSchemaValidator, fileService);
 
-        var result = checker.xmlFileConformsToSchema(Path.of("metadata/dataset.xml"), "ddm").validate(Path.of("bagdir"));
+        var result = checker.xmlFileConformsToSchema(Path.of("metadata/dataset.xml"), "ddm").validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
         assertEquals(RuleResult.Status.ERROR, result.getStatus());
     }
 
     @Test
-    void xmlFileIfExistsConformsToSchema() throws Exception {
+    void xmlFileIfExistsConformsToSchemaButFileDoesNotExist() throws Exception {
+        Mockito.doReturn(false).when(fileService).exists(Path.of("bagdir/metadata/dataset.xml"));
+
+        var checker = new XmlRulesImpl(new XmlReaderImpl(), new DdmReaderImpl(), xmlSchemaValidator, fileService);
+
+        var result = checker.xmlFileIfExistsConformsToSchema(Path.of("metadata/dataset.xml"), "ddm").validate(Path.of("bagdir"), new BagValidationContext(Path.of("bagdir")));
+        assertEquals(RuleResult.Status.SKIP_DEPENDENCIES, result.getStatus());
+
+    }
+
+    @Test
+    void xmlFileConformsToSchemaSharesTheDatasetXmlSummaryWithLaterRules() throws Exception {
         var xml = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n"
-            + "<ddm:DDM xmlns:ddm=\"http://easy.dans.knaw.nl/schemas/md/ddm/\" xmlns=\"http://easy.dans.knaw.nl/schemas/bag/metadata/files/\" xmlns:abr=\"http://www.den.nl/standaard/166/Archeologisch-Basisregister/\" xmlns:dc=\"http://purl.org/dc/elements/1.1/\" xmlns:dcterms=\"http://purl.org/dc/terms/\" xmlns:dcx-dai=\"http://easy.dans.knaw.nl/schemas/dcx/dai/\" xmlns:dcx-gml=\"http://easy.dans.knaw.nl/schemas/dcx/gml/\" xmlns:id-type=\"http://easy.dans.knaw.nl/schemas/vocab/identifier-type/\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:schemaLocation=\"http://easy.dans.knaw.nl/schemas/md/ddm/ https://easy.dans.knaw.nl/schemas/md/ddm/ddm.xsd\">\n"
+            + "<ddm:DDM xmlns:ddm=\"http://easy.dans.knaw.nl/schemas/md/ddm/\" xmlns:dcx-dai=\"http://easy.dans.knaw.nl/schemas/dcx/dai/\">\n"
             + "    <ddm:profile>\n"
-            + "        <dcterms:description xml:lang=\"en\">This find is registered at Portable Antiquities of the Netherlands with number PAN-00008136</dcterms:description>\n"
+            + "        <dcx-dai:creatorDetails><dcx-dai:author><dcx-dai:DAI>info:eu-repo/dai/nl/123456789</dcx-dai:DAI></dcx-dai:author></dcx-dai:creatorDetails>\n"
             + "    </ddm:profile>\n"
             + "</ddm:DDM>\n";
 
-        var document = parseXmlString(xml);
-        var reader = Mockito.spy(new XmlReaderImpl());
+        var ddmReader = Mockito.spy(new DdmReaderImpl());
+        var context = new BagValidationContext(Path.of("bagdir"));
 
-        Mockito.doReturn(true).when(fileService).exists(Path.of("bagdir/metadata/dataset.xml"));
-        Mockito.doReturn(document).when(reader).readXmlFile(Mockito.any());
-        Mockito.doReturn(List.of(new SAXParseException("msg", null)))
-            .when(xmlSchemaValidator).validateDocument(Mockito.any(), Mockito.anyString());
+        Mockito.doAnswer(streamAndReturn(xml, List.of()))
+            .when(xmlSchemaValidator).validateFile(Mockito.any(), Mockito.anyString(), Mockito.any());
 
-        var checker = new XmlRulesImpl(reader, xmlSchemaValidator, fileService);
+        var checker = new XmlRulesImpl(new XmlReaderImpl(), ddmReader, xmlSchemaValidator, fileService);
 
-        var result = checker.xmlFileConformsToSchema(Path.of("metadata/dataset.xml"), "ddm").validate(Path.of("bagdir"));
-        assertEquals(RuleResult.Status.ERROR, result.getStatus());
+        var result = checker.xmlFileConformsToSchema(Path.of("metadata/dataset.xml"), "dataset.xml").validate(Path.of("bagdir"), context);
+        assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
+
+        var summary = ddmReader.read(Path.of("bagdir/metadata/dataset.xml"), context);
+        assertEquals(List.of("info:eu-repo/dai/nl/123456789"), summary.getDais());
+        Mockito.verify(ddmReader, Mockito.never()).read(Mockito.any(Path.class));
     }
 
     @Test
-    void xmlFileIfExistsConformsToSchemaButFileDoesNotExist() throws Exception {
-        var reader = Mockito.spy(new XmlReaderImpl());
+    void xmlFileConformsToSchemaSharesTheFilesXmlDocumentWithLaterRules() throws Exception {
+        var xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<files xmlns=\"http://easy.dans.knaw.nl/schemas/bag/metadata/files/\">\n"
+            + "    <file filepath=\"data/a.txt\"/>\n"
+            + "    <file filepath=\"data/b.txt\"/>\n"
+            + "</files>\n";
 
-        Mockito.doReturn(false).when(fileService).exists(Path.of("bagdir/metadata/dataset.xml"));
+        var xmlReader = Mockito.spy(new XmlReaderImpl());
+        var context = new BagValidationContext(Path.of("bagdir"));
 
-        var checker = new XmlRulesImpl(reader, xmlSchemaValidator, fileService);
+        Mockito.doAnswer(streamAndReturn(xml, List.of()))
+            .when(xmlSchemaValidator).validateFile(Mockito.any(), Mockito.anyString(), Mockito.any());
 
-        var result = checker.xmlFileIfExistsConformsToSchema(Path.of("metadata/dataset.xml"), "ddm").validate(Path.of("bagdir"));
-        assertEquals(RuleResult.Status.SKIP_DEPENDENCIES, result.getStatus());
+        var checker = new XmlRulesImpl(xmlReader, new DdmReaderImpl(), xmlSchemaValidator, fileService);
+
+        var result = checker.xmlFileConformsToSchema(Path.of("metadata/files.xml"), "files.xml").validate(Path.of("bagdir"), context);
+        assertEquals(RuleResult.Status.SUCCESS, result.getStatus());
 
+        var document = xmlReader.readXmlFile(Path.of("bagdir/metadata/files.xml"), context);
+        var paths = xmlReader.xpathToStreamOfStrings(document, "//files:file/@filepath").collect(Collectors.toList());
+        assertEquals(List.of("data/a.txt", "data/b.txt"), paths);
+        assertSame(document, xmlReader.readXmlFile(Path.of("bagdir/metadata/files.xml"), context));
+        Mockito.verify(xmlReader, Mockito.never()).readXmlFile(Mockito.any(Path.class));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.util.DataSize;
+import io.dropwizard.util.Duration;
+import nl.knaw.dans.validatedansbag.core.config.AdmissionConfig;
+import nl.knaw.dans.validatedansbag.core.service.AdmissionRejectedException.Reason;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AdmissionControllerImplTest {
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+
+    private AdmissionConfig createConfig(int maxConcurrentValidations, int maxQueuedValidations) {
+        var config = new AdmissionConfig();
+        config.setMaxConcurrentValidations(maxConcurrentValidations);
+        config.setMaxQueuedValidations(maxQueuedValidations);
+        config.setMaxQueueWait(Duration.milliseconds(100));
+        config.setMaxInFlightUploadSize(DataSize.bytes(1000));
+        config.setMinFreeTempSpace(DataSize.bytes(500));
+        config.setRetryAfter(Duration.seconds(7));
+        return config;
+    }
+
+    @Test
+    void admitRefusesValidationsWhenAllSlotsAreTakenAndTheQueueIsFull() throws Exception {
+        var controller = new AdmissionControllerImpl(createConfig(1, 0), () -> Long.MAX_VALUE, metricRegistry);
+
+        try (var admission = controller.admit(0)) {
+            var e = assertThrows(AdmissionRejectedException.class, () -> controller.admit(0));
+
+            assertEquals(Reason.TOO_MANY_VALIDATIONS, e.getReason());
+            assertEquals(java.time.Duration.ofSeconds(7), e.getRetryAfter());
+            assertEquals(1, controller.getValidationsInProgress());
+        }
+
+        assertEquals(0, controller.getValidationsInProgress());
+        controller.admit(0).close();
+    }
+
+    @Test
+    void admitRefusesValidationsThatWaitLongerThanMaxQueueWait() throws Exception {
+        var controller = new AdmissionControllerImpl(createConfig(1, 1), () -> Long.MAX_VALUE, metricRegistry);
+
+        try (var admission = controller.admit(0)) {
+            var e = assertThrows(AdmissionRejectedException.class, () -> controller.admit(0));
+
+            assertEquals(Reason.TOO_MANY_VALIDATIONS, e.getReason());
+            assertEquals(0, controller.getQueuedValidations());
+        }
+    }
+
+    @Test
+    void admitLetsAQueuedValidationInWhenASlotIsReleased() throws Exception {
+        var config = createConfig(1, 1);
+        config.setMaxQueueWait(Duration.seconds(10));
+        var controller = new AdmissionControllerImpl(config, () -> Long.MAX_VALUE, metricRegistry);
+        var executor = Executors.newSingleThreadExecutor();
+
+        try {
+            var first = controller.admit(0);
+            var waiting = new CountDownLatch(1);
+            var second = executor.submit(() -> {
+                waiting.countDown();
+                return controller.admit(0);
+            });
+
+            waiting.await();
+            while (controller.getQueuedValidations() == 0) {
+                Thread.sleep(1);
+            }
+
+            first.close();
+            second.get(10, TimeUnit.SECONDS).close();
+
+            assertEquals(0, controller.getValidationsInProgress());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void admitDoesNotLetANewValidationTakeASlotBeforeAQueuedOne() throws Exception {
+        var config = createConfig(1, 2);
+        config.setMaxQueueWait(Duration.seconds(10));
+        var controller = new AdmissionControllerImpl(config, () -> Long.MAX_VALUE, metricRegistry);
+        var executor = Executors.newSingleThreadExecutor();
+        var admitted = new CopyOnWriteArrayList<String>();
+
+        try {
+            var first = controller.admit(0);
+            var queued = executor.submit(() -> {
+                try (var admission = controller.admit(0)) {
+                    admitted.add("queued");
+                }
+                return null;
+            });
+
+            while (controller.getQueuedValidations() == 0) {
+                Thread.sleep(1);
+            }
+
+            first.close();
+            try (var admission = controller.admit(0)) {
+                admitted.add("new");
+            }
+            queued.get(10, TimeUnit.SECONDS);
+
+            assertEquals(List.of("queued", "new"), admitted);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void admitRefusesUploadsWhenTheInFlightBytesWouldExceedTheLimit() throws Exception {
+        var controller = new AdmissionControllerImpl(createConfig(10, 0), () -> Long.MAX_VALUE, metricRegistry);
+
+        try (var first = controller.admit(600)) {
+            var e = assertThrows(AdmissionRejectedException.class, () -> controller.admit(600));
+
+            assertEquals(Reason.TOO_MANY_UPLOAD_BYTES, e.getReason());
+            assertEquals(600, controller.getInFlightUploadSize());
+            // the refused upload did not take a slot
+            assertEquals(1, controller.getValidationsInProgress());
+
+            controller.admit(400).close();
+        }
+
+        assertEquals(0, controller.getInFlightUploadSize());
+    }
+
+    @Test
+    void admitAcceptsASingleUploadThatIsLargerThanTheLimit() throws Exception {
+        var controller = new AdmissionControllerImpl(createConfig(10, 0), () -> Long.MAX_VALUE, metricRegistry);
+
+        try (var admission = controller.admit(5000)) {
+            assertEquals(5000, controller.getInFlightUploadSize());
+        }
+    }
+
+    @Test
+    void admitRefusesUploadsThatWouldLeaveTooLittleTempSpace() {
+        var controller = new AdmissionControllerImpl(createConfig(10, 0), () -> 1000, metricRegistry);
+
+        var e = assertThrows(AdmissionRejectedException.class, () -> controller.admit(600));
+
+        assertEquals(Reason.INSUFFICIENT_TEMP_SPACE, e.getReason());
+        assertEquals(0, controller.getValidationsInProgress());
+    }
+
+    @Test
+    void admitChecksTheTempSpaceForUploadsOfUnknownSizeButNotForRequestsWithoutUpload() throws Exception {
+        var controller = new AdmissionControllerImpl(createConfig(10, 0), () -> 100, metricRegistry);
+
+        controller.admit(0).close();
+        var e = assertThrows(AdmissionRejectedException.class, () -> controller.admit(-1));
+
+        assertEquals(Reason.INSUFFICIENT_TEMP_SPACE, e.getReason());
+    }
+
+    @Test
+    void closingAnAdmissionTwiceReleasesItOnce() throws Exception {
+        var controller = new AdmissionControllerImpl(createConfig(2, 0), () -> Long.MAX_VALUE, metricRegistry);
+        var first = controller.admit(100);
+        var second = controller.admit(100);
+
+        first.close();
+        first.close();
+
+        assertEquals(1, controller.getValidationsInProgress());
+        assertEquals(100, controller.getInFlightUploadSize());
+        second.close();
+    }
+
+    @Test
+    void gaugesAndRejectionsAreRegistered() throws Exception {
+        var controller = new AdmissionControllerImpl(createConfig(1, 0), () -> Long.MAX_VALUE, metricRegistry);
+
+        try (var admission = controller.admit(10)) {
+            assertThrows(AdmissionRejectedException.class, () -> controller.admit(0));
+
+            var gauges = metricRegistry.getGauges();
+            assertEquals(1, gauges.get(MetricRegistry.name(AdmissionControllerImpl.class, "validations", "in-progress")).getValue());
+            assertEquals(0, gauges.get(MetricRegistry.name(AdmissionControllerImpl.class, "validations", "queued")).getValue());
+            assertEquals(10L, gauges.get(MetricRegistry.name(AdmissionControllerImpl.class, "uploads", "bytes-in-flight")).getValue());
+            assertEquals(1, metricRegistry.meter(MetricRegistry.name(AdmissionControllerImpl.class, "rejected", "too_many_validations")).getCount());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class BagFingerprinterImplTest {
+    private static final FileTime MODIFIED = FileTime.from(Instant.parse("2024-01-01T00:00:00Z"));
+
+    @TempDir
+    Path tempDir;
+
+    private Path createBag(String name) throws IOException {
+        var bag = tempDir.resolve(name);
+        Files.createDirectories(bag.resolve("data/sub"));
+        writeFile(bag.resolve("bagit.txt"), "BagIt-Version: 1.0");
+        writeFile(bag.resolve("bag-info.txt"), "Created: 2024-01-01");
+        writeFile(bag.resolve("data/a.txt"), "a");
+        writeFile(bag.resolve("data/sub/b.txt"), "b");
+        Files.createDirectories(bag.resolve("metadata"));
+        writeFile(bag.resolve("metadata/dataset.xml"), "<ddm>a</ddm>");
+        return bag;
+    }
+
+    private void writeFile(Path file, String content) throws IOException {
+        Files.writeString(file, content);
+        Files.setLastModifiedTime(file, MODIFIED);
+    }
+
+    @Test
+    void fingerprintIsTheSameForEqualBagsInDifferentLocations() throws Exception {
+        var fingerprinter = new BagFingerprinterImpl();
+
+        assertEquals(fingerprinter.fingerprint(createBag("one")), fingerprinter.fingerprint(createBag("two")));
+    }
+
+    @Test
+    void fingerprintChangesWhenATagFileChangesWithoutChangingSizeOrTime() throws Exception {
+        var fingerprinter = new BagFingerprinterImpl();
+        var bag = createBag("bag");
+        var before = fingerprinter.fingerprint(bag);
+
+        writeFile(bag.resolve("bag-info.txt"), "Created: 2024-01-02");
+
+        assertNotEquals(before, fingerprinter.fingerprint(bag));
+    }
+
+    @Test
+    void fingerprintChangesWhenAMetadataFileChangesWithoutChangingSizeOrTime() throws Exception {
+        var fingerprinter = new BagFingerprinterImpl();
+        var bag = createBag("bag");
+        var before = fingerprinter.fingerprint(bag);
+
+        writeFile(bag.resolve("metadata/dataset.xml"), "<ddm>b</ddm>");
+
+        assertNotEquals(before, fingerprinter.fingerprint(bag));
+    }
+
+    @Test
+    void fingerprintChangesWhenAPayloadFileChangesSize() throws Exception {
+        var fingerprinter = new BagFingerprinterImpl();
+        var bag = createBag("bag");
+        var before = fingerprinter.fingerprint(bag);
+
+        writeFile(bag.resolve("data/sub/b.txt"), "bb");
+
+        assertNotEquals(before, fingerprinter.fingerprint(bag));
+    }
+
+    @Test
+    void fingerprintChangesWhenAPayloadFileIsModified() throws Exception {
+        var fingerprinter = new BagFingerprinterImpl();
+        var bag = createBag("bag");
+        var before = fingerprinter.fingerprint(bag);
+
+        Files.setLastModifiedTime(bag.resolve("data/a.txt"), FileTime.from(Instant.parse("2024-01-02T00:00:00Z")));
+
+        assertNotEquals(before, fingerprinter.fingerprint(bag));
+    }
+
+    @Test
+    void fingerprintChangesWhenAFileIsMovedToAnotherDirectory() throws Exception {
+        var fingerprinter = new BagFingerprinterImpl();
+        var bag = createBag("bag");
+        var before = fingerprinter.fingerprint(bag);
+
+        Files.move(bag.resolve("data/sub/b.txt"), bag.resolve("data/b.txt"));
+
+        assertNotEquals(before, fingerprinter.fingerprint(bag));
+    }
+}
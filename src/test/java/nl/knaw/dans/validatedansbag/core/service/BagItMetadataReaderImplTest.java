@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import nl.knaw.dans.validatedansbag.core.engine.BagValidationContext;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BagItMetadataReaderImplTest {
+    private final Path bagDir = Path.of(Objects.requireNonNull(getClass().getClassLoader().getResource("bags/bag-with-is-version-of")).getFile());
+
+    @Test
+    void getFieldReadsBagInfo() throws Exception {
+        var reader = new BagItMetadataReaderImpl();
+        var context = new BagValidationContext(bagDir);
+
+        assertEquals(List.of("user001"), reader.getField(bagDir, "Data-Station-User-Account", context));
+        assertEquals("urn:uuid:34632f71-11f8-48d8-9bf3-79551ad22b5e", reader.getSingleField(bagDir, "Is-Version-Of", context));
+        assertEquals(List.of(), reader.getField(bagDir, "Does-Not-Exist", context));
+    }
+
+    @Test
+    void bagIsReadOnceForEachContext() throws Exception {
+        var reader = new BagItMetadataReaderImpl();
+        var context = new BagValidationContext(bagDir);
+
+        var bag = reader.getBag(bagDir, context).orElseThrow();
+        reader.getField(bagDir, "Created", context);
+        reader.getSingleField(bagDir, "Is-Version-Of", context);
+
+        assertSame(bag, reader.getBag(bagDir, context).orElseThrow());
+        assertEquals(1, context.getLoadStatistics().size());
+        assertEquals(3, context.getLoadStatistics().get(0).getRequests());
+    }
+
+    @Test
+    void bagIsReadAgainForANewContext() {
+        var reader = new BagItMetadataReaderImpl();
+
+        var first = reader.getBag(bagDir, new BagValidationContext(bagDir)).orElseThrow();
+        var second = reader.getBag(bagDir, new BagValidationContext(bagDir)).orElseThrow();
+
+        assertNotSame(first, second);
+    }
+
+    @Test
+    void unreadableBagIsReportedToEveryCaller() {
+        var reader = new BagItMetadataReaderImpl();
+        var missing = bagDir.resolveSibling("does-not-exist");
+        var context = new BagValidationContext(missing);
+
+        assertTrue(reader.getBag(missing, context).isEmpty());
+        assertThrows(Exception.class, () -> reader.getField(missing, "Created", context));
+    }
+}
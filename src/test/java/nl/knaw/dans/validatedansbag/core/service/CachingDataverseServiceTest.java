@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import com.codahale.metrics.MetricRegistry;
+import nl.knaw.dans.lib.dataverse.DataverseResponse;
+import nl.knaw.dans.lib.dataverse.model.dataset.DatasetLatestVersion;
+import nl.knaw.dans.lib.dataverse.model.search.SearchResult;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CachingDataverseServiceTest {
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final DataverseService dataverseService = Mockito.mock(DataverseService.class);
+
+    @SuppressWarnings("unchecked")
+    private <T> DataverseResponse<T> createResponse() {
+        return Mockito.mock(DataverseResponse.class);
+    }
+
+    @Test
+    void searchBySwordTokenCallsDataverseOnlyOnce() throws Exception {
+        DataverseResponse<SearchResult> response = createResponse();
+        Mockito.when(dataverseService.searchBySwordToken("sword-token")).thenReturn(response);
+
+        var service = new CachingDataverseService(dataverseService, 10, Duration.ofMinutes(1), metricRegistry);
+
+        assertSame(response, service.searchBySwordToken("sword-token"));
+        assertSame(response, service.searchBySwordToken("sword-token"));
+
+        Mockito.verify(dataverseService, Mockito.times(1)).searchBySwordToken("sword-token");
+        assertEquals(1, metricRegistry.meter(MetricRegistry.name(CachingDataverseService.class, "hits")).getCount());
+        assertEquals(1, metricRegistry.meter(MetricRegistry.name(CachingDataverseService.class, "misses")).getCount());
+    }
+
+    @Test
+    void getDatasetKeepsResponsesPerGlobalId() throws Exception {
+        DataverseResponse<DatasetLatestVersion> first = createResponse();
+        DataverseResponse<DatasetLatestVersion> second = createResponse();
+        Mockito.when(dataverseService.getDataset("doi:10.5072/first")).thenReturn(first);
+        Mockito.when(dataverseService.getDataset("doi:10.5072/second")).thenReturn(second);
+
+        var service = new CachingDataverseService(dataverseService, 10, Duration.ofMinutes(1), metricRegistry);
+
+        assertSame(first, service.getDataset("doi:10.5072/first"));
+        assertSame(second, service.getDataset("doi:10.5072/second"));
+        assertEquals(2, service.size());
+    }
+
+    @Test
+    void responsesExpireAfterTimeToLive() throws Exception {
+        DataverseResponse<SearchResult> response = createResponse();
+        Mockito.when(dataverseService.searchBySwordToken("sword-token")).thenReturn(response);
+
+        var clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"));
+        var service = new CachingDataverseService(dataverseService, 10, Duration.ofSeconds(30), metricRegistry, clock);
+
+        service.searchBySwordToken("sword-token");
+        clock.advance(Duration.ofSeconds(29));
+        service.searchBySwordToken("sword-token");
+        Mockito.verify(dataverseService, Mockito.times(1)).searchBySwordToken("sword-token");
+
+        clock.advance(Duration.ofSeconds(1));
+        service.searchBySwordToken("sword-token");
+        Mockito.verify(dataverseService, Mockito.times(2)).searchBySwordToken("sword-token");
+    }
+
+    @Test
+    void failedCallsAreNotKept() throws Exception {
+        DataverseResponse<SearchResult> response = createResponse();
+        Mockito.when(dataverseService.searchBySwordToken("sword-token"))
+            .thenThrow(new IOException("connection refused"))
+            .thenReturn(response);
+
+        var service = new CachingDataverseService(dataverseService, 10, Duration.ofMinutes(1), metricRegistry);
+
+        assertThrows(IOException.class, () -> service.searchBySwordToken("sword-token"));
+        assertSame(response, service.searchBySwordToken("sword-token"));
+        Mockito.verify(dataverseService, Mockito.times(2)).searchBySwordToken("sword-token");
+    }
+
+    @Test
+    void concurrentRequestsWaitForASingleCall() throws Exception {
+        DataverseResponse<SearchResult> response = createResponse();
+        var called = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+
+        Mockito.when(dataverseService.searchBySwordToken("sword-token")).thenAnswer(invocation -> {
+            called.countDown();
+            release.await();
+            return response;
+        });
+
+        var service = new CachingDataverseService(dataverseService, 10, Duration.ofMinutes(1), metricRegistry);
+        var executor = Executors.newFixedThreadPool(2);
+
+        try {
+            var first = executor.submit(() -> service.searchBySwordToken("sword-token"));
+            assertTrue(called.await(10, TimeUnit.SECONDS));
+            var second = executor.submit(() -> service.searchBySwordToken("sword-token"));
+
+            // the second request must be waiting for the first one before the call is allowed to finish
+            while (metricRegistry.meter(MetricRegistry.name(CachingDataverseService.class, "coalesced")).getCount() == 0) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            assertSame(response, first.get(10, TimeUnit.SECONDS));
+            assertSame(response, second.get(10, TimeUnit.SECONDS));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        Mockito.verify(dataverseService, Mockito.times(1)).searchBySwordToken("sword-token");
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import com.codahale.metrics.MetricRegistry;
+import gov.loc.repository.bagit.hash.StandardSupportedAlgorithms;
+import gov.loc.repository.bagit.hash.SupportedAlgorithm;
+import nl.knaw.dans.validatedansbag.core.config.ChecksumCacheConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChecksumCacheImplTest {
+    private static final List<SupportedAlgorithm> SHA1_AND_SHA256 = List.of(StandardSupportedAlgorithms.SHA1, StandardSupportedAlgorithms.SHA256);
+    private static final Map<SupportedAlgorithm, String> CHECKSUMS = Map.of(StandardSupportedAlgorithms.SHA1, "sha1", StandardSupportedAlgorithms.SHA256, "sha256");
+
+    @TempDir
+    Path tempDir;
+
+    // every instance registers its own gauges
+    private ChecksumCacheImpl createCache(ChecksumCacheConfig.TrustPolicy trustPolicy) throws Exception {
+        return new ChecksumCacheImpl(tempDir.resolve("checksums.tsv"), trustPolicy, Duration.ofDays(1), 100, new MetricRegistry());
+    }
+
+    private Path createFile(String content) throws Exception {
+        var file = tempDir.resolve("file.txt");
+        Files.writeString(file, content);
+        return file;
+    }
+
+    @Test
+    void lookupReturnsTheStoredChecksumsOfAnUnchangedFile() throws Exception {
+        var file = createFile("content");
+        var metricRegistry = new MetricRegistry();
+
+        try (var cache = new ChecksumCacheImpl(tempDir.resolve("checksums.tsv"), ChecksumCacheConfig.TrustPolicy.CTIME, Duration.ofDays(1), 100, metricRegistry)) {
+            var lookup = cache.lookup(file, SHA1_AND_SHA256);
+            assertFalse(lookup.getChecksums().isPresent());
+            lookup.store(CHECKSUMS);
+
+            assertEquals(CHECKSUMS, cache.lookup(file, SHA1_AND_SHA256).getChecksums().orElseThrow());
+        }
+
+        assertEquals(1, metricRegistry.meter(MetricRegistry.name(ChecksumCacheImpl.class, "hits")).getCount());
+        assertEquals(1, metricRegistry.meter(MetricRegistry.name(ChecksumCacheImpl.class, "misses")).getCount());
+        assertEquals(7, metricRegistry.meter(MetricRegistry.name(ChecksumCacheImpl.class, "bytes-avoided")).getCount());
+    }
+
+    @Test
+    void lookupDoesNotReturnChecksumsIfOneOfTheAlgorithmsIsNotCached() throws Exception {
+        var file = createFile("content");
+
+        try (var cache = createCache(ChecksumCacheConfig.TrustPolicy.CTIME)) {
+            cache.lookup(file, SHA1_AND_SHA256).store(CHECKSUMS);
+
+            assertFalse(cache.lookup(file, List.of(StandardSupportedAlgorithms.SHA1, StandardSupportedAlgorithms.MD5)).getChecksums().isPresent());
+            assertTrue(cache.lookup(file, List.of(StandardSupportedAlgorithms.SHA1)).getChecksums().isPresent());
+        }
+    }
+
+    @Test
+    void lookupDoesNotReturnChecksumsOfAChangedFile() throws Exception {
+        var file = createFile("content");
+
+        try (var cache = createCache(ChecksumCacheConfig.TrustPolicy.CTIME)) {
+            cache.lookup(file, SHA1_AND_SHA256).store(CHECKSUMS);
+            Files.writeString(file, "changed content");
+
+            assertFalse(cache.lookup(file, SHA1_AND_SHA256).getChecksums().isPresent());
+        }
+    }
+
+    @Test
+    void onlyTheMtimePolicyTrustsAFileWhoseModificationTimeWasSetBack() throws Exception {
+        var file = createFile("content");
+        var lastModified = Files.getLastModifiedTime(file);
+
+        try (var cache = createCache(ChecksumCacheConfig.TrustPolicy.MTIME)) {
+            cache.lookup(file, SHA1_AND_SHA256).store(CHECKSUMS);
+        }
+
+        // same size and modification time, but a new status change time
+        Files.writeString(file, "CONTENT");
+        Files.setLastModifiedTime(file, lastModified);
+
+        try (var cache = createCache(ChecksumCacheConfig.TrustPolicy.MTIME)) {
+            assertTrue(cache.lookup(file, SHA1_AND_SHA256).getChecksums().isPresent());
+        }
+
+        try (var cache = createCache(ChecksumCacheConfig.TrustPolicy.CTIME)) {
+            assertFalse(cache.lookup(file, SHA1_AND_SHA256).getChecksums().isPresent());
+        }
+    }
+
+    @Test
+    void checksumsAreLoadedByANewInstance() throws Exception {
+        var file = createFile("content");
+
+        try (var cache = createCache(ChecksumCacheConfig.TrustPolicy.CTIME)) {
+            cache.lookup(file, SHA1_AND_SHA256).store(CHECKSUMS);
+        }
+
+        // the service stopped while a line was written
+        Files.writeString(tempDir.resolve("checksums.tsv"), "(dev=1,ino=2)\tSHA-1\t12", StandardOpenOption.APPEND);
+
+        try (var cache = createCache(ChecksumCacheConfig.TrustPolicy.CTIME)) {
+            assertEquals(2, cache.size());
+            assertEquals(CHECKSUMS, cache.lookup(file, SHA1_AND_SHA256).getChecksums().orElseThrow());
+        }
+    }
+
+    @Test
+    void storedChecksumsAreOnlyWrittenWhenTheCacheIsFlushed() throws Exception {
+        var file = createFile("content");
+        var cacheFile = tempDir.resolve("checksums.tsv");
+
+        try (var cache = createCache(ChecksumCacheConfig.TrustPolicy.CTIME)) {
+            cache.lookup(file, SHA1_AND_SHA256).store(CHECKSUMS);
+            assertEquals(0, Files.size(cacheFile));
+
+            cache.flush();
+            assertEquals(2, Files.readAllLines(cacheFile).size());
+
+            cache.flush();
+            assertEquals(2, Files.readAllLines(cacheFile).size());
+        }
+    }
+
+    @Test
+    void lookupDoesNotReturnChecksumsOlderThanTheMaximumAge() throws Exception {
+        var file = createFile("content");
+        var clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"));
+
+        try (var cache = new ChecksumCacheImpl(tempDir.resolve("checksums.tsv"), ChecksumCacheConfig.TrustPolicy.CTIME, Duration.ofDays(1), 100, new MetricRegistry(), clock)) {
+            cache.lookup(file, SHA1_AND_SHA256).store(CHECKSUMS);
+
+            clock.advance(Duration.ofHours(23));
+            assertTrue(cache.lookup(file, SHA1_AND_SHA256).getChecksums().isPresent());
+
+            clock.advance(Duration.ofHours(1));
+            assertFalse(cache.lookup(file, SHA1_AND_SHA256).getChecksums().isPresent());
+        }
+    }
+
+    @Test
+    void storeEvictsTheLeastRecentlyUsedChecksum() throws Exception {
+        var first = createFile("content");
+        var second = tempDir.resolve("second.txt");
+        Files.writeString(second, "second");
+
+        try (var cache = new ChecksumCacheImpl(tempDir.resolve("checksums.tsv"), ChecksumCacheConfig.TrustPolicy.CTIME, Duration.ofDays(1), 2, new MetricRegistry())) {
+            cache.lookup(first, SHA1_AND_SHA256).store(CHECKSUMS);
+            cache.lookup(second, SHA1_AND_SHA256).store(CHECKSUMS);
+
+            assertEquals(2, cache.size());
+            assertFalse(cache.lookup(first, SHA1_AND_SHA256).getChecksums().isPresent());
+            assertTrue(cache.lookup(second, SHA1_AND_SHA256).getChecksums().isPresent());
+        }
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
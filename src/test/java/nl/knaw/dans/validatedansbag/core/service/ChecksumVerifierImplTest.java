@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import com.codahale.metrics.MetricRegistry;
+import gov.loc.repository.bagit.domain.Bag;
+import gov.loc.repository.bagit.domain.Manifest;
+import gov.loc.repository.bagit.exceptions.CorruptChecksumException;
+import gov.loc.repository.bagit.hash.StandardSupportedAlgorithms;
+import gov.loc.repository.bagit.hash.SupportedAlgorithm;
+import nl.knaw.dans.validatedansbag.core.config.ChecksumCacheConfig;
+import nl.knaw.dans.validatedansbag.core.engine.BagValidationContext;
+import nl.knaw.dans.validatedansbag.core.engine.ValidationCancelledException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChecksumVerifierImplTest {
+
+    @TempDir
+    Path bagDir;
+
+    @TempDir
+    Path cacheDir;
+
+    @Test
+    void verifyChecksumsAcceptsMatchingChecksumsOfAllManifests() throws Exception {
+        var bag = createBag("a.txt", "b.txt", "c.txt");
+
+        assertDoesNotThrow(() -> new ChecksumVerifierImpl().verifyChecksums(bag, new BagValidationContext(bagDir)));
+    }
+
+    @Test
+    void verifyChecksumsReadsEachFileOnce() throws Exception {
+        var bag = createBag("a.txt", "b.txt", "c.txt");
+        var metricRegistry = new MetricRegistry();
+        var executor = Executors.newFixedThreadPool(2);
+
+        try {
+            new ChecksumVerifierImpl(executor, 2, 4, new PrecomputedChecksumsImpl(), metricRegistry).verifyChecksums(bag, new BagValidationContext(bagDir));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        // the payload files are listed in two manifests and contain 17 bytes each; the tag file contains 19 bytes
+        assertEquals(4, metricRegistry.meter(MetricRegistry.name(ChecksumVerifierImpl.class, "files")).getCount());
+        assertEquals(3 * 17 + 19, metricRegistry.meter(MetricRegistry.name(ChecksumVerifierImpl.class, "bytes")).getCount());
+    }
+
+    @Test
+    void verifyChecksumsThrowsCorruptChecksumExceptionIfAFileWasChanged() throws Exception {
+        var bag = createBag("a.txt", "b.txt", "c.txt");
+        Files.writeString(bagDir.resolve("data/b.txt"), "changed", StandardCharsets.UTF_8);
+
+        var e = assertThrows(CorruptChecksumException.class, () -> new ChecksumVerifierImpl().verifyChecksums(bag, new BagValidationContext(bagDir)));
+        assertTrue(e.getMessage().contains("b.txt"));
+    }
+
+    @Test
+    void verifyChecksumsThrowsNoSuchFileExceptionIfAFileIsMissing() throws Exception {
+        var bag = createBag("a.txt", "b.txt");
+        Files.delete(bagDir.resolve("data/a.txt"));
+
+        assertThrows(NoSuchFileException.class, () -> new ChecksumVerifierImpl().verifyChecksums(bag, new BagValidationContext(bagDir)));
+    }
+
+    @Test
+    void verifyChecksumsStopsWhenTheValidationIsCancelled() throws Exception {
+        var bag = createBag("a.txt", "b.txt");
+        var context = new BagValidationContext(bagDir);
+        context.cancel();
+
+        assertThrows(ValidationCancelledException.class, () -> new ChecksumVerifierImpl().verifyChecksums(bag, context));
+    }
+
+    @Test
+    void verifyChecksumsUsesPrecomputedChecksumsInsteadOfReadingTheFile() throws Exception {
+        var bag = createBag("a.txt");
+        var file = bagDir.resolve("data/a.txt");
+        var precomputedChecksums = new PrecomputedChecksumsImpl();
+        precomputedChecksums.putChecksums(file, Map.of(
+            StandardSupportedAlgorithms.SHA1, checksum(file, StandardSupportedAlgorithms.SHA1),
+            StandardSupportedAlgorithms.SHA256, checksum(file, StandardSupportedAlgorithms.SHA256)
+        ));
+        // the placeholder of a streamed file has the right size, but no content
+        Files.write(file, new byte[(int) Files.size(file)]);
+        var metricRegistry = new MetricRegistry();
+
+        assertDoesNotThrow(() -> new ChecksumVerifierImpl(Runnable::run, 1, 4, precomputedChecksums, metricRegistry).verifyChecksums(bag, new BagValidationContext(bagDir)));
+        // only the tag file is read
+        assertEquals(19, metricRegistry.meter(MetricRegistry.name(ChecksumVerifierImpl.class, "bytes")).getCount());
+    }
+
+    @Test
+    void verifyChecksumsThrowsIOExceptionIfAPrecomputedChecksumIsMissing() throws Exception {
+        var bag = createBag("a.txt");
+        var file = bagDir.resolve("data/a.txt");
+        var precomputedChecksums = new PrecomputedChecksumsImpl();
+        precomputedChecksums.putChecksums(file, Map.of(StandardSupportedAlgorithms.SHA1, checksum(file, StandardSupportedAlgorithms.SHA1)));
+
+        assertThrows(IOException.class,
+            () -> new ChecksumVerifierImpl(Runnable::run, 1, 4, precomputedChecksums, new MetricRegistry()).verifyChecksums(bag, new BagValidationContext(bagDir)));
+    }
+
+    @Test
+    void verifyChecksumsDoesNotReadUnchangedPayloadFilesAgainWithAChecksumCache() throws Exception {
+        var bag = createBag("a.txt", "b.txt");
+        var metricRegistry = new MetricRegistry();
+
+        try (var checksumCache = new ChecksumCacheImpl(cacheDir.resolve("checksums.tsv"), ChecksumCacheConfig.TrustPolicy.CTIME, Duration.ofDays(1), 100, metricRegistry)) {
+            var verifier = new ChecksumVerifierImpl(Runnable::run, 1, 4, new PrecomputedChecksumsImpl(), checksumCache, metricRegistry);
+
+            verifier.verifyChecksums(bag, new BagValidationContext(bagDir));
+            // the checksums of the payload files are written when the verification ends, not when the cache is closed
+            assertEquals(2 * 2, Files.readAllLines(cacheDir.resolve("checksums.tsv")).size());
+            verifier.verifyChecksums(bag, new BagValidationContext(bagDir));
+        }
+
+        // the payload files contain 17 bytes each and are read once; the tag file contains 19 bytes and is read every time
+        assertEquals(2 * 17 + 2 * 19, metricRegistry.meter(MetricRegistry.name(ChecksumVerifierImpl.class, "bytes")).getCount());
+    }
+
+    @Test
+    void verifyChecksumsWithAChecksumCacheThrowsCorruptChecksumExceptionIfAFileWasChanged() throws Exception {
+        var bag = createBag("a.txt", "b.txt");
+
+        try (var checksumCache = new ChecksumCacheImpl(cacheDir.resolve("checksums.tsv"), ChecksumCacheConfig.TrustPolicy.CTIME, Duration.ofDays(1), 100, new MetricRegistry())) {
+            var verifier = new ChecksumVerifierImpl(Runnable::run, 1, 4, new PrecomputedChecksumsImpl(), checksumCache, new MetricRegistry());
+            verifier.verifyChecksums(bag, new BagValidationContext(bagDir));
+
+            Files.writeString(bagDir.resolve("data/b.txt"), "changed", StandardCharsets.UTF_8);
+
+            assertThrows(CorruptChecksumException.class, () -> verifier.verifyChecksums(bag, new BagValidationContext(bagDir)));
+        }
+    }
+
+    private Bag createBag(String... names) throws Exception {
+        var sha1 = new Manifest(StandardSupportedAlgorithms.SHA1);
+        var sha256 = new Manifest(StandardSupportedAlgorithms.SHA256);
+        Files.createDirectories(bagDir.resolve("data"));
+
+        for (var name : names) {
+            var file = bagDir.resolve("data").resolve(name);
+            Files.writeString(file, "contents of " + name, StandardCharsets.UTF_8);
+            sha1.getFileToChecksumMap().put(file, checksum(file, StandardSupportedAlgorithms.SHA1));
+            sha256.getFileToChecksumMap().put(file, checksum(file, StandardSupportedAlgorithms.SHA256));
+        }
+
+        var tagFile = bagDir.resolve("bagit.txt");
+        Files.writeString(tagFile, "BagIt-Version: 1.0\n", StandardCharsets.UTF_8);
+        var tagManifest = new Manifest(StandardSupportedAlgorithms.MD5);
+        tagManifest.getFileToChecksumMap().put(tagFile, checksum(tagFile, StandardSupportedAlgorithms.MD5));
+
+        var bag = new Bag();
+        bag.setRootDir(bagDir);
+        bag.setPayLoadManifests(Set.of(sha1, sha256));
+        bag.setTagManifests(Set.of(tagManifest));
+        return bag;
+    }
+
+    private String checksum(Path file, SupportedAlgorithm algorithm) throws Exception {
+        var digest = MessageDigest.getInstance(algorithm.getMessageDigestName()).digest(Files.readAllBytes(file));
+        return String.format("%0" + (digest.length * 2) + "x", new BigInteger(1, digest));
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+    private final MutableClock clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"));
+
+    @Test
+    void tryAcquireIsRefusedAfterConsecutiveFailures() {
+        var circuitBreaker = new CircuitBreaker(3, Duration.ofSeconds(30), clock);
+
+        for (var i = 0; i < 3; i++) {
+            assertTrue(circuitBreaker.tryAcquire());
+            circuitBreaker.recordFailure();
+        }
+
+        assertFalse(circuitBreaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertEquals(Duration.ofSeconds(30), circuitBreaker.getRetryAfter());
+    }
+
+    @Test
+    void recordSuccessResetsTheNumberOfFailures() {
+        var circuitBreaker = new CircuitBreaker(3, Duration.ofSeconds(30), clock);
+
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordSuccess();
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+
+        assertTrue(circuitBreaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    void tryAcquireAllowsASingleTrialCallAfterOpenDuration() {
+        var circuitBreaker = new CircuitBreaker(1, Duration.ofSeconds(30), clock);
+        circuitBreaker.recordFailure();
+
+        clock.advance(Duration.ofSeconds(29));
+        assertFalse(circuitBreaker.tryAcquire());
+        assertEquals(Duration.ofSeconds(1), circuitBreaker.getRetryAfter());
+
+        clock.advance(Duration.ofSeconds(1));
+        assertTrue(circuitBreaker.tryAcquire());
+        assertFalse(circuitBreaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+
+        circuitBreaker.recordSuccess();
+        assertTrue(circuitBreaker.tryAcquire());
+        assertTrue(circuitBreaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    void failedTrialCallRefusesCallsAgain() {
+        var circuitBreaker = new CircuitBreaker(5, Duration.ofSeconds(30), clock);
+
+        for (var i = 0; i < 5; i++) {
+            circuitBreaker.recordFailure();
+        }
+
+        clock.advance(Duration.ofSeconds(30));
+        assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.recordFailure();
+
+        assertFalse(circuitBreaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertEquals(Duration.ofSeconds(30), circuitBreaker.getRetryAfter());
+    }
+
+    @Test
+    void releaseLetsTheNextCallBeTheTrialCallWithoutClosingTheCircuitBreaker() {
+        var circuitBreaker = new CircuitBreaker(1, Duration.ofSeconds(30), clock);
+        circuitBreaker.recordFailure();
+        clock.advance(Duration.ofSeconds(30));
+
+        assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.release();
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertEquals(1, circuitBreaker.getFailures());
+        assertTrue(circuitBreaker.tryAcquire());
+        assertFalse(circuitBreaker.tryAcquire());
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactPathSetTest {
+
+    @Test
+    void addReturnsFalseForPathsThatAreAlreadyInTheSet() {
+        var set = new CompactPathSet();
+
+        assertTrue(set.add(Path.of("data/a.txt")));
+        assertTrue(set.add(Path.of("data/b.txt")));
+        assertFalse(set.add(Path.of("data/a.txt")));
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    void containsOnlyPathsThatWereAdded() {
+        var set = new CompactPathSet();
+        set.add(Path.of("data/ünïcödé/file name.txt"));
+
+        assertTrue(set.contains(Path.of("data/ünïcödé/file name.txt")));
+        assertFalse(set.contains(Path.of("data/ünïcödé")));
+        assertFalse(set.contains("data/ünïcödé/file name.txt"));
+    }
+
+    @Test
+    void growingKeepsAllPaths() {
+        var set = new CompactPathSet();
+        var expected = new HashSet<Path>();
+
+        for (var i = 0; i < 10000; ++i) {
+            var path = Path.of("data/dir-" + (i % 100) + "/file-" + i + ".txt");
+            set.add(path);
+            expected.add(path);
+        }
+
+        assertEquals(expected, set);
+        assertEquals(set, expected);
+    }
+
+    @Test
+    void differenceReturnsPathsThatAreNotInTheOtherSet() {
+        var a = new CompactPathSet();
+        a.add(Path.of("data/a.txt"));
+        a.add(Path.of("data/b.txt"));
+        var b = new CompactPathSet();
+        b.add(Path.of("data/b.txt"));
+        b.add(Path.of("data/c.txt"));
+
+        assertEquals(Set.of(Path.of("data/a.txt")), a.difference(b));
+        assertEquals(Set.of(Path.of("data/c.txt")), b.difference(a));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import com.sun.net.httpserver.HttpServer;
+import nl.knaw.dans.lib.dataverse.model.RoleAssignmentReadOnly;
+import nl.knaw.dans.lib.dataverse.model.dataset.PrimitiveSingleValueField;
+import nl.knaw.dans.lib.dataverse.model.search.DatasetResultItem;
+import nl.knaw.dans.validatedansbag.core.config.DataverseConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// reads responses of a stand-in for Dataverse with the client that the application uses
+class DataverseServiceImplTest {
+    private static final String SEARCH_JSON = "{\"status\": \"OK\", \"data\": {\"q\": \"dansSwordToken:sword-token\", \"total_count\": 1, \"start\": 0, "
+        + "\"spelling_alternatives\": {}, \"items\": [{\"name\": \"Manual Test\", \"type\": \"dataset\", \"url\": \"https://doi.org/10.5072/FK2/QZZSST\", "
+        + "\"global_id\": \"doi:10.5072/FK2/QZZSST\"}], \"count_in_response\": 1}}";
+
+    private static final String LATEST_VERSION_JSON = "{\"status\": \"OK\", \"data\": {\"id\": 2, \"identifier\": \"FK2/QZZSST\", "
+        + "\"persistentUrl\": \"https://doi.org/10.5072/FK2/QZZSST\", \"latestVersion\": {\"id\": 2, \"datasetId\": 2, "
+        + "\"datasetPersistentId\": \"doi:10.5072/FK2/QZZSST\", \"storageIdentifier\": \"file://10.5072/FK2/QZZSST\", \"fileAccessRequest\": false, "
+        + "\"metadataBlocks\": {\"dansDataVaultMetadata\": {\"displayName\": \"Data Vault Metadata\", \"name\": \"dansDataVaultMetadata\", \"fields\": ["
+        + "{\"typeName\": \"dansOtherId\", \"multiple\": false, \"typeClass\": \"primitive\", \"value\": \"u1:organizational-identifier\"}]}}}}}";
+
+    private static final String ROLE_ASSIGNMENTS_JSON = "{\"status\": \"OK\", \"data\": [{\"id\": 6, \"assignee\": \"@user001\", \"roleId\": 11, "
+        + "\"_roleAlias\": \"%s\", \"definitionPointId\": 2}]}";
+
+    private HttpServer server;
+    private DataverseServiceImpl dataverseService;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            try {
+                var path = exchange.getRequestURI().getPath();
+                String body;
+
+                if (path.contains("/search")) {
+                    body = SEARCH_JSON;
+                }
+                else if (path.contains("/dataverses/") && path.endsWith("/assignments")) {
+                    body = String.format(ROLE_ASSIGNMENTS_JSON, "datasetcreator");
+                }
+                else if (path.endsWith("/assignments")) {
+                    body = String.format(ROLE_ASSIGNMENTS_JSON, "dataseteditor");
+                }
+                else {
+                    body = LATEST_VERSION_JSON;
+                }
+
+                var bytes = body.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, bytes.length);
+                exchange.getResponseBody().write(bytes);
+            }
+            finally {
+                exchange.close();
+            }
+        });
+        server.start();
+
+        dataverseService = new DataverseServiceImpl(new DataverseConfig(String.format("http://localhost:%d/", server.getAddress().getPort()), ""));
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void searchBySwordTokenReadsDatasetResultItems() throws Exception {
+        var items = dataverseService.searchBySwordToken("sword-token").getData().getItems();
+
+        assertEquals(1, items.size());
+        assertTrue(items.get(0) instanceof DatasetResultItem);
+        assertEquals("doi:10.5072/FK2/QZZSST", ((DatasetResultItem) items.get(0)).getGlobalId());
+    }
+
+    @Test
+    void getDatasetReadsMetadataFields() throws Exception {
+        var latestVersion = dataverseService.getDataset("doi:10.5072/FK2/QZZSST").getData().getLatestVersion();
+        var field = latestVersion.getMetadataBlocks().get("dansDataVaultMetadata").getFields().get(0);
+
+        assertEquals("doi:10.5072/FK2/QZZSST", latestVersion.getDatasetPersistentId());
+        assertTrue(field instanceof PrimitiveSingleValueField);
+        assertEquals("u1:organizational-identifier", ((PrimitiveSingleValueField) field).getValue());
+    }
+
+    @Test
+    void roleAssignmentsAreRead() throws Exception {
+        assertEquals(List.of("datasetcreator"), getRoleAliases(dataverseService.getDataverseRoleAssignments("root").getData()));
+        assertEquals(List.of("dataseteditor"), getRoleAliases(dataverseService.getDatasetRoleAssignments("doi:10.5072/FK2/QZZSST").getData()));
+    }
+
+    private List<String> getRoleAliases(List<RoleAssignmentReadOnly> assignments) {
+        return assignments.stream().map(RoleAssignmentReadOnly::get_roleAlias).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import org.junit.jupiter.api.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DdmReaderImplTest {
+    private static final String HEADER = "<ddm:DDM\n"
+        + "        xmlns:ddm=\"http://easy.dans.knaw.nl/schemas/md/ddm/\"\n"
+        + "        xmlns:dcterms=\"http://purl.org/dc/terms/\"\n"
+        + "        xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n"
+        + "        xmlns:gml=\"http://www.opengis.net/gml\"\n"
+        + "        xmlns:dcx-gml=\"http://easy.dans.knaw.nl/schemas/dcx/gml/\"\n"
+        + "        xmlns:dcx-dai=\"http://easy.dans.knaw.nl/schemas/dcx/dai/\"\n"
+        + "        xmlns:xlink=\"http://www.w3.org/1999/xlink\"\n";
+
+    @Test
+    void readStringCollectsTheTextContentOfElementsIncludingDescendants() throws Exception {
+        var xml = HEADER + ">\n"
+            + "    <ddm:profile>\n"
+            + "        <dcx-dai:author>\n"
+            + "            <dcx-dai:DAI><![CDATA[1234]]>56<!-- comment -->789</dcx-dai:DAI>\n"
+            + "            <dcx-dai:role> RightsHolder </dcx-dai:role>\n"
+            + "            <dcx-dai:organization><dcx-dai:role>not of an author</dcx-dai:role></dcx-dai:organization>\n"
+            + "        </dcx-dai:author>\n"
+            + "    </ddm:profile>\n"
+            + "</ddm:DDM>";
+
+        var summary = new DdmReaderImpl().readString(xml);
+
+        assertEquals(List.of("123456789"), summary.getDais());
+        assertEquals(List.of(" RightsHolder "), summary.getAuthorRoles());
+    }
+
+    @Test
+    void readStringOnlyReturnsLicensesDirectlyInDcmiMetadata() throws Exception {
+        var xml = HEADER + ">\n"
+            + "    <ddm:dcmiMetadata>\n"
+            + "        <dcterms:license xsi:type=\"dcterms:URI\">http://creativecommons.org/licenses/by/4.0</dcterms:license>\n"
+            + "        <ddm:other><dcterms:license xsi:type=\"dcterms:URI\">http://example.org/nested</dcterms:license></ddm:other>\n"
+            + "        <dcterms:license>http://example.org/without-type</dcterms:license>\n"
+            + "        <ddm:other><dcterms:rightsHolder>Somebody</dcterms:rightsHolder></ddm:other>\n"
+            + "    </ddm:dcmiMetadata>\n"
+            + "</ddm:DDM>";
+
+        var summary = new DdmReaderImpl().readString(xml);
+
+        assertEquals(1, summary.getLicenses().size());
+        assertEquals("http://creativecommons.org/licenses/by/4.0", summary.getLicenses().get(0).getText());
+        assertEquals("dcterms:URI", summary.getLicenses().get(0).getXsiType());
+        assertEquals("dcterms", summary.getDctermsPrefix());
+        assertEquals(List.of("Somebody"), summary.getRightsHolders());
+    }
+
+    @Test
+    void readStringCollectsTheSrsNamesOfPolygonsPerMultiSurface() throws Exception {
+        var xml = HEADER + ">\n"
+            + "    <dcx-gml:spatial>\n"
+            + "        <gml:MultiSurface>\n"
+            + "            <gml:Polygon srsName=\"A\"><gml:exterior><gml:LinearRing><gml:posList>1 2 3 4 1 2</gml:posList></gml:LinearRing></gml:exterior></gml:Polygon>\n"
+            + "            <gml:MultiSurface><gml:Polygon srsName=\"B\"/><gml:Polygon/></gml:MultiSurface>\n"
+            + "        </gml:MultiSurface>\n"
+            + "        <gml:Envelope srsName=\"urn:ogc:def:crs:EPSG::28992\"><gml:lowerCorner>1 2</gml:lowerCorner><gml:upperCorner>3 4</gml:upperCorner></gml:Envelope>\n"
+            + "    </dcx-gml:spatial>\n"
+            + "    <gml:posList>not in spatial</gml:posList>\n"
+            + "</ddm:DDM>";
+
+        var summary = new DdmReaderImpl().readString(xml);
+
+        assertEquals(List.of(Set.of("A", "B"), Set.of("B")), summary.getMultiSurfaceSrsNames());
+        assertEquals(List.of("1 2 3 4 1 2"), summary.getPosLists());
+        assertEquals(List.of("1 2", "3 4"), summary.getPoints().stream().map(DdmSummary.Point::getText).collect(Collectors.toList()));
+        assertEquals("urn:ogc:def:crs:EPSG::28992", summary.getPoints().get(0).getParentSrsName());
+    }
+
+    @Test
+    void getUrlsReturnsTheValuesInTheOrderOfTheRule() throws Exception {
+        var xml = HEADER + "        href=\"http://root\" xlink:href=\"http://not-selected\">\n"
+            + "    <ddm:dcmiMetadata>\n"
+            + "        <dcterms:identifier scheme=\"URI\">http://scheme-uri</dcterms:identifier>\n"
+            + "        <ddm:subject schemeURI=\"http://scheme\" valueURI=\"http://value\">subject</ddm:subject>\n"
+            + "        <dcterms:identifier xsi:type=\"URL\" scheme=\"URL\">http://both</dcterms:identifier>\n"
+            + "        <dcterms:identifier xsi:type=\"dcterms:URI\">http://dcterms-uri</dcterms:identifier>\n"
+            + "    </ddm:dcmiMetadata>\n"
+            + "</ddm:DDM>";
+
+        var summary = new DdmReaderImpl().readString(xml);
+
+        assertEquals(List.of(
+            "http://root",
+            "http://scheme",
+            "http://value",
+            "http://dcterms-uri",
+            "http://both",
+            "http://scheme-uri",
+            "http://both"
+        ), summary.getUrls());
+    }
+
+    @Test
+    void newHandlerCollectsTheSameSummaryAsReadString() throws Exception {
+        var xml = HEADER + ">\n"
+            + "    <ddm:profile><dcx-dai:author><dcx-dai:ORCID>https://orcid.org/0000-0002-1825-0097</dcx-dai:ORCID></dcx-dai:author></ddm:profile>\n"
+            + "</ddm:DDM>";
+        var ddmReader = new DdmReaderImpl();
+        var handler = ddmReader.newHandler();
+        var reader = XMLInputFactory.newFactory().createXMLStreamReader(new StringReader(xml));
+
+        reader.next();
+        handler.handleEvent(reader);
+        assertNull(handler.getSummary());
+
+        while (reader.hasNext()) {
+            reader.next();
+            handler.handleEvent(reader);
+        }
+
+        assertEquals(ddmReader.readString(xml).getOrcids(), handler.getSummary().getOrcids());
+        assertEquals("dcterms", handler.getSummary().getDctermsPrefix());
+    }
+
+    @Test
+    void readStringRejectsADoctype() {
+        var xml = "<!DOCTYPE ddm:DDM [<!ENTITY x \"y\">]>\n" + HEADER + ">&x;</ddm:DDM>";
+
+        assertThrows(XMLStreamException.class, () -> new DdmReaderImpl().readString(xml));
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import gov.loc.repository.bagit.hash.StandardSupportedAlgorithms;
+import nl.knaw.dans.validatedansbag.core.engine.BagValidationContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileServiceImplTest {
+    private final List<Path> extracted = new ArrayList<>();
+
+    @AfterEach
+    void cleanUp() throws IOException {
+        for (var path : extracted) {
+            new FileServiceImpl().deleteDirectoryAndContents(path);
+        }
+    }
+
+    @Test
+    void getAllFilesReturnsOnlyRegularFiles() throws Exception {
+        var bag = createBag();
+
+        var files = new FileServiceImpl().getAllFiles(bag.resolve("data"));
+
+        assertEquals(Set.of(bag.resolve("data/a.txt"), bag.resolve("data/sub/b.txt"), bag.resolve("data/sub/deeper/c.txt")), new HashSet<>(files));
+    }
+
+    @Test
+    void getAllFilesAndDirectoriesIncludesTheDirectoryItself() throws Exception {
+        var bag = createBag();
+
+        var entries = new FileServiceImpl().getAllFilesAndDirectories(bag.resolve("data/sub"));
+
+        assertEquals(Set.of(bag.resolve("data/sub"), bag.resolve("data/sub/b.txt"), bag.resolve("data/sub/deeper"), bag.resolve("data/sub/deeper/c.txt"), bag.resolve("data/sub/empty")),
+            new HashSet<>(entries));
+    }
+
+    @Test
+    void getDirectoriesReturnsOnlyTheDirectoriesDirectlyBelowThePathSorted() throws Exception {
+        var bag = createBag();
+
+        var directories = new FileServiceImpl().getDirectories(bag.resolve("data"));
+
+        assertEquals(List.of(bag.resolve("data/sub"), bag.resolve("data/sub-sibling")), directories);
+    }
+
+    @Test
+    void getAllFilesWithContextWalksTheBagOnlyOnce() throws Exception {
+        var bag = createBag();
+        var fileService = Mockito.spy(new FileServiceImpl());
+        var context = new BagValidationContext(bag);
+
+        var data = fileService.getAllFiles(bag.resolve("data"), context);
+        var sub = fileService.getAllFiles(bag.resolve("data/sub"), context);
+        var metadata = fileService.getAllFilesAndDirectories(bag.resolve("metadata"), context);
+
+        assertEquals(new HashSet<>(fileService.getAllFiles(bag.resolve("data"))), new HashSet<>(data));
+        assertEquals(new HashSet<>(fileService.getAllFiles(bag.resolve("data/sub"))), new HashSet<>(sub));
+        assertEquals(new HashSet<>(fileService.getAllFilesAndDirectories(bag.resolve("metadata"))), new HashSet<>(metadata));
+        Mockito.verify(fileService, Mockito.times(1)).indexFiles(bag);
+    }
+
+    @Test
+    void getAllFilesWithContextThrowsForADirectoryThatDoesNotExist() throws Exception {
+        var bag = createBag();
+        var context = new BagValidationContext(bag);
+
+        assertThrows(NoSuchFileException.class, () -> new FileServiceImpl().getAllFiles(bag.resolve("data/missing"), context));
+        assertThrows(NoSuchFileException.class, () -> new FileServiceImpl().getAllFiles(bag.resolve("data/sub/deeper/c.txt/d"), context));
+    }
+
+    @Test
+    void findInvalidUtf8ReturnsEmptyForAValidFile() throws Exception {
+        var bag = createBag();
+        var file = bag.resolve("original-filepaths.txt");
+        Files.writeString(file, "data/12.txt data/ünïcödé.txt\n".repeat(10000), StandardCharsets.UTF_8);
+
+        assertEquals(OptionalLong.empty(), new FileServiceImpl().findInvalidUtf8(file));
+    }
+
+    @Test
+    void findInvalidUtf8ReturnsTheOffsetOfASequenceThatSpansTwoChunks() throws Exception {
+        var bag = createBag();
+        var file = bag.resolve("original-filepaths.txt");
+        var bytes = new byte[70000];
+        Arrays.fill(bytes, (byte) 'a');
+        // an incomplete euro sign that starts just before the end of the first 64 KiB
+        bytes[65535] = (byte) 0xE2;
+        bytes[65536] = (byte) 0x82;
+        Files.write(file, bytes);
+
+        assertEquals(OptionalLong.of(65535), new FileServiceImpl().findInvalidUtf8(file));
+    }
+
+    @Test
+    void extractZipFileExtractsAllFiles() throws Exception {
+        var path = extract(new FileServiceImpl(), "zips/audiences.zip");
+        var file = path.resolve("audiences/data/a/deeper/path/With some file.txt");
+
+        assertEquals(27, Files.size(file));
+        assertTrue(Files.readString(file, StandardCharsets.UTF_8).contains("content"));
+    }
+
+    @Test
+    void extractZipFileWithPrecomputedChecksumsDoesNotWritePayloadContent() throws Exception {
+        var precomputedChecksums = new PrecomputedChecksumsImpl();
+        var path = extract(new FileServiceImpl(precomputedChecksums), "zips/audiences.zip");
+        var file = path.resolve("audiences/data/a/deeper/path/With some file.txt");
+
+        // the size must be right for the Payload-Oxum check
+        assertEquals(27, Files.size(file));
+        assertArrayEquals(new byte[27], Files.readAllBytes(file));
+
+        var checksums = precomputedChecksums.getChecksums(file).orElseThrow();
+        var manifest = Files.readString(path.resolve("audiences/manifest-sha1.txt"), StandardCharsets.UTF_8);
+        assertTrue(manifest.contains(checksums.get(StandardSupportedAlgorithms.SHA1) + "  data/a/deeper/path/With some file.txt"));
+
+        // metadata files are extracted as usual
+        assertTrue(Files.readString(path.resolve("audiences/metadata/files.xml"), StandardCharsets.UTF_8).contains("<files"));
+    }
+
+    @Test
+    void extractZipFileWithPrecomputedChecksumsOnlyComputesTheAlgorithmsOfThePayloadManifests() throws Exception {
+        var precomputedChecksums = new PrecomputedChecksumsImpl();
+        var path = extractZip(new FileServiceImpl(precomputedChecksums),
+            "bag/manifest-sha1.txt", "040f06fd774092478d450774f5ba30c5da78acc8  data/file.txt\n",
+            "bag/tagmanifest-md5.txt", "",
+            "bag/data/file.txt", "content");
+
+        var checksums = precomputedChecksums.getChecksums(path.resolve("bag/data/file.txt")).orElseThrow();
+
+        assertEquals(Set.of(StandardSupportedAlgorithms.SHA1), checksums.keySet());
+        assertEquals("040f06fd774092478d450774f5ba30c5da78acc8", checksums.get(StandardSupportedAlgorithms.SHA1));
+    }
+
+    @Test
+    void extractZipFileWithPrecomputedChecksumsExtractsPayloadFilesThatComeBeforeThePayloadManifests() throws Exception {
+        var precomputedChecksums = new PrecomputedChecksumsImpl();
+        var fileService = new FileServiceImpl(precomputedChecksums);
+        var path = extractZip(fileService,
+            "bag/data/file.txt", "content",
+            "bag/manifest-sha1.txt", "040f06fd774092478d450774f5ba30c5da78acc8  data/file.txt\n");
+        var file = path.resolve("bag/data/file.txt");
+
+        // it is not known yet which checksums are needed, so the verification reads the file later on
+        assertTrue(precomputedChecksums.getChecksums(file).isEmpty());
+        assertEquals("content", new String(fileService.readFileContents(file), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void readingAPayloadFileThatWasNotExtractedFails() throws Exception {
+        var fileService = new FileServiceImpl(new PrecomputedChecksumsImpl());
+        var path = extract(fileService, "zips/audiences.zip");
+        var file = path.resolve("audiences/data/a/deeper/path/With some file.txt");
+
+        assertThrows(IOException.class, () -> fileService.readFileContents(file));
+        assertThrows(IOException.class, () -> fileService.newInputStream(file));
+        assertThrows(IOException.class, () -> fileService.findInvalidUtf8(file));
+    }
+
+    @Test
+    void deleteDirectoryAndContentsForgetsPrecomputedChecksums() throws Exception {
+        var precomputedChecksums = new PrecomputedChecksumsImpl();
+        var fileService = new FileServiceImpl(precomputedChecksums);
+        var path = extract(fileService, "zips/audiences.zip");
+        var file = path.resolve("audiences/data/a/deeper/path/With some file.txt");
+
+        fileService.deleteDirectoryAndContents(path);
+
+        assertFalse(Files.exists(path));
+        assertTrue(precomputedChecksums.getChecksums(file).isEmpty());
+    }
+
+    @Test
+    void extractZipFileRejectsEntriesOutsideOfTheTargetDirectory() throws Exception {
+        var bytes = new ByteArrayOutputStream();
+
+        try (var zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("bag/../../outside.txt"));
+            zip.write("outside".getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+
+        assertThrows(IOException.class, () -> new FileServiceImpl().extractZipFile(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    // the entries are given as name, content, name, content, and so on, in the order in which they are in the zip
+    private Path extractZip(FileServiceImpl fileService, String... entries) throws Exception {
+        var bytes = new ByteArrayOutputStream();
+
+        try (var zip = new ZipOutputStream(bytes)) {
+            for (var i = 0; i < entries.length; i += 2) {
+                zip.putNextEntry(new ZipEntry(entries[i]));
+                zip.write(entries[i + 1].getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+
+        var path = fileService.extractZipFile(new ByteArrayInputStream(bytes.toByteArray()));
+        extracted.add(path);
+        return path;
+    }
+
+    private Path extract(FileServiceImpl fileService, String resource) throws Exception {
+        try (var inputStream = getClass().getClassLoader().getResourceAsStream(resource)) {
+            var path = fileService.extractZipFile(inputStream);
+            extracted.add(path);
+            return path;
+        }
+    }
+
+    private Path createBag() throws IOException {
+        var bag = Files.createTempDirectory("bag-");
+        extracted.add(bag);
+
+        Files.createDirectories(bag.resolve("data/sub/deeper"));
+        Files.createDirectories(bag.resolve("data/sub/empty"));
+        Files.createDirectories(bag.resolve("data/sub-sibling"));
+        Files.createDirectories(bag.resolve("metadata"));
+        Files.writeString(bag.resolve("bagit.txt"), "BagIt-Version: 0.97");
+        Files.writeString(bag.resolve("data/a.txt"), "a");
+        Files.writeString(bag.resolve("data/sub/b.txt"), "b");
+        Files.writeString(bag.resolve("data/sub/deeper/c.txt"), "c");
+        Files.writeString(bag.resolve("metadata/dataset.xml"), "<ddm/>");
+
+        return bag;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import nl.knaw.dans.validatedansbag.core.engine.BagValidationContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class FilesReconcilerImplTest {
+    final FileService fileService = Mockito.mock(FileService.class);
+    final OriginalFilepathsService originalFilepathsService = Mockito.mock(OriginalFilepathsService.class);
+    final FilesXmlService filesXmlService = Mockito.mock(FilesXmlService.class);
+
+    @TempDir
+    Path spillDir;
+
+    @Test
+    void reconcileComparesPayloadFilesXmlAndOriginalFilepaths() throws Exception {
+        var bagDir = Path.of("bagdir");
+        var context = new BagValidationContext(bagDir);
+
+        Mockito.doReturn(List.of(bagDir.resolve("data/a.txt"), bagDir.resolve("data/renamed-b.txt"), bagDir.resolve("data/c.txt")))
+            .when(fileService).getAllFiles(bagDir.resolve("data"), context);
+        Mockito.doReturn(List.of(new OriginalFilepathsService.OriginalFilePathItem(Path.of("data/b.txt"), Path.of("data/renamed-b.txt"))))
+            .when(originalFilepathsService).getMapping(Mockito.eq(bagDir), Mockito.any());
+        Mockito.doReturn(Stream.of(Path.of("data/a.txt"), Path.of("data/./a.txt"), Path.of("data/b.txt"), Path.of("data/d.txt")))
+            .when(filesXmlService).readFilepaths(bagDir, context);
+        Mockito.doReturn(true).when(originalFilepathsService).exists(bagDir);
+
+        var result = new FilesReconcilerImpl(fileService, originalFilepathsService, filesXmlService).reconcile(bagDir, context);
+
+        assertEquals(Set.of(Path.of("data/a.txt")), result.getDuplicateFilesXmlPaths());
+        assertEquals(Set.of(Path.of("data/c.txt")), result.getPayloadFilesNotInFilesXml());
+        assertEquals(Set.of(Path.of("data/d.txt")), result.getFilesXmlPathsNotInPayload());
+        assertEquals(Set.of(Path.of("data/a.txt"), Path.of("data/c.txt")), result.getPayloadFilesNotInOriginalFilepaths());
+        assertEquals(Set.of(), result.getRenamedFilepathsNotInPayload());
+        assertEquals(Set.of(Path.of("data/a.txt"), Path.of("data/./a.txt"), Path.of("data/d.txt")), result.getFilesXmlPathsNotInOriginalFilepaths());
+        assertEquals(Set.of(), result.getOriginalFilepathsNotInFilesXml());
+    }
+
+    @Test
+    void reconcileWithoutOriginalFilepathsHasNoDifferencesWithIt() throws Exception {
+        var bagDir = Path.of("bagdir");
+        var context = new BagValidationContext(bagDir);
+
+        Mockito.doReturn(List.of(bagDir.resolve("data/a.txt"))).when(fileService).getAllFiles(bagDir.resolve("data"), context);
+        Mockito.doReturn(List.of()).when(originalFilepathsService).getMapping(Mockito.eq(bagDir), Mockito.any());
+        Mockito.doReturn(Stream.of(Path.of("data/b.txt"))).when(filesXmlService).readFilepaths(bagDir, context);
+
+        var result = new FilesReconcilerImpl(fileService, originalFilepathsService, filesXmlService).reconcile(bagDir, context);
+
+        assertEquals(Set.of(Path.of("data/a.txt")), result.getPayloadFilesNotInFilesXml());
+        assertEquals(Set.of(Path.of("data/b.txt")), result.getFilesXmlPathsNotInPayload());
+        assertEquals(Set.of(), result.getPayloadFilesNotInOriginalFilepaths());
+        assertEquals(Set.of(), result.getFilesXmlPathsNotInOriginalFilepaths());
+    }
+
+    @Test
+    void reconcileAboveThresholdMergesSpillFilesWithTheSameResult() throws Exception {
+        var bagDir = Path.of("bagdir");
+        var context = new BagValidationContext(bagDir);
+        var payloadFiles = new ArrayList<String>();
+        var filesXmlPaths = new ArrayList<Path>();
+        var mapping = new ArrayList<OriginalFilepathsService.OriginalFilePathItem>();
+
+        for (var i = 0; i < 50; ++i) {
+            payloadFiles.add("data/file-" + i + ".txt");
+
+            if (i % 10 == 0) {
+                // renamed in the payload
+                mapping.add(new OriginalFilepathsService.OriginalFilePathItem(Path.of("data/original " + i + ".txt"), Path.of("data/file-" + i + ".txt")));
+                filesXmlPaths.add(Path.of("data/original " + i + ".txt"));
+            }
+            else if (i % 7 != 0) {
+                filesXmlPaths.add(Path.of("data/./file-" + i + ".txt"));
+            }
+        }
+
+        filesXmlPaths.add(Path.of("data/file-1.txt"));
+        filesXmlPaths.add(Path.of("data/not-in-payload.txt"));
+        mapping.add(new OriginalFilepathsService.OriginalFilePathItem(Path.of("data/not-in-files-xml.txt"), Path.of("data/not-in-payload-either.txt")));
+
+        Mockito.doReturn(new FileIndex(bagDir, payloadFiles, List.of("data"))).when(fileService).indexFiles(context);
+        Mockito.doReturn(payloadFiles.stream().map(bagDir::resolve).collect(Collectors.toList())).when(fileService).getAllFiles(bagDir.resolve("data"), context);
+        Mockito.doReturn(mapping).when(originalFilepathsService).getMapping(Mockito.eq(bagDir), Mockito.any());
+        Mockito.doReturn(true).when(originalFilepathsService).exists(bagDir);
+        Mockito.doAnswer(invocation -> filesXmlPaths.stream()).when(filesXmlService).readFilepaths(bagDir, context);
+
+        // a chunk size of 3 writes many small spill files
+        var merged = new FilesReconcilerImpl(fileService, originalFilepathsService, filesXmlService, 10, spillDir, 3).reconcile(bagDir, context);
+        var inMemory = new FilesReconcilerImpl(fileService, originalFilepathsService, filesXmlService).reconcile(bagDir, new BagValidationContext(bagDir));
+
+        assertEquals(Set.of(Path.of("data/file-1.txt")), merged.getDuplicateFilesXmlPaths());
+        assertEquals(Set.of(Path.of("data/file-7.txt"), Path.of("data/file-14.txt"), Path.of("data/file-21.txt"), Path.of("data/file-28.txt"), Path.of("data/file-35.txt"),
+            Path.of("data/file-42.txt"), Path.of("data/file-49.txt")), merged.getPayloadFilesNotInFilesXml());
+        assertEquals(Set.of(Path.of("data/not-in-payload.txt")), merged.getFilesXmlPathsNotInPayload());
+        assertEquals(Set.of(Path.of("data/not-in-payload-either.txt")), merged.getRenamedFilepathsNotInPayload());
+        assertEquals(Set.of(Path.of("data/not-in-files-xml.txt")), merged.getOriginalFilepathsNotInFilesXml());
+
+        assertEquals(inMemory.getDuplicateFilesXmlPaths(), merged.getDuplicateFilesXmlPaths());
+        assertEquals(inMemory.getPayloadFilesNotInFilesXml(), merged.getPayloadFilesNotInFilesXml());
+        assertEquals(inMemory.getFilesXmlPathsNotInPayload(), merged.getFilesXmlPathsNotInPayload());
+        assertEquals(inMemory.getPayloadFilesNotInOriginalFilepaths(), merged.getPayloadFilesNotInOriginalFilepaths());
+        assertEquals(inMemory.getRenamedFilepathsNotInPayload(), merged.getRenamedFilepathsNotInPayload());
+        assertEquals(inMemory.getFilesXmlPathsNotInOriginalFilepaths(), merged.getFilesXmlPathsNotInOriginalFilepaths());
+        assertEquals(inMemory.getOriginalFilepathsNotInFilesXml(), merged.getOriginalFilepathsNotInFilesXml());
+
+        try (var files = Files.list(spillDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void reconcileReadsEverythingOnlyOncePerValidation() throws Exception {
+        var bagDir = Path.of("bagdir");
+        var context = new BagValidationContext(bagDir);
+        var reconciler = new FilesReconcilerImpl(fileService, originalFilepathsService, filesXmlService);
+
+        Mockito.doReturn(List.of()).when(fileService).getAllFiles(Mockito.any(), Mockito.any());
+        Mockito.doReturn(List.of()).when(originalFilepathsService).getMapping(Mockito.any(), Mockito.any());
+        Mockito.doReturn(Stream.of()).when(filesXmlService).readFilepaths(Mockito.any(), Mockito.any());
+
+        var first = reconciler.reconcile(bagDir, context);
+        var second = reconciler.reconcile(bagDir, context);
+
+        assertSame(first, second);
+        Mockito.verify(fileService, Mockito.times(1)).getAllFiles(Mockito.any(), Mockito.any());
+        Mockito.verify(originalFilepathsService, Mockito.times(1)).getMapping(Mockito.any(), Mockito.any());
+        Mockito.verify(filesXmlService, Mockito.times(1)).readFilepaths(Mockito.any(), Mockito.any());
+    }
+}
@@ -15,6 +15,7 @@
  */
 package nl.knaw.dans.validatedansbag.core.service;
 
+import nl.knaw.dans.validatedansbag.core.engine.BagValidationContext;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.w3c.dom.Document;
@@ -56,7 +57,7 @@ class FilesXmlServiceImplTest {
         Mockito.doReturn(document).when(xmlReader).readXmlFile(Mockito.any());
 
         var filesXmlService = new FilesXmlServiceImpl(xmlReader);
-        var result = filesXmlService.readFilepaths(Path.of("test")).collect(Collectors.toSet());
+        var result = filesXmlService.readFilepaths(Path.of("test"), new BagValidationContext(Path.of("test"))).collect(Collectors.toSet());
 
         var expected = Set.of(
             Path.of("data/random images/image01.png"),
@@ -87,7 +88,7 @@ class FilesXmlServiceImplTest {
         Mockito.doReturn(document).when(xmlReader).readXmlFile(Mockito.any());
 
         var filesXmlService = new FilesXmlServiceImpl(xmlReader);
-        var result = filesXmlService.readFilepaths(Path.of("test")).collect(Collectors.toSet());
+        var result = filesXmlService.readFilepaths(Path.of("test"), new BagValidationContext(Path.of("test"))).collect(Collectors.toSet());
 
         var expected = Set.of(
             Path.of("data/random images/image01.png"),
@@ -118,7 +119,7 @@ class FilesXmlServiceImplTest {
         Mockito.doReturn(document).when(xmlReader).readXmlFile(Mockito.any());
 
         var filesXmlService = new FilesXmlServiceImpl(xmlReader);
-        var result = filesXmlService.readFilepaths(Path.of("test")).collect(Collectors.toSet());
+        var result = filesXmlService.readFilepaths(Path.of("test"), new BagValidationContext(Path.of("test"))).collect(Collectors.toSet());
 
         var expected = Set.of(
             Path.of("data/random images/image01.png"),
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import java.io.FileNotFoundException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalSchemaResolverTest {
+    private static final String MAIN_XSD = "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" xmlns:t=\"urn:types\" targetNamespace=\"urn:main\" elementFormDefault=\"qualified\">"
+        + "<xs:import namespace=\"urn:types\" schemaLocation=\"%s\"/>"
+        + "<xs:element name=\"root\" type=\"t:code\"/>"
+        + "</xs:schema>";
+
+    private static final String TYPES_XSD = "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" targetNamespace=\"urn:types\">"
+        + "<xs:simpleType name=\"code\"><xs:restriction base=\"xs:string\"><xs:pattern value=\"[A-Z]{3}\"/></xs:restriction></xs:simpleType>"
+        + "</xs:schema>";
+
+    @TempDir
+    Path localDirectory;
+
+    @Test
+    void resolvesRelativeImportsToLocalCopies() throws Exception {
+        writeSchema("example.org/schemas/main.xsd", String.format(MAIN_XSD, "types/types.xsd"));
+        writeSchema("example.org/schemas/types/types.xsd", TYPES_XSD);
+
+        var schema = compile(new LocalSchemaResolver(localDirectory, false), "https://example.org/schemas/main.xsd");
+
+        assertDoesNotThrow(() -> schema.newValidator().validate(new StreamSource(new StringReader("<root xmlns=\"urn:main\">ABC</root>"))));
+        assertThrows(Exception.class, () -> schema.newValidator().validate(new StreamSource(new StringReader("<root xmlns=\"urn:main\">abc</root>"))));
+    }
+
+    @Test
+    void resolvesHttpAndHttpsUrlsToTheSameLocalCopy() throws Exception {
+        writeSchema("example.org/schemas/main.xsd", String.format(MAIN_XSD, "http://example.org/schemas/types.xsd"));
+        writeSchema("example.org/schemas/types.xsd", TYPES_XSD);
+
+        assertDoesNotThrow(() -> compile(new LocalSchemaResolver(localDirectory, false), "https://example.org/schemas/main.xsd"));
+    }
+
+    @Test
+    void findsLocalCopiesInADirectoryThatIsNotNormalized() throws Exception {
+        writeSchema("example.org/schemas/main.xsd", String.format(MAIN_XSD, "types/types.xsd"));
+        writeSchema("example.org/schemas/types/types.xsd", TYPES_XSD);
+        Files.createDirectories(localDirectory.resolve("other"));
+
+        var notNormalized = localDirectory.resolve("other/../.");
+
+        assertDoesNotThrow(() -> compile(new LocalSchemaResolver(notNormalized, false), "https://example.org/schemas/main.xsd"));
+    }
+
+    @Test
+    void throwsFileNotFoundExceptionForMissingTopLevelSchemaIfDownloadingIsNotAllowed() {
+        var resolver = new LocalSchemaResolver(localDirectory, false);
+
+        var e = assertThrows(FileNotFoundException.class, () -> resolver.getSource("https://example.org/schemas/main.xsd"));
+        assertTrue(e.getMessage().contains("https://example.org/schemas/main.xsd"));
+    }
+
+    @Test
+    void throwsForMissingImportIfDownloadingIsNotAllowed() throws Exception {
+        writeSchema("example.org/schemas/main.xsd", String.format(MAIN_XSD, "types/types.xsd"));
+
+        assertThrows(Exception.class, () -> compile(new LocalSchemaResolver(localDirectory, false), "https://example.org/schemas/main.xsd"));
+    }
+
+    private Schema compile(LocalSchemaResolver resolver, String url) throws Exception {
+        var schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+        schemaFactory.setResourceResolver(resolver);
+        return schemaFactory.newSchema(resolver.getSource(url));
+    }
+
+    private void writeSchema(String relativePath, String content) throws Exception {
+        var file = localDirectory.resolve(relativePath);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+    }
+}
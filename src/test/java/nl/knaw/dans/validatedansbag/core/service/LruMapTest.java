@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LruMapTest {
+
+    @Test
+    void putEvictsTheLeastRecentlyUsedEntry() {
+        var map = new LruMap<String, Integer>(2);
+        map.put("a", 1);
+        map.put("b", 2);
+        map.get("a");
+
+        map.put("c", 3);
+
+        assertEquals(List.of("a", "c"), List.copyOf(map.keySet()));
+    }
+}
@@ -15,17 +15,23 @@
  */
 package nl.knaw.dans.validatedansbag.core.service;
 
+import nl.knaw.dans.validatedansbag.core.engine.BagValidationContext;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.io.ByteArrayInputStream;
 import java.io.FileNotFoundException;
+import java.nio.charset.CharacterCodingException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class OriginalFilepathsServiceImplTest {
     final FileService fileService = Mockito.mock(FileService.class);
@@ -41,8 +47,8 @@ class OriginalFilepathsServiceImplTest {
             + "data/13.txt data/sub/leeg2.txt\n"
             + "data/14.txt data/sub/sub/vacio.txt\n";
 
-        Mockito.when(fileService.readFileContents(Mockito.eq(Path.of("bagdir/original-filepaths.txt"))))
-            .thenReturn(contents.getBytes(StandardCharsets.UTF_8));
+        Mockito.when(fileService.newInputStream(Mockito.eq(Path.of("bagdir/original-filepaths.txt"))))
+            .thenReturn(new ByteArrayInputStream(contents.getBytes(StandardCharsets.UTF_8)));
 
         var service = new OriginalFilepathsServiceImpl(fileService);
         var result = service.getMapping(Path.of("bagdir"));
@@ -62,8 +68,8 @@ class OriginalFilepathsServiceImplTest {
             + "data/13.txt data/sub/leeg2.txt\n"
             + "singleitem\n";
 
-        Mockito.when(fileService.readFileContents(Mockito.eq(Path.of("bagdir/original-filepaths.txt"))))
-            .thenReturn(contents.getBytes(StandardCharsets.UTF_8));
+        Mockito.when(fileService.newInputStream(Mockito.eq(Path.of("bagdir/original-filepaths.txt"))))
+            .thenReturn(new ByteArrayInputStream(contents.getBytes(StandardCharsets.UTF_8)));
 
         var service = new OriginalFilepathsServiceImpl(fileService);
         var result = service.getMapping(Path.of("bagdir"));
@@ -78,7 +84,7 @@ class OriginalFilepathsServiceImplTest {
 
     @Test
     void fileDoesNotExist() throws Exception {
-        Mockito.when(fileService.readFileContents(Mockito.eq(Path.of("bagdir/original-filepaths.txt"))))
+        Mockito.when(fileService.newInputStream(Mockito.eq(Path.of("bagdir/original-filepaths.txt"))))
             .thenThrow(new FileNotFoundException("file not found"));
 
         var service = new OriginalFilepathsServiceImpl(fileService);
@@ -86,4 +92,55 @@ class OriginalFilepathsServiceImplTest {
 
         assertEquals(0, result.size());
     }
-}
\ No newline at end of file
+
+    @Test
+    void readBuildsBothMappingsInOnePass() throws Exception {
+        var contents = "data/12.txt\tdata/with  spaces.txt\n"
+            + "\n"
+            + "data/13.txt data/sub/leeg2.txt\r\n"
+            + "data/14.txt data/sub/leeg2.txt";
+
+        Mockito.when(fileService.newInputStream(Mockito.eq(Path.of("bagdir/original-filepaths.txt"))))
+            .thenReturn(new ByteArrayInputStream(contents.getBytes(StandardCharsets.UTF_8)));
+
+        var result = new OriginalFilepathsServiceImpl(fileService).read(Path.of("bagdir"));
+
+        assertEquals(List.of(
+            new OriginalFilepathsService.OriginalFilePathItem(Path.of("data/with  spaces.txt"), Path.of("data/12.txt")),
+            new OriginalFilepathsService.OriginalFilePathItem(Path.of("data/sub/leeg2.txt\r"), Path.of("data/13.txt")),
+            new OriginalFilepathsService.OriginalFilePathItem(Path.of("data/sub/leeg2.txt"), Path.of("data/14.txt"))
+        ), result.getItems());
+        assertEquals(Map.of(
+            Path.of("data/with  spaces.txt"), Path.of("data/12.txt"),
+            Path.of("data/sub/leeg2.txt\r"), Path.of("data/13.txt"),
+            Path.of("data/sub/leeg2.txt"), Path.of("data/14.txt")
+        ), result.getOriginalToRenamed());
+    }
+
+    @Test
+    void readRejectsInvalidUtf8() throws Exception {
+        var contents = new byte[] { 'd', 'a', 't', 'a', '/', 'a', ' ', 'b', (byte) 0xC3, (byte) 0x28 };
+
+        Mockito.when(fileService.newInputStream(Mockito.eq(Path.of("bagdir/original-filepaths.txt"))))
+            .thenReturn(new ByteArrayInputStream(contents));
+
+        var service = new OriginalFilepathsServiceImpl(fileService);
+
+        assertThrows(CharacterCodingException.class, () -> service.read(Path.of("bagdir")));
+    }
+
+    @Test
+    void getMappingReadsTheFileOncePerValidation() throws Exception {
+        Mockito.when(fileService.newInputStream(Mockito.eq(Path.of("bagdir/original-filepaths.txt"))))
+            .thenAnswer(invocation -> new ByteArrayInputStream("data/12.txt data/leeg.txt\n".getBytes(StandardCharsets.UTF_8)));
+
+        var service = new OriginalFilepathsServiceImpl(fileService);
+        var context = new BagValidationContext(Path.of("bagdir"));
+
+        service.read(Path.of("bagdir"), context);
+        var result = service.getMapping(Path.of("bagdir"), context);
+
+        assertEquals(List.of(new OriginalFilepathsService.OriginalFilePathItem(Path.of("data/leeg.txt"), Path.of("data/12.txt"))), result);
+        Mockito.verify(fileService, Mockito.times(1)).newInputStream(Mockito.any());
+    }
+}
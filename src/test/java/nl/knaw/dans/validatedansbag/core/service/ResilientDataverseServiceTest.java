@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import com.codahale.metrics.MetricRegistry;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.dropwizard.util.Duration;
+import nl.knaw.dans.lib.dataverse.DataverseResponse;
+import nl.knaw.dans.lib.dataverse.model.search.SearchResult;
+import nl.knaw.dans.validatedansbag.core.config.DataverseConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResilientDataverseServiceTest {
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final DataverseService dataverseService = Mockito.mock(DataverseService.class);
+    private final ExecutorService serverExecutor = Executors.newCachedThreadPool();
+    private final CountDownLatch releaseServer = new CountDownLatch(1);
+    private HttpServer server;
+
+    @AfterEach
+    void afterEach() {
+        releaseServer.countDown();
+
+        if (server != null) {
+            server.stop(0);
+        }
+
+        serverExecutor.shutdownNow();
+    }
+
+    ResilientDataverseService createService(DataverseService dataverseService, int maxAttempts, CircuitBreaker circuitBreaker) {
+        return new ResilientDataverseService(dataverseService, maxAttempts, java.time.Duration.ZERO, java.time.Duration.ZERO, circuitBreaker, metricRegistry);
+    }
+
+    @SuppressWarnings("unchecked")
+    private DataverseResponse<SearchResult> createResponse() {
+        return Mockito.mock(DataverseResponse.class);
+    }
+
+    // a stand-in for Dataverse on a free local port; the handler decides what it answers to every request
+    DataverseServiceImpl startServer(Handler handler) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            try {
+                handler.handle(exchange);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                exchange.close();
+            }
+        });
+        // a handler that does not answer must not keep other requests from being accepted
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        var config = new DataverseConfig(String.format("http://localhost:%d/", server.getAddress().getPort()), "");
+        config.setReadTimeout(Duration.milliseconds(200));
+        return new DataverseServiceImpl(config);
+    }
+
+    void respond(HttpExchange exchange, int status, String body) throws IOException {
+        var bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    @Test
+    void callIsRetriedAfterAnIOException() throws Exception {
+        DataverseResponse<SearchResult> response = createResponse();
+        Mockito.when(dataverseService.searchBySwordToken("sword-token"))
+            .thenThrow(new IOException("connection reset"))
+            .thenReturn(response);
+
+        var service = createService(dataverseService, 3, new CircuitBreaker(5, java.time.Duration.ofSeconds(30)));
+
+        assertSame(response, service.searchBySwordToken("sword-token"));
+        Mockito.verify(dataverseService, Mockito.times(2)).searchBySwordToken("sword-token");
+        assertEquals(1, metricRegistry.meter(MetricRegistry.name(ResilientDataverseService.class, "retries")).getCount());
+        assertEquals(2, metricRegistry.timer(MetricRegistry.name(ResilientDataverseService.class, "searchBySwordToken")).getCount());
+    }
+
+    @Test
+    void callFailsWithDataverseUnavailableExceptionAfterMaxAttempts() throws Exception {
+        Mockito.when(dataverseService.getDataset("doi:10.5072/dataset")).thenThrow(new IOException("connection refused"));
+
+        var service = createService(dataverseService, 3, new CircuitBreaker(5, java.time.Duration.ofSeconds(30)));
+
+        var e = assertThrows(DataverseUnavailableException.class, () -> service.getDataset("doi:10.5072/dataset"));
+
+        assertEquals("Dataverse is unavailable: getDataset failed 3 times, the last time with: connection refused", e.getMessage());
+        Mockito.verify(dataverseService, Mockito.times(3)).getDataset("doi:10.5072/dataset");
+    }
+
+    @Test
+    void openCircuitBreakerFailsCallsWithoutCallingDataverse() throws Exception {
+        Mockito.when(dataverseService.searchBySwordToken("sword-token")).thenThrow(new IOException("connection refused"));
+
+        var circuitBreaker = new CircuitBreaker(2, java.time.Duration.ofSeconds(30));
+        var service = createService(dataverseService, 2, circuitBreaker);
+
+        assertThrows(DataverseUnavailableException.class, () -> service.searchBySwordToken("sword-token"));
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        var e = assertThrows(DataverseUnavailableException.class, () -> service.getDataverseRoleAssignments("root"));
+
+        assertTrue(e.getMessage().startsWith("Dataverse is unavailable: 2 consecutive calls failed, so getDataverseRoleAssignments is not called"), e.getMessage());
+        assertTrue(e.getRetryAfter().toSeconds() > 0);
+        Mockito.verify(dataverseService, Mockito.never()).getDataverseRoleAssignments(Mockito.any());
+        assertEquals(1, metricRegistry.meter(MetricRegistry.name(ResilientDataverseService.class, "rejected")).getCount());
+    }
+
+    @Test
+    void callsDuringATrialCallAreRefusedWithoutAWaitOfZeroSeconds() throws Exception {
+        var circuitBreaker = new CircuitBreaker(1, java.time.Duration.ZERO);
+        var service = createService(dataverseService, 1, circuitBreaker);
+        var duringTrial = new AtomicReference<DataverseUnavailableException>();
+
+        Mockito.when(dataverseService.searchBySwordToken("sword-token"))
+            .thenThrow(new IOException("connection refused"))
+            .thenAnswer(i -> {
+                duringTrial.set(assertThrows(DataverseUnavailableException.class, () -> service.getDataset("doi:10.5072/dataset")));
+                return createResponse();
+            });
+
+        assertThrows(DataverseUnavailableException.class, () -> service.searchBySwordToken("sword-token"));
+        service.searchBySwordToken("sword-token");
+
+        var e = duringTrial.get();
+        assertEquals("Dataverse is unavailable: 1 consecutive calls failed, so getDataset is not called until a trial call shows that Dataverse is available again", e.getMessage());
+        assertEquals(java.time.Duration.ofSeconds(1), e.getRetryAfter());
+        Mockito.verify(dataverseService, Mockito.never()).getDataset(Mockito.any());
+    }
+
+    @Test
+    void runtimeExceptionOfATrialCallDoesNotCloseTheCircuitBreaker() throws Exception {
+        Mockito.when(dataverseService.searchBySwordToken("sword-token"))
+            .thenThrow(new IOException("connection refused"))
+            .thenThrow(new IllegalStateException("Connection pool shut down"));
+
+        var circuitBreaker = new CircuitBreaker(1, java.time.Duration.ZERO);
+        var service = createService(dataverseService, 1, circuitBreaker);
+
+        assertThrows(DataverseUnavailableException.class, () -> service.searchBySwordToken("sword-token"));
+        assertThrows(IllegalStateException.class, () -> service.searchBySwordToken("sword-token"));
+
+        Mockito.verify(dataverseService, Mockito.times(2)).searchBySwordToken("sword-token");
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertEquals(1, circuitBreaker.getFailures());
+    }
+
+    @Test
+    void getBackoffDoublesUpToMaxBackoffLeavingOutARandomPartOfUpToHalf() {
+        var service = new ResilientDataverseService(dataverseService, 10, java.time.Duration.ofMillis(100), java.time.Duration.ofMillis(1000),
+            new CircuitBreaker(5, java.time.Duration.ofSeconds(30)), metricRegistry);
+
+        for (var i = 0; i < 100; i++) {
+            assertBetween(50, 100, service.getBackoff(1).toMillis());
+            assertBetween(100, 200, service.getBackoff(2).toMillis());
+            assertBetween(400, 800, service.getBackoff(4).toMillis());
+            assertBetween(500, 1000, service.getBackoff(5).toMillis());
+            assertBetween(500, 1000, service.getBackoff(40).toMillis());
+        }
+    }
+
+    private void assertBetween(long min, long max, long actual) {
+        assertTrue(actual >= min && actual <= max, String.format("%d is not between %d and %d", actual, min, max));
+    }
+
+    @Test
+    void readTimeoutEndsCallsToADataverseThatDoesNotRespond() throws Exception {
+        var requests = new AtomicInteger();
+        var dataverseServiceImpl = startServer(exchange -> {
+            requests.incrementAndGet();
+            releaseServer.await();
+        });
+
+        var service = createService(dataverseServiceImpl, 2, new CircuitBreaker(5, java.time.Duration.ofSeconds(30)));
+        var start = System.nanoTime();
+
+        var e = assertThrows(DataverseUnavailableException.class, () -> service.searchBySwordToken("sword-token"));
+
+        assertTrue(System.nanoTime() - start < java.time.Duration.ofSeconds(10).toNanos());
+        assertTrue(e.getMessage().startsWith("Dataverse is unavailable: searchBySwordToken failed 2 times"), e.getMessage());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void serverErrorsAreRetried() throws Exception {
+        var requests = new AtomicInteger();
+        var dataverseServiceImpl = startServer(exchange -> {
+            if (requests.incrementAndGet() == 1) {
+                respond(exchange, 503, "{\"status\": \"ERROR\", \"message\": \"Service Unavailable\"}");
+            }
+            else {
+                respond(exchange, 200, "{\"status\": \"OK\", \"data\": {\"q\": \"dansSwordToken:sword-token\", \"total_count\": 0, \"start\": 0, "
+                    + "\"spelling_alternatives\": {}, \"items\": [], \"count_in_response\": 0}}");
+            }
+        });
+
+        var service = createService(dataverseServiceImpl, 3, new CircuitBreaker(5, java.time.Duration.ofSeconds(30)));
+
+        assertEquals(0, service.searchBySwordToken("sword-token").getData().getItems().size());
+        assertEquals(2, requests.get());
+    }
+
+    @FunctionalInterface
+    interface Handler {
+        void handle(HttpExchange exchange) throws IOException, InterruptedException;
+    }
+}
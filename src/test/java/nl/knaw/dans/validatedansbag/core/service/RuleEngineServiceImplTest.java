@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import com.codahale.metrics.MetricRegistry;
+import nl.knaw.dans.validatedansbag.core.engine.DepositType;
+import nl.knaw.dans.validatedansbag.core.engine.RuleEngine;
+import nl.knaw.dans.validatedansbag.core.engine.RuleResultHistory;
+import nl.knaw.dans.validatedansbag.core.engine.RuleValidationResult;
+import nl.knaw.dans.validatedansbag.core.engine.ValidationLevel;
+import nl.knaw.dans.validatedansbag.core.rules.BagRules;
+import nl.knaw.dans.validatedansbag.core.rules.DatastationRules;
+import nl.knaw.dans.validatedansbag.core.rules.FilesXmlRules;
+import nl.knaw.dans.validatedansbag.core.rules.XmlRules;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class RuleEngineServiceImplTest {
+    private final RuleEngine ruleEngine = Mockito.mock(RuleEngine.class);
+    private final FileService fileService = Mockito.mock(FileService.class);
+    private final BagFingerprinter bagFingerprinter = Mockito.mock(BagFingerprinter.class);
+    private final Path bagDir = Path.of("bagdir");
+    private final List<RuleValidationResult> results = List.of(new RuleValidationResult("1.1.1", RuleValidationResult.RuleValidationResultStatus.SUCCESS));
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Mockito.doReturn(true).when(fileService).isReadable(bagDir);
+        Mockito.doReturn(results).when(ruleEngine).validateRules(Mockito.eq(bagDir), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyBoolean());
+        Mockito.doReturn("fingerprint").when(bagFingerprinter).fingerprint(bagDir);
+    }
+
+    private RuleEngineServiceImpl createService(boolean cacheDataStationContext) {
+        return new RuleEngineServiceImpl(ruleEngine, Mockito.mock(BagRules.class), Mockito.mock(XmlRules.class), Mockito.mock(FilesXmlRules.class), fileService,
+            Mockito.mock(DatastationRules.class), bagFingerprinter, new ValidationResultCache(10, Duration.ofMinutes(1), new MetricRegistry()), cacheDataStationContext);
+    }
+
+    @Test
+    void validateBagReturnsTheCachedResultForAnUnchangedBag() throws Exception {
+        var service = createService(false);
+
+        assertEquals(results, service.validateBag(bagDir, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE, false));
+        assertEquals(results, service.validateBag(bagDir, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE, false));
+
+        Mockito.verify(ruleEngine, Mockito.times(1)).validateRules(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyBoolean());
+    }
+
+    @Test
+    void validateBagValidatesAgainWhenTheBagChanged() throws Exception {
+        var service = createService(false);
+
+        service.validateBag(bagDir, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE, false);
+        Mockito.doReturn("other fingerprint").when(bagFingerprinter).fingerprint(bagDir);
+        service.validateBag(bagDir, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE, false);
+
+        Mockito.verify(ruleEngine, Mockito.times(2)).validateRules(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyBoolean());
+    }
+
+    @Test
+    void validateBagDoesNotShareResultsBetweenDepositTypesOrFailFast() throws Exception {
+        var service = createService(false);
+
+        service.validateBag(bagDir, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE, false);
+        service.validateBag(bagDir, DepositType.MIGRATION, ValidationLevel.STAND_ALONE, false);
+        service.validateBag(bagDir, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE, true);
+
+        Mockito.verify(ruleEngine, Mockito.times(3)).validateRules(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyBoolean());
+    }
+
+    @Test
+    void validateBagDoesNotCacheDataStationContextUnlessConfigured() throws Exception {
+        var service = createService(false);
+
+        service.validateBag(bagDir, DepositType.DEPOSIT, ValidationLevel.WITH_DATA_STATION_CONTEXT, false);
+        service.validateBag(bagDir, DepositType.DEPOSIT, ValidationLevel.WITH_DATA_STATION_CONTEXT, false);
+
+        Mockito.verify(ruleEngine, Mockito.times(2)).validateRules(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyBoolean());
+        Mockito.verifyNoInteractions(bagFingerprinter);
+
+        var cachingService = createService(true);
+
+        cachingService.validateBag(bagDir, DepositType.DEPOSIT, ValidationLevel.WITH_DATA_STATION_CONTEXT, false);
+        cachingService.validateBag(bagDir, DepositType.DEPOSIT, ValidationLevel.WITH_DATA_STATION_CONTEXT, false);
+
+        Mockito.verify(ruleEngine, Mockito.times(3)).validateRules(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyBoolean());
+    }
+
+    @Test
+    void validateBagWithoutFingerprintValidatesWithoutTheCache() throws Exception {
+        var service = createService(false);
+        Mockito.doThrow(new IOException("no access")).when(bagFingerprinter).fingerprint(bagDir);
+
+        service.validateBag(bagDir, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE, false);
+        service.validateBag(bagDir, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE, false);
+
+        Mockito.verify(ruleEngine, Mockito.times(2)).validateRules(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyBoolean());
+    }
+
+    @Test
+    void validateExtractedBagDoesNotUseTheCache() throws Exception {
+        var service = createService(false);
+
+        assertEquals(results, service.validateExtractedBag(bagDir, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE, false));
+        assertEquals(results, service.validateExtractedBag(bagDir, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE, false));
+
+        Mockito.verify(ruleEngine, Mockito.times(2)).validateRules(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyBoolean());
+        Mockito.verifyNoInteractions(bagFingerprinter);
+    }
+
+    @Test
+    void validateBagPassesTheHistoryOfTheBagToTheRuleEngine() throws Exception {
+        var service = new RuleEngineServiceImpl(ruleEngine, Mockito.mock(BagRules.class), Mockito.mock(XmlRules.class), Mockito.mock(FilesXmlRules.class), fileService,
+            Mockito.mock(DatastationRules.class), null, null, false, new RuleResultHistoryStore(10, Duration.ofMinutes(1), new MetricRegistry()));
+        var histories = ArgumentCaptor.forClass(RuleResultHistory.class);
+        Mockito.doReturn(results).when(ruleEngine).validateRules(Mockito.eq(bagDir), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyBoolean(), Mockito.any());
+
+        service.validateBag(bagDir, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE, false);
+        service.validateBag(bagDir, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE, true);
+        service.validateBag(bagDir, DepositType.MIGRATION, ValidationLevel.STAND_ALONE, false);
+
+        Mockito.verify(ruleEngine, Mockito.times(3)).validateRules(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyBoolean(), histories.capture());
+        assertSame(histories.getAllValues().get(0), histories.getAllValues().get(1));
+        assertNotSame(histories.getAllValues().get(0), histories.getAllValues().get(2));
+    }
+
+    @Test
+    void validateExtractedBagLeavesTheHistoryStoreUnchanged() throws Exception {
+        var historyStore = new RuleResultHistoryStore(10, Duration.ofMinutes(1), new MetricRegistry());
+        var service = new RuleEngineServiceImpl(ruleEngine, Mockito.mock(BagRules.class), Mockito.mock(XmlRules.class), Mockito.mock(FilesXmlRules.class), fileService,
+            Mockito.mock(DatastationRules.class), null, null, false, historyStore);
+
+        assertEquals(results, service.validateExtractedBag(bagDir, DepositType.DEPOSIT, ValidationLevel.STAND_ALONE, false));
+
+        assertEquals(0, historyStore.size());
+        Mockito.verify(ruleEngine, Mockito.never()).validateRules(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyBoolean(), Mockito.any());
+    }
+}
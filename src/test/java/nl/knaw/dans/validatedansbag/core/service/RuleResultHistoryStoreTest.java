@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import com.codahale.metrics.MetricRegistry;
+import nl.knaw.dans.validatedansbag.core.engine.RuleValidationResult;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RuleResultHistoryStoreTest {
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final RuleValidationResult result = new RuleValidationResult("1.1.1", RuleValidationResult.RuleValidationResultStatus.SUCCESS);
+
+    @Test
+    void historyReturnsAResultOnlyForTheSameFingerprint() {
+        var store = new RuleResultHistoryStore(10, Duration.ofMinutes(1), metricRegistry);
+
+        store.getHistory("a").put("1.1.1", "fingerprint", result);
+
+        assertEquals(result, store.getHistory("a").get("1.1.1", "fingerprint").orElseThrow());
+        assertFalse(store.getHistory("a").get("1.1.1", "other").isPresent());
+        assertFalse(store.getHistory("a").get("1.2.1", "fingerprint").isPresent());
+        assertFalse(store.getHistory("b").get("1.1.1", "fingerprint").isPresent());
+    }
+
+    @Test
+    void getHistoryEvictsTheLeastRecentlyValidatedBag() {
+        var store = new RuleResultHistoryStore(2, Duration.ofMinutes(1), metricRegistry);
+
+        store.getHistory("a").put("1.1.1", "fingerprint", result);
+        store.getHistory("b").put("1.1.1", "fingerprint", result);
+        store.getHistory("a");
+        store.getHistory("c");
+
+        assertEquals(2, store.size());
+        assertTrue(store.getHistory("a").get("1.1.1", "fingerprint").isPresent());
+        assertFalse(store.getHistory("b").get("1.1.1", "fingerprint").isPresent());
+    }
+
+    @Test
+    void getHistoryReturnsAnEmptyHistoryAfterItExpired() {
+        var clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"));
+        var store = new RuleResultHistoryStore(10, Duration.ofMinutes(10), metricRegistry, clock);
+
+        store.getHistory("a").put("1.1.1", "fingerprint", result);
+
+        // every validation of the bag extends the time it is kept
+        clock.advance(Duration.ofMinutes(9));
+        assertTrue(store.getHistory("a").get("1.1.1", "fingerprint").isPresent());
+
+        clock.advance(Duration.ofMinutes(9));
+        assertTrue(store.getHistory("a").get("1.1.1", "fingerprint").isPresent());
+
+        clock.advance(Duration.ofMinutes(10));
+        assertFalse(store.getHistory("a").get("1.1.1", "fingerprint").isPresent());
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.SchemaFactory;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SchemaMirrorTest {
+    private static final String MAIN_XSD = "<?xml version=\"1.0\"?>\n"
+        + "<!DOCTYPE xs:schema SYSTEM \"main.dtd\">\n"
+        + "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" xmlns:t=\"urn:types\" targetNamespace=\"urn:main\" elementFormDefault=\"qualified\">"
+        + "<xs:import namespace=\"urn:types\" schemaLocation=\"types/types.xsd\"/>"
+        + "<xs:element name=\"root\" type=\"t:code\"/>"
+        + "</xs:schema>";
+
+    private static final String MAIN_DTD = "<!ENTITY % more SYSTEM 'more.dtd'>\n%more;\n";
+
+    private static final String MORE_DTD = "<!ELEMENT xs:schema ANY>\n";
+
+    private static final String TYPES_XSD = "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\" targetNamespace=\"urn:types\">"
+        + "<xs:simpleType name=\"code\"><xs:restriction base=\"xs:string\"><xs:pattern value=\"[A-Z]{3}\"/></xs:restriction></xs:simpleType>"
+        + "</xs:schema>";
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private HttpServer server;
+    private String baseUrl;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        var files = Map.of(
+            "/schemas/main.xsd", MAIN_XSD,
+            "/schemas/main.dtd", MAIN_DTD,
+            "/schemas/more.dtd", MORE_DTD,
+            "/schemas/types/types.xsd", TYPES_XSD
+        );
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+
+            try {
+                var content = files.get(exchange.getRequestURI().getPath());
+
+                if (content == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                    return;
+                }
+
+                var bytes = content.getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, bytes.length);
+                exchange.getResponseBody().write(bytes);
+            }
+            finally {
+                exchange.close();
+            }
+        });
+        server.start();
+        baseUrl = String.format("http://localhost:%d/schemas/", server.getAddress().getPort());
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void mirrorCopiesImportsAndDtdsSoThatTheSchemaCompilesWithoutDownloading() throws Exception {
+        var files = new SchemaMirror(directory).mirror(List.of(baseUrl + "main.xsd"));
+
+        assertEquals(4, files.size());
+        assertTrue(Files.isRegularFile(directory.resolve("localhost/schemas/types/types.xsd")));
+        assertTrue(Files.isRegularFile(directory.resolve("localhost/schemas/more.dtd")));
+
+        server.stop(0);
+
+        var resolver = new LocalSchemaResolver(directory, false);
+        var schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+        schemaFactory.setResourceResolver(resolver);
+        var schema = schemaFactory.newSchema(resolver.getSource(baseUrl + "main.xsd"));
+
+        assertDoesNotThrow(() -> schema.newValidator().validate(new StreamSource(new StringReader("<root xmlns=\"urn:main\">ABC</root>"))));
+    }
+
+    @Test
+    void mirrorDoesNotDownloadFilesThatAreAlreadyThere() throws Exception {
+        new SchemaMirror(directory).mirror(List.of(baseUrl + "main.xsd"));
+        requests.set(0);
+
+        var files = new SchemaMirror(directory).mirror(List.of(baseUrl + "main.xsd"));
+
+        assertEquals(4, files.size());
+        assertEquals(0, requests.get());
+    }
+
+    @Test
+    void mirrorFailsIfAnImportDoesNotExist() {
+        assertThrows(IOException.class, () -> new SchemaMirror(directory).mirror(List.of(baseUrl + "missing.xsd")));
+    }
+}
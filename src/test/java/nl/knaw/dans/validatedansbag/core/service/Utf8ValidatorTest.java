@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class Utf8ValidatorTest {
+
+    @Test
+    void acceptsWellFormedText() {
+        var bytes = "data/ascii.txt data/ünïcödé €uro 𝄞.txt\n".getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(-1, check(bytes, bytes.length));
+    }
+
+    @Test
+    void reportsTheOffsetOfTheFirstInvalidSequence() {
+        // 0xE2 0x82 starts a euro sign, but 0x41 is not a continuation byte
+        var bytes = new byte[] { 'a', 'b', (byte) 0xE2, (byte) 0x82, 0x41, (byte) 0xFF };
+
+        assertEquals(2, check(bytes, bytes.length));
+    }
+
+    @Test
+    void rejectsOverlongEncodingsSurrogatesAndCodePointsAboveTheMaximum() {
+        assertEquals(0, check(new byte[] { (byte) 0xC0, (byte) 0x80 }, 2));
+        assertEquals(0, check(new byte[] { (byte) 0xE0, (byte) 0x9F, (byte) 0xBF }, 3));
+        assertEquals(0, check(new byte[] { (byte) 0xED, (byte) 0xA0, (byte) 0x80 }, 3));
+        assertEquals(0, check(new byte[] { (byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80 }, 4));
+    }
+
+    @Test
+    void continuesSequencesOverChunksAndRejectsATruncatedEnd() {
+        var bytes = "€€".getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(-1, check(bytes, 1));
+        assertEquals(3, check(new byte[] { 'a', 'b', 'c', (byte) 0xE2, (byte) 0x82 }, 2));
+    }
+
+    @Test
+    void agreesWithTheDecoderOfTheJdk() {
+        var random = new Random(42);
+
+        for (var i = 0; i < 10000; ++i) {
+            var bytes = new byte[random.nextInt(12)];
+
+            for (var j = 0; j < bytes.length; ++j) {
+                // mostly bytes that occur in multibyte sequences
+                bytes[j] = (byte) (random.nextInt(4) == 0 ? random.nextInt(256) : 0x80 + random.nextInt(0x78));
+            }
+
+            assertEquals(decoderOffset(bytes), check(bytes, 1 + random.nextInt(4)));
+        }
+    }
+
+    @Test
+    void updateReturnsFalseAfterAnInvalidSequence() {
+        var validator = new Utf8Validator();
+
+        assertFalse(validator.update(new byte[] { (byte) 0xFF }, 0, 1));
+        assertFalse(validator.update(new byte[] { 'a' }, 0, 1));
+        assertEquals(0, validator.finish());
+    }
+
+    private static long check(byte[] bytes, int chunkSize) {
+        var validator = new Utf8Validator();
+
+        for (var from = 0; from < bytes.length; from += chunkSize) {
+            validator.update(bytes, from, Math.min(from + chunkSize, bytes.length));
+        }
+
+        return validator.finish();
+    }
+
+    private static long decoderOffset(byte[] bytes) {
+        var input = ByteBuffer.wrap(bytes);
+
+        try {
+            StandardCharsets.UTF_8.newDecoder().decode(input);
+            return -1;
+        }
+        catch (CharacterCodingException e) {
+            // the decoder stops at the start of the malformed sequence
+            return input.position();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ValidationJobServiceImplTest {
+
+    @Test
+    void submitQueuesTheJobUntilTheExecutorRunsIt() {
+        var queue = new ArrayList<Runnable>();
+        var service = new ValidationJobServiceImpl<String>(queue::add, Duration.ofHours(1), 100);
+
+        var job = service.submit(() -> "result");
+
+        assertEquals(ValidationJob.Status.QUEUED, job.getStatus());
+        assertNull(job.getStarted());
+        assertSame(job, service.getJob(job.getId()).orElseThrow());
+
+        queue.get(0).run();
+
+        assertEquals(ValidationJob.Status.DONE, job.getStatus());
+        assertEquals("result", job.getResult());
+        assertNull(job.getException());
+    }
+
+    @Test
+    void submitRecordsTheExceptionOfAFailedJob() {
+        var service = new ValidationJobServiceImpl<String>(Runnable::run, Duration.ofHours(1), 100);
+        var exception = new IOException("broken");
+
+        var job = service.submit(() -> {
+            throw exception;
+        });
+
+        assertEquals(ValidationJob.Status.FAILED, job.getStatus());
+        assertSame(exception, job.getException());
+        assertNull(job.getResult());
+    }
+
+    @Test
+    void submitFinishesTheJobIfTheTaskThrowsAnError() {
+        var clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"));
+        var queue = new ArrayList<Runnable>();
+        var service = new ValidationJobServiceImpl<String>(queue::add, Duration.ofMinutes(10), 100, clock);
+        var error = new StackOverflowError();
+
+        var job = service.submit(() -> {
+            throw error;
+        });
+
+        assertSame(error, assertThrows(StackOverflowError.class, () -> queue.get(0).run()));
+        assertEquals(ValidationJob.Status.FAILED, job.getStatus());
+        assertSame(error, job.getException().getCause());
+
+        clock.advance(Duration.ofMinutes(10));
+        service.evictExpiredJobs();
+        assertEquals(0, service.getJobCount());
+    }
+
+    @Test
+    void submitForgetsTheJobIfTheExecutorRejectsIt() {
+        var executed = new ArrayList<Runnable>();
+        var service = new ValidationJobServiceImpl<String>(r -> {
+            executed.add(r);
+            throw new RejectedExecutionException("full");
+        }, Duration.ofHours(1), 100);
+
+        assertThrows(RejectedExecutionException.class, () -> service.submit(() -> "result"));
+        assertEquals(1, executed.size());
+        assertEquals(0, service.getJobCount());
+    }
+
+    @Test
+    void getJobDoesNotReturnJobsAfterTheRetentionPeriod() {
+        var clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"));
+        var service = new ValidationJobServiceImpl<String>(Runnable::run, Duration.ofMinutes(10), 100, clock);
+
+        var job = service.submit(() -> "result");
+
+        clock.advance(Duration.ofMinutes(9));
+        assertTrue(service.getJob(job.getId()).isPresent());
+
+        clock.advance(Duration.ofMinutes(1));
+        assertFalse(service.getJob(job.getId()).isPresent());
+    }
+
+    @Test
+    void evictExpiredJobsKeepsUnfinishedJobs() {
+        var clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"));
+        var queue = new ArrayList<Runnable>();
+        var service = new ValidationJobServiceImpl<String>(queue::add, Duration.ofMinutes(10), 100, clock);
+
+        var queued = service.submit(() -> "queued");
+        var done = service.submit(() -> "done");
+        queue.get(1).run();
+
+        clock.advance(Duration.ofHours(1));
+        service.evictExpiredJobs();
+
+        assertTrue(service.getJob(queued.getId()).isPresent());
+        assertFalse(service.getJob(done.getId()).isPresent());
+    }
+
+    @Test
+    void finishingMoreJobsThanAreRetainedEvictsTheJobsThatFinishedFirst() {
+        var queue = new ArrayList<Runnable>();
+        var service = new ValidationJobServiceImpl<String>(queue::add, Duration.ofHours(1), 2);
+
+        var first = service.submit(() -> "first");
+        var second = service.submit(() -> "second");
+        var third = service.submit(() -> "third");
+        var running = service.submit(() -> "running");
+        queue.get(1).run();
+        queue.get(0).run();
+        queue.get(2).run();
+
+        // the second job finished first, and unfinished jobs do not count
+        assertFalse(service.getJob(second.getId()).isPresent());
+        assertTrue(service.getJob(first.getId()).isPresent());
+        assertTrue(service.getJob(third.getId()).isPresent());
+        assertTrue(service.getJob(running.getId()).isPresent());
+        assertEquals(3, service.getJobCount());
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import com.codahale.metrics.MetricRegistry;
+import nl.knaw.dans.validatedansbag.core.engine.RuleValidationResult;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ValidationResultCacheTest {
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final List<RuleValidationResult> results = List.of(new RuleValidationResult("1.1.1", RuleValidationResult.RuleValidationResultStatus.SUCCESS));
+
+    @Test
+    void getReturnsWhatWasPut() {
+        var cache = new ValidationResultCache(10, Duration.ofMinutes(1), metricRegistry);
+
+        cache.put("a", results);
+
+        assertEquals(results, cache.get("a").orElseThrow());
+        assertFalse(cache.get("b").isPresent());
+        assertEquals(1, metricRegistry.meter(MetricRegistry.name(ValidationResultCache.class, "hits")).getCount());
+        assertEquals(1, metricRegistry.meter(MetricRegistry.name(ValidationResultCache.class, "misses")).getCount());
+    }
+
+    @Test
+    void putEvictsTheLeastRecentlyUsedResult() {
+        var cache = new ValidationResultCache(2, Duration.ofMinutes(1), metricRegistry);
+
+        cache.put("a", results);
+        cache.put("b", results);
+        cache.get("a");
+        cache.put("c", results);
+
+        assertEquals(2, cache.size());
+        assertTrue(cache.get("a").isPresent());
+        assertFalse(cache.get("b").isPresent());
+        assertTrue(cache.get("c").isPresent());
+    }
+
+    @Test
+    void getDoesNotReturnExpiredResults() {
+        var clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"));
+        var cache = new ValidationResultCache(10, Duration.ofMinutes(10), metricRegistry, clock);
+
+        cache.put("a", results);
+
+        clock.advance(Duration.ofMinutes(9));
+        assertTrue(cache.get("a").isPresent());
+
+        clock.advance(Duration.ofMinutes(1));
+        assertFalse(cache.get("a").isPresent());
+        assertEquals(0, cache.size());
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
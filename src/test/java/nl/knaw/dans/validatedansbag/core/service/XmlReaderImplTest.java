@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.core.service;
+
+import org.junit.jupiter.api.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.xpath.XPathExpressionException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class XmlReaderImplTest {
+    private static final String FILES_XML = "<files xmlns=\"http://easy.dans.knaw.nl/schemas/bag/metadata/files/\">"
+        + "<file filepath=\"data/a.txt\"/>"
+        + "<file filepath=\"data/b.txt\"/>"
+        + "</files>";
+
+    @Test
+    void xpathToStreamOfStringsGivesTheSameResultWhenTheExpressionIsEvaluatedAgain() throws Exception {
+        var reader = new XmlReaderImpl();
+        var document = reader.readXmlString(FILES_XML);
+
+        for (var i = 0; i < 3; ++i) {
+            var result = reader.xpathToStreamOfStrings(document, "//files:file/@filepath").collect(Collectors.toList());
+            assertEquals(List.of("data/a.txt", "data/b.txt"), result);
+        }
+    }
+
+    @Test
+    void xpathToStreamOfStringsCanBeUsedFromDifferentThreads() throws Exception {
+        var reader = new XmlReaderImpl();
+        var executor = Executors.newFixedThreadPool(2);
+
+        try {
+            for (var i = 0; i < 4; ++i) {
+                var result = executor.submit(() -> {
+                    var document = reader.readXmlString(FILES_XML);
+                    return reader.xpathToStreamOfStrings(document, "//files:file/@filepath").collect(Collectors.toList());
+                });
+                assertEquals(List.of("data/a.txt", "data/b.txt"), result.get());
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void xpathToStreamThrowsForAnInvalidExpressionEveryTime() throws Exception {
+        var reader = new XmlReaderImpl();
+        var document = reader.readXmlString(FILES_XML);
+
+        assertThrows(XPathExpressionException.class, () -> reader.xpathToStream(document, "//files:file["));
+        assertThrows(XPathExpressionException.class, () -> reader.xpathToStream(document, "//files:file["));
+    }
+
+    @Test
+    void newDocumentHandlerBuildsADocumentThatSelectsTheSameNodesAsAParsedDocument() throws Exception {
+        var xml = "<?xml version=\"1.0\"?>\n"
+            + "<!-- before -->\n"
+            + "<files xmlns=\"http://easy.dans.knaw.nl/schemas/bag/metadata/files/\" xmlns:dcterms=\"http://purl.org/dc/terms/\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\">\n"
+            + "    <file filepath=\"data/a.txt\"><dcterms:format xsi:type=\"dcterms:IMT\">text/<![CDATA[plain]]></dcterms:format></file>\n"
+            + "    <file filepath=\"data/b.txt\" xmlns=\"\"><?pi data?></file>\n"
+            + "</files>";
+        var expressions = List.of(
+            "//files:file/@filepath",
+            "//file/@filepath",
+            "//dcterms:format/@xsi:type",
+            "/files:files/files:file[1]",
+            "/files:files/files:file[1]/dcterms:format/text()"
+        );
+        var reader = new XmlReaderImpl();
+        var parsed = reader.readXmlString(xml);
+        var handler = reader.newDocumentHandler();
+        var streamReader = XMLInputFactory.newFactory().createXMLStreamReader(new StringReader(xml));
+
+        while (streamReader.hasNext()) {
+            streamReader.next();
+            handler.handleEvent(streamReader);
+        }
+
+        var built = handler.getDocument();
+
+        for (var expression : expressions) {
+            assertEquals(
+                reader.xpathToStreamOfStrings(parsed, expression).collect(Collectors.toList()),
+                reader.xpathToStreamOfStrings(built, expression).collect(Collectors.toList()),
+                expression
+            );
+        }
+
+        assertEquals(parsed.getDocumentElement().lookupPrefix("http://purl.org/dc/terms/"), built.getDocumentElement().lookupPrefix("http://purl.org/dc/terms/"));
+    }
+
+    @Test
+    void newDocumentHandlerHasNoDocumentBeforeTheEndIsReached() throws Exception {
+        var handler = new XmlReaderImpl().newDocumentHandler();
+        var streamReader = XMLInputFactory.newFactory().createXMLStreamReader(new StringReader(FILES_XML));
+        streamReader.next();
+        handler.handleEvent(streamReader);
+
+        assertNull(handler.getDocument());
+    }
+}
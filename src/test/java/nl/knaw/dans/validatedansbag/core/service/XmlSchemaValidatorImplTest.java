@@ -15,7 +15,9 @@
  */
 package nl.knaw.dans.validatedansbag.core.service;
 
+import com.codahale.metrics.MetricRegistry;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
@@ -31,13 +33,20 @@ import javax.xml.validation.SchemaFactory;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Map;
+import java.util.Objects;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class XmlSchemaValidatorImplTest {
 
+    @TempDir
+    Path tempDir;
+
     Node readFile(InputStream is) throws ParserConfigurationException, IOException, SAXException {
 
         var factory = DocumentBuilderFactory.newInstance();
@@ -81,6 +90,17 @@ class XmlSchemaValidatorImplTest {
         return validator;
     }
 
+    @Test
+    void bundledSchemasCompileWithoutDownloading() throws Exception {
+        var validator = new XmlSchemaValidatorImpl(new LocalSchemaResolver(null, false), new MetricRegistry());
+
+        assertNotNull(validator.getValidatorForFilename("dataset.xml"));
+        assertNotNull(validator.getValidatorForFilename("files.xml"));
+
+        var doc = readFile(getClass().getClassLoader().getResourceAsStream("xml/testfiles/valid-dataset.xml"));
+        assertEquals(0, validator.validateDocument(doc, "dataset.xml").size());
+    }
+
     @Test
     void testValidateDocument() throws Exception {
         var doc = readFile(getClass().getClassLoader().getResourceAsStream("xml/testfiles/valid-dataset.xml"));
@@ -107,4 +127,52 @@ class XmlSchemaValidatorImplTest {
         assertThrows(NullPointerException.class, () -> validator.validateDocument(doc, "unknown.xml"));
     }
 
-}
\ No newline at end of file
+    @Test
+    void testValidateFile() throws Exception {
+        var file = Path.of(Objects.requireNonNull(getClass().getClassLoader().getResource("xml/testfiles/valid-dataset.xml")).toURI());
+        var validator = getValidator();
+        var handler = new DdmReaderImpl().newHandler();
+
+        var result = validator.validateFile(file, "dataset.xml", handler);
+        assertEquals(0, result.size());
+        assertNotNull(handler.getSummary());
+    }
+
+    @Test
+    void validateFileLetsTheHandlerSeeTheEndOfADocumentWithATrailingComment() throws Exception {
+        var original = Path.of(Objects.requireNonNull(getClass().getClassLoader().getResource("xml/testfiles/valid-dataset.xml")).toURI());
+        var file = tempDir.resolve("dataset.xml");
+        Files.writeString(file, Files.readString(original) + "\n<!-- trailing comment -->\n<?trailing instruction?>\n");
+        var validator = getValidator();
+        var handler = new DdmReaderImpl().newHandler();
+
+        var result = validator.validateFile(file, "dataset.xml", handler);
+        assertEquals(0, result.size());
+        // without the end of the document the summary would be missing, and dataset.xml would be parsed again
+        assertNotNull(handler.getSummary());
+    }
+
+    @Test
+    void testValidateInvalidFile() throws Exception {
+        var file = Path.of(Objects.requireNonNull(getClass().getClassLoader().getResource("xml/testfiles/invalid-dataset.xml")).toURI());
+        var validator = getValidator();
+        var documentResult = validator.validateDocument(readFile(Files.newInputStream(file)), "dataset.xml");
+
+        var result = validator.validateFile(file, "dataset.xml", reader -> {
+        });
+        assertEquals(1, result.size());
+        assertEquals(documentResult.get(0).getLocalizedMessage(), result.get(0).getLocalizedMessage());
+    }
+
+    @Test
+    void validateFileRejectsADoctype() throws Exception {
+        var file = tempDir.resolve("dataset.xml");
+        Files.writeString(file, "<?xml version=\"1.0\"?>\n"
+            + "<!DOCTYPE ddm:DDM [<!ENTITY x \"y\">]>\n"
+            + "<ddm:DDM xmlns:ddm=\"http://easy.dans.knaw.nl/schemas/md/ddm/\">&x;</ddm:DDM>");
+        var validator = getValidator();
+
+        assertThrows(SAXException.class, () -> validator.validateFile(file, "dataset.xml", reader -> {
+        }));
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.resource;
+
+import nl.knaw.dans.validatedansbag.core.service.AdmissionController;
+import nl.knaw.dans.validatedansbag.core.service.AdmissionRejectedException;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+class AdmissionFilterTest {
+    private final AdmissionController admissionController = Mockito.mock(AdmissionController.class);
+    private final AdmissionFilter filter = new AdmissionFilter(admissionController);
+
+    private ContainerRequestContext createRequest(boolean hasEntity, int length) {
+        var properties = new HashMap<String, Object>();
+        var request = Mockito.mock(ContainerRequestContext.class);
+
+        Mockito.doReturn(hasEntity).when(request).hasEntity();
+        Mockito.doReturn(length).when(request).getLength();
+        Mockito.doAnswer(i -> properties.put(i.getArgument(0), i.getArgument(1))).when(request).setProperty(Mockito.anyString(), Mockito.any());
+        Mockito.doAnswer(i -> properties.get(i.<String> getArgument(0))).when(request).getProperty(Mockito.anyString());
+        Mockito.doAnswer(i -> properties.remove(i.<String> getArgument(0))).when(request).removeProperty(Mockito.anyString());
+
+        return request;
+    }
+
+    @Test
+    void theAdmissionIsClosedWhenTheResponseIsSent() throws Exception {
+        var admission = Mockito.mock(AdmissionController.Admission.class);
+        Mockito.doReturn(admission).when(admissionController).admit(1234);
+        var request = createRequest(true, 1234);
+
+        filter.filter(request);
+        Mockito.verify(admission, Mockito.never()).close();
+
+        filter.filter(request, Mockito.mock(ContainerResponseContext.class));
+        filter.filter(request, Mockito.mock(ContainerResponseContext.class));
+
+        Mockito.verify(admission, Mockito.times(1)).close();
+        Mockito.verify(request, Mockito.never()).abortWith(Mockito.any());
+    }
+
+    @Test
+    void theAdmissionOfAStreamedResponseIsClosedWhenItHasBeenWritten() throws Exception {
+        var admission = Mockito.mock(AdmissionController.Admission.class);
+        Mockito.doReturn(admission).when(admissionController).admit(0);
+        var request = createRequest(false, -1);
+        var response = Mockito.mock(ContainerResponseContext.class);
+        var entity = new AtomicReference<Object>((StreamingOutput) output -> Mockito.verify(admission, Mockito.never()).close());
+        Mockito.doAnswer(i -> entity.get()).when(response).getEntity();
+        Mockito.doAnswer(i -> {
+            entity.set(i.getArgument(0));
+            return null;
+        }).when(response).setEntity(Mockito.any());
+
+        filter.filter(request);
+        filter.filter(request, response);
+        Mockito.verify(admission, Mockito.never()).close();
+
+        ((StreamingOutput) entity.get()).write(OutputStream.nullOutputStream());
+        Mockito.verify(admission, Mockito.times(1)).close();
+    }
+
+    @Test
+    void theAdmissionOfAStreamedResponseIsClosedWhenTheRequestFinishesWithoutItBeingWritten() throws Exception {
+        var admission = Mockito.mock(AdmissionController.Admission.class);
+        Mockito.doReturn(admission).when(admissionController).admit(0);
+        var request = createRequest(false, -1);
+        var response = Mockito.mock(ContainerResponseContext.class);
+        Mockito.doReturn((StreamingOutput) output -> {
+        }).when(response).getEntity();
+
+        filter.filter(request);
+        filter.filter(request, response);
+        Mockito.verify(admission, Mockito.never()).close();
+
+        var containerRequest = Mockito.mock(ContainerRequest.class);
+        Mockito.doAnswer(i -> request.getProperty(i.getArgument(0))).when(containerRequest).getProperty(Mockito.anyString());
+        Mockito.doAnswer(i -> request.removeProperty(i.getArgument(0))).when(containerRequest).removeProperty(Mockito.anyString());
+        var event = Mockito.mock(RequestEvent.class);
+        Mockito.doReturn(RequestEvent.Type.FINISHED).when(event).getType();
+        Mockito.doReturn(containerRequest).when(event).getContainerRequest();
+
+        var listener = filter.onRequest(event);
+        listener.onEvent(event);
+        listener.onEvent(event);
+
+        Mockito.verify(admission, Mockito.times(1)).close();
+    }
+
+    @Test
+    void requestsWithoutBodyAreAdmittedWithoutUpload() throws Exception {
+        filter.filter(createRequest(false, -1));
+
+        Mockito.verify(admissionController).admit(0);
+    }
+
+    @Test
+    void tooManyValidationsAreRefusedWith429AndRetryAfter() throws Exception {
+        Mockito.doThrow(new AdmissionRejectedException(AdmissionRejectedException.Reason.TOO_MANY_VALIDATIONS, "Too many validations are waiting", Duration.ofSeconds(30)))
+            .when(admissionController).admit(Mockito.anyLong());
+        var request = createRequest(true, -1);
+
+        filter.filter(request);
+
+        var response = Mockito.mockingDetails(request).getInvocations().stream()
+            .filter(i -> i.getMethod().getName().equals("abortWith"))
+            .map(i -> i.<Response> getArgument(0))
+            .findFirst()
+            .orElseThrow();
+
+        Assertions.assertEquals(429, response.getStatus());
+        Assertions.assertEquals(30L, response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    void insufficientTempSpaceIsRefusedWith503() {
+        var response = filter.toResponse(
+            new AdmissionRejectedException(AdmissionRejectedException.Reason.INSUFFICIENT_TEMP_SPACE, "Not enough space", Duration.ofMillis(10)));
+
+        Assertions.assertEquals(503, response.getStatus());
+        Assertions.assertEquals(1L, response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+    }
+}
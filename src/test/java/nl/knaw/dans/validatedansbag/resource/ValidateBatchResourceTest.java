@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.resource;
+
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import io.dropwizard.testing.junit5.ResourceExtension;
+import nl.knaw.dans.openapi.api.ValidateBatchCommandDto;
+import nl.knaw.dans.validatedansbag.core.BagNotFoundException;
+import nl.knaw.dans.validatedansbag.core.service.AdmissionController;
+import nl.knaw.dans.validatedansbag.core.service.AdmissionRejectedException;
+import nl.knaw.dans.validatedansbag.core.service.FileService;
+import nl.knaw.dans.validatedansbag.core.service.RuleEngineService;
+import nl.knaw.dans.validatedansbag.core.service.ValidationJobServiceImpl;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+class ValidateBatchResourceTest {
+    private static final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final RuleEngineService ruleEngineService = Mockito.mock(RuleEngineService.class);
+    private final FileService fileService = Mockito.mock(FileService.class);
+    private final AdmissionController admissionController = Mockito.mock(AdmissionController.class);
+    private final ValidateResource validateResource = new ValidateResource(ruleEngineService, fileService, new ValidationJobServiceImpl<>(Runnable::run, Duration.ofHours(1), 100));
+    public final ResourceExtension EXT = ResourceExtension.builder()
+        .addResource(new ValidateBatchResource(validateResource, fileService, admissionController, executor, 2, 3, Jackson.newObjectMapper()))
+        .build();
+
+    @AfterAll
+    static void shutDown() {
+        executor.shutdownNow();
+    }
+
+    @BeforeEach
+    void setup() {
+        Mockito.reset(fileService);
+        Mockito.reset(ruleEngineService);
+        Mockito.reset(admissionController);
+    }
+
+    @Test
+    void validateBatchWritesOneLinePerBag() throws Exception {
+        var command = new ValidateBatchCommandDto();
+        command.setBagLocations(List.of("bags/a", "bags/b"));
+
+        Mockito.doThrow(new BagNotFoundException("Bag not found"))
+            .when(ruleEngineService).validateBag(Mockito.eq(Path.of("bags/b")), Mockito.any(), Mockito.any(), Mockito.anyBoolean());
+
+        var lines = postBatch(command);
+
+        Assertions.assertEquals(2, lines.size());
+        Assertions.assertEquals(true, lines.get("bags/a").get("Is compliant"));
+        Assertions.assertEquals("Request could not be processed: Bag not found", lines.get("bags/b").get("error"));
+    }
+
+    @Test
+    void validateBatchValidatesTheDirectoriesInTheParentDirectory() throws Exception {
+        var command = new ValidateBatchCommandDto();
+        command.setParentDirectory("deposits");
+
+        Mockito.doReturn(true).when(fileService).isDirectory(Path.of("deposits"));
+        Mockito.doReturn(List.of(Path.of("deposits/x"), Path.of("deposits/y")))
+            .when(fileService).getDirectories(Path.of("deposits"));
+
+        var lines = postBatch(command);
+
+        Assertions.assertEquals(2, lines.size());
+        Assertions.assertEquals("x", lines.get("deposits/x").get("Name"));
+        Assertions.assertEquals("y", lines.get("deposits/y").get("Name"));
+        Mockito.verify(ruleEngineService, Mockito.times(2)).validateBag(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyBoolean());
+    }
+
+    @Test
+    void validateBatchAdmitsEachBagSeparately() throws Exception {
+        var command = new ValidateBatchCommandDto();
+        command.setBagLocations(List.of("bags/a", "bags/b"));
+        var admission = Mockito.mock(AdmissionController.Admission.class);
+
+        Mockito.doReturn(admission)
+            .doThrow(new AdmissionRejectedException(AdmissionRejectedException.Reason.TOO_MANY_VALIDATIONS, "Too many validations are waiting", Duration.ofSeconds(30)))
+            .when(admissionController).admit(0);
+
+        var lines = postBatch(command);
+
+        Assertions.assertEquals(2, lines.size());
+        Assertions.assertEquals(1, lines.values().stream().filter(line -> "Too many validations are waiting".equals(line.get("error"))).count());
+        Mockito.verify(admissionController, Mockito.times(2)).admit(0);
+        Mockito.verify(admission).close();
+        Mockito.verify(ruleEngineService, Mockito.times(1)).validateBag(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyBoolean());
+    }
+
+    @Test
+    void validateBatchWithoutBagsIsABadRequest() {
+        assertStatus(400, new ValidateBatchCommandDto());
+    }
+
+    @Test
+    void validateBatchWithBothBagLocationsAndParentDirectoryIsABadRequest() {
+        var command = new ValidateBatchCommandDto();
+        command.setBagLocations(List.of("bags/a"));
+        command.setParentDirectory("deposits");
+
+        assertStatus(400, command);
+    }
+
+    @Test
+    void validateBatchWithTooManyBagsIsABadRequest() {
+        var command = new ValidateBatchCommandDto();
+        command.setBagLocations(List.of("bags/a", "bags/b", "bags/c", "bags/d"));
+
+        assertStatus(400, command);
+        Mockito.verifyNoInteractions(ruleEngineService);
+    }
+
+    @Test
+    void validateBatchWithAParentDirectoryThatDoesNotExistIsABadRequest() {
+        var command = new ValidateBatchCommandDto();
+        command.setParentDirectory("deposits");
+
+        assertStatus(400, command);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Map<String, Object>> postBatch(ValidateBatchCommandDto command) throws Exception {
+        var body = EXT.target("/validate/batch")
+            .request()
+            .post(Entity.entity(command, MediaType.APPLICATION_JSON_TYPE), String.class);
+
+        var objectMapper = Jackson.newObjectMapper();
+        var lines = new HashMap<String, Map<String, Object>>();
+
+        for (var line : body.split("\n")) {
+            var value = (Map<String, Object>) objectMapper.readValue(line, Map.class);
+            var bagLocation = value.containsKey("bagLocation") ? value.get("bagLocation") : value.get("Bag location");
+            lines.put((String) bagLocation, value);
+        }
+
+        return lines;
+    }
+
+    private void assertStatus(int status, ValidateBatchCommandDto command) {
+        try (var response = EXT.target("/validate/batch")
+            .request()
+            .post(Entity.entity(command, MediaType.APPLICATION_JSON_TYPE), Response.class)) {
+
+            Assertions.assertEquals(status, response.getStatus());
+        }
+    }
+}
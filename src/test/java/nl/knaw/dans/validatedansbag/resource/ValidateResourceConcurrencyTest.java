@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.validatedansbag.resource;
+
+import com.codahale.metrics.MetricRegistry;
+import nl.knaw.dans.openapi.api.ValidateCommandDto;
+import nl.knaw.dans.openapi.api.ValidateOkDto;
+import nl.knaw.dans.validatedansbag.core.config.OtherIdPrefix;
+import nl.knaw.dans.validatedansbag.core.config.SwordDepositorRoles;
+import nl.knaw.dans.validatedansbag.core.engine.RuleEngineImpl;
+import nl.knaw.dans.validatedansbag.core.rules.BagRulesImpl;
+import nl.knaw.dans.validatedansbag.core.rules.DatastationRulesImpl;
+import nl.knaw.dans.validatedansbag.core.rules.FilesXmlRulesImpl;
+import nl.knaw.dans.validatedansbag.core.rules.TestLicenseConfig;
+import nl.knaw.dans.validatedansbag.core.rules.XmlRulesImpl;
+import nl.knaw.dans.validatedansbag.core.service.BagItMetadataReaderImpl;
+import nl.knaw.dans.validatedansbag.core.service.ChecksumVerifierImpl;
+import nl.knaw.dans.validatedansbag.core.service.DataverseService;
+import nl.knaw.dans.validatedansbag.core.service.DdmReaderImpl;
+import nl.knaw.dans.validatedansbag.core.service.FileServiceImpl;
+import nl.knaw.dans.validatedansbag.core.service.FilesReconcilerImpl;
+import nl.knaw.dans.validatedansbag.core.service.FilesXmlServiceImpl;
+import nl.knaw.dans.validatedansbag.core.service.OriginalFilepathsServiceImpl;
+import nl.knaw.dans.validatedansbag.core.service.PrecomputedChecksumsImpl;
+import nl.knaw.dans.validatedansbag.core.service.RuleEngineServiceImpl;
+import nl.knaw.dans.validatedansbag.core.service.ValidationJobServiceImpl;
+import nl.knaw.dans.validatedansbag.core.service.XmlReaderImpl;
+import nl.knaw.dans.validatedansbag.core.service.XmlSchemaValidator;
+import nl.knaw.dans.validatedansbag.core.validator.IdentifierValidatorImpl;
+import nl.knaw.dans.validatedansbag.core.validator.LicenseValidatorImpl;
+import nl.knaw.dans.validatedansbag.core.validator.OrganizationIdentifierPrefixValidatorImpl;
+import nl.knaw.dans.validatedansbag.core.validator.PolygonListValidatorImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Validates the same bags many times from concurrent request threads, with a rule engine and checksum verifier that also run concurrently, and checks that the results are the same as
+ * those of validating the bags one after the other.
+ */
+class ValidateResourceConcurrencyTest {
+    private static final int REQUEST_THREADS = 8;
+    private static final int ROUNDS = 10;
+
+    private ExecutorService ruleExecutor;
+    private ExecutorService checksumExecutor;
+    private ExecutorService requestExecutor;
+    private ValidateResource resource;
+
+    @BeforeEach
+    void setUp() {
+        ruleExecutor = Executors.newFixedThreadPool(4);
+        checksumExecutor = Executors.newFixedThreadPool(2);
+        requestExecutor = Executors.newFixedThreadPool(REQUEST_THREADS);
+        resource = buildValidateResource();
+    }
+
+    @AfterEach
+    void tearDown() {
+        ruleExecutor.shutdownNow();
+        checksumExecutor.shutdownNow();
+        requestExecutor.shutdownNow();
+    }
+
+    @Test
+    void concurrentValidationsGiveTheSameResultsAsSequentialValidations() throws Exception {
+        var validations = List.<Callable<String>> of(
+            () -> validateDirectory("bags/valid-bag", ValidateCommandDto.PackageTypeEnum.DEPOSIT),
+            () -> validateDirectory("bags/audiences-invalid", ValidateCommandDto.PackageTypeEnum.DEPOSIT),
+            () -> validateDirectory("bags/bag-with-is-version-of", ValidateCommandDto.PackageTypeEnum.DEPOSIT),
+            () -> validateDirectory("bags/original-filepaths-valid-bag", ValidateCommandDto.PackageTypeEnum.MIGRATION),
+            () -> validateDirectory("bags/original-filepaths-invalid-bag", ValidateCommandDto.PackageTypeEnum.MIGRATION),
+            () -> validateZip("zips/audiences.zip"),
+            () -> validateZip("zips/invalid-sha1.zip")
+        );
+
+        var expected = new ArrayList<String>();
+
+        for (var validation : validations) {
+            expected.add(validation.call());
+        }
+
+        var futures = new ArrayList<List<Future<String>>>();
+
+        for (var round = 0; round < ROUNDS; ++round) {
+            futures.add(requestExecutor.invokeAll(validations));
+        }
+
+        for (var round : futures) {
+            for (var i = 0; i < validations.size(); ++i) {
+                assertEquals(expected.get(i), round.get(i).get());
+            }
+        }
+    }
+
+    private String validateDirectory(String resourceName, ValidateCommandDto.PackageTypeEnum packageType) {
+        var command = new ValidateCommandDto();
+        command.setBagLocation(Objects.requireNonNull(getClass().getClassLoader().getResource(resourceName)).getFile());
+        command.setPackageType(packageType);
+        command.setLevel(ValidateCommandDto.LevelEnum.STAND_ALONE);
+
+        return summarize(resource.validateFormData(command, null), true);
+    }
+
+    private String validateZip(String resourceName) throws Exception {
+        var command = new ValidateCommandDto();
+        command.setPackageType(ValidateCommandDto.PackageTypeEnum.DEPOSIT);
+        command.setLevel(ValidateCommandDto.LevelEnum.STAND_ALONE);
+
+        try (var inputStream = Objects.requireNonNull(getClass().getClassLoader().getResourceAsStream(resourceName))) {
+            // the messages of extracted zips contain the name of a temporary directory, so only the rule numbers are compared
+            return summarize(resource.validateFormData(command, inputStream), false);
+        }
+    }
+
+    private String summarize(ValidateOkDto result, boolean includeViolations) {
+        var violations = result.getRuleViolations().stream()
+            .map(v -> includeViolations ? v.getRule() + ": " + v.getViolation() : v.getRule())
+            .sorted()
+            .collect(Collectors.toList());
+
+        return result.getIsCompliant() + " " + violations;
+    }
+
+    private ValidateResource buildValidateResource() {
+        var dataverseService = Mockito.mock(DataverseService.class);
+        var xmlSchemaValidator = Mockito.mock(XmlSchemaValidator.class);
+
+        var precomputedChecksums = new PrecomputedChecksumsImpl();
+        var fileService = new FileServiceImpl(precomputedChecksums);
+        var bagItMetadataReader = new BagItMetadataReaderImpl(
+            new ChecksumVerifierImpl(checksumExecutor, 2, 64 * 1024, precomputedChecksums, new MetricRegistry())
+        );
+        // a single instance is shared by all requests and rules, as in the application
+        var xmlReader = new XmlReaderImpl();
+        var ddmReader = new DdmReaderImpl();
+        var daiDigestCalculator = new IdentifierValidatorImpl();
+        var polygonListValidator = new PolygonListValidatorImpl();
+        var originalFilepathsService = new OriginalFilepathsServiceImpl(fileService);
+        var licenseValidator = new LicenseValidatorImpl(new TestLicenseConfig());
+        var filesXmlService = new FilesXmlServiceImpl(xmlReader);
+        var filesReconciler = new FilesReconcilerImpl(fileService, originalFilepathsService, filesXmlService);
+
+        var organizationIdentifierPrefixValidator = new OrganizationIdentifierPrefixValidatorImpl(
+            List.of(new OtherIdPrefix("user001", "u1:"), new OtherIdPrefix("user002", "u2:"))
+        );
+
+        var bagRules = new BagRulesImpl(fileService, bagItMetadataReader, ddmReader, originalFilepathsService, daiDigestCalculator, polygonListValidator, licenseValidator,
+            organizationIdentifierPrefixValidator, filesReconciler);
+        var filesXmlRules = new FilesXmlRulesImpl(filesReconciler);
+        var xmlRules = new XmlRulesImpl(xmlReader, ddmReader, xmlSchemaValidator, fileService);
+        var datastationRules = new DatastationRulesImpl(bagItMetadataReader, dataverseService, new SwordDepositorRoles("datasetcreator", "dataseteditor"));
+
+        var ruleEngine = new RuleEngineImpl(new MetricRegistry(), ruleExecutor);
+        var ruleEngineService = new RuleEngineServiceImpl(ruleEngine, bagRules, xmlRules, filesXmlRules, fileService, datastationRules);
+
+        return new ValidateResource(ruleEngineService, fileService, new ValidationJobServiceImpl<>(Runnable::run, Duration.ofHours(1), 100));
+    }
+}
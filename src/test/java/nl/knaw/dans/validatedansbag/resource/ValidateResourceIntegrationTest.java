@@ -15,6 +15,7 @@
  */
 package nl.knaw.dans.validatedansbag.resource;
 
+import com.codahale.metrics.MetricRegistry;
 import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
 import io.dropwizard.testing.junit5.ResourceExtension;
 import nl.knaw.dans.lib.dataverse.model.RoleAssignmentReadOnly;
@@ -32,12 +33,17 @@ import nl.knaw.dans.validatedansbag.core.rules.FilesXmlRulesImpl;
 import nl.knaw.dans.validatedansbag.core.rules.TestLicenseConfig;
 import nl.knaw.dans.validatedansbag.core.rules.XmlRulesImpl;
 import nl.knaw.dans.validatedansbag.core.service.BagItMetadataReaderImpl;
+import nl.knaw.dans.validatedansbag.core.service.ChecksumVerifierImpl;
 import nl.knaw.dans.validatedansbag.core.service.DataverseService;
+import nl.knaw.dans.validatedansbag.core.service.DdmReaderImpl;
 import nl.knaw.dans.validatedansbag.core.service.FileServiceImpl;
 import nl.knaw.dans.validatedansbag.core.service.FilesXmlService;
+import nl.knaw.dans.validatedansbag.core.service.FilesReconcilerImpl;
 import nl.knaw.dans.validatedansbag.core.service.FilesXmlServiceImpl;
 import nl.knaw.dans.validatedansbag.core.service.OriginalFilepathsServiceImpl;
+import nl.knaw.dans.validatedansbag.core.service.PrecomputedChecksumsImpl;
 import nl.knaw.dans.validatedansbag.core.service.RuleEngineServiceImpl;
+import nl.knaw.dans.validatedansbag.core.service.ValidationJobServiceImpl;
 import nl.knaw.dans.validatedansbag.core.service.XmlReaderImpl;
 import nl.knaw.dans.validatedansbag.core.service.XmlSchemaValidator;
 import nl.knaw.dans.validatedansbag.core.validator.IdentifierValidatorImpl;
@@ -55,6 +61,7 @@ import org.xml.sax.SAXException;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.time.Duration;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
@@ -82,31 +89,36 @@ class ValidateResourceIntegrationTest {
 
     static ValidateResource buildValidateResource() {
 
-        var fileService = new FileServiceImpl();
-        var bagItMetadataReader = new BagItMetadataReaderImpl();
+        var precomputedChecksums = new PrecomputedChecksumsImpl();
+        var fileService = new FileServiceImpl(precomputedChecksums);
+        var bagItMetadataReader = new BagItMetadataReaderImpl(
+            new ChecksumVerifierImpl(Runnable::run, 1, 64 * 1024, precomputedChecksums, new MetricRegistry())
+        );
         var xmlReader = new XmlReaderImpl();
+        var ddmReader = new DdmReaderImpl();
         var daiDigestCalculator = new IdentifierValidatorImpl();
         var polygonListValidator = new PolygonListValidatorImpl();
         var originalFilepathsService = new OriginalFilepathsServiceImpl(fileService);
         var licenseValidator = new LicenseValidatorImpl(new TestLicenseConfig());
         var filesXmlService = new FilesXmlServiceImpl(xmlReader);
+        var filesReconciler = new FilesReconcilerImpl(fileService, originalFilepathsService, filesXmlService);
 
         var organizationIdentifierPrefixValidator = new OrganizationIdentifierPrefixValidatorImpl(
             List.of(new OtherIdPrefix("user001", "u1:"), new OtherIdPrefix("user002", "u2:"))
         );
 
         // set up the different rule implementations
-        var bagRules = new BagRulesImpl(fileService, bagItMetadataReader, xmlReader, originalFilepathsService, daiDigestCalculator, polygonListValidator, licenseValidator,
-            organizationIdentifierPrefixValidator, filesXmlService);
-        var filesXmlRules = new FilesXmlRulesImpl(fileService, originalFilepathsService, filesXmlService);
-        var xmlRules = new XmlRulesImpl(xmlReader, xmlSchemaValidator, fileService);
+        var bagRules = new BagRulesImpl(fileService, bagItMetadataReader, ddmReader, originalFilepathsService, daiDigestCalculator, polygonListValidator, licenseValidator,
+            organizationIdentifierPrefixValidator, filesReconciler);
+        var filesXmlRules = new FilesXmlRulesImpl(filesReconciler);
+        var xmlRules = new XmlRulesImpl(xmlReader, ddmReader, xmlSchemaValidator, fileService);
         var datastationRules = new DatastationRulesImpl(bagItMetadataReader, dataverseService, new SwordDepositorRoles("datasetcreator", "dataseteditor"));
 
         // set up the engine and the service that has a default set of rules
         var ruleEngine = new RuleEngineImpl();
         var ruleEngineService = new RuleEngineServiceImpl(ruleEngine, bagRules, xmlRules, filesXmlRules, fileService, datastationRules);
 
-        return new ValidateResource(ruleEngineService, fileService);
+        return new ValidateResource(ruleEngineService, fileService, new ValidationJobServiceImpl<>(Runnable::run, Duration.ofHours(1), 100));
     }
 
     @BeforeEach
@@ -138,6 +150,28 @@ class ValidateResourceIntegrationTest {
         assertEquals(1, response.getRuleViolations().size());
     }
 
+    @Test
+    void validateFormDataWithInvalidBagAndFailFast() {
+        var filename = Objects.requireNonNull(getClass().getClassLoader().getResource("bags/audiences-invalid")).getFile();
+
+        var data = new ValidateCommandDto();
+        data.setBagLocation(filename);
+        data.setPackageType(ValidateCommandDto.PackageTypeEnum.DEPOSIT);
+        data.setLevel(ValidateCommandDto.LevelEnum.WITH_DATA_STATION_CONTEXT);
+        data.setFailFast(true);
+        var multipart = new FormDataMultiPart()
+            .field("command", data, MediaType.APPLICATION_JSON_TYPE);
+
+        var response = EXT.target("/validate")
+            .register(MultiPartFeature.class)
+            .request()
+            .post(Entity.entity(multipart, multipart.getMediaType()), ValidateOkDto.class);
+
+        assertFalse(response.getIsCompliant());
+        assertTrue(response.getIsPartial());
+        assertEquals(1, response.getRuleViolations().size());
+    }
+
     @Test
     void validateFormDataWithSomeException() throws Exception {
         var filename = Objects.requireNonNull(getClass().getClassLoader().getResource("bags/valid-bag")).getFile();
@@ -149,7 +183,7 @@ class ValidateResourceIntegrationTest {
         var multipart = new FormDataMultiPart()
             .field("command", data, MediaType.APPLICATION_JSON_TYPE);
 
-        Mockito.when(xmlSchemaValidator.validateDocument(Mockito.any(), Mockito.anyString()))
+        Mockito.when(xmlSchemaValidator.validateFile(Mockito.any(), Mockito.anyString(), Mockito.any()))
             .thenThrow(new SAXException("Something is broken"));
 
         try (var response = EXT.target("/validate")
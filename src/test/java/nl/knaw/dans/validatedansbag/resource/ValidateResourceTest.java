@@ -18,9 +18,11 @@ package nl.knaw.dans.validatedansbag.resource;
 import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
 import io.dropwizard.testing.junit5.ResourceExtension;
 import nl.knaw.dans.openapi.api.ValidateCommandDto;
+import nl.knaw.dans.openapi.api.ValidationJobDto;
 import nl.knaw.dans.validatedansbag.core.BagNotFoundException;
 import nl.knaw.dans.validatedansbag.core.service.FileService;
 import nl.knaw.dans.validatedansbag.core.service.RuleEngineService;
+import nl.knaw.dans.validatedansbag.core.service.ValidationJobServiceImpl;
 import org.glassfish.jersey.media.multipart.FormDataMultiPart;
 import org.glassfish.jersey.media.multipart.MultiPartFeature;
 import org.junit.jupiter.api.Assertions;
@@ -35,6 +37,7 @@ import javax.ws.rs.core.Response;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Optional;
 import java.util.zip.ZipError;
 
@@ -44,7 +47,7 @@ class ValidateResourceTest {
     private final FileService fileService = Mockito.mock(FileService.class);
     public final ResourceExtension EXT = ResourceExtension.builder()
         .addProvider(MultiPartFeature.class)
-        .addResource(new ValidateResource(ruleEngineService, fileService))
+        .addResource(new ValidateResource(ruleEngineService, fileService, new ValidationJobServiceImpl<>(Runnable::run, Duration.ofHours(1), 100)))
         .build();
 
     @BeforeEach
@@ -121,7 +124,7 @@ class ValidateResourceTest {
             .field("command", data, MediaType.APPLICATION_JSON_TYPE);
 
         Mockito.doThrow(BagNotFoundException.class)
-            .when(ruleEngineService).validateBag(Mockito.any(), Mockito.any(), Mockito.any());
+            .when(ruleEngineService).validateBag(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyBoolean());
 
         try (var response = EXT.target("/validate")
             .register(MultiPartFeature.class)
@@ -147,4 +150,89 @@ class ValidateResourceTest {
             Assertions.assertEquals(500, response.getStatus());
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void submitJobAndGetTheResult() {
+        var data = new ValidateCommandDto();
+        data.setBagLocation("it/is/here");
+        data.setPackageType(ValidateCommandDto.PackageTypeEnum.DEPOSIT);
+
+        var multipart = new FormDataMultiPart()
+            .field("command", data, MediaType.APPLICATION_JSON_TYPE);
+
+        try (var response = EXT.target("/validate/jobs")
+            .register(MultiPartFeature.class)
+            .request()
+            .post(Entity.entity(multipart, multipart.getMediaType()), Response.class)) {
+
+            Assertions.assertEquals(202, response.getStatus());
+
+            var submitted = response.readEntity(ValidationJobDto.class);
+            Assertions.assertTrue(response.getLocation().getPath().endsWith("/validate/jobs/" + submitted.getId()));
+
+            // the jobs in this test run on the request thread, so the job is done already
+            var job = EXT.target("/validate/jobs/" + submitted.getId())
+                .request()
+                .get(ValidationJobDto.class);
+
+            Assertions.assertEquals(ValidationJobDto.StatusEnum.DONE, job.getStatus());
+            Assertions.assertEquals("it/is/here", job.getResult().getBagLocation());
+            Assertions.assertNull(job.getError());
+        }
+    }
+
+    @Test
+    void submitJobForABagThatDoesNotExist() throws Exception {
+        var data = new ValidateCommandDto();
+        data.setBagLocation("some/path");
+        data.setPackageType(ValidateCommandDto.PackageTypeEnum.DEPOSIT);
+
+        var multipart = new FormDataMultiPart()
+            .field("command", data, MediaType.APPLICATION_JSON_TYPE);
+
+        Mockito.doThrow(new BagNotFoundException("Bag not found"))
+            .when(ruleEngineService).validateBag(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyBoolean());
+
+        var submitted = EXT.target("/validate/jobs")
+            .register(MultiPartFeature.class)
+            .request()
+            .post(Entity.entity(multipart, multipart.getMediaType()), ValidationJobDto.class);
+
+        var job = EXT.target("/validate/jobs/" + submitted.getId())
+            .request()
+            .get(ValidationJobDto.class);
+
+        Assertions.assertEquals(ValidationJobDto.StatusEnum.FAILED, job.getStatus());
+        Assertions.assertEquals("Request could not be processed: Bag not found", job.getError());
+    }
+
+    @Test
+    void submitZipJobDeletesTheExtractedZip() throws Exception {
+        var zip = Entity.entity(new ByteArrayInputStream(new byte[4]), MediaType.valueOf("application/zip"));
+
+        Mockito.doReturn(Path.of("/tmp/bag-1"))
+            .when(fileService).extractZipFile(Mockito.any(InputStream.class));
+
+        Mockito.doReturn(Optional.of(Path.of("bagdir")))
+            .when(fileService).getFirstDirectory(Mockito.any());
+
+        try (var response = EXT.target("/validate/jobs")
+            .request()
+            .post(zip, Response.class)) {
+
+            Assertions.assertEquals(202, response.getStatus());
+        }
+
+        Mockito.verify(fileService).deleteDirectoryAndContents(Path.of("/tmp/bag-1"));
+    }
+
+    @Test
+    void getJobThatDoesNotExist() {
+        try (var response = EXT.target("/validate/jobs/does-not-exist")
+            .request()
+            .get(Response.class)) {
+
+            Assertions.assertEquals(404, response.getStatus());
+        }
+    }
+}